@@ -0,0 +1,30 @@
+package me.bcap.dht.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.openjdk.jmh.Main;
+
+/**
+ * Runs the benchmarks with the JMH command line, adding the GC profiler and a JSON result file unless other profilers
+ * or result formats are asked for. Every benchmark reports throughput and sampled latency, the GC profiler adds the
+ * allocation rate and bytes allocated per operation.
+ * <p>
+ * For instance <code>java -jar target/benchmarks.jar MessageBenchmark -p type=FindNodeResponse</code>
+ */
+public class Benchmarks {
+
+	public static void main(String[] args) throws Exception {
+		List<String> options = new ArrayList<String>(Arrays.asList(args));
+		if (!options.contains("-prof") && !options.contains("-lprof") && !options.contains("-h")) {
+			options.add("-prof");
+			options.add("gc");
+		}
+		if (!options.contains("-rf")) {
+			options.add("-rf");
+			options.add("json");
+		}
+		Main.main(options.toArray(new String[options.size()]));
+	}
+}
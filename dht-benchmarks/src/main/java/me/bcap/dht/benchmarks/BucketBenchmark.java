@@ -0,0 +1,79 @@
+package me.bcap.dht.benchmarks;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import me.bcap.dht.node.Bucket;
+import me.bcap.dht.node.Contact;
+
+/**
+ * One full bucket refreshed by several threads at once, as happens to the top buckets of a busy node where every
+ * request received updates its sender
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dlog4j.configuration=log4j-benchmarks.xml")
+public class BucketBenchmark {
+
+	@State(Scope.Benchmark)
+	public static class SharedBucket {
+		private Bucket bucket;
+		private List<Contact> contacts;
+
+		@Setup
+		public void setUp() {
+			Fixtures fixtures = new Fixtures();
+			bucket = new Bucket(BigInteger.ONE.shiftLeft(159));
+			contacts = new ArrayList<Contact>();
+			while (contacts.size() < Bucket.MAX_SIZE) {
+				Contact contact = fixtures.contactInBucket(159);
+				if (bucket.updateContact(contact))
+					contacts.add(contact);
+			}
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Cursor {
+		private int next = 0;
+
+		int next(int size) {
+			next = (next + 1) % size;
+			return next;
+		}
+	}
+
+	@Benchmark
+	@Threads(1)
+	public boolean updateContactAlone(SharedBucket shared, Cursor cursor) {
+		return shared.bucket.updateContact(shared.contacts.get(cursor.next(Bucket.MAX_SIZE)));
+	}
+
+	@Benchmark
+	@Threads(4)
+	public boolean updateContactContended(SharedBucket shared, Cursor cursor) {
+		return shared.bucket.updateContact(shared.contacts.get(cursor.next(Bucket.MAX_SIZE)));
+	}
+
+	@Benchmark
+	@Threads(4)
+	public Contact getContactContended(SharedBucket shared, Cursor cursor) {
+		return shared.bucket.getContact(shared.contacts.get(cursor.next(Bucket.MAX_SIZE)));
+	}
+}
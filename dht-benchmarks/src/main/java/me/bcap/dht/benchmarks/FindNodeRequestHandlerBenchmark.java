@@ -0,0 +1,59 @@
+package me.bcap.dht.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import me.bcap.dht.message.request.FindNodeRequest;
+import me.bcap.dht.message.response.Response;
+import me.bcap.dht.node.Identifier;
+import me.bcap.dht.node.Node;
+import me.bcap.dht.server.handler.FindNodeRequestHandler;
+
+/**
+ * Answering FIND_NODE from a full routing table, the request every lookup hop sends
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dlog4j.configuration=log4j-benchmarks.xml")
+public class FindNodeRequestHandlerBenchmark {
+
+	private static final int TARGETS = 1024;
+
+	private FindNodeRequestHandler handler;
+	private Node node;
+	private FindNodeRequest[] requests;
+	private int next = 0;
+
+	@Setup
+	public void setUp() {
+		Fixtures fixtures = new Fixtures();
+		handler = new FindNodeRequestHandler();
+		node = fixtures.fullNode();
+		requests = new FindNodeRequest[TARGETS];
+		for (int i = 0; i < TARGETS; i++) {
+			Identifier target = fixtures.identifier();
+			requests[i] = new FindNodeRequest();
+			requests[i].setIdentifier(target);
+			requests[i].setDestination(node.asContact());
+		}
+	}
+
+	@Benchmark
+	public Response handleImpl() {
+		next = (next + 1) & (TARGETS - 1);
+		return handler.handleImpl(node, requests[next]);
+	}
+}
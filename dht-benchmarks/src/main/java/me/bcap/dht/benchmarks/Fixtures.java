@@ -0,0 +1,85 @@
+package me.bcap.dht.benchmarks;
+
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import me.bcap.dht.node.Bucket;
+import me.bcap.dht.node.Contact;
+import me.bcap.dht.node.Identifier;
+import me.bcap.dht.node.Node;
+
+/**
+ * Seeded data shared by the benchmarks, so that every run measures the same identifiers and routing tables
+ */
+class Fixtures {
+
+	static final long SEED = 42;
+	static final int PORT = 5000;
+
+	private Random random = new Random(SEED);
+	private InetAddress ip;
+
+	Fixtures() {
+		try {
+			ip = InetAddress.getByName("127.0.0.1");
+		} catch (UnknownHostException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	Identifier identifier() {
+		return new Identifier(new BigInteger(Identifier.LENGTH, random));
+	}
+
+	Identifier[] identifiers(int count) {
+		Identifier[] identifiers = new Identifier[count];
+		for (int i = 0; i < count; i++)
+			identifiers[i] = identifier();
+		return identifiers;
+	}
+
+	Contact contact() {
+		return new Contact(new BigInteger(Identifier.LENGTH, random), ip, PORT);
+	}
+
+	List<Contact> contacts(int count) {
+		List<Contact> contacts = new ArrayList<Contact>(count);
+		for (int i = 0; i < count; i++)
+			contacts.add(contact());
+		return contacts;
+	}
+
+	/**
+	 * A contact landing in the given bucket of any node, the buckets being indexed by the highest bit set
+	 */
+	Contact contactInBucket(int index) {
+		BigInteger id = new BigInteger(index, random).setBit(index);
+		return new Contact(id, ip, PORT);
+	}
+
+	Node node() {
+		return new Node(new BigInteger(Identifier.LENGTH, random), ip, PORT);
+	}
+
+	/**
+	 * A node whose buckets all hold as many contacts as they can, the low ones being limited by how many identifiers
+	 * fall in them
+	 */
+	Node fullNode() {
+		Node node = node();
+		for (int index = 0; index < Identifier.LENGTH; index++) {
+			int capacity = index < 5 ? Math.min(Bucket.MAX_SIZE, 1 << index) : Bucket.MAX_SIZE;
+			while (node.getBucket(index).size() < capacity)
+				node.updateContact(contactInBucket(index));
+		}
+		return node;
+	}
+
+	Random random() {
+		return random;
+	}
+}
@@ -0,0 +1,64 @@
+package me.bcap.dht.benchmarks;
+
+import java.math.BigInteger;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import me.bcap.dht.node.Contact;
+import me.bcap.dht.node.Identifier;
+
+/**
+ * XOR distance and closest identifier search, the arithmetic under every routing decision
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dlog4j.configuration=log4j-benchmarks.xml")
+public class IdentifierBenchmark {
+
+	private static final int TARGETS = 1024;
+
+	@Param({ "20", "160" })
+	public int candidates;
+
+	private Identifier[] targets;
+	private List<Contact> contacts;
+	private int next = 0;
+
+	@Setup
+	public void setUp() {
+		Fixtures fixtures = new Fixtures();
+		targets = fixtures.identifiers(TARGETS);
+		contacts = fixtures.contacts(candidates);
+	}
+
+	@Benchmark
+	public BigInteger getDistance() {
+		Identifier target = nextTarget();
+		return target.getDistance(targets[(next + TARGETS / 2) & (TARGETS - 1)]);
+	}
+
+	@Benchmark
+	public Contact getClosest() {
+		return nextTarget().getClosest(contacts);
+	}
+
+	private Identifier nextTarget() {
+		next = (next + 1) & (TARGETS - 1);
+		return targets[next];
+	}
+}
@@ -0,0 +1,52 @@
+package me.bcap.dht.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import me.bcap.dht.message.Message;
+
+/**
+ * Encoding and decoding of every message type as sent on the wire, values being {@link Messages#VALUE_SIZE} bytes
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dlog4j.configuration=log4j-benchmarks.xml")
+public class MessageBenchmark {
+
+	@Param({ "PingRequest", "PingResponse", "StoreRequest", "StoreResponse", "FindNodeRequest", "FindNodeResponse", "FindValueRequest", "FindValueResponse", "KeyFilterRequest", "KeyFilterResponse", "HandoffRequest", "HandoffResponse", "MerkleTreeRequest", "MerkleTreeResponse", "StoreChunkRequest", "StoreChunkResponse", "ValueRangeRequest", "ValueRangeResponse", "ContainsKeyRequest", "ContainsKeyResponse", "CompareAndSetRequest", "CompareAndSetResponse", "AppendRequest", "AppendResponse", "SubscribeRequest", "SubscribeResponse", "KeyChangedRequest", "KeyChangedResponse" })
+	public String type;
+
+	private Message message;
+	private byte[] encoded;
+
+	@Setup
+	public void setUp() throws IOException {
+		message = new Messages().sample(type);
+		encoded = Messages.encode(message);
+	}
+
+	@Benchmark
+	public byte[] encode() throws IOException {
+		return Messages.encode(message);
+	}
+
+	@Benchmark
+	public Message decode() throws IOException, ClassNotFoundException {
+		return Messages.decode(encoded);
+	}
+}
@@ -0,0 +1,251 @@
+package me.bcap.dht.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import me.bcap.dht.message.Message;
+import me.bcap.dht.message.PayloadMessage;
+import me.bcap.dht.message.request.AppendRequest;
+import me.bcap.dht.message.request.CompareAndSetRequest;
+import me.bcap.dht.message.request.ContainsKeyRequest;
+import me.bcap.dht.message.request.FindNodeRequest;
+import me.bcap.dht.message.request.FindValueRequest;
+import me.bcap.dht.message.request.HandoffRequest;
+import me.bcap.dht.message.request.IdentifierRequest;
+import me.bcap.dht.message.request.KeyChangedRequest;
+import me.bcap.dht.message.request.KeyFilterRequest;
+import me.bcap.dht.message.request.MerkleTreeRequest;
+import me.bcap.dht.message.request.PingRequest;
+import me.bcap.dht.message.request.Request;
+import me.bcap.dht.message.request.StoreChunkRequest;
+import me.bcap.dht.message.request.StoreRequest;
+import me.bcap.dht.message.request.SubscribeRequest;
+import me.bcap.dht.message.request.ValueRangeRequest;
+import me.bcap.dht.message.response.AppendResponse;
+import me.bcap.dht.message.response.CompareAndSetResponse;
+import me.bcap.dht.message.response.ContainsKeyResponse;
+import me.bcap.dht.message.response.FindNodeResponse;
+import me.bcap.dht.message.response.FindValueResponse;
+import me.bcap.dht.message.response.HandoffResponse;
+import me.bcap.dht.message.response.KeyChangedResponse;
+import me.bcap.dht.message.response.KeyFilterResponse;
+import me.bcap.dht.message.response.MerkleTreeResponse;
+import me.bcap.dht.message.response.PingResponse;
+import me.bcap.dht.message.response.StoreChunkResponse;
+import me.bcap.dht.message.response.StoreResponse;
+import me.bcap.dht.message.response.SubscribeResponse;
+import me.bcap.dht.message.response.ValueRangeResponse;
+import me.bcap.dht.node.Bucket;
+import me.bcap.dht.node.Identifier;
+import me.bcap.dht.node.filter.BloomFilter;
+
+/**
+ * A typical instance of every message, and their encoding the way the server and the sender put them on the wire: the
+ * serialized object followed by the raw payload, if any
+ */
+class Messages {
+
+	static final int VALUE_SIZE = 1024;
+
+	private Fixtures fixtures = new Fixtures();
+
+	Message sample(String type) {
+		if (type.equals("PingRequest"))
+			return request(new PingRequest());
+		if (type.equals("StoreRequest")) {
+			StoreRequest request = identifierRequest(new StoreRequest());
+			request.setData(value());
+			return request;
+		}
+		if (type.equals("FindNodeRequest"))
+			return identifierRequest(new FindNodeRequest());
+		if (type.equals("FindValueRequest"))
+			return identifierRequest(new FindValueRequest());
+		if (type.equals("KeyFilterRequest"))
+			return request(new KeyFilterRequest());
+		if (type.equals("HandoffRequest")) {
+			HandoffRequest request = request(new HandoffRequest());
+			request.setEntries(entries(8));
+			return request;
+		}
+		if (type.equals("MerkleTreeRequest")) {
+			MerkleTreeRequest request = request(new MerkleTreeRequest());
+			request.setDepth(8);
+			request.setLevel(4);
+			request.setPositions(new int[] { 1, 5, 9, 13 });
+			return request;
+		}
+		if (type.equals("StoreChunkRequest")) {
+			StoreChunkRequest request = identifierRequest(new StoreChunkRequest());
+			request.setTotalLength(16 * VALUE_SIZE);
+			request.setOffset(VALUE_SIZE);
+			request.setChunk(value());
+			return request;
+		}
+		if (type.equals("ValueRangeRequest")) {
+			ValueRangeRequest request = identifierRequest(new ValueRangeRequest());
+			request.setOffset(VALUE_SIZE);
+			request.setLength(VALUE_SIZE);
+			return request;
+		}
+		if (type.equals("ContainsKeyRequest"))
+			return identifierRequest(new ContainsKeyRequest());
+		if (type.equals("CompareAndSetRequest")) {
+			CompareAndSetRequest request = identifierRequest(new CompareAndSetRequest());
+			request.setExpectedVersion(7);
+			request.setData(value());
+			return request;
+		}
+		if (type.equals("AppendRequest")) {
+			AppendRequest request = identifierRequest(new AppendRequest());
+			request.setElement(new byte[64]);
+			request.setTtl(60000);
+			return request;
+		}
+		if (type.equals("SubscribeRequest")) {
+			SubscribeRequest request = identifierRequest(new SubscribeRequest());
+			request.setLease(60000);
+			return request;
+		}
+		if (type.equals("KeyChangedRequest")) {
+			KeyChangedRequest request = request(new KeyChangedRequest());
+			List<KeyChangedRequest.Change> changes = new ArrayList<KeyChangedRequest.Change>();
+			for (int i = 0; i < 4; i++)
+				changes.add(new KeyChangedRequest.Change(fixtures.identifier(), i + 1, VALUE_SIZE, value()));
+			request.setChanges(changes);
+			return request;
+		}
+
+		if (type.equals("PingResponse"))
+			return response(new PingResponse());
+		if (type.equals("StoreResponse"))
+			return response(new StoreResponse());
+		if (type.equals("FindNodeResponse")) {
+			FindNodeResponse response = response(new FindNodeResponse());
+			response.setContacts(fixtures.contacts(Bucket.MAX_SIZE));
+			return response;
+		}
+		if (type.equals("FindValueResponse")) {
+			FindValueResponse response = response(new FindValueResponse());
+			response.setData(value());
+			response.setVersion(7);
+			return response;
+		}
+		if (type.equals("KeyFilterResponse")) {
+			BloomFilter filter = new BloomFilter(8 * 1024, 4);
+			for (int i = 0; i < 512; i++)
+				filter.add(fixtures.identifier());
+			KeyFilterResponse response = response(new KeyFilterResponse());
+			response.setFilter(filter);
+			return response;
+		}
+		if (type.equals("HandoffResponse")) {
+			HandoffResponse response = response(new HandoffResponse());
+			response.setAccepted(8);
+			return response;
+		}
+		if (type.equals("MerkleTreeResponse")) {
+			MerkleTreeResponse response = response(new MerkleTreeResponse());
+			long[] hashes = new long[16];
+			for (int i = 0; i < hashes.length; i++)
+				hashes[i] = fixtures.random().nextLong();
+			response.setHashes(hashes);
+			return response;
+		}
+		if (type.equals("StoreChunkResponse")) {
+			StoreChunkResponse response = response(new StoreChunkResponse());
+			response.setReceived(2 * VALUE_SIZE);
+			return response;
+		}
+		if (type.equals("ValueRangeResponse")) {
+			ValueRangeResponse response = response(new ValueRangeResponse());
+			response.setData(value());
+			response.setTotalLength(16 * VALUE_SIZE);
+			return response;
+		}
+		if (type.equals("ContainsKeyResponse")) {
+			ContainsKeyResponse response = response(new ContainsKeyResponse());
+			response.setLength(VALUE_SIZE);
+			return response;
+		}
+		if (type.equals("CompareAndSetResponse")) {
+			CompareAndSetResponse response = response(new CompareAndSetResponse());
+			response.setSuccessful(false);
+			response.setVersion(8);
+			response.setData(value());
+			return response;
+		}
+		if (type.equals("AppendResponse")) {
+			AppendResponse response = response(new AppendResponse());
+			response.setAdded(true);
+			response.setSize(20);
+			return response;
+		}
+		if (type.equals("SubscribeResponse")) {
+			SubscribeResponse response = response(new SubscribeResponse());
+			response.setLease(60000);
+			response.setVersion(7);
+			return response;
+		}
+		if (type.equals("KeyChangedResponse"))
+			return response(new KeyChangedResponse());
+
+		throw new IllegalArgumentException("No sample of message type " + type);
+	}
+
+	static byte[] encode(Message message) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ObjectOutputStream objectOut = new ObjectOutputStream(out);
+		objectOut.writeObject(message);
+		objectOut.flush();
+		if (message instanceof PayloadMessage)
+			((PayloadMessage) message).writePayload(Channels.newChannel(out));
+		return out.toByteArray();
+	}
+
+	static Message decode(byte[] encoded) throws IOException, ClassNotFoundException {
+		ByteArrayInputStream in = new ByteArrayInputStream(encoded);
+		Message message = (Message) new ObjectInputStream(in).readObject();
+		if (message instanceof PayloadMessage)
+			((PayloadMessage) message).readPayload(in);
+		return message;
+	}
+
+	private <T extends Request> T request(T request) {
+		request.setSource(fixtures.contact());
+		request.setDestination(fixtures.contact());
+		return request;
+	}
+
+	private <T extends IdentifierRequest> T identifierRequest(T request) {
+		request(request).setIdentifier(fixtures.identifier());
+		return request;
+	}
+
+	private <T extends Message> T response(T response) {
+		response.setSource(fixtures.contact());
+		response.setDestination(fixtures.contact());
+		return response;
+	}
+
+	private Map<Identifier, byte[]> entries(int count) {
+		Map<Identifier, byte[]> entries = new HashMap<Identifier, byte[]>();
+		for (int i = 0; i < count; i++)
+			entries.put(fixtures.identifier(), value());
+		return entries;
+	}
+
+	private byte[] value() {
+		byte[] value = new byte[VALUE_SIZE];
+		fixtures.random().nextBytes(value);
+		return value;
+	}
+}
@@ -0,0 +1,80 @@
+package me.bcap.dht.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import me.bcap.dht.node.Contact;
+import me.bcap.dht.node.Identifier;
+import me.bcap.dht.node.Node;
+
+/**
+ * Routing table maintenance on a full table: finding the bucket of an identifier, refreshing a known contact and
+ * turning down an unknown one because its bucket is full
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dlog4j.configuration=log4j-benchmarks.xml")
+public class NodeBenchmark {
+
+	private static final int SAMPLES = 1024;
+
+	private Node node;
+	private Identifier[] identifiers;
+	private Contact[] known;
+	private Contact[] unknown;
+	private int next = 0;
+
+	@Setup
+	public void setUp() {
+		Fixtures fixtures = new Fixtures();
+		node = fixtures.fullNode();
+		identifiers = fixtures.identifiers(SAMPLES);
+
+		List<Contact> contacts = new ArrayList<Contact>();
+		for (int index = 0; index < Identifier.LENGTH; index++)
+			contacts.addAll(node.getBucket(index).getContacts());
+		known = new Contact[SAMPLES];
+		for (int i = 0; i < SAMPLES; i++)
+			known[i] = contacts.get(fixtures.random().nextInt(contacts.size()));
+
+		// the top buckets are always full, so these never get in
+		unknown = new Contact[SAMPLES];
+		for (int i = 0; i < SAMPLES; i++)
+			unknown[i] = fixtures.contactInBucket(Identifier.LENGTH - 1 - fixtures.random().nextInt(8));
+	}
+
+	@Benchmark
+	public int getBucketIndex() {
+		return node.getBucketIndex(identifiers[nextSample()]);
+	}
+
+	@Benchmark
+	public boolean updateKnownContact() {
+		return node.updateContact(known[nextSample()]);
+	}
+
+	@Benchmark
+	public boolean updateUnknownContact() {
+		return node.updateContact(unknown[nextSample()]);
+	}
+
+	private int nextSample() {
+		next = (next + 1) & (SAMPLES - 1);
+		return next;
+	}
+}
@@ -0,0 +1,87 @@
+package me.bcap.dht.benchmarks;
+
+import java.net.InetAddress;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import me.bcap.dht.client.ConcurrentMessageSender;
+import me.bcap.dht.client.operation.Ping;
+import me.bcap.dht.client.operation.PingResult;
+import me.bcap.dht.node.Node;
+import me.bcap.dht.server.Server;
+
+/**
+ * PING round trips through a real {@link Server} and {@link ConcurrentMessageSender} over the loopback interface, one
+ * connection per request as in production
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlog4j.configuration=log4j-benchmarks.xml")
+public class PingBenchmark {
+
+	@Param({ "5301" })
+	public int port;
+
+	private Server server;
+	private ConcurrentMessageSender sender;
+	private Node client;
+	private Node target;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		Fixtures fixtures = new Fixtures();
+		InetAddress ip = InetAddress.getByName("127.0.0.1");
+		server = new Server(ip, port);
+		server.addDefaultHandlers();
+		target = new Node(fixtures.identifier().getValue(), ip, port);
+		server.addNode(target);
+		server.start();
+
+		client = new Node(fixtures.identifier().getValue(), ip, port + 1);
+		sender = new ConcurrentMessageSender(16);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		sender.shutdown();
+		server.shutdown();
+	}
+
+	@Benchmark
+	@Threads(1)
+	public PingResult ping() throws Exception {
+		return send();
+	}
+
+	@Benchmark
+	@Threads(8)
+	public PingResult pingConcurrent() throws Exception {
+		return send();
+	}
+
+	private PingResult send() throws Exception {
+		Ping ping = new Ping(client, target.asContact());
+		ping.setMessageServer(sender);
+		PingResult result = ping.execute().get(5, TimeUnit.SECONDS);
+		if (result.getException() != null)
+			throw result.getException();
+		return result;
+	}
+}
@@ -0,0 +1,61 @@
+package me.bcap.dht.benchmarks.load;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Popularity of the keys of a workload, picking the index of the next key to use
+ */
+public abstract class KeyDistribution {
+
+	public abstract int next(Random random);
+
+	public static KeyDistribution uniform(final int keys) {
+		return new KeyDistribution() {
+			public int next(Random random) {
+				return random.nextInt(keys);
+			}
+
+			public String toString() {
+				return "uniform";
+			}
+		};
+	}
+
+	/**
+	 * Key i is picked with a probability proportional to 1 / (i + 1)^exponent, so a few keys get most of the traffic
+	 */
+	public static KeyDistribution zipf(int keys, final double exponent) {
+		final double[] cumulative = new double[keys];
+		double sum = 0;
+		for (int i = 0; i < keys; i++) {
+			sum += 1 / Math.pow(i + 1, exponent);
+			cumulative[i] = sum;
+		}
+		for (int i = 0; i < keys; i++)
+			cumulative[i] /= sum;
+
+		return new KeyDistribution() {
+			public int next(Random random) {
+				int index = Arrays.binarySearch(cumulative, random.nextDouble());
+				index = index >= 0 ? index : -index - 1;
+				return Math.min(index, cumulative.length - 1);
+			}
+
+			public String toString() {
+				return "zipf:" + exponent;
+			}
+		};
+	}
+
+	/**
+	 * Parses "uniform" or "zipf:EXPONENT"
+	 */
+	public static KeyDistribution parse(String spec, int keys) {
+		if (spec.equals("uniform"))
+			return uniform(keys);
+		if (spec.startsWith("zipf:"))
+			return zipf(keys, Double.parseDouble(spec.substring("zipf:".length())));
+		throw new IllegalArgumentException("Unknown key distribution " + spec);
+	}
+}
@@ -0,0 +1,384 @@
+package me.bcap.dht.benchmarks.load;
+
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import me.bcap.dht.client.ConcurrentMessageSender;
+import me.bcap.dht.client.MessageSender;
+import me.bcap.dht.client.ResponseHandler;
+import me.bcap.dht.message.request.Request;
+import me.bcap.dht.message.response.Response;
+import me.bcap.dht.node.Contact;
+import me.bcap.dht.node.Node;
+import me.bcap.dht.server.Server;
+
+/**
+ * Drives a running {@link Server} with a mix of PING, STORE, FIND_NODE and FIND_VALUE requests and reports their
+ * latencies, see {@link LoadReport}. Two modes are supported:
+ * <ul>
+ * <li>open loop, when a rate is set: requests are issued on a fixed schedule whatever the server does, and each
+ * latency is measured from when the request was due, not from when it could be sent, so that a stalled server shows
+ * in the latencies instead of slowing the load down (coordinated omission)</li>
+ * <li>closed loop otherwise: a fixed number of requests are kept outstanding, each completion issuing the next</li>
+ * </ul>
+ * Requests issued during the warm up are not reported. Without a node id the generator starts a server of its own,
+ * hosting one node, on the given port, split in the given number of connection shards.
+ * <p>
+ * From the command line the settings are given as name=value pairs, for instance
+ * <code>port=5000 node=1 rate=2000 mix=store:20,findValue:80 keyDistribution=zipf:0.99 valueSize=128-4096</code>
+ */
+public class LoadGenerator {
+
+	public static final String DEFAULT_MIX = "ping:10,store:20,findNode:35,findValue:35";
+	public static final int DEFAULT_KEYS = 10000;
+	public static final String DEFAULT_KEY_DISTRIBUTION = "zipf:0.99";
+	public static final int DEFAULT_VALUE_SIZE = 1024;
+	public static final int DEFAULT_CONCURRENCY = 16;
+	public static final int DEFAULT_CONNECTIONS = 64;
+	public static final long DEFAULT_DURATION = 30000;
+	public static final long DEFAULT_WARMUP = 5000;
+	public static final long DEFAULT_TIMEOUT = 5000;
+
+	private String host = "127.0.0.1";
+	private int port = 5000;
+	private BigInteger node;
+	private String mix = DEFAULT_MIX;
+	private int keys = DEFAULT_KEYS;
+	private String keyDistribution = DEFAULT_KEY_DISTRIBUTION;
+	private int minValueSize = DEFAULT_VALUE_SIZE;
+	private int maxValueSize = DEFAULT_VALUE_SIZE;
+	private double rate = 0;
+	private int concurrency = DEFAULT_CONCURRENCY;
+	private int connections = DEFAULT_CONNECTIONS;
+	private long duration = DEFAULT_DURATION;
+	private long warmup = DEFAULT_WARMUP;
+	private long timeout = DEFAULT_TIMEOUT;
+	private long seed = 0;
+	private int connectionShards = Server.DEFAULT_CONNECTION_SHARDS;
+
+	private MessageSender sender;
+	private Workload workload;
+	private LoadReport report;
+	private AtomicInteger outstanding = new AtomicInteger();
+
+	public LoadReport run() throws UnknownHostException {
+		InetAddress ip = InetAddress.getByName(host);
+		Server server = null;
+		BigInteger nodeId = node;
+		if (nodeId == null) {
+			nodeId = BigInteger.ONE;
+			server = new Server(ip, port);
+			server.setConnectionShards(connectionShards);
+			server.addDefaultHandlers();
+			server.addNode(new Node(nodeId, ip, port));
+			server.start();
+		}
+
+		ConcurrentMessageSender concurrentSender = new ConcurrentMessageSender(connections);
+		sender = concurrentSender;
+		workload = new Workload(new Contact(nodeId, ip, port), seed, parseMix(mix), keys, KeyDistribution.parse(keyDistribution, keys), minValueSize, maxValueSize);
+		report = new LoadReport();
+		report.setting("mode", rate > 0 ? "open" : "closed");
+		report.setting(rate > 0 ? "rate" : "concurrency", rate > 0 ? (Object) rate : (Object) concurrency);
+		report.setting("mix", mix);
+		report.setting("keys", keys);
+		report.setting("keyDistribution", keyDistribution);
+		report.setting("valueSize", minValueSize == maxValueSize ? String.valueOf(minValueSize) : minValueSize + "-" + maxValueSize);
+		report.setting("seed", seed);
+
+		try {
+			long start = System.nanoTime();
+			long measureFrom = start + TimeUnit.MILLISECONDS.toNanos(warmup);
+			long end = measureFrom + TimeUnit.MILLISECONDS.toNanos(duration);
+			if (rate > 0)
+				runOpenLoop(start, measureFrom, end);
+			else
+				runClosedLoop(measureFrom, end);
+			awaitOutstanding();
+			report.setMeasuredNanos(end - measureFrom);
+		} finally {
+			concurrentSender.shutdown();
+			if (server != null)
+				server.shutdown();
+		}
+		return report;
+	}
+
+	private void runOpenLoop(long start, long measureFrom, long end) {
+		double interval = 1e9 / rate;
+		for (long i = 0;; i++) {
+			long due = start + (long) (i * interval);
+			if (due >= end)
+				break;
+			long wait = due - System.nanoTime();
+			if (wait > 0)
+				LockSupport.parkNanos(wait);
+			issue(due, due >= measureFrom, null);
+		}
+	}
+
+	private void runClosedLoop(final long measureFrom, final long end) {
+		for (int i = 0; i < concurrency; i++) {
+			issue(System.nanoTime(), false, new Runnable() {
+				public void run() {
+					long now = System.nanoTime();
+					if (now < end)
+						issue(now, now >= measureFrom, this);
+				}
+			});
+		}
+		long wait;
+		while ((wait = end - System.nanoTime()) > 0)
+			LockSupport.parkNanos(wait);
+	}
+
+	/**
+	 * Sends the next request of the workload, its latency counting from the given start. The given action runs once
+	 * the request completes
+	 */
+	private void issue(final long start, final boolean measured, final Runnable next) {
+		Request request = workload.next();
+		request.setTimeout(timeout);
+		final RequestType type = RequestType.of(request);
+		outstanding.incrementAndGet();
+		sender.send(request, new ResponseHandler() {
+			public void handleResponse(Response response) {
+				if (measured)
+					report.recordLatency(type, System.nanoTime() - start);
+				completed(next);
+			}
+
+			public void handleException(Exception exception) {
+				if (measured) {
+					if (exception instanceof SocketTimeoutException)
+						report.recordTimeout(type);
+					else
+						report.recordError(type);
+				}
+				completed(next);
+			}
+		});
+	}
+
+	private void completed(Runnable next) {
+		outstanding.decrementAndGet();
+		if (next != null)
+			next.run();
+	}
+
+	private void awaitOutstanding() {
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(2 * timeout);
+		while (outstanding.get() > 0 && System.nanoTime() < deadline)
+			LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+	}
+
+	/**
+	 * Parses weights given as "type:weight,type:weight", types left out weighing 0
+	 */
+	static int[] parseMix(String mix) {
+		int[] weights = new int[RequestType.values().length];
+		for (String part : mix.split(",")) {
+			String[] weight = part.trim().split(":");
+			if (weight.length != 2)
+				throw new IllegalArgumentException("Invalid request mix " + mix);
+			weights[RequestType.named(weight[0]).ordinal()] = Integer.parseInt(weight[1]);
+		}
+		return weights;
+	}
+
+	public static void main(String[] args) throws Exception {
+		LoadGenerator generator = new LoadGenerator();
+		for (String arg : args) {
+			String[] setting = arg.split("=", 2);
+			if (setting.length != 2)
+				throw new IllegalArgumentException("Settings are given as name=value, not " + arg);
+			generator.set(setting[0], setting[1]);
+		}
+		System.out.print(generator.run());
+	}
+
+	void set(String name, String value) {
+		if (name.equals("host"))
+			setHost(value);
+		else if (name.equals("port"))
+			setPort(Integer.parseInt(value));
+		else if (name.equals("node"))
+			setNode(new BigInteger(value, 16));
+		else if (name.equals("mix"))
+			setMix(value);
+		else if (name.equals("keys"))
+			setKeys(Integer.parseInt(value));
+		else if (name.equals("keyDistribution"))
+			setKeyDistribution(value);
+		else if (name.equals("valueSize")) {
+			String[] bounds = value.split("-");
+			setValueSize(Integer.parseInt(bounds[0]), Integer.parseInt(bounds[bounds.length - 1]));
+		} else if (name.equals("rate"))
+			setRate(Double.parseDouble(value));
+		else if (name.equals("concurrency"))
+			setConcurrency(Integer.parseInt(value));
+		else if (name.equals("connections"))
+			setConnections(Integer.parseInt(value));
+		else if (name.equals("duration"))
+			setDuration(Long.parseLong(value));
+		else if (name.equals("warmup"))
+			setWarmup(Long.parseLong(value));
+		else if (name.equals("timeout"))
+			setTimeout(Long.parseLong(value));
+		else if (name.equals("seed"))
+			setSeed(Long.parseLong(value));
+		else if (name.equals("connectionShards"))
+			setConnectionShards(Integer.parseInt(value));
+		else
+			throw new IllegalArgumentException("Unknown setting " + name);
+	}
+
+	public String getHost() {
+		return host;
+	}
+
+	public void setHost(String host) {
+		this.host = host;
+	}
+
+	public int getPort() {
+		return port;
+	}
+
+	public void setPort(int port) {
+		this.port = port;
+	}
+
+	/**
+	 * Identifier of the node the requests are addressed to, null to start a server of its own
+	 */
+	public BigInteger getNode() {
+		return node;
+	}
+
+	public void setNode(BigInteger node) {
+		this.node = node;
+	}
+
+	public String getMix() {
+		return mix;
+	}
+
+	public void setMix(String mix) {
+		parseMix(mix);
+		this.mix = mix;
+	}
+
+	public int getKeys() {
+		return keys;
+	}
+
+	public void setKeys(int keys) {
+		this.keys = keys;
+	}
+
+	public String getKeyDistribution() {
+		return keyDistribution;
+	}
+
+	public void setKeyDistribution(String keyDistribution) {
+		this.keyDistribution = keyDistribution;
+	}
+
+	public int getMinValueSize() {
+		return minValueSize;
+	}
+
+	public int getMaxValueSize() {
+		return maxValueSize;
+	}
+
+	public void setValueSize(int minValueSize, int maxValueSize) {
+		this.minValueSize = minValueSize;
+		this.maxValueSize = maxValueSize;
+	}
+
+	/**
+	 * Requests per second issued in open loop, 0 for a closed loop
+	 */
+	public double getRate() {
+		return rate;
+	}
+
+	public void setRate(double rate) {
+		this.rate = rate;
+	}
+
+	/**
+	 * Requests kept outstanding in closed loop
+	 */
+	public int getConcurrency() {
+		return concurrency;
+	}
+
+	public void setConcurrency(int concurrency) {
+		this.concurrency = concurrency;
+	}
+
+	/**
+	 * Requests the sender has on the wire at once, the others wait in its queue
+	 */
+	public int getConnections() {
+		return connections;
+	}
+
+	public void setConnections(int connections) {
+		this.connections = connections;
+	}
+
+	/**
+	 * Milliseconds measured, after the warm up
+	 */
+	public long getDuration() {
+		return duration;
+	}
+
+	public void setDuration(long duration) {
+		this.duration = duration;
+	}
+
+	public long getWarmup() {
+		return warmup;
+	}
+
+	public void setWarmup(long warmup) {
+		this.warmup = warmup;
+	}
+
+	public long getTimeout() {
+		return timeout;
+	}
+
+	public void setTimeout(long timeout) {
+		this.timeout = timeout;
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * Connection shards of the server started when no node id is given, 0 for a worker pool
+	 */
+	public int getConnectionShards() {
+		return connectionShards;
+	}
+
+	public void setConnectionShards(int connectionShards) {
+		this.connectionShards = connectionShards;
+	}
+}
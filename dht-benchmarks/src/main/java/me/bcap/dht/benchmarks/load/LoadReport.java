@@ -0,0 +1,107 @@
+package me.bcap.dht.benchmarks.load;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.HdrHistogram.SynchronizedHistogram;
+
+/**
+ * Latencies of the successful requests of a load run, per request type, and how many failed or timed out.
+ * {@link #toString()} gives one key=value pair per line, latencies being in microseconds.
+ */
+public class LoadReport {
+
+	// anything slower than this is recorded as this
+	private static final long HIGHEST_LATENCY = TimeUnit.HOURS.toMicros(1);
+	private static final double[] PERCENTILES = { 50, 90, 99, 99.9, 99.99 };
+
+	private Map<String, Object> settings = new LinkedHashMap<String, Object>();
+	private long measuredNanos;
+
+	private SynchronizedHistogram[] latencies = new SynchronizedHistogram[RequestType.values().length];
+	private AtomicLong[] errors = new AtomicLong[RequestType.values().length];
+	private AtomicLong[] timeouts = new AtomicLong[RequestType.values().length];
+
+	LoadReport() {
+		for (int i = 0; i < latencies.length; i++) {
+			latencies[i] = new SynchronizedHistogram(HIGHEST_LATENCY, 3);
+			errors[i] = new AtomicLong();
+			timeouts[i] = new AtomicLong();
+		}
+	}
+
+	void recordLatency(RequestType type, long nanos) {
+		latencies[type.ordinal()].recordValue(Math.min(HIGHEST_LATENCY, TimeUnit.NANOSECONDS.toMicros(nanos)));
+	}
+
+	void recordError(RequestType type) {
+		errors[type.ordinal()].incrementAndGet();
+	}
+
+	void recordTimeout(RequestType type) {
+		timeouts[type.ordinal()].incrementAndGet();
+	}
+
+	void setting(String name, Object value) {
+		settings.put(name, value);
+	}
+
+	void setMeasuredNanos(long measuredNanos) {
+		this.measuredNanos = measuredNanos;
+	}
+
+	public long getCount(RequestType type) {
+		return latencies[type.ordinal()].getTotalCount();
+	}
+
+	public long getErrors(RequestType type) {
+		return errors[type.ordinal()].get();
+	}
+
+	public long getTimeouts(RequestType type) {
+		return timeouts[type.ordinal()].get();
+	}
+
+	public long getLatencyPercentile(RequestType type, double percentile) {
+		return latencies[type.ordinal()].getValueAtPercentile(percentile);
+	}
+
+	public Map<String, Object> toMap() {
+		Map<String, Object> map = new LinkedHashMap<String, Object>(settings);
+		long total = 0;
+		for (RequestType type : RequestType.values())
+			total += getCount(type) + getErrors(type) + getTimeouts(type);
+		map.put("measured.ms", TimeUnit.NANOSECONDS.toMillis(measuredNanos));
+		map.put("requests", total);
+		map.put("throughput", measuredNanos > 0 ? Math.round(total * 1e9 / measuredNanos) : 0);
+
+		for (RequestType type : RequestType.values()) {
+			SynchronizedHistogram histogram = latencies[type.ordinal()];
+			String name = type.getName();
+			map.put(name + ".count", histogram.getTotalCount());
+			map.put(name + ".errors", getErrors(type));
+			map.put(name + ".timeouts", getTimeouts(type));
+			if (histogram.getTotalCount() == 0)
+				continue;
+			map.put(name + ".latency.us.mean", Math.round(histogram.getMean()));
+			for (double percentile : PERCENTILES)
+				map.put(name + ".latency.us.p" + format(percentile), histogram.getValueAtPercentile(percentile));
+			map.put(name + ".latency.us.max", histogram.getMaxValue());
+		}
+		return map;
+	}
+
+	private static String format(double percentile) {
+		return percentile == Math.rint(percentile) ? String.valueOf((long) percentile) : String.valueOf(percentile);
+	}
+
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		for (Entry<String, Object> entry : toMap().entrySet())
+			builder.append(entry.getKey()).append('=').append(entry.getValue()).append('\n');
+		return builder.toString();
+	}
+}
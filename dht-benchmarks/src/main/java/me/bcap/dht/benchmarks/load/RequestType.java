@@ -0,0 +1,41 @@
+package me.bcap.dht.benchmarks.load;
+
+import me.bcap.dht.message.request.FindNodeRequest;
+import me.bcap.dht.message.request.FindValueRequest;
+import me.bcap.dht.message.request.PingRequest;
+import me.bcap.dht.message.request.Request;
+import me.bcap.dht.message.request.StoreRequest;
+
+/**
+ * The requests a load can be made of, named as in the mix setting and the report
+ */
+public enum RequestType {
+
+	PING("ping", PingRequest.class), STORE("store", StoreRequest.class), FIND_NODE("findNode", FindNodeRequest.class), FIND_VALUE("findValue", FindValueRequest.class);
+
+	private String name;
+	private Class<? extends Request> requestClass;
+
+	private RequestType(String name, Class<? extends Request> requestClass) {
+		this.name = name;
+		this.requestClass = requestClass;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public static RequestType of(Request request) {
+		for (RequestType type : values())
+			if (type.requestClass == request.getClass())
+				return type;
+		throw new IllegalArgumentException("No request type for " + request.getClass());
+	}
+
+	public static RequestType named(String name) {
+		for (RequestType type : values())
+			if (type.name.equals(name))
+				return type;
+		throw new IllegalArgumentException("Unknown request type " + name);
+	}
+}
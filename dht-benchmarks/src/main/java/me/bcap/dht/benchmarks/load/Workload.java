@@ -0,0 +1,91 @@
+package me.bcap.dht.benchmarks.load;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import me.bcap.dht.message.request.FindNodeRequest;
+import me.bcap.dht.message.request.FindValueRequest;
+import me.bcap.dht.message.request.PingRequest;
+import me.bcap.dht.message.request.Request;
+import me.bcap.dht.message.request.StoreRequest;
+import me.bcap.dht.node.Contact;
+import me.bcap.dht.node.Identifier;
+import me.bcap.dht.util.ContentKeys;
+
+/**
+ * Draws the requests of a load: their type from the weights of the mix, their key from the key distribution and, for
+ * stores, their value size uniformly between the bounds. Keys are digests of their index, so that every run and
+ * every generator use the same keys.
+ */
+class Workload {
+
+	private Contact destination;
+	private Random random;
+
+	private RequestType[] types;
+	private int[] cumulativeWeights;
+	private Identifier[] keys;
+	private KeyDistribution keyDistribution;
+	private int minValueSize;
+	private int maxValueSize;
+	private byte[] values;
+
+	Workload(Contact destination, long seed, int[] weights, int keys, KeyDistribution keyDistribution, int minValueSize, int maxValueSize) {
+		this.destination = destination;
+		this.random = new Random(seed);
+		this.types = RequestType.values();
+		this.cumulativeWeights = new int[weights.length];
+		int sum = 0;
+		for (int i = 0; i < weights.length; i++) {
+			sum += weights[i];
+			cumulativeWeights[i] = sum;
+		}
+		if (sum <= 0)
+			throw new IllegalArgumentException("The request mix has no weight");
+
+		this.keys = new Identifier[keys];
+		for (int i = 0; i < keys; i++)
+			this.keys[i] = ContentKeys.of(("key-" + i).getBytes());
+		this.keyDistribution = keyDistribution;
+		this.minValueSize = minValueSize;
+		this.maxValueSize = maxValueSize;
+		this.values = new byte[maxValueSize];
+		random.nextBytes(values);
+	}
+
+	synchronized Request next() {
+		RequestType type = nextType();
+		Request request;
+		if (type == RequestType.PING) {
+			request = new PingRequest();
+		} else if (type == RequestType.STORE) {
+			StoreRequest store = new StoreRequest();
+			store.setIdentifier(nextKey());
+			int size = minValueSize + (maxValueSize > minValueSize ? random.nextInt(maxValueSize - minValueSize + 1) : 0);
+			store.setData(Arrays.copyOf(values, size));
+			request = store;
+		} else if (type == RequestType.FIND_NODE) {
+			FindNodeRequest findNode = new FindNodeRequest();
+			findNode.setIdentifier(nextKey());
+			request = findNode;
+		} else {
+			FindValueRequest findValue = new FindValueRequest();
+			findValue.setIdentifier(nextKey());
+			request = findValue;
+		}
+		request.setDestination(destination);
+		return request;
+	}
+
+	private RequestType nextType() {
+		int pick = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+		for (int i = 0; i < cumulativeWeights.length; i++)
+			if (pick < cumulativeWeights[i])
+				return types[i];
+		return types[types.length - 1];
+	}
+
+	private Identifier nextKey() {
+		return keys[keyDistribution.next(random)];
+	}
+}
@@ -0,0 +1,61 @@
+package me.bcap.dht.benchmarks.simulation;
+
+import java.util.PriorityQueue;
+
+/**
+ * Simulated clock and the events due on it, run one at a time on the calling thread. Events due at the same time run
+ * in the order they were scheduled, so a run only depends on what is scheduled. Time is in microseconds.
+ */
+class EventQueue {
+
+	private PriorityQueue<Event> events = new PriorityQueue<Event>();
+	private long now = 0;
+	private long sequence = 0;
+	private long executed = 0;
+
+	long now() {
+		return now;
+	}
+
+	void schedule(long delay, Runnable action) {
+		events.add(new Event(now + Math.max(0, delay), sequence++, action));
+	}
+
+	/**
+	 * Runs events until none is left
+	 */
+	void run() {
+		Event event;
+		while ((event = events.poll()) != null) {
+			now = event.time;
+			executed++;
+			event.action.run();
+		}
+	}
+
+	int pending() {
+		return events.size();
+	}
+
+	long getExecuted() {
+		return executed;
+	}
+
+	static class Event implements Comparable<Event> {
+		private long time;
+		private long sequence;
+		private Runnable action;
+
+		Event(long time, long sequence, Runnable action) {
+			this.time = time;
+			this.sequence = sequence;
+			this.action = action;
+		}
+
+		public int compareTo(Event other) {
+			if (time != other.time)
+				return time < other.time ? -1 : 1;
+			return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+		}
+	}
+}
@@ -0,0 +1,70 @@
+package me.bcap.dht.benchmarks.simulation;
+
+import java.util.Random;
+
+/**
+ * One way network delays of the simulation, in microseconds
+ */
+public abstract class LatencyModel {
+
+	public abstract long sample(Random random);
+
+	public static LatencyModel constant(final long micros) {
+		return new LatencyModel() {
+			public long sample(Random random) {
+				return micros;
+			}
+
+			public String toString() {
+				return "constant:" + micros;
+			}
+		};
+	}
+
+	public static LatencyModel uniform(final long min, final long max) {
+		return new LatencyModel() {
+			public long sample(Random random) {
+				return min + (long) (random.nextDouble() * (max - min));
+			}
+
+			public String toString() {
+				return "uniform:" + min + "-" + max;
+			}
+		};
+	}
+
+	/**
+	 * Long tailed delays as seen over the internet, sigma being the standard deviation of the logarithm
+	 */
+	public static LatencyModel logNormal(final long median, final double sigma) {
+		return new LatencyModel() {
+			public long sample(Random random) {
+				return (long) (median * Math.exp(sigma * random.nextGaussian()));
+			}
+
+			public String toString() {
+				return "lognormal:" + median + "," + sigma;
+			}
+		};
+	}
+
+	/**
+	 * Parses "constant:MICROS", "uniform:MIN-MAX" or "lognormal:MEDIAN,SIGMA"
+	 */
+	public static LatencyModel parse(String spec) {
+		String[] parts = spec.split(":", 2);
+		if (parts.length == 2) {
+			if (parts[0].equals("constant"))
+				return constant(Long.parseLong(parts[1]));
+			if (parts[0].equals("uniform")) {
+				String[] bounds = parts[1].split("-");
+				return uniform(Long.parseLong(bounds[0]), Long.parseLong(bounds[1]));
+			}
+			if (parts[0].equals("lognormal")) {
+				String[] parameters = parts[1].split(",");
+				return logNormal(Long.parseLong(parameters[0]), Double.parseDouble(parameters[1]));
+			}
+		}
+		throw new IllegalArgumentException("Unknown latency model " + spec);
+	}
+}
@@ -0,0 +1,54 @@
+package me.bcap.dht.benchmarks.simulation;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import me.bcap.dht.message.response.FindNodeResponse;
+import me.bcap.dht.message.response.Response;
+import me.bcap.dht.node.Contact;
+import me.bcap.dht.node.Identifier;
+
+/**
+ * What one measured lookup did. A contact known by the source node is one hop away, a contact first heard of from a
+ * contact n hops away is n + 1 hops away, and the lookup takes as many hops as the farthest contact it asked.
+ */
+class LookupTrace {
+
+	private long start;
+	private Map<Identifier, Integer> hops = new HashMap<Identifier, Integer>();
+	private int maxHops = 0;
+	private int messages = 0;
+
+	LookupTrace(long start) {
+		this.start = start;
+	}
+
+	void requestSent(Contact destination) {
+		messages++;
+		Integer distance = hops.get(destination.asIdentifier());
+		int hop = distance != null ? distance : 1;
+		maxHops = Math.max(maxHops, hop);
+	}
+
+	void responseReceived(Contact from, Response response) {
+		if (!(response instanceof FindNodeResponse) || ((FindNodeResponse) response).getContacts() == null)
+			return;
+		Integer distance = hops.get(from.asIdentifier());
+		int next = (distance != null ? distance : 1) + 1;
+		for (Contact contact : ((FindNodeResponse) response).getContacts())
+			if (!hops.containsKey(contact.asIdentifier()))
+				hops.put(contact.asIdentifier(), next);
+	}
+
+	long getStart() {
+		return start;
+	}
+
+	int getHops() {
+		return maxHops;
+	}
+
+	int getMessages() {
+		return messages;
+	}
+}
@@ -0,0 +1,137 @@
+package me.bcap.dht.benchmarks.simulation;
+
+import java.net.SocketTimeoutException;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import me.bcap.dht.client.MessageSender;
+import me.bcap.dht.client.ResponseHandler;
+import me.bcap.dht.message.request.Request;
+import me.bcap.dht.message.response.Response;
+import me.bcap.dht.server.Server;
+import me.bcap.dht.server.handler.RequestHandlerException;
+
+/**
+ * Delivers requests to the nodes of a {@link Server} that is never started, through the events of the simulation.
+ * Each way takes a delay from the latency model and may be lost. Requests to nodes that left, and requests or
+ * responses lost on the way, fail with a timeout.
+ */
+class SimulatedNetwork implements MessageSender {
+
+	private EventQueue events;
+	private Server server;
+	private Random random;
+
+	private LatencyModel latency;
+	private double loss;
+	private long timeout;
+
+	private Set<Request> cancelled = Collections.newSetFromMap(new IdentityHashMap<Request, Boolean>());
+	private MessageObserver observer;
+
+	private long sent = 0;
+	private long lost = 0;
+
+	SimulatedNetwork(EventQueue events, Server server, Random random, LatencyModel latency, double loss, long timeout) {
+		this.events = events;
+		this.server = server;
+		this.random = random;
+		this.latency = latency;
+		this.loss = loss;
+		this.timeout = timeout;
+	}
+
+	public void send(final Request request, final ResponseHandler handler) {
+		sent++;
+		if (observer != null)
+			observer.requestSent(request);
+
+		if (random.nextDouble() < loss) {
+			lost++;
+			timeOut(request, handler);
+			return;
+		}
+
+		events.schedule(latency.sample(random), new Runnable() {
+			public void run() {
+				deliver(request, handler);
+			}
+		});
+	}
+
+	private void deliver(Request request, ResponseHandler handler) {
+		if (cancelled.contains(request) || server.getNode(request.getDestination()) == null) {
+			timeOut(request, handler);
+			return;
+		}
+
+		Response response = null;
+		RequestHandlerException failure = null;
+		try {
+			response = server.getHandler(request.getClass()).handle(server, request);
+		} catch (RequestHandlerException e) {
+			failure = e;
+		}
+
+		if (random.nextDouble() < loss) {
+			lost++;
+			timeOut(request, handler);
+		} else {
+			respond(request, handler, response, failure);
+		}
+	}
+
+	private void respond(final Request request, final ResponseHandler handler, final Response response, final RequestHandlerException failure) {
+		events.schedule(latency.sample(random), new Runnable() {
+			public void run() {
+				if (cancelled.remove(request))
+					return;
+				if (failure != null) {
+					handler.handleException(failure);
+				} else {
+					if (observer != null)
+						observer.responseReceived(request, response);
+					handler.handleResponse(response);
+				}
+			}
+		});
+	}
+
+	private void timeOut(final Request request, final ResponseHandler handler) {
+		events.schedule(timeout, new Runnable() {
+			public void run() {
+				if (!cancelled.remove(request))
+					handler.handleException(new SocketTimeoutException("Simulated timeout of request " + request.getConversationId()));
+			}
+		});
+	}
+
+	public void cancel(Request request) {
+		cancelled.add(request);
+	}
+
+	void setObserver(MessageObserver observer) {
+		this.observer = observer;
+	}
+
+	long getSent() {
+		return sent;
+	}
+
+	long getLost() {
+		return lost;
+	}
+
+	/**
+	 * Sees the traffic of the simulation, to trace the lookups being measured
+	 */
+	interface MessageObserver {
+
+		void requestSent(Request request);
+
+		void responseReceived(Request request, Response response);
+	}
+}
@@ -0,0 +1,155 @@
+package me.bcap.dht.benchmarks.simulation;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import me.bcap.dht.util.LatencyTracker;
+
+/**
+ * Outcome of a simulation run. {@link #toString()} gives one key=value pair per line, so runs can be diffed and
+ * parsed; two runs with the same settings and seed give the same report.
+ */
+public class SimulationReport {
+
+	private int nodes;
+	private long seed;
+	private long simulatedMicros;
+	private long events;
+	private long messages;
+	private long lostMessages;
+	private int joins;
+	private int departures;
+
+	private int lookups;
+	private int valueLookups;
+	private int valuesFound;
+	private LatencyTracker hops;
+	private LatencyTracker latencies;
+	private LatencyTracker messagesPerLookup;
+
+	private long contacts;
+	private long staleContacts;
+
+	SimulationReport(int expectedLookups) {
+		this.hops = new LatencyTracker(Math.max(1, expectedLookups));
+		this.latencies = new LatencyTracker(Math.max(1, expectedLookups));
+		this.messagesPerLookup = new LatencyTracker(Math.max(1, expectedLookups));
+	}
+
+	void lookupCompleted(LookupTrace trace, long end, boolean valueLookup, boolean found) {
+		lookups++;
+		if (valueLookup) {
+			valueLookups++;
+			if (found)
+				valuesFound++;
+		}
+		hops.record(trace.getHops());
+		latencies.record(end - trace.getStart());
+		messagesPerLookup.record(trace.getMessages());
+	}
+
+	public Map<String, Object> toMap() {
+		Map<String, Object> map = new LinkedHashMap<String, Object>();
+		map.put("nodes", nodes);
+		map.put("seed", seed);
+		map.put("simulated.ms", simulatedMicros / 1000);
+		map.put("events", events);
+		map.put("messages", messages);
+		map.put("messages.lost", lostMessages);
+		map.put("churn.joins", joins);
+		map.put("churn.departures", departures);
+		map.put("lookups", lookups);
+		map.put("lookups.value", valueLookups);
+		map.put("lookups.value.found", valuesFound);
+		putPercentiles(map, "hops", hops);
+		putPercentiles(map, "latency.us", latencies);
+		putPercentiles(map, "messages.per.lookup", messagesPerLookup);
+		map.put("routing.contacts", contacts);
+		map.put("routing.stale", staleContacts);
+		map.put("routing.staleness", contacts > 0 ? (double) staleContacts / contacts : 0);
+		return map;
+	}
+
+	private static void putPercentiles(Map<String, Object> map, String name, LatencyTracker tracker) {
+		map.put(name + ".p50", tracker.getPercentile(50));
+		map.put(name + ".p90", tracker.getPercentile(90));
+		map.put(name + ".p99", tracker.getPercentile(99));
+		map.put(name + ".max", tracker.getPercentile(100));
+	}
+
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		for (Entry<String, Object> entry : toMap().entrySet())
+			builder.append(entry.getKey()).append('=').append(entry.getValue()).append('\n');
+		return builder.toString();
+	}
+
+	public int getLookups() {
+		return lookups;
+	}
+
+	public int getValueLookups() {
+		return valueLookups;
+	}
+
+	public int getValuesFound() {
+		return valuesFound;
+	}
+
+	/**
+	 * Share of the routing table entries of the live nodes that point to nodes gone
+	 */
+	public double getStaleness() {
+		return contacts > 0 ? (double) staleContacts / contacts : 0;
+	}
+
+	public long getHopsPercentile(double percentile) {
+		return hops.getPercentile(percentile);
+	}
+
+	public long getLatencyPercentile(double percentile) {
+		return latencies.getPercentile(percentile);
+	}
+
+	public long getMessagesPerLookupPercentile(double percentile) {
+		return messagesPerLookup.getPercentile(percentile);
+	}
+
+	void setNodes(int nodes) {
+		this.nodes = nodes;
+	}
+
+	void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	void setSimulatedMicros(long simulatedMicros) {
+		this.simulatedMicros = simulatedMicros;
+	}
+
+	void setEvents(long events) {
+		this.events = events;
+	}
+
+	void setMessages(long messages) {
+		this.messages = messages;
+	}
+
+	void setLostMessages(long lostMessages) {
+		this.lostMessages = lostMessages;
+	}
+
+	void setJoins(int joins) {
+		this.joins = joins;
+	}
+
+	void setDepartures(int departures) {
+		this.departures = departures;
+	}
+
+	void setRoutingContacts(long contacts, long staleContacts) {
+		this.contacts = contacts;
+		this.staleContacts = staleContacts;
+	}
+}
@@ -0,0 +1,437 @@
+package me.bcap.dht.benchmarks.simulation;
+
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeSet;
+
+import me.bcap.dht.benchmarks.simulation.SimulatedNetwork.MessageObserver;
+import me.bcap.dht.client.operation.FindNode;
+import me.bcap.dht.client.operation.FindNodeResult;
+import me.bcap.dht.client.operation.FindValue;
+import me.bcap.dht.client.operation.FindValueResult;
+import me.bcap.dht.client.operation.OperationListener;
+import me.bcap.dht.message.request.IdentifierRequest;
+import me.bcap.dht.message.request.Request;
+import me.bcap.dht.message.response.Response;
+import me.bcap.dht.node.Bucket;
+import me.bcap.dht.node.Contact;
+import me.bcap.dht.node.DistanceComparator;
+import me.bcap.dht.node.Identifier;
+import me.bcap.dht.node.Node;
+import me.bcap.dht.node.filter.CountingBloomFilter;
+import me.bcap.dht.server.Server;
+
+/**
+ * Discrete event simulation of a whole network in one thread, with the real nodes, request handlers and lookups but
+ * the network replaced by {@link SimulatedNetwork}. A run goes through three phases:
+ * <ol>
+ * <li>the nodes join one after the other, each looking itself up through a node already in</li>
+ * <li>the keys are stored on the nodes closest to them</li>
+ * <li>lookups of random identifiers and of stored keys are measured, while nodes leave and new ones join</li>
+ * </ol>
+ * Everything random comes from the seed, so a run with the same settings gives the same {@link SimulationReport},
+ * which makes routing and storage changes comparable run to run.
+ * <p>
+ * From the command line the settings are given as name=value pairs, for instance
+ * <code>nodes=100000 seed=7 latency=lognormal:20000,0.5 loss=0.01 churnInterval=50000</code>
+ */
+public class Simulator {
+
+	public static final int DEFAULT_NODES = 10000;
+	public static final int DEFAULT_KEYS = 100;
+	public static final int DEFAULT_LOOKUPS = 1000;
+	public static final double DEFAULT_VALUE_LOOKUP_RATIO = 0.5;
+	public static final long DEFAULT_JOIN_INTERVAL = 1000;
+	public static final long DEFAULT_LOOKUP_INTERVAL = 10000;
+	public static final long DEFAULT_TIMEOUT = 1000000;
+
+	// nodes here store a handful of keys each, the default key filter would make the large networks run out of memory
+	static final int EXPECTED_KEYS_PER_NODE = 256;
+	static final int PORT = 5000;
+
+	private int nodes = DEFAULT_NODES;
+	private long seed = 0;
+	private int keys = DEFAULT_KEYS;
+	private int replication = Bucket.MAX_SIZE;
+	private int lookups = DEFAULT_LOOKUPS;
+	private double valueLookupRatio = DEFAULT_VALUE_LOOKUP_RATIO;
+	private LatencyModel latency = LatencyModel.logNormal(20000, 0.5);
+	private double loss = 0;
+	private long timeout = DEFAULT_TIMEOUT;
+	private long joinInterval = DEFAULT_JOIN_INTERVAL;
+	private long lookupInterval = DEFAULT_LOOKUP_INTERVAL;
+	private long churnInterval = 0;
+
+	private Random random;
+	private EventQueue events;
+	private Server server;
+	private SimulatedNetwork network;
+	private InetAddress ip;
+
+	private List<Node> live;
+	private Map<Identifier, Integer> livePositions;
+	private List<Identifier> storedKeys;
+	private Map<Identifier, LookupTrace> traces;
+	private SimulationReport report;
+	private int joins;
+	private int departures;
+
+	public SimulationReport run() {
+		random = new Random(seed);
+		events = new EventQueue();
+		try {
+			ip = InetAddress.getByName("127.0.0.1");
+		} catch (UnknownHostException e) {
+			throw new IllegalStateException(e);
+		}
+		server = new Server(ip, PORT);
+		server.addDefaultHandlers();
+		network = new SimulatedNetwork(events, server, random, latency, loss, timeout);
+		network.setObserver(new Tracer());
+
+		live = new ArrayList<Node>(nodes);
+		livePositions = new HashMap<Identifier, Integer>(nodes * 2);
+		storedKeys = new ArrayList<Identifier>(keys);
+		traces = new HashMap<Identifier, LookupTrace>();
+		report = new SimulationReport(lookups);
+		joins = 0;
+		departures = 0;
+
+		for (int i = 0; i < nodes; i++) {
+			events.schedule(i * joinInterval, new Runnable() {
+				public void run() {
+					join(createNode());
+				}
+			});
+		}
+		events.run();
+
+		for (int i = 0; i < keys; i++)
+			store(randomIdentifier());
+
+		for (int i = 0; i < lookups; i++) {
+			events.schedule(i * lookupInterval, new Runnable() {
+				public void run() {
+					lookup();
+				}
+			});
+		}
+		if (churnInterval > 0) {
+			for (long time = churnInterval; time < lookups * lookupInterval; time += churnInterval) {
+				events.schedule(time, new Runnable() {
+					public void run() {
+						churn();
+					}
+				});
+			}
+		}
+		events.run();
+
+		report.setNodes(nodes);
+		report.setSeed(seed);
+		report.setSimulatedMicros(events.now());
+		report.setEvents(events.getExecuted());
+		report.setMessages(network.getSent());
+		report.setLostMessages(network.getLost());
+		report.setJoins(joins);
+		report.setDepartures(departures);
+		measureStaleness();
+		return report;
+	}
+
+	private Node createNode() {
+		Node node = new Node(new BigInteger(Identifier.LENGTH, random), ip, PORT);
+		node.setKeyFilter(new CountingBloomFilter(EXPECTED_KEYS_PER_NODE, 0.01));
+		return node;
+	}
+
+	/**
+	 * Brings a node in through a random live node and has it look itself up, keeping the contacts found as a real
+	 * node would when joining
+	 */
+	private void join(final Node node) {
+		if (!live.isEmpty())
+			node.updateContact(randomLive().asContact());
+		server.addNode(node);
+		livePositions.put(node.asIdentifier(), live.size());
+		live.add(node);
+
+		FindNode lookup = new FindNode(node, node.asIdentifier());
+		lookup.setMessageServer(network);
+		lookup.addListener(new OperationListener<FindNodeResult>() {
+			public void operationCompleted(FindNodeResult result) {
+				if (result.getContacts() != null)
+					for (Contact contact : result.getContacts())
+						node.updateContact(contact);
+			}
+		});
+		lookup.execute();
+	}
+
+	private void leave(Node node) {
+		server.removeNode(node);
+		int position = livePositions.remove(node.asIdentifier());
+		Node last = live.remove(live.size() - 1);
+		if (last != node) {
+			live.set(position, last);
+			livePositions.put(last.asIdentifier(), position);
+		}
+		departures++;
+	}
+
+	private void churn() {
+		leave(randomLive());
+		join(createNode());
+		joins++;
+	}
+
+	/**
+	 * Puts the key straight on the live nodes closest to it
+	 */
+	private void store(Identifier key) {
+		TreeSet<Node> closest = new TreeSet<Node>(new DistanceComparator(key));
+		for (Node node : live) {
+			closest.add(node);
+			if (closest.size() > replication)
+				closest.pollLast();
+		}
+		byte[] value = new byte[64];
+		random.nextBytes(value);
+		for (Node node : closest)
+			node.getDataStorage().put(key, value);
+		storedKeys.add(key);
+	}
+
+	private void lookup() {
+		// a node runs one measured lookup at a time, so that its requests tell which lookup they belong to
+		Node candidate = randomLive();
+		while (traces.containsKey(candidate.asIdentifier()))
+			candidate = randomLive();
+		final Node source = candidate;
+		final LookupTrace trace = new LookupTrace(events.now());
+		traces.put(source.asIdentifier(), trace);
+
+		if (!storedKeys.isEmpty() && random.nextDouble() < valueLookupRatio) {
+			FindValue lookup = new FindValue(source, storedKeys.get(random.nextInt(storedKeys.size())));
+			lookup.setMessageServer(network);
+			lookup.addListener(new OperationListener<FindValueResult>() {
+				public void operationCompleted(FindValueResult result) {
+					traces.remove(source.asIdentifier());
+					report.lookupCompleted(trace, events.now(), true, result.isFound());
+				}
+			});
+			lookup.execute();
+		} else {
+			FindNode lookup = new FindNode(source, randomIdentifier());
+			lookup.setMessageServer(network);
+			lookup.addListener(new OperationListener<FindNodeResult>() {
+				public void operationCompleted(FindNodeResult result) {
+					traces.remove(source.asIdentifier());
+					report.lookupCompleted(trace, events.now(), false, false);
+				}
+			});
+			lookup.execute();
+		}
+	}
+
+	private void measureStaleness() {
+		long contacts = 0;
+		long stale = 0;
+		for (Node node : live) {
+			for (int index = 0; index < Identifier.LENGTH; index++) {
+				for (Contact contact : node.getBucket(index).getContacts()) {
+					contacts++;
+					if (!livePositions.containsKey(contact.asIdentifier()))
+						stale++;
+				}
+			}
+		}
+		report.setRoutingContacts(contacts, stale);
+	}
+
+	private Node randomLive() {
+		return live.get(random.nextInt(live.size()));
+	}
+
+	private Identifier randomIdentifier() {
+		return new Identifier(new BigInteger(Identifier.LENGTH, random));
+	}
+
+	/**
+	 * Follows the requests of the nodes running a measured lookup
+	 */
+	class Tracer implements MessageObserver {
+		public void requestSent(Request request) {
+			LookupTrace trace = trace(request);
+			if (trace != null)
+				trace.requestSent(request.getDestination());
+		}
+
+		public void responseReceived(Request request, Response response) {
+			LookupTrace trace = trace(request);
+			if (trace != null)
+				trace.responseReceived(request.getDestination(), response);
+		}
+
+		private LookupTrace trace(Request request) {
+			if (!(request instanceof IdentifierRequest) || request.getSource() == null)
+				return null;
+			return traces.get(request.getSource().asIdentifier());
+		}
+	}
+
+	public static void main(String[] args) {
+		Simulator simulator = new Simulator();
+		for (String arg : args) {
+			String[] setting = arg.split("=", 2);
+			if (setting.length != 2)
+				throw new IllegalArgumentException("Settings are given as name=value, not " + arg);
+			simulator.set(setting[0], setting[1]);
+		}
+		System.out.print(simulator.run());
+	}
+
+	void set(String name, String value) {
+		if (name.equals("nodes"))
+			setNodes(Integer.parseInt(value));
+		else if (name.equals("seed"))
+			setSeed(Long.parseLong(value));
+		else if (name.equals("keys"))
+			setKeys(Integer.parseInt(value));
+		else if (name.equals("replication"))
+			setReplication(Integer.parseInt(value));
+		else if (name.equals("lookups"))
+			setLookups(Integer.parseInt(value));
+		else if (name.equals("valueLookupRatio"))
+			setValueLookupRatio(Double.parseDouble(value));
+		else if (name.equals("latency"))
+			setLatency(LatencyModel.parse(value));
+		else if (name.equals("loss"))
+			setLoss(Double.parseDouble(value));
+		else if (name.equals("timeout"))
+			setTimeout(Long.parseLong(value));
+		else if (name.equals("joinInterval"))
+			setJoinInterval(Long.parseLong(value));
+		else if (name.equals("lookupInterval"))
+			setLookupInterval(Long.parseLong(value));
+		else if (name.equals("churnInterval"))
+			setChurnInterval(Long.parseLong(value));
+		else
+			throw new IllegalArgumentException("Unknown setting " + name);
+	}
+
+	public int getNodes() {
+		return nodes;
+	}
+
+	public void setNodes(int nodes) {
+		this.nodes = nodes;
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	public int getKeys() {
+		return keys;
+	}
+
+	public void setKeys(int keys) {
+		this.keys = keys;
+	}
+
+	public int getReplication() {
+		return replication;
+	}
+
+	public void setReplication(int replication) {
+		this.replication = replication;
+	}
+
+	public int getLookups() {
+		return lookups;
+	}
+
+	public void setLookups(int lookups) {
+		this.lookups = lookups;
+	}
+
+	/**
+	 * Share of the measured lookups that look for a stored key, the others look for random identifiers
+	 */
+	public double getValueLookupRatio() {
+		return valueLookupRatio;
+	}
+
+	public void setValueLookupRatio(double valueLookupRatio) {
+		this.valueLookupRatio = valueLookupRatio;
+	}
+
+	public LatencyModel getLatency() {
+		return latency;
+	}
+
+	public void setLatency(LatencyModel latency) {
+		this.latency = latency;
+	}
+
+	/**
+	 * Probability of each request and each response being lost
+	 */
+	public double getLoss() {
+		return loss;
+	}
+
+	public void setLoss(double loss) {
+		this.loss = loss;
+	}
+
+	/**
+	 * Simulated time, in microseconds, before a request to a node gone or lost fails
+	 */
+	public long getTimeout() {
+		return timeout;
+	}
+
+	public void setTimeout(long timeout) {
+		this.timeout = timeout;
+	}
+
+	public long getJoinInterval() {
+		return joinInterval;
+	}
+
+	public void setJoinInterval(long joinInterval) {
+		this.joinInterval = joinInterval;
+	}
+
+	public long getLookupInterval() {
+		return lookupInterval;
+	}
+
+	public void setLookupInterval(long lookupInterval) {
+		this.lookupInterval = lookupInterval;
+	}
+
+	/**
+	 * Simulated time, in microseconds, between a node leaving and a new one joining while lookups are measured, 0 for
+	 * no churn
+	 */
+	public long getChurnInterval() {
+		return churnInterval;
+	}
+
+	public void setChurnInterval(long churnInterval) {
+		this.churnInterval = churnInterval;
+	}
+}
@@ -0,0 +1,63 @@
+package me.bcap.dht.benchmarks.load;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class LoadGeneratorTest {
+
+	@Test
+	public void testClosedLoop() throws Exception {
+		LoadGenerator generator = generator(5201);
+		generator.setConcurrency(4);
+		LoadReport report = generator.run();
+		assertTrue(report.getCount(RequestType.STORE) > 0);
+		assertTrue(report.getCount(RequestType.FIND_VALUE) > 0);
+		assertEquals(0, report.getCount(RequestType.PING));
+		assertEquals(0, report.getErrors(RequestType.FIND_VALUE));
+		assertTrue(report.toString().contains("mode=closed\n"));
+		assertTrue(report.toString().contains("findValue.latency.us.p99="));
+	}
+
+	@Test
+	public void testOpenLoopKeepsItsRate() throws Exception {
+		LoadGenerator generator = generator(5202);
+		generator.setRate(200);
+		LoadReport report = generator.run();
+		long requests = report.getCount(RequestType.STORE) + report.getCount(RequestType.FIND_VALUE);
+		// 500ms at 200 per second
+		assertTrue(requests >= 90 && requests <= 110);
+		assertTrue(report.toString().contains("mode=open\n"));
+	}
+
+	@Test
+	public void testZipfFavorsTheFirstKeys() {
+		KeyDistribution zipf = KeyDistribution.parse("zipf:1.2", 1000);
+		Random random = new Random(0);
+		int first = 0;
+		for (int i = 0; i < 10000; i++)
+			if (zipf.next(random) < 10)
+				first++;
+		assertTrue(first > 5000);
+
+		KeyDistribution uniform = KeyDistribution.parse("uniform", 1000);
+		first = 0;
+		for (int i = 0; i < 10000; i++)
+			if (uniform.next(random) < 10)
+				first++;
+		assertTrue(first < 200);
+	}
+
+	private LoadGenerator generator(int port) {
+		LoadGenerator generator = new LoadGenerator();
+		generator.setPort(port);
+		generator.setMix("store:50,findValue:50");
+		generator.setKeys(100);
+		generator.setWarmup(200);
+		generator.setDuration(500);
+		generator.setValueSize(16, 256);
+		return generator;
+	}
+}
@@ -0,0 +1,51 @@
+package me.bcap.dht.benchmarks.simulation;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class SimulatorTest {
+
+	@Test
+	public void testRunsAreRepeatable() {
+		String first = simulator(7).run().toString();
+		String second = simulator(7).run().toString();
+		assertEquals(first, second);
+		assertFalse(first.equals(simulator(8).run().toString()));
+	}
+
+	@Test
+	public void testStableNetworkFindsEverything() {
+		Simulator simulator = simulator(1);
+		simulator.setLoss(0);
+		simulator.setChurnInterval(0);
+		SimulationReport report = simulator.run();
+		assertEquals(100, report.getLookups());
+		assertTrue(report.getValueLookups() > 0);
+		assertEquals(report.getValueLookups(), report.getValuesFound());
+		assertEquals(0, report.getStaleness(), 0);
+		assertTrue(report.getHopsPercentile(50) >= 1);
+		assertTrue(report.getMessagesPerLookupPercentile(50) >= 1);
+		assertTrue(report.getLatencyPercentile(50) > 0);
+	}
+
+	@Test
+	public void testChurnLeavesStaleContacts() {
+		Simulator simulator = simulator(1);
+		simulator.setChurnInterval(10000);
+		SimulationReport report = simulator.run();
+		assertTrue(report.getStaleness() > 0);
+		assertTrue(report.toString().contains("churn.departures=99\n"));
+	}
+
+	private Simulator simulator(long seed) {
+		Simulator simulator = new Simulator();
+		simulator.setSeed(seed);
+		simulator.setNodes(300);
+		simulator.setKeys(10);
+		simulator.setLookups(100);
+		simulator.setLoss(0.01);
+		simulator.setChurnInterval(50000);
+		return simulator;
+	}
+}
@@ -7,15 +7,33 @@ import java.io.ObjectOutputStream;
 import java.io.OutputStream;
 import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.channels.SocketChannel;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.log4j.Logger;
 
+import me.bcap.dht.diagnostics.DiagnosticEvent;
+import me.bcap.dht.diagnostics.Diagnostics;
+import me.bcap.dht.message.PayloadMessage;
+import me.bcap.dht.metrics.CountingInputStream;
+import me.bcap.dht.metrics.CountingOutputStream;
+import me.bcap.dht.metrics.Gauge;
+import me.bcap.dht.metrics.LatencyHistogram;
+import me.bcap.dht.metrics.MetricsRegistry;
+import me.bcap.dht.metrics.StripedCounter;
 import me.bcap.dht.message.request.Request;
 import me.bcap.dht.message.response.Response;
 import me.bcap.dht.node.Contact;
+import me.bcap.dht.probe.Probe;
+import me.bcap.dht.probe.Probes;
+import me.bcap.dht.server.ServerException;
 
 public class ConcurrentMessageSender implements MessageSender {
 
@@ -23,12 +41,24 @@ public class ConcurrentMessageSender implements MessageSender {
 	
 	private ThreadPoolExecutor workerThreadPool;
 	private LinkedBlockingDeque<Runnable> workerQueue;
+	private Map<Request, Worker> inFlight = new ConcurrentHashMap<Request, Worker>();
 	
 	private ConcurrentMessageSender thisRef = this;
+
+	private MetricsRegistry metrics;
+	private StripedCounter sent;
+	private StripedCounter responses;
+	private StripedCounter timeouts;
+	private StripedCounter errors;
+	private StripedCounter cancelled;
+	private StripedCounter bytesIn;
+	private StripedCounter bytesOut;
+	private LatencyHistogram latency;
 	
 	public ConcurrentMessageSender(int maxConcurrentMessages) {
 		this.workerQueue = new LinkedBlockingDeque<Runnable>();
 		this.workerThreadPool = new ThreadPoolExecutor(maxConcurrentMessages, maxConcurrentMessages, 30, TimeUnit.SECONDS, workerQueue);
+		this.setMetrics(new MetricsRegistry());
 
 		Runtime.getRuntime().addShutdownHook(new Thread() {
 			public void run() {
@@ -42,43 +72,180 @@ public class ConcurrentMessageSender implements MessageSender {
 	}
 
 	public void send(Request request, ResponseHandler handler) {
-		logger.debug("Adding request " + request + " to the queue");
-		this.workerThreadPool.execute(new Worker(request, handler));
-		logger.debug("Request " + request + " added to the queue");
+		Diagnostics.record(DiagnosticEvent.SEND_QUEUED, request.getConversationId(), request.getClass(), request.getDestination(), 0);
+		Worker worker = new Worker(request, handler);
+		this.inFlight.put(request, worker);
+		this.sent.increment();
+		this.workerThreadPool.execute(worker);
+	}
+
+	public void cancel(Request request) {
+		Worker worker = this.inFlight.remove(request);
+		if (worker != null) {
+			Diagnostics.record(DiagnosticEvent.SEND_CANCELLED, request.getConversationId(), null, null, 0);
+			cancelled.increment();
+			this.workerThreadPool.remove(worker);
+			worker.cancel();
+		}
 	}
 	
+	/**
+	 * Metrics of the sender, all named sender.*: requests sent, responses received, timeouts, errors and
+	 * cancellations, bytes in and out, the latency of answered requests, and the number of requests in flight and
+	 * waiting for a worker
+	 */
+	public MetricsRegistry getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Registers the metrics of the sender in the given registry, so that it can be shared with other components. Has to
+	 * be called before anything is sent
+	 */
+	public void setMetrics(MetricsRegistry metrics) {
+		this.metrics = metrics;
+		this.sent = metrics.counter("sender.requests.sent");
+		this.responses = metrics.counter("sender.responses");
+		this.timeouts = metrics.counter("sender.timeouts");
+		this.errors = metrics.counter("sender.errors");
+		this.cancelled = metrics.counter("sender.cancelled");
+		this.bytesIn = metrics.counter("sender.bytes.in");
+		this.bytesOut = metrics.counter("sender.bytes.out");
+		this.latency = metrics.histogram("sender.latency");
+		metrics.gauge("sender.inFlight", new Gauge() {
+			public long getValue() {
+				return inFlight.size();
+			}
+		});
+		metrics.gauge("sender.queue", new Gauge() {
+			public long getValue() {
+				return workerQueue.size();
+			}
+		});
+	}
+
 	class Worker implements Runnable {
 		private Request request;
 		private ResponseHandler handler;
+
+		private volatile Socket socket;
+		private AtomicBoolean notified = new AtomicBoolean(false);
 		
 		protected Worker(Request request, ResponseHandler handler) {
 			this.request = request;
 			this.handler = handler;
 		}
+
+		/**
+		 * Notifies the handler with a {@link CancellationException} and closes the socket if the request is already
+		 * being sent, unless the handler was already notified
+		 */
+		void cancel() {
+			if (notifyException(new CancellationException("Request " + request.getConversationId() + " was cancelled"))) {
+				Socket socket = this.socket;
+				if (socket != null) {
+					try {
+						socket.close();
+					} catch (IOException e) {
+						logger.error("Error while trying to close the socket of a cancelled request " + socket, e);
+					}
+				}
+			}
+		}
 		
 		public void run() {
+			try {
+				if (!notified.get())
+					send();
+			} finally {
+				inFlight.remove(request);
+			}
+		}
+
+		// the handler is notified only once, failures inside the handler itself are not reported back to it
+		private boolean notifyResponse(Response response, long nanos) {
+			if (!notified.compareAndSet(false, true))
+				return false;
+			// no longer in flight by the time the handler sees the outcome
+			inFlight.remove(request);
+			responses.increment();
+			latency.record(nanos);
+			try {
+				handler.handleResponse(response);
+			} catch (RuntimeException e) {
+				logger.error("Response handler " + handler + " failed while handling " + response, e);
+			}
+			return true;
+		}
+
+		private boolean notifyException(Exception exception) {
+			if (!notified.compareAndSet(false, true))
+				return false;
+			// no longer in flight by the time the handler sees the outcome
+			inFlight.remove(request);
+			// cancellations are counted when requested
+			if (exception instanceof SocketTimeoutException)
+				timeouts.increment();
+			else if (!(exception instanceof CancellationException))
+				errors.increment();
+			try {
+				handler.handleException(exception);
+			} catch (RuntimeException e) {
+				logger.error("Response handler " + handler + " failed while handling an exception", e);
+			}
+			return true;
+		}
+
+		private void send() {
 			Contact destination = request.getDestination();
-			logger.info("Sending message of type " + request.getClass().getSimpleName() + " to " + destination.getIp() + ":" + destination.getPort());
+			Diagnostics.record(DiagnosticEvent.SEND_STARTED, request.getConversationId(), request.getClass(), destination, 0);
 
 			ObjectInputStream inStream = null;
 			ObjectOutputStream outStream = null;
-			Socket socket = new Socket();
+			SocketChannel channel;
+			try {
+				channel = SocketChannel.open();
+			} catch (IOException e) {
+				notifyException(e);
+				return;
+			}
+			// the socket of a channel, so that payloads can be transferred to it from their source
+			Socket socket = channel.socket();
+			this.socket = socket;
 			
+			Probe probe = Probes.get();
+			long start = System.nanoTime();
 			try {
-				socket.connect(new InetSocketAddress(destination.getIp(), destination.getPort()));
+				int timeout = (int) request.getTimeout();
+				socket.connect(new InetSocketAddress(destination.getIp(), destination.getPort()), timeout);
+				socket.setSoTimeout(timeout);
+				long sendStart = probe != null ? System.nanoTime() : 0;
+				if (probe != null)
+					probe.senderConnected(request, sendStart - start);
 			
+				CountingOutputStream out = new CountingOutputStream(socket.getOutputStream(), bytesOut);
 				try {
-					outStream = new ObjectOutputStream(socket.getOutputStream());
+					outStream = new ObjectOutputStream(out);
 				} catch (IOException e) {
 					logger.error("IOException occured while trying to open the socket outputStream");
 					throw e;
 				}
 
-				logger.debug("Writing object " + request + " to socket output stream");
 				outStream.writeObject(request);
+				outStream.flush();
+				long sentBytes = out.getCount();
+				if (request instanceof PayloadMessage) {
+					((PayloadMessage) request).writePayload(channel);
+					bytesOut.add(((PayloadMessage) request).getPayloadLength());
+					sentBytes += ((PayloadMessage) request).getPayloadLength();
+				}
+				long receiveStart = probe != null ? System.nanoTime() : 0;
+				if (probe != null)
+					probe.requestSent(request, sentBytes, receiveStart - sendStart);
 
+				CountingInputStream in = new CountingInputStream(socket.getInputStream(), bytesIn);
 				try {
-					inStream = new ObjectInputStream(socket.getInputStream());
+					inStream = new ObjectInputStream(in);
 				} catch (IOException e) {
 					logger.error("IOException occured while trying to open the socket inputStream");
 					throw e;
@@ -87,7 +254,6 @@ public class ConcurrentMessageSender implements MessageSender {
 				Object readObj = null;
 
 				try {
-					logger.debug("Reading object from the socket input stream");
 					readObj = inStream.readObject();
 				} catch (IOException e) {
 					logger.error("IOException occured while trying to read the object from the socket");
@@ -99,14 +265,30 @@ public class ConcurrentMessageSender implements MessageSender {
 
 				if (readObj instanceof Response) {
 					Response response = (Response) readObj;
-					logger.debug("Received response: " + response);
-					handler.handleResponse(response);
+					if (response instanceof PayloadMessage)
+						((PayloadMessage) response).readPayload(in);
+					Diagnostics.record(DiagnosticEvent.RESPONSE_RECEIVED, request.getConversationId(), response.getClass(), null, (System.nanoTime() - start) / 1000);
+					if (probe != null)
+						probe.responseReceived(request, response, in.getCount(), System.nanoTime() - receiveStart);
+					notifyResponse(response, System.nanoTime() - start);
+				} else if (readObj instanceof ServerException) {
+					Diagnostics.record(DiagnosticEvent.SEND_FAILED, request.getConversationId(), readObj.getClass(), null, (System.nanoTime() - start) / 1000);
+					if (logger.isDebugEnabled())
+						logger.debug("Server replied with an error: " + ((ServerException) readObj).getMessage());
+					notifyException((ServerException) readObj);
 				} else {
 					logger.warn("Object read from the socket is of an unsupported type (not instance of " + Response.class + "): " + readObj.getClass());
+					notifyException(new IOException("Unsupported object type read from the socket: " + readObj.getClass()));
 				}
 
 			} catch (Exception e) {
-				logger.error(null, e);
+				Diagnostics.record(DiagnosticEvent.SEND_FAILED, request.getConversationId(), e.getClass(), null, (System.nanoTime() - start) / 1000);
+				if (notifyException(e)) {
+					logger.error(null, e);
+					Diagnostics.dumpOnError(logger);
+				} else if (logger.isDebugEnabled()) {
+					logger.debug("Request " + request.getConversationId() + " failed after its handler was notified (cancelled?)", e);
+				}
 			} finally {
 				closeResources(socket, inStream, outStream);
 			}
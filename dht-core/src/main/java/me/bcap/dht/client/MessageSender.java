@@ -5,5 +5,11 @@ import me.bcap.dht.message.request.Request;
 public interface MessageSender {
 	
 	public void send(Request request, ResponseHandler handler);
+
+	/**
+	 * Gives up on a request previously sent. If its handler was not notified yet, it is notified with a
+	 * {@link java.util.concurrent.CancellationException}
+	 */
+	public void cancel(Request request);
 	
 }
@@ -0,0 +1,269 @@
+package me.bcap.dht.client.operation;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.apache.log4j.Logger;
+
+import me.bcap.dht.client.ResponseHandler;
+import me.bcap.dht.message.request.HandoffRequest;
+import me.bcap.dht.message.request.MerkleTreeRequest;
+import me.bcap.dht.message.request.Request;
+import me.bcap.dht.message.response.MerkleTreeResponse;
+import me.bcap.dht.message.response.Response;
+import me.bcap.dht.node.Bucket;
+import me.bcap.dht.node.Contact;
+import me.bcap.dht.node.Identifier;
+import me.bcap.dht.node.Node;
+import me.bcap.dht.node.storage.MerkleTree;
+import me.bcap.dht.node.storage.Storage;
+
+/**
+ * Repairs the differences between the data of the source node and a replica. Their {@link MerkleTree}s are compared
+ * top down, one level per request and only below the nodes that differ, until the differing leaves are found. The
+ * entry digests of those leaves tell which keys are missing on each side, and only those keys are then transferred,
+ * so the traffic grows with how far the replicas diverged rather than with how much they store.
+ * <p>
+ * A missing key is only copied to a side that is one of the {@link #getReplication()} closest nodes to it known by
+ * the source. Keys stored on both sides with different values are counted as conflicts and left alone.
+ */
+public class AntiEntropy extends Operation<AntiEntropyResult> {
+
+	private static final Logger logger = Logger.getLogger(AntiEntropy.class);
+
+	public static final int DEFAULT_REPLICATION = Bucket.MAX_SIZE;
+
+	private Contact replica;
+	private int replication = DEFAULT_REPLICATION;
+
+	private int requests = 0;
+	private int differingLeaves = 0;
+	private int pulled = 0;
+	private int pushed = 0;
+	private int conflicts = 0;
+	private int pendingTransfers = 0;
+
+	public AntiEntropy(Node source, Contact replica) {
+		super(source);
+		this.replica = replica;
+	}
+
+	protected void executeImpl() {
+		compare(0, new int[] { 0 });
+	}
+
+	private void compare(final int level, final int[] positions) {
+		MerkleTreeRequest request = createTreeRequest();
+		request.setLevel(level);
+		request.setPositions(positions);
+		send(request, new Step() {
+			void responded(MerkleTreeResponse response) {
+				compared(level, positions, response.getHashes());
+			}
+		});
+	}
+
+	private void compared(int level, int[] positions, long[] hashes) {
+		MerkleTree tree = getSource().getMerkleTree();
+		List<Integer> differing = new ArrayList<Integer>();
+		for (int i = 0; i < positions.length; i++)
+			if (tree.getHash(level, positions[i]) != hashes[i])
+				differing.add(positions[i]);
+
+		if (differing.isEmpty()) {
+			finish();
+		} else if (level < tree.getDepth()) {
+			int[] children = new int[differing.size() * MerkleTree.FANOUT];
+			for (int i = 0; i < children.length; i++)
+				children[i] = differing.get(i / MerkleTree.FANOUT) * MerkleTree.FANOUT + i % MerkleTree.FANOUT;
+			compare(level + 1, children);
+		} else {
+			final int[] leaves = new int[differing.size()];
+			for (int i = 0; i < leaves.length; i++)
+				leaves[i] = differing.get(i);
+			synchronized (this) {
+				differingLeaves = leaves.length;
+			}
+
+			MerkleTreeRequest request = createTreeRequest();
+			request.setLevel(level);
+			request.setPositions(leaves);
+			request.setLeafDigests(true);
+			send(request, new Step() {
+				void responded(MerkleTreeResponse response) {
+					repair(leaves, response.getDigests());
+				}
+			});
+		}
+	}
+
+	private void repair(int[] leaves, Map<Identifier, Long> remote) {
+		MerkleTree tree = getSource().getMerkleTree();
+		Map<Identifier, Long> local = new LinkedHashMap<Identifier, Long>();
+		for (int leaf : leaves)
+			local.putAll(tree.getLeafDigests(leaf));
+
+		List<Identifier> toPull = new ArrayList<Identifier>();
+		List<Identifier> toPush = new ArrayList<Identifier>();
+		int differingValues = 0;
+		for (Entry<Identifier, Long> entry : remote.entrySet()) {
+			Long digest = local.get(entry.getKey());
+			if (digest == null) {
+				if (isReplicaOf(getSource(), entry.getKey()))
+					toPull.add(entry.getKey());
+			} else if (!digest.equals(entry.getValue())) {
+				differingValues++;
+			}
+		}
+		for (Identifier key : local.keySet())
+			if (!remote.containsKey(key) && isReplicaOf(replica, key))
+				toPush.add(key);
+
+		Map<Identifier, byte[]> pushValues = new LinkedHashMap<Identifier, byte[]>();
+		for (Identifier key : toPush) {
+			byte[] value = getSource().getDataStorage().get(key);
+			if (value != null)
+				pushValues.put(key, value);
+		}
+
+		synchronized (this) {
+			conflicts = differingValues;
+			pendingTransfers = (toPull.isEmpty() ? 0 : 1) + (pushValues.isEmpty() ? 0 : 1);
+		}
+		if (differingValues > 0)
+			logger.info(differingValues + " keys have different values on " + getSource() + " and " + replica + ", leaving them as they are");
+
+		if (!toPull.isEmpty())
+			pull(toPull);
+		if (!pushValues.isEmpty())
+			push(pushValues);
+		if (toPull.isEmpty() && pushValues.isEmpty())
+			finish();
+	}
+
+	private void pull(List<Identifier> keys) {
+		MerkleTreeRequest request = createTreeRequest();
+		request.setKeys(keys);
+		send(request, new Step() {
+			void responded(MerkleTreeResponse response) {
+				Storage storage = getSource().getDataStorage();
+				int stored = 0;
+				for (Entry<Identifier, byte[]> entry : response.getValues().entrySet()) {
+					if (!storage.containsKey(entry.getKey())) {
+						storage.put(entry.getKey(), entry.getValue());
+						stored++;
+					}
+				}
+				synchronized (AntiEntropy.this) {
+					pulled = stored;
+				}
+				transferDone();
+			}
+		});
+	}
+
+	private void push(final Map<Identifier, byte[]> values) {
+		HandoffRequest request = new HandoffRequest();
+		request.setEntries(values);
+		request.setDestination(replica);
+		send(request, new ResponseHandler() {
+			public void handleResponse(Response response) {
+				synchronized (AntiEntropy.this) {
+					pushed = values.size();
+				}
+				transferDone();
+			}
+
+			public void handleException(Exception exception) {
+				fail(exception);
+			}
+		});
+	}
+
+	private void transferDone() {
+		boolean done;
+		synchronized (this) {
+			done = --pendingTransfers == 0;
+		}
+		if (done)
+			finish();
+	}
+
+	private boolean isReplicaOf(Contact candidate, Identifier key) {
+		List<Contact> closest = getSource().getClosestContacts(key, replication);
+		if (closest.size() < replication)
+			return true;
+		BigInteger farthest = closest.get(closest.size() - 1).getDistance(key);
+		return candidate.getDistance(key).compareTo(farthest) <= 0;
+	}
+
+	private MerkleTreeRequest createTreeRequest() {
+		MerkleTreeRequest request = new MerkleTreeRequest();
+		request.setDepth(getSource().getMerkleTree().getDepth());
+		request.setDestination(replica);
+		return request;
+	}
+
+	private void send(Request request, ResponseHandler handler) {
+		synchronized (this) {
+			requests++;
+		}
+		sendRequest(request, handler);
+	}
+
+	private void finish() {
+		this.setResult(createResult());
+	}
+
+	private void fail(Exception exception) {
+		logger.warn("Anti-entropy with replica " + replica + " failed", exception);
+		AntiEntropyResult result = createResult();
+		result.setException(exception);
+		this.setResult(result);
+	}
+
+	private synchronized AntiEntropyResult createResult() {
+		AntiEntropyResult result = new AntiEntropyResult();
+		result.setRequests(requests);
+		result.setDifferingLeaves(differingLeaves);
+		result.setPulled(pulled);
+		result.setPushed(pushed);
+		result.setConflicts(conflicts);
+		return result;
+	}
+
+	abstract class Step implements ResponseHandler {
+		abstract void responded(MerkleTreeResponse response);
+
+		public void handleResponse(Response response) {
+			responded((MerkleTreeResponse) response);
+		}
+
+		public void handleException(Exception exception) {
+			fail(exception);
+		}
+	}
+
+	// every request has its own handler
+	public void handleResponse(Response response) {
+	}
+
+	public void handleException(Exception exception) {
+	}
+
+	public Contact getReplica() {
+		return replica;
+	}
+
+	public int getReplication() {
+		return replication;
+	}
+
+	public void setReplication(int replication) {
+		this.replication = replication;
+	}
+}
@@ -0,0 +1,62 @@
+package me.bcap.dht.client.operation;
+
+public class AntiEntropyResult extends OperationResult {
+
+	private int requests;
+	private int differingLeaves;
+	private int pulled;
+	private int pushed;
+	private int conflicts;
+
+	/**
+	 * How many requests the comparison and repair took
+	 */
+	public int getRequests() {
+		return requests;
+	}
+
+	public void setRequests(int requests) {
+		this.requests = requests;
+	}
+
+	public int getDifferingLeaves() {
+		return differingLeaves;
+	}
+
+	public void setDifferingLeaves(int differingLeaves) {
+		this.differingLeaves = differingLeaves;
+	}
+
+	/**
+	 * Keys missing locally that were copied from the replica
+	 */
+	public int getPulled() {
+		return pulled;
+	}
+
+	public void setPulled(int pulled) {
+		this.pulled = pulled;
+	}
+
+	/**
+	 * Keys missing on the replica that were sent to it
+	 */
+	public int getPushed() {
+		return pushed;
+	}
+
+	public void setPushed(int pushed) {
+		this.pushed = pushed;
+	}
+
+	/**
+	 * Keys held by both sides with different values, which are left as they are
+	 */
+	public int getConflicts() {
+		return conflicts;
+	}
+
+	public void setConflicts(int conflicts) {
+		this.conflicts = conflicts;
+	}
+}
@@ -0,0 +1,51 @@
+package me.bcap.dht.client.operation;
+
+import me.bcap.dht.message.request.AppendRequest;
+import me.bcap.dht.message.response.AppendResponse;
+import me.bcap.dht.message.response.Response;
+import me.bcap.dht.node.Contact;
+import me.bcap.dht.node.Identifier;
+import me.bcap.dht.node.Node;
+
+/**
+ * Adds an element to the set held under a key on a contact, to be kept for the given time to live. The elements are
+ * read back with a {@link FindValue}, which returns a random sample of them.
+ */
+public class Append extends Operation<AppendResult> {
+
+	private Contact destination;
+	private Identifier key;
+	private byte[] element;
+	private long ttl;
+
+	public Append(Node source, Contact destination, Identifier key, byte[] element, long ttl) {
+		super(source);
+		this.destination = destination;
+		this.key = key;
+		this.element = element;
+		this.ttl = ttl;
+	}
+
+	protected void executeImpl() {
+		AppendRequest request = new AppendRequest();
+		request.setIdentifier(key);
+		request.setElement(element);
+		request.setTtl(ttl);
+		request.setDestination(destination);
+		this.sendRequest(request);
+	}
+
+	public void handleResponse(Response response) {
+		AppendResponse appendResponse = (AppendResponse) response;
+		AppendResult result = new AppendResult();
+		result.setAdded(appendResponse.isAdded());
+		result.setSize(appendResponse.getSize());
+		this.setResult(result);
+	}
+
+	public void handleException(Exception exception) {
+		AppendResult result = new AppendResult();
+		result.setException(exception);
+		this.setResult(result);
+	}
+}
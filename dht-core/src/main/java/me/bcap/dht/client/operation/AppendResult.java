@@ -0,0 +1,29 @@
+package me.bcap.dht.client.operation;
+
+public class AppendResult extends StoreResult {
+
+	private boolean added;
+	private int size;
+
+	/**
+	 * Whether the element was new to the set, false if only its expiry was extended
+	 */
+	public boolean isAdded() {
+		return added;
+	}
+
+	public void setAdded(boolean added) {
+		this.added = added;
+	}
+
+	/**
+	 * Size of the set on the contact after the append
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	public void setSize(int size) {
+		this.size = size;
+	}
+}
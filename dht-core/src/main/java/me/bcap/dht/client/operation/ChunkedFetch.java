@@ -0,0 +1,142 @@
+package me.bcap.dht.client.operation;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.apache.log4j.Logger;
+
+import me.bcap.dht.message.request.ValueRangeRequest;
+import me.bcap.dht.message.response.Response;
+import me.bcap.dht.message.response.ValueRangeResponse;
+import me.bcap.dht.node.Contact;
+import me.bcap.dht.node.Identifier;
+import me.bcap.dht.node.Node;
+
+/**
+ * Reads a value, or a range of it, from a contact that holds it, in chunks of {@link #getChunkSize()} bytes written to
+ * an output stream as they arrive. Used for values a {@link FindValue} only found as chunked, but any range of any
+ * value can be read this way. A failed chunk is asked again, giving up after {@link #getMaxAttempts()} failures in a
+ * row.
+ */
+public class ChunkedFetch extends Operation<ChunkedFetchResult> {
+
+	private static final Logger logger = Logger.getLogger(ChunkedFetch.class);
+
+	private Contact holder;
+	private Identifier key;
+	private OutputStream output;
+	private int offset;
+	private int length;
+
+	private int chunkSize = ChunkedStore.DEFAULT_CHUNK_SIZE;
+	private int maxAttempts = ChunkedStore.DEFAULT_MAX_ATTEMPTS;
+
+	private int position;
+	private int end;
+	private int totalLength = -1;
+	private int failures = 0;
+
+	/**
+	 * Reads the whole value
+	 */
+	public ChunkedFetch(Node source, Contact holder, Identifier key, OutputStream output) {
+		this(source, holder, key, output, 0, -1);
+	}
+
+	/**
+	 * Reads length bytes starting at offset, or up to the end of the value if length is -1
+	 */
+	public ChunkedFetch(Node source, Contact holder, Identifier key, OutputStream output, int offset, int length) {
+		super(source);
+		this.holder = holder;
+		this.key = key;
+		this.output = output;
+		this.offset = offset;
+		this.length = length;
+	}
+
+	protected void executeImpl() {
+		position = offset;
+		end = length >= 0 ? offset + length : -1;
+		requestNext();
+	}
+
+	private void requestNext() {
+		ValueRangeRequest request = new ValueRangeRequest();
+		request.setIdentifier(key);
+		request.setDestination(holder);
+		request.setOffset(position);
+		request.setLength(end >= 0 ? Math.min(chunkSize, end - position) : chunkSize);
+		this.sendRequest(request);
+	}
+
+	public void handleResponse(Response response) {
+		ValueRangeResponse rangeResponse = (ValueRangeResponse) response;
+		if (rangeResponse.getTotalLength() < 0) {
+			this.setResult(createResult());
+			return;
+		}
+
+		byte[] data = rangeResponse.getData();
+		synchronized (this) {
+			failures = 0;
+			totalLength = rangeResponse.getTotalLength();
+			if (end < 0 || end > totalLength)
+				end = totalLength;
+		}
+		try {
+			output.write(data);
+		} catch (IOException e) {
+			ChunkedFetchResult result = createResult();
+			result.setException(new OperationException("Could not write the value of key " + key, e));
+			this.setResult(result);
+			return;
+		}
+
+		synchronized (this) {
+			position += data.length;
+		}
+		if (position >= end || data.length == 0)
+			this.setResult(createResult());
+		else
+			requestNext();
+	}
+
+	public void handleException(Exception exception) {
+		int attempts;
+		synchronized (this) {
+			attempts = ++failures;
+		}
+		if (attempts >= maxAttempts) {
+			ChunkedFetchResult result = createResult();
+			result.setException(exception);
+			this.setResult(result);
+		} else {
+			logger.debug("Reading a chunk of key " + key + " from " + holder + " failed, asking it again: " + exception);
+			requestNext();
+		}
+	}
+
+	private synchronized ChunkedFetchResult createResult() {
+		ChunkedFetchResult result = new ChunkedFetchResult();
+		result.setTotalLength(totalLength);
+		result.setTransferred(position - offset);
+		return result;
+	}
+
+	public int getChunkSize() {
+		return chunkSize;
+	}
+
+	public void setChunkSize(int chunkSize) {
+		this.chunkSize = chunkSize;
+	}
+
+	public int getMaxAttempts() {
+		return maxAttempts;
+	}
+
+	public void setMaxAttempts(int maxAttempts) {
+		this.maxAttempts = maxAttempts;
+	}
+}
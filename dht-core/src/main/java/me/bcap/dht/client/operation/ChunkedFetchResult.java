@@ -0,0 +1,33 @@
+package me.bcap.dht.client.operation;
+
+public class ChunkedFetchResult extends OperationResult {
+
+	private int totalLength = -1;
+	private long transferred;
+
+	public boolean isFound() {
+		return totalLength >= 0;
+	}
+
+	/**
+	 * Length of the whole value on the contact, -1 if it does not store it
+	 */
+	public int getTotalLength() {
+		return totalLength;
+	}
+
+	public void setTotalLength(int totalLength) {
+		this.totalLength = totalLength;
+	}
+
+	/**
+	 * How many bytes were written to the output
+	 */
+	public long getTransferred() {
+		return transferred;
+	}
+
+	public void setTransferred(long transferred) {
+		this.transferred = transferred;
+	}
+}
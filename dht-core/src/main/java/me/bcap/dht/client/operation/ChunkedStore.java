@@ -0,0 +1,136 @@
+package me.bcap.dht.client.operation;
+
+import java.io.File;
+import java.util.Arrays;
+
+import org.apache.log4j.Logger;
+
+import me.bcap.dht.message.request.StoreChunkRequest;
+import me.bcap.dht.message.response.Response;
+import me.bcap.dht.message.response.StoreChunkResponse;
+import me.bcap.dht.node.Contact;
+import me.bcap.dht.node.Identifier;
+import me.bcap.dht.node.Node;
+
+/**
+ * Stores a large value on a contact as a sequence of chunks of {@link #getChunkSize()} bytes, so that neither side has
+ * to serialize it in one go. The value can be read from a file, in which case chunks go from the file to the socket
+ * without being read into memory.
+ * <p>
+ * When a chunk fails the contact is asked how much it already received and the transfer resumes from there, giving up
+ * after {@link #getMaxAttempts()} failures in a row.
+ */
+public class ChunkedStore extends Operation<StoreResult> {
+
+	private static final Logger logger = Logger.getLogger(ChunkedStore.class);
+
+	public static final int DEFAULT_CHUNK_SIZE = 1024 * 1024;
+	public static final int DEFAULT_MAX_ATTEMPTS = 3;
+
+	private Contact destination;
+	private Identifier key;
+	private byte[] data;
+	private File file;
+	private int length;
+
+	private int chunkSize = DEFAULT_CHUNK_SIZE;
+	private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+
+	private int failures = 0;
+
+	public ChunkedStore(Node source, Contact destination, Identifier key, byte[] data) {
+		super(source);
+		this.destination = destination;
+		this.key = key;
+		this.data = data;
+		this.length = data.length;
+	}
+
+	public ChunkedStore(Node source, Contact destination, Identifier key, File file) {
+		super(source);
+		if (file.length() > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("File " + file + " is too large to be stored as a single value");
+		this.destination = destination;
+		this.key = key;
+		this.file = file;
+		this.length = (int) file.length();
+	}
+
+	protected void executeImpl() {
+		sendChunk(0);
+	}
+
+	private void sendChunk(int offset) {
+		StoreChunkRequest request = createRequest();
+		request.setOffset(offset);
+		int chunkLength = Math.min(chunkSize, length - offset);
+		// chunks of a file are transferred from it to the socket when the request is written
+		if (data != null)
+			request.setChunk(Arrays.copyOfRange(data, offset, offset + chunkLength));
+		else
+			request.setChunk(file, offset, chunkLength);
+		this.sendRequest(request);
+	}
+
+	/**
+	 * Asks the contact where to resume from
+	 */
+	private void sendStatus() {
+		this.sendRequest(createRequest());
+	}
+
+	private StoreChunkRequest createRequest() {
+		StoreChunkRequest request = new StoreChunkRequest();
+		request.setIdentifier(key);
+		request.setTotalLength(length);
+		request.setDestination(destination);
+		return request;
+	}
+
+	public void handleResponse(Response response) {
+		StoreChunkResponse chunkResponse = (StoreChunkResponse) response;
+		if (chunkResponse.isComplete()) {
+			this.setResult(new StoreResult());
+			return;
+		}
+		synchronized (this) {
+			failures = 0;
+		}
+		sendChunk(chunkResponse.getReceived());
+	}
+
+	public void handleException(Exception exception) {
+		int attempts;
+		synchronized (this) {
+			attempts = ++failures;
+		}
+		if (attempts >= maxAttempts) {
+			fail(exception);
+		} else {
+			logger.debug("Chunked transfer of key " + key + " to " + destination + " failed, resuming: " + exception);
+			sendStatus();
+		}
+	}
+
+	private void fail(Exception exception) {
+		StoreResult result = new StoreResult();
+		result.setException(exception);
+		this.setResult(result);
+	}
+
+	public int getChunkSize() {
+		return chunkSize;
+	}
+
+	public void setChunkSize(int chunkSize) {
+		this.chunkSize = chunkSize;
+	}
+
+	public int getMaxAttempts() {
+		return maxAttempts;
+	}
+
+	public void setMaxAttempts(int maxAttempts) {
+		this.maxAttempts = maxAttempts;
+	}
+}
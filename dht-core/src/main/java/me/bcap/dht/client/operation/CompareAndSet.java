@@ -0,0 +1,53 @@
+package me.bcap.dht.client.operation;
+
+import me.bcap.dht.message.request.CompareAndSetRequest;
+import me.bcap.dht.message.response.CompareAndSetResponse;
+import me.bcap.dht.message.response.Response;
+import me.bcap.dht.node.Contact;
+import me.bcap.dht.node.Identifier;
+import me.bcap.dht.node.Node;
+
+/**
+ * Stores a value on a contact only if the key there is still at the expected version, as read with a
+ * {@link FindValue} or returned by a previous compare and set. When the compare fails the result carries the current
+ * value and version, so an update can be retried right away without another read.
+ */
+public class CompareAndSet extends Operation<CompareAndSetResult> {
+
+	private Contact destination;
+	private Identifier key;
+	private long expectedVersion;
+	private byte[] data;
+
+	public CompareAndSet(Node source, Contact destination, Identifier key, long expectedVersion, byte[] data) {
+		super(source);
+		this.destination = destination;
+		this.key = key;
+		this.expectedVersion = expectedVersion;
+		this.data = data;
+	}
+
+	protected void executeImpl() {
+		CompareAndSetRequest request = new CompareAndSetRequest();
+		request.setIdentifier(key);
+		request.setExpectedVersion(expectedVersion);
+		request.setData(data);
+		request.setDestination(destination);
+		this.sendRequest(request);
+	}
+
+	public void handleResponse(Response response) {
+		CompareAndSetResponse casResponse = (CompareAndSetResponse) response;
+		CompareAndSetResult result = new CompareAndSetResult();
+		result.setSuccessful(casResponse.isSuccessful());
+		result.setVersion(casResponse.getVersion());
+		result.setCurrentData(casResponse.getData());
+		this.setResult(result);
+	}
+
+	public void handleException(Exception exception) {
+		CompareAndSetResult result = new CompareAndSetResult();
+		result.setException(exception);
+		this.setResult(result);
+	}
+}
@@ -0,0 +1,41 @@
+package me.bcap.dht.client.operation;
+
+public class CompareAndSetResult extends StoreResult {
+
+	private boolean successful;
+	private long version;
+	private byte[] currentData;
+
+	/**
+	 * Whether the value was stored. A failed compare is not an error, the result then carries the current value
+	 */
+	public boolean isSuccessful() {
+		return successful;
+	}
+
+	public void setSuccessful(boolean successful) {
+		this.successful = successful;
+	}
+
+	/**
+	 * The new version of the key if the value was stored, its current version otherwise, 0 if it is not stored
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	public void setVersion(long version) {
+		this.version = version;
+	}
+
+	/**
+	 * The value the key holds when the compare failed, null if it is not stored
+	 */
+	public byte[] getCurrentData() {
+		return currentData;
+	}
+
+	public void setCurrentData(byte[] currentData) {
+		this.currentData = currentData;
+	}
+}
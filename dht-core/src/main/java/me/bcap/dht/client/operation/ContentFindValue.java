@@ -0,0 +1,36 @@
+package me.bcap.dht.client.operation;
+
+import org.apache.log4j.Logger;
+
+import me.bcap.dht.message.response.FindValueResponse;
+import me.bcap.dht.message.response.Response;
+import me.bcap.dht.node.Contact;
+import me.bcap.dht.node.Identifier;
+import me.bcap.dht.node.Node;
+import me.bcap.dht.util.ContentKeys;
+
+/**
+ * Looks up a value stored with a {@link ContentStore}. Values whose SHA-1 does not match the key are ignored and the
+ * lookup goes on as if the contact did not hold the key. Values too large to be sent inline are only located, checking
+ * them is up to whoever reads them.
+ */
+public class ContentFindValue extends FindValue {
+
+	private static final Logger logger = Logger.getLogger(ContentFindValue.class);
+
+	public ContentFindValue(Node source, Identifier key) {
+		super(source, key);
+	}
+
+	protected boolean handleLookupResponse(Contact contact, Response response) {
+		if (response instanceof FindValueResponse) {
+			FindValueResponse valueResponse = (FindValueResponse) response;
+			boolean mismatch = valueResponse.getElements() != null || (!valueResponse.isChunked() && !ContentKeys.matches(key, valueResponse.getData()));
+			if (mismatch) {
+				logger.warn("Contact " + contact + " answered with a value that does not match the content key " + key + ", ignoring it");
+				return false;
+			}
+		}
+		return super.handleLookupResponse(contact, response);
+	}
+}
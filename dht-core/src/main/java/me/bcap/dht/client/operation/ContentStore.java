@@ -0,0 +1,184 @@
+package me.bcap.dht.client.operation;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+import me.bcap.dht.client.ResponseHandler;
+import me.bcap.dht.message.request.ContainsKeyRequest;
+import me.bcap.dht.message.response.ContainsKeyResponse;
+import me.bcap.dht.message.response.Response;
+import me.bcap.dht.node.Bucket;
+import me.bcap.dht.node.Contact;
+import me.bcap.dht.node.Identifier;
+import me.bcap.dht.node.Node;
+import me.bcap.dht.util.ContentKeys;
+
+/**
+ * Stores a value under its content key, the SHA-1 of the value, so identical values always end up under the same key
+ * on the same nodes. The nodes closest to the key are found with a {@link FindNode} lookup and each one is first
+ * asked whether it already holds the key: only the ones that do not are sent the value.
+ * <p>
+ * The value can be read from a file, which is hashed a buffer at a time before being sent.
+ */
+public class ContentStore extends Operation<ContentStoreResult> {
+
+	private static final Logger logger = Logger.getLogger(ContentStore.class);
+
+	public static final int DEFAULT_REPLICATION = Bucket.MAX_SIZE;
+
+	private byte[] data;
+	private File file;
+	private volatile Identifier key;
+
+	private int replication = DEFAULT_REPLICATION;
+	private int chunkingThreshold = Store.DEFAULT_CHUNKING_THRESHOLD;
+
+	private List<Contact> replicas;
+	private List<Contact> alreadyHeld = new ArrayList<Contact>();
+	private List<Contact> stored = new ArrayList<Contact>();
+	private int finished = 0;
+	private Exception lastException;
+
+	public ContentStore(Node source, byte[] data) {
+		super(source);
+		this.data = data;
+	}
+
+	public ContentStore(Node source, File file) {
+		super(source);
+		this.file = file;
+	}
+
+	protected void executeImpl() {
+		try {
+			key = data != null ? ContentKeys.of(data) : ContentKeys.of(file);
+		} catch (IOException e) {
+			fail(new OperationException("Could not hash the value read from " + file, e));
+			return;
+		}
+
+		FindNode lookup = new FindNode(getSource(), key);
+		lookup.setMessageServer(messageServer);
+		lookup.setResultSize(replication);
+		lookup.addListener(new OperationListener<FindNodeResult>() {
+			public void operationCompleted(FindNodeResult result) {
+				probe(result);
+			}
+		});
+		lookup.execute();
+	}
+
+	private void probe(FindNodeResult lookupResult) {
+		if (lookupResult.getException() != null) {
+			fail(new OperationException("Lookup of the nodes closest to key " + key + " failed", lookupResult.getException()));
+			return;
+		}
+
+		List<Contact> closest = lookupResult.getContacts();
+		if (closest.isEmpty()) {
+			fail(new OperationException("No node was found to store key " + key));
+			return;
+		}
+
+		synchronized (this) {
+			this.replicas = closest;
+		}
+
+		for (final Contact replica : closest) {
+			ContainsKeyRequest request = new ContainsKeyRequest();
+			request.setIdentifier(key);
+			request.setDestination(replica);
+			sendRequest(request, new ResponseHandler() {
+				public void handleResponse(Response response) {
+					if (((ContainsKeyResponse) response).isContained())
+						replicaFinished(replica, true, null);
+					else
+						store(replica);
+				}
+
+				// a replica that could not be probed is just sent the value
+				public void handleException(Exception exception) {
+					logger.debug("Could not probe replica " + replica + " for key " + key + ": " + exception);
+					store(replica);
+				}
+			});
+		}
+	}
+
+	private void store(final Contact replica) {
+		Store store = data != null ? new Store(getSource(), replica, key, data) : new Store(getSource(), replica, key, file);
+		store.setMessageServer(messageServer);
+		store.setChunkingThreshold(chunkingThreshold);
+		store.addListener(new OperationListener<StoreResult>() {
+			public void operationCompleted(StoreResult result) {
+				replicaFinished(replica, false, result.getException());
+			}
+		});
+		store.execute();
+	}
+
+	private void replicaFinished(Contact replica, boolean held, Exception exception) {
+		ContentStoreResult result = null;
+		synchronized (this) {
+			if (held)
+				alreadyHeld.add(replica);
+			else if (exception == null)
+				stored.add(replica);
+			else
+				lastException = exception;
+
+			if (++finished == replicas.size()) {
+				result = new ContentStoreResult();
+				result.setKey(key);
+				result.setReplicas(new ArrayList<Contact>(replicas));
+				result.setAlreadyHeld(new ArrayList<Contact>(alreadyHeld));
+				result.setStored(new ArrayList<Contact>(stored));
+				if (alreadyHeld.isEmpty() && stored.isEmpty())
+					result.setException(new OperationException("No replica could store key " + key, lastException));
+			}
+		}
+		if (result != null)
+			this.setResult(result);
+	}
+
+	private void fail(Exception exception) {
+		ContentStoreResult result = new ContentStoreResult();
+		result.setKey(getKey());
+		result.setException(exception);
+		this.setResult(result);
+	}
+
+	// this operation sends no request through the default handler, the probes and stores handle their responses
+	public void handleResponse(Response response) {
+	}
+
+	public void handleException(Exception exception) {
+	}
+
+	/**
+	 * The content key of the value, null until the operation is executed
+	 */
+	public Identifier getKey() {
+		return key;
+	}
+
+	public int getReplication() {
+		return replication;
+	}
+
+	public void setReplication(int replication) {
+		this.replication = replication;
+	}
+
+	public int getChunkingThreshold() {
+		return chunkingThreshold;
+	}
+
+	public void setChunkingThreshold(int chunkingThreshold) {
+		this.chunkingThreshold = chunkingThreshold;
+	}
+}
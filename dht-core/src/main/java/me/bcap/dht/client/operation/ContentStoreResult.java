@@ -0,0 +1,52 @@
+package me.bcap.dht.client.operation;
+
+import java.util.List;
+
+import me.bcap.dht.node.Contact;
+import me.bcap.dht.node.Identifier;
+
+public class ContentStoreResult extends StoreResult {
+
+	private Identifier key;
+	private List<Contact> replicas;
+	private List<Contact> alreadyHeld;
+	private List<Contact> stored;
+
+	/**
+	 * The content key the value was stored under
+	 */
+	public Identifier getKey() {
+		return key;
+	}
+
+	public void setKey(Identifier key) {
+		this.key = key;
+	}
+
+	public List<Contact> getReplicas() {
+		return replicas;
+	}
+
+	public void setReplicas(List<Contact> replicas) {
+		this.replicas = replicas;
+	}
+
+	/**
+	 * The replicas that already held the value, which it was not sent to
+	 */
+	public List<Contact> getAlreadyHeld() {
+		return alreadyHeld;
+	}
+
+	public void setAlreadyHeld(List<Contact> alreadyHeld) {
+		this.alreadyHeld = alreadyHeld;
+	}
+
+	public List<Contact> getStored() {
+		return stored;
+	}
+
+	public void setStored(List<Contact> stored) {
+		this.stored = stored;
+	}
+}
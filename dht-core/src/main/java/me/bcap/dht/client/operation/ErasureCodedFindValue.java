@@ -0,0 +1,196 @@
+package me.bcap.dht.client.operation;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+import me.bcap.dht.client.ResponseHandler;
+import me.bcap.dht.message.request.FindValueRequest;
+import me.bcap.dht.message.response.FindValueResponse;
+import me.bcap.dht.message.response.Response;
+import me.bcap.dht.node.Contact;
+import me.bcap.dht.node.Identifier;
+import me.bcap.dht.node.Node;
+
+/**
+ * Reads back a value stored with {@link ErasureCodedStore}, using the same fragment counts. The nodes closest to the
+ * identifier of each fragment are looked up and asked for it in order, the closest ones may not hold it if they hold
+ * another fragment of the value or joined since it was stored. Fragments too large to be sent inline are read in
+ * chunks with a {@link ChunkedFetch}. The value is rebuilt as soon as any m fragments arrived.
+ */
+public class ErasureCodedFindValue extends Operation<FindValueResult> {
+
+	private static final Logger logger = Logger.getLogger(ErasureCodedFindValue.class);
+
+	private Identifier key;
+
+	private int dataFragments = ErasureCodedStore.DEFAULT_DATA_FRAGMENTS;
+	private int parityFragments = ErasureCodedStore.DEFAULT_PARITY_FRAGMENTS;
+
+	private List<List<Contact>> candidates;
+	private byte[][] fragments;
+	private int found = 0;
+	private int pending = 0;
+
+	public ErasureCodedFindValue(Node source, Identifier key) {
+		super(source);
+		this.key = key;
+	}
+
+	protected void executeImpl() {
+		int fragmentCount = dataFragments + parityFragments;
+		synchronized (this) {
+			candidates = new ArrayList<List<Contact>>(Collections.<List<Contact>> nCopies(fragmentCount, null));
+			fragments = new byte[fragmentCount][];
+			pending = fragmentCount;
+		}
+
+		for (int i = 0; i < fragmentCount; i++) {
+			final int index = i;
+			FindNode lookup = new FindNode(getSource(), Fragments.key(key, i));
+			lookup.setMessageServer(messageServer);
+			lookup.setResultSize(fragmentCount);
+			lookup.addListener(new OperationListener<FindNodeResult>() {
+				public void operationCompleted(FindNodeResult result) {
+					located(index, result);
+				}
+			});
+			lookup.execute();
+		}
+	}
+
+	private void located(int index, FindNodeResult lookupResult) {
+		if (lookupResult.getException() != null) {
+			logger.debug("Lookup of the nodes closest to fragment " + index + " of key " + key + " failed: "
+					+ lookupResult.getException());
+			fetched(index, null);
+			return;
+		}
+		synchronized (this) {
+			candidates.set(index, Fragments.candidates(getSource(), Fragments.key(key, index),
+					lookupResult.getContacts(), dataFragments + parityFragments));
+		}
+		fetch(index, 0);
+	}
+
+	/**
+	 * Asks the candidate at the given position for the fragment, moving on to the next candidate if it does not have it
+	 */
+	private void fetch(final int index, final int position) {
+		final Contact contact;
+		synchronized (this) {
+			if (isDone())
+				return;
+			List<Contact> contacts = candidates.get(index);
+			contact = position < contacts.size() ? contacts.get(position) : null;
+		}
+		if (contact == null) {
+			fetched(index, null);
+			return;
+		}
+
+		FindValueRequest request = new FindValueRequest();
+		request.setIdentifier(Fragments.key(key, index));
+		request.setDestination(contact);
+		sendRequest(request, new ResponseHandler() {
+			public void handleResponse(Response response) {
+				FindValueResponse valueResponse = response instanceof FindValueResponse ? (FindValueResponse) response : null;
+				if (valueResponse != null && valueResponse.isChunked() && valueResponse.getLength() >= 0) {
+					fetchChunked(index, position, contact, valueResponse.getLength());
+					return;
+				}
+				byte[] fragment = valueResponse != null ? valueResponse.getData() : null;
+				if (Fragments.isValid(fragment, index, dataFragments, parityFragments))
+					fetched(index, fragment);
+				else
+					fetch(index, position + 1);
+			}
+
+			public void handleException(Exception exception) {
+				logger.debug("Contact " + contact + " failed to answer for fragment " + index + " of key " + key + ": "
+						+ exception);
+				fetch(index, position + 1);
+			}
+		});
+	}
+
+	/**
+	 * Reads in chunks a fragment too large to have been sent inline, moving on to the next candidate if that fails
+	 */
+	private void fetchChunked(final int index, final int position, final Contact contact, int length) {
+		final ByteArrayOutputStream output = new ByteArrayOutputStream(length);
+		ChunkedFetch chunked = new ChunkedFetch(getSource(), contact, Fragments.key(key, index), output);
+		chunked.setMessageServer(messageServer);
+		chunked.addListener(new OperationListener<ChunkedFetchResult>() {
+			public void operationCompleted(ChunkedFetchResult result) {
+				byte[] fragment = result.getException() == null && result.isFound()
+						&& result.getTransferred() == result.getTotalLength() ? output.toByteArray() : null;
+				if (Fragments.isValid(fragment, index, dataFragments, parityFragments)) {
+					fetched(index, fragment);
+				} else {
+					logger.debug("Contact " + contact + " failed to send the chunks of fragment " + index + " of key " + key
+							+ (result.getException() != null ? ": " + result.getException() : ""));
+					fetch(index, position + 1);
+				}
+			}
+		});
+		chunked.execute();
+	}
+
+	/**
+	 * Records the fragment, or that it could not be found when null
+	 */
+	private void fetched(int index, byte[] fragment) {
+		boolean finished;
+		synchronized (this) {
+			if (isDone())
+				return;
+			if (fragment != null) {
+				fragments[index] = fragment;
+				found++;
+			}
+			finished = --pending == 0 || found == dataFragments;
+		}
+		if (finished)
+			finish();
+	}
+
+	private void finish() {
+		FindValueResult result = new FindValueResult();
+		synchronized (this) {
+			if (isDone())
+				return;
+			if (found >= dataFragments)
+				result.setData(Fragments.join(fragments, dataFragments, parityFragments));
+			if (result.getData() == null)
+				result.setContacts(candidates.get(0) != null ? candidates.get(0) : new ArrayList<Contact>());
+		}
+		this.setResult(result);
+	}
+
+	// every fragment request has its own handler
+	public void handleResponse(Response response) {
+	}
+
+	public void handleException(Exception exception) {
+	}
+
+	public int getDataFragments() {
+		return dataFragments;
+	}
+
+	public void setDataFragments(int dataFragments) {
+		this.dataFragments = dataFragments;
+	}
+
+	public int getParityFragments() {
+		return parityFragments;
+	}
+
+	public void setParityFragments(int parityFragments) {
+		this.parityFragments = parityFragments;
+	}
+}
@@ -0,0 +1,182 @@
+package me.bcap.dht.client.operation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+
+import me.bcap.dht.message.response.Response;
+import me.bcap.dht.node.Contact;
+import me.bcap.dht.node.Identifier;
+import me.bcap.dht.node.Node;
+
+/**
+ * Stores a value erasure coded instead of replicated in full. The value is split in m {@link #getDataFragments()}
+ * plus r {@link #getParityFragments()} Reed-Solomon parity fragments, any m of which are enough to read it back.
+ * Fragment i is stored under an identifier derived from the key and i, on the node closest to that identifier that
+ * does not hold another fragment of the value. Every fragment so lands on a different node, close enough to its own
+ * identifier for key handoffs and anti-entropy to keep it there, and an {@link ErasureCodedFindValue} knows where to
+ * look.
+ * <p>
+ * Storage and bandwidth cost (m + r) / m times the value size, against k times for full replication. The operation
+ * fails if fewer than m fragments were acknowledged, as the value could not be read back.
+ */
+public class ErasureCodedStore extends Operation<ErasureCodedStoreResult> {
+
+	private static final Logger logger = Logger.getLogger(ErasureCodedStore.class);
+
+	public static final int DEFAULT_DATA_FRAGMENTS = 4;
+	public static final int DEFAULT_PARITY_FRAGMENTS = 2;
+
+	private Identifier key;
+	private byte[] data;
+
+	private int dataFragments = DEFAULT_DATA_FRAGMENTS;
+	private int parityFragments = DEFAULT_PARITY_FRAGMENTS;
+
+	private List<List<Contact>> candidates;
+	private Exception lookupFailure;
+	private int lookupsLeft;
+	private List<Contact> holders;
+	private int stored = 0;
+	private int completed = 0;
+
+	public ErasureCodedStore(Node source, Identifier key, byte[] data) {
+		super(source);
+		this.key = key;
+		this.data = data;
+	}
+
+	protected void executeImpl() {
+		int fragmentCount = dataFragments + parityFragments;
+		synchronized (this) {
+			candidates = new ArrayList<List<Contact>>(Collections.<List<Contact>> nCopies(fragmentCount, null));
+			lookupsLeft = fragmentCount;
+		}
+
+		// the fragments are placed in order, the last one may have to skip the nodes closest to it that hold the
+		// others so each lookup asks for as many nodes as there are fragments
+		for (int i = 0; i < fragmentCount; i++) {
+			final int index = i;
+			FindNode lookup = new FindNode(getSource(), Fragments.key(key, i));
+			lookup.setMessageServer(messageServer);
+			lookup.setResultSize(fragmentCount);
+			lookup.addListener(new OperationListener<FindNodeResult>() {
+				public void operationCompleted(FindNodeResult result) {
+					located(index, result);
+				}
+			});
+			lookup.execute();
+		}
+	}
+
+	private void located(int index, FindNodeResult lookupResult) {
+		synchronized (this) {
+			if (lookupResult.getException() != null)
+				lookupFailure = new OperationException("Lookup of the nodes closest to fragment " + index + " of key "
+						+ key + " failed", lookupResult.getException());
+			else
+				candidates.set(index, Fragments.candidates(getSource(), Fragments.key(key, index),
+						lookupResult.getContacts(), dataFragments + parityFragments));
+			if (--lookupsLeft > 0)
+				return;
+		}
+		storeFragments();
+	}
+
+	private void storeFragments() {
+		if (lookupFailure != null) {
+			fail(lookupFailure);
+			return;
+		}
+
+		int fragmentCount = dataFragments + parityFragments;
+		List<Contact> chosen = new ArrayList<Contact>();
+		Set<Identifier> taken = new HashSet<Identifier>();
+		for (int i = 0; i < fragmentCount; i++) {
+			for (Contact contact : candidates.get(i)) {
+				if (taken.add(contact.asIdentifier())) {
+					chosen.add(contact);
+					break;
+				}
+			}
+			if (chosen.size() <= i) {
+				fail(new OperationException("Only " + chosen.size() + " nodes were found to store the "
+						+ fragmentCount + " fragments of key " + key));
+				return;
+			}
+		}
+
+		byte[][] fragments = Fragments.split(data, dataFragments, parityFragments);
+		synchronized (this) {
+			holders = chosen;
+		}
+
+		logger.debug("Storing key " + key + " as " + dataFragments + " data and " + parityFragments
+				+ " parity fragments of " + fragments[0].length + " bytes");
+		for (int i = 0; i < fragmentCount; i++) {
+			final int index = i;
+			Store store = new Store(getSource(), holders.get(i), Fragments.key(key, i), fragments[i]);
+			store.setMessageServer(messageServer);
+			store.addListener(new OperationListener<StoreResult>() {
+				public void operationCompleted(StoreResult result) {
+					fragmentCompleted(index, result.getException());
+				}
+			});
+			store.execute();
+		}
+	}
+
+	private void fragmentCompleted(int index, Exception exception) {
+		ErasureCodedStoreResult result = null;
+		synchronized (this) {
+			if (exception == null)
+				stored++;
+			else
+				logger.warn("Could not store fragment " + index + " of key " + key + " on " + holders.get(index), exception);
+
+			if (++completed == holders.size()) {
+				result = new ErasureCodedStoreResult();
+				result.setHolders(new ArrayList<Contact>(holders));
+				result.setStored(stored);
+				if (stored < dataFragments)
+					result.setException(new OperationException("Only " + stored + " fragments of key " + key
+							+ " were stored, " + dataFragments + " are needed to read it back"));
+			}
+		}
+		if (result != null)
+			this.setResult(result);
+	}
+
+	private void fail(Exception exception) {
+		ErasureCodedStoreResult result = new ErasureCodedStoreResult();
+		result.setException(exception);
+		this.setResult(result);
+	}
+
+	// this operation sends no request of its own, the lookup and the stores it starts handle their responses
+	public void handleResponse(Response response) {
+	}
+
+	public void handleException(Exception exception) {
+	}
+
+	public int getDataFragments() {
+		return dataFragments;
+	}
+
+	public void setDataFragments(int dataFragments) {
+		this.dataFragments = dataFragments;
+	}
+
+	public int getParityFragments() {
+		return parityFragments;
+	}
+
+	public void setParityFragments(int parityFragments) {
+		this.parityFragments = parityFragments;
+	}
+}
@@ -0,0 +1,33 @@
+package me.bcap.dht.client.operation;
+
+import java.util.List;
+
+import me.bcap.dht.node.Contact;
+
+public class ErasureCodedStoreResult extends StoreResult {
+
+	private List<Contact> holders;
+	private int stored;
+
+	/**
+	 * The contact each fragment was sent to, by fragment index
+	 */
+	public List<Contact> getHolders() {
+		return holders;
+	}
+
+	public void setHolders(List<Contact> holders) {
+		this.holders = holders;
+	}
+
+	/**
+	 * How many fragments were acknowledged
+	 */
+	public int getStored() {
+		return stored;
+	}
+
+	public void setStored(int stored) {
+		this.stored = stored;
+	}
+}
@@ -0,0 +1,48 @@
+package me.bcap.dht.client.operation;
+
+import me.bcap.dht.message.request.KeyFilterRequest;
+import me.bcap.dht.message.response.KeyFilterResponse;
+import me.bcap.dht.message.response.Response;
+import me.bcap.dht.node.Contact;
+import me.bcap.dht.node.Node;
+
+/**
+ * Fetches the summary of the keys stored by a contact, adding it to a {@link KeyFilterCache} if one is given
+ */
+public class FetchKeyFilter extends Operation<FetchKeyFilterResult> {
+
+	private Contact destination;
+	private KeyFilterCache cache;
+
+	public FetchKeyFilter(Node source, Contact destination) {
+		this(source, destination, null);
+	}
+
+	public FetchKeyFilter(Node source, Contact destination, KeyFilterCache cache) {
+		super(source);
+		this.destination = destination;
+		this.cache = cache;
+	}
+
+	protected void executeImpl() {
+		KeyFilterRequest request = new KeyFilterRequest();
+		request.setDestination(destination);
+		this.sendRequest(request);
+	}
+
+	public void handleResponse(Response response) {
+		KeyFilterResponse filterResponse = (KeyFilterResponse) response;
+		if (cache != null)
+			cache.update(destination, filterResponse.getFilter());
+		FetchKeyFilterResult result = new FetchKeyFilterResult();
+		result.setFilter(filterResponse.getFilter());
+		this.setResult(result);
+	}
+
+	public void handleException(Exception exception) {
+		FetchKeyFilterResult result = new FetchKeyFilterResult();
+		result.setException(exception);
+		this.setResult(result);
+	}
+
+}
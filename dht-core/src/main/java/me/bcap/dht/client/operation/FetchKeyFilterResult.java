@@ -0,0 +1,16 @@
+package me.bcap.dht.client.operation;
+
+import me.bcap.dht.node.filter.BloomFilter;
+
+public class FetchKeyFilterResult extends OperationResult {
+
+	private BloomFilter filter;
+
+	public BloomFilter getFilter() {
+		return filter;
+	}
+
+	public void setFilter(BloomFilter filter) {
+		this.filter = filter;
+	}
+}
@@ -1,31 +1,27 @@
 package me.bcap.dht.client.operation;
 
-import me.bcap.dht.message.response.Response;
+import java.util.List;
+
+import me.bcap.dht.message.request.FindNodeRequest;
+import me.bcap.dht.message.request.IdentifierRequest;
+import me.bcap.dht.node.Contact;
 import me.bcap.dht.node.Identifier;
 import me.bcap.dht.node.Node;
 
-public class FindNode extends Operation<FindNodeResult> {
+public class FindNode extends Lookup<FindNodeResult> {
 
-	private Identifier key;
-	
 	public FindNode(Node source, Identifier key) {
-		super(source);
-		this.key = key;
-	}
-	
-	protected void executeImpl() {
-		// TODO Auto-generated method stub
-		
+		super(source, key);
 	}
 
-	public void handleResponse(Response response) {
-		// TODO Auto-generated method stub
-		
+	protected IdentifierRequest createRequest() {
+		return new FindNodeRequest();
 	}
 
-	public void handleException(Exception exception) {
-		// TODO Auto-generated method stub
-		
+	protected void lookupFinished(List<Contact> closest) {
+		FindNodeResult result = new FindNodeResult();
+		result.setContacts(closest);
+		this.setResult(result);
 	}
 
 }
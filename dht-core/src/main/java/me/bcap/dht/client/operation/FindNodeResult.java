@@ -1,5 +1,18 @@
 package me.bcap.dht.client.operation;
 
+import java.util.List;
+
+import me.bcap.dht.node.Contact;
+
 public class FindNodeResult extends OperationResult {
 
+	private List<Contact> contacts;
+
+	public List<Contact> getContacts() {
+		return contacts;
+	}
+
+	public void setContacts(List<Contact> contacts) {
+		this.contacts = contacts;
+	}
 }
@@ -1,35 +1,306 @@
 package me.bcap.dht.client.operation;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+
+import org.apache.log4j.Logger;
+
+import me.bcap.dht.client.ResponseHandler;
+import me.bcap.dht.message.request.FindNodeRequest;
 import me.bcap.dht.message.request.FindValueRequest;
+import me.bcap.dht.message.request.IdentifierRequest;
+import me.bcap.dht.message.request.Request;
+import me.bcap.dht.message.response.FindValueResponse;
 import me.bcap.dht.message.response.Response;
+import me.bcap.dht.node.Contact;
 import me.bcap.dht.node.Identifier;
 import me.bcap.dht.node.Node;
 
-public class FindValue extends Operation<FindValueResult> {
+/**
+ * Iterative lookup of a value, stopping at the first contact that holds it.
+ * <p>
+ * With a {@link HedgePolicy} set, a contact that takes longer than the policy hedge delay to answer gets a duplicate
+ * of its request sent to the next closest contact not yet asked. Whichever of the two answers first is used and the
+ * request to the other one is cancelled.
+ * <p>
+ * With a {@link KeyFilterCache} set, contacts whose key summary proves they do not hold the value are only asked for
+ * the contacts they know closer to the key, with a find node request, so that the lookup still gets past them.
+ * <p>
+ * Values too large to be sent inline are only located, see {@link FindValueResult#isChunked()}. For keys holding a set
+ * of elements, the first contact holding any returns a random sample of them.
+ * <p>
+ * With a {@link ValueCache} set, keys found recently are not looked up again and concurrent lookups of the same key
+ * share one lookup. Lookups asking for a number of elements of a set bypass the cache.
+ */
+public class FindValue extends Lookup<FindValueResult> {
+
+	private static final Logger logger = Logger.getLogger(FindValue.class);
+
+	private HedgePolicy hedgePolicy;
+	private KeyFilterCache keyFilterCache;
+	private ValueCache valueCache;
 
-	private Identifier key;
+	private int maxElements;
+
+	private Set<Request> outstanding = new HashSet<Request>();
 
 	public FindValue(Node source, Identifier key) {
-		super(source);
-		this.key = key;
+		super(source, key);
 	}
 
-	@Override
 	protected void executeImpl() {
+		if (valueCache != null && maxElements == 0 && valueCache.serve(this))
+			return;
+		super.executeImpl();
+	}
+
+	protected String coalescingKey() {
+		return super.coalescingKey() + "/" + maxElements;
+	}
+
+	protected IdentifierRequest createRequest() {
 		FindValueRequest request = new FindValueRequest();
+		request.setMaxElements(maxElements);
+		return request;
+	}
+
+	protected void query(Contact contact) {
+		new HedgedQuery(contact).start();
+	}
+
+	protected boolean handleLookupResponse(Contact contact, Response response) {
+		if (!(response instanceof FindValueResponse))
+			return super.handleLookupResponse(contact, response);
+
+		if (!stop())
+			return true;
+
+		FindValueResponse valueResponse = (FindValueResponse) response;
+		FindValueResult result = new FindValueResult();
+		if (valueResponse.getElements() != null) {
+			result.setElements(valueResponse.getElements());
+		} else {
+			result.setData(valueResponse.getData());
+			result.setLength(valueResponse.getLength());
+			result.setVersion(valueResponse.getVersion());
+		}
+		result.setHolder(contact);
+		this.setResult(result);
+
+		cancelOutstanding();
+		return true;
+	}
+
+	protected void lookupFinished(List<Contact> closest) {
+		FindValueResult result = new FindValueResult();
+		result.setContacts(closest);
+		this.setResult(result);
+	}
+
+	private boolean isCertainlyMissing(Contact contact) {
+		return keyFilterCache != null && keyFilterCache.isCertainlyMissing(contact, key);
+	}
+
+	private Request send(Contact contact, ResponseHandler handler) {
+		IdentifierRequest request = isCertainlyMissing(contact) ? new FindNodeRequest() : createRequest();
 		request.setIdentifier(key);
+		request.setDestination(contact);
+		synchronized (outstanding) {
+			outstanding.add(request);
+		}
+		sendRequest(request, handler);
+		return request;
 	}
-	
-	@Override
-	public void handleResponse(Response response) {
-		// TODO Auto-generated method stub
-		
+
+	private void cancel(Request request) {
+		synchronized (outstanding) {
+			outstanding.remove(request);
+		}
+		messageServer.cancel(request);
 	}
 
-	@Override
-	public void handleException(Exception exception) {
-		// TODO Auto-generated method stub
-		
+	private void cancelOutstanding() {
+		List<Request> toCancel;
+		synchronized (outstanding) {
+			toCancel = new ArrayList<Request>(outstanding);
+			outstanding.clear();
+		}
+		for (Request request : toCancel)
+			messageServer.cancel(request);
 	}
 
+	/**
+	 * The request to one contact plus, if it is late, its hedge to another one. It reports back to the lookup only
+	 * once, as if a single contact had been asked
+	 */
+	class HedgedQuery {
+		private Contact primary;
+		private Contact hedge;
+		private Request primaryRequest;
+		private Request hedgeRequest;
+		private ScheduledFuture<?> hedgeTimer;
+
+		private int sent = 0;
+		private int failed = 0;
+		private boolean done = false;
+
+		HedgedQuery(Contact primary) {
+			this.primary = primary;
+		}
+
+		void start() {
+			synchronized (this) {
+				sent++;
+			}
+			Request request = send(primary, new Handler(primary));
+			synchronized (this) {
+				primaryRequest = request;
+			}
+
+			if (hedgePolicy != null) {
+				hedgePolicy.requestSent();
+				ScheduledFuture<?> timer = hedgePolicy.schedule(new Runnable() {
+					public void run() {
+						hedge();
+					}
+				}, hedgePolicy.getHedgeDelay());
+				synchronized (this) {
+					hedgeTimer = timer;
+				}
+			}
+		}
+
+		private void hedge() {
+			Contact contact;
+			synchronized (this) {
+				if (done || isFinished() || !hedgePolicy.tryAcquireHedge())
+					return;
+				// a hedge has to be able to answer with the value, contacts certainly missing it are left to the
+				// lookup, which still asks them for closer contacts
+				List<Contact> missing = new ArrayList<Contact>();
+				contact = claimNextContact();
+				while (contact != null && isCertainlyMissing(contact)) {
+					missing.add(contact);
+					contact = claimNextContact();
+				}
+				for (Contact skipped : missing)
+					releaseContact(skipped);
+				if (contact == null)
+					return;
+				hedge = contact;
+				sent++;
+			}
+
+			logger.debug("Contact " + primary + " is late answering the lookup for key " + key + ", hedging to " + contact);
+			Request request = send(contact, new Handler(contact));
+			boolean lost;
+			synchronized (this) {
+				hedgeRequest = request;
+				lost = done;
+			}
+			if (lost)
+				cancel(request);
+		}
+
+		private void responded(Contact contact, long latency, Response response) {
+			Request loser;
+			Contact loserContact;
+			synchronized (this) {
+				if (done)
+					return;
+				done = true;
+				boolean primaryWon = contact == primary;
+				loser = primaryWon ? hedgeRequest : primaryRequest;
+				loserContact = primaryWon ? hedge : primary;
+				if (hedgeTimer != null)
+					hedgeTimer.cancel(false);
+			}
+
+			if (hedgePolicy != null)
+				hedgePolicy.recordLatency(latency);
+			if (loser != null)
+				cancel(loser);
+			// a hedge that lost can still be asked later, a primary that lost was just slow
+			if (loserContact != null && loserContact == hedge)
+				releaseContact(loserContact);
+
+			contactResponded(contact, response);
+		}
+
+		private void failed(Contact contact, Exception exception) {
+			boolean allFailed;
+			synchronized (this) {
+				if (done)
+					return;
+				failed++;
+				allFailed = failed == sent;
+				if (allFailed) {
+					done = true;
+					if (hedgeTimer != null)
+						hedgeTimer.cancel(false);
+				}
+			}
+
+			// the lookup only hears about the last failure, the other contact is dropped on its own
+			if (allFailed)
+				contactFailed(contact, exception);
+			else
+				dropContact(contact);
+		}
+
+		class Handler implements ResponseHandler {
+			private Contact contact;
+			private long start = System.currentTimeMillis();
+
+			Handler(Contact contact) {
+				this.contact = contact;
+			}
+
+			public void handleResponse(Response response) {
+				responded(contact, System.currentTimeMillis() - start, response);
+			}
+
+			public void handleException(Exception exception) {
+				failed(contact, exception);
+			}
+		}
+	}
+
+	/**
+	 * How many elements to ask for when the key holds a set, 0 leaving it to the contacts
+	 */
+	public int getMaxElements() {
+		return maxElements;
+	}
+
+	public void setMaxElements(int maxElements) {
+		this.maxElements = maxElements;
+	}
+
+	public HedgePolicy getHedgePolicy() {
+		return hedgePolicy;
+	}
+
+	public void setHedgePolicy(HedgePolicy hedgePolicy) {
+		this.hedgePolicy = hedgePolicy;
+	}
+
+	public ValueCache getValueCache() {
+		return valueCache;
+	}
+
+	public void setValueCache(ValueCache valueCache) {
+		this.valueCache = valueCache;
+	}
+
+	public KeyFilterCache getKeyFilterCache() {
+		return keyFilterCache;
+	}
+
+	public void setKeyFilterCache(KeyFilterCache keyFilterCache) {
+		this.keyFilterCache = keyFilterCache;
+	}
 }
@@ -1,5 +1,84 @@
 package me.bcap.dht.client.operation;
 
+import java.util.List;
+
+import me.bcap.dht.node.Contact;
+
 public class FindValueResult extends OperationResult {
 
+	private byte[] data;
+	private int length = -1;
+	private long version;
+	private List<byte[]> elements;
+	private Contact holder;
+	private List<Contact> contacts;
+
+	public boolean isFound() {
+		return data != null || length >= 0 || elements != null;
+	}
+
+	/**
+	 * Whether the value was found but is too large to have been sent along, in which case it has to be read from the
+	 * holder with a {@link ChunkedFetch}
+	 */
+	public boolean isChunked() {
+		return data == null && length >= 0;
+	}
+
+	public byte[] getData() {
+		return data;
+	}
+
+	public void setData(byte[] data) {
+		this.data = data;
+	}
+
+	/**
+	 * Length of the value found, -1 if it was not found
+	 */
+	public int getLength() {
+		return data != null ? data.length : length;
+	}
+
+	public void setLength(int length) {
+		this.length = length;
+	}
+
+	/**
+	 * Version of the value on its holder, to update it there with a {@link CompareAndSet}
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	public void setVersion(long version) {
+		this.version = version;
+	}
+
+	/**
+	 * A random sample of the elements of a key holding a set, null for keys holding a single value
+	 */
+	public List<byte[]> getElements() {
+		return elements;
+	}
+
+	public void setElements(List<byte[]> elements) {
+		this.elements = elements;
+	}
+
+	public Contact getHolder() {
+		return holder;
+	}
+
+	public void setHolder(Contact holder) {
+		this.holder = holder;
+	}
+
+	public List<Contact> getContacts() {
+		return contacts;
+	}
+
+	public void setContacts(List<Contact> contacts) {
+		this.contacts = contacts;
+	}
 }
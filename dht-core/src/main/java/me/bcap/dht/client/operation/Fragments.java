@@ -0,0 +1,116 @@
+package me.bcap.dht.client.operation;
+
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import me.bcap.dht.node.Contact;
+import me.bcap.dht.node.DistanceComparator;
+import me.bcap.dht.node.Identifier;
+import me.bcap.dht.node.Node;
+import me.bcap.dht.util.ReedSolomon;
+
+/**
+ * Layout of the erasure coded fragments of a value. Each fragment starts with a header holding the value length, the
+ * fragment index and the data and parity fragment counts, followed by its shard of the value. Fragments are stored
+ * under identifiers derived from the value key and the fragment index.
+ */
+class Fragments {
+
+	static final int HEADER_SIZE = 7;
+
+	private Fragments() {
+	}
+
+	static Identifier key(Identifier key, int index) {
+		try {
+			MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+			sha1.update(key.getValue().toByteArray());
+			sha1.update((byte) index);
+			return new Identifier(new BigInteger(1, sha1.digest()));
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-1 is not available in this JVM", e);
+		}
+	}
+
+	/**
+	 * The nodes that may hold a fragment, closest to its identifier first: those found by a lookup of the identifier
+	 * plus the node that ran it, which lookups leave out
+	 */
+	static List<Contact> candidates(Node source, Identifier fragmentKey, List<Contact> found, int count) {
+		List<Contact> contacts = new ArrayList<Contact>(found);
+		contacts.add(source.asContact());
+		Collections.sort(contacts, new DistanceComparator(fragmentKey));
+		return contacts.size() > count ? new ArrayList<Contact>(contacts.subList(0, count)) : contacts;
+	}
+
+	static byte[][] split(byte[] value, int dataFragments, int parityFragments) {
+		int shardSize = Math.max(1, (value.length + dataFragments - 1) / dataFragments);
+		byte[][] shards = new byte[dataFragments + parityFragments][shardSize];
+		for (int i = 0; i < dataFragments; i++) {
+			int offset = i * shardSize;
+			if (offset < value.length)
+				System.arraycopy(value, offset, shards[i], 0, Math.min(shardSize, value.length - offset));
+		}
+		new ReedSolomon(dataFragments, parityFragments).encode(shards);
+
+		byte[][] fragments = new byte[shards.length][];
+		for (int i = 0; i < shards.length; i++) {
+			byte[] fragment = new byte[HEADER_SIZE + shardSize];
+			fragment[0] = (byte) (value.length >>> 24);
+			fragment[1] = (byte) (value.length >>> 16);
+			fragment[2] = (byte) (value.length >>> 8);
+			fragment[3] = (byte) value.length;
+			fragment[4] = (byte) i;
+			fragment[5] = (byte) dataFragments;
+			fragment[6] = (byte) parityFragments;
+			System.arraycopy(shards[i], 0, fragment, HEADER_SIZE, shardSize);
+			fragments[i] = fragment;
+		}
+		return fragments;
+	}
+
+	/**
+	 * Whether a fragment read back has the expected index and counts
+	 */
+	static boolean isValid(byte[] fragment, int index, int dataFragments, int parityFragments) {
+		return fragment != null && fragment.length > HEADER_SIZE && (fragment[4] & 0xff) == index && (fragment[5] & 0xff) == dataFragments && (fragment[6] & 0xff) == parityFragments;
+	}
+
+	/**
+	 * Rebuilds the value from the fragments found, indexed by fragment index with null for the missing ones. Returns
+	 * null if fewer than the data fragments count were found or if they do not agree with each other
+	 */
+	static byte[] join(byte[][] fragments, int dataFragments, int parityFragments) {
+		int length = -1;
+		int shardSize = -1;
+		byte[][] shards = new byte[dataFragments + parityFragments][];
+		boolean[] present = new boolean[shards.length];
+		for (int i = 0; i < fragments.length; i++) {
+			byte[] fragment = fragments[i];
+			if (fragment == null)
+				continue;
+			int fragmentLength = ((fragment[0] & 0xff) << 24) | ((fragment[1] & 0xff) << 16) | ((fragment[2] & 0xff) << 8) | (fragment[3] & 0xff);
+			if (length == -1) {
+				length = fragmentLength;
+				shardSize = fragment.length - HEADER_SIZE;
+			} else if (length != fragmentLength || shardSize != fragment.length - HEADER_SIZE) {
+				return null;
+			}
+			shards[i] = new byte[shardSize];
+			System.arraycopy(fragment, HEADER_SIZE, shards[i], 0, shardSize);
+			present[i] = true;
+		}
+
+		if (length < 0 || length > shardSize * dataFragments || !new ReedSolomon(dataFragments, parityFragments).decode(shards, present))
+			return null;
+
+		byte[] value = new byte[length];
+		for (int i = 0, offset = 0; i < dataFragments && offset < length; i++, offset += shardSize)
+			System.arraycopy(shards[i], 0, value, offset, Math.min(shardSize, length - offset));
+		return value;
+	}
+}
@@ -0,0 +1,111 @@
+package me.bcap.dht.client.operation;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import me.bcap.dht.util.LatencyTracker;
+
+/**
+ * Decides when a lookup request that is taking too long gets a duplicate sent to another contact. The hedge delay is
+ * a percentile of the recently observed round trip times and the hedges are limited by a budget: every request sent
+ * earns a fraction of a hedge, so hedges can never be more than that fraction of the traffic. One policy is meant to
+ * be shared by all the lookups of a process, so that both the latencies and the budget are global.
+ */
+public class HedgePolicy {
+
+	public static final double DEFAULT_PERCENTILE = 95;
+	public static final double DEFAULT_BUDGET_PERCENTAGE = 5;
+	public static final long DEFAULT_INITIAL_DELAY = 1000;
+	public static final int MINIMUM_SAMPLES = 20;
+	public static final int MAXIMUM_SAVED_HEDGES = 10;
+
+	// the budget is kept in hundredths of a percent of a hedge to avoid rounding errors
+	private static final long HEDGE_COST = 100 * 100;
+
+	private static final ScheduledExecutorService HEDGE_SCHEDULER = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "HedgePolicy-scheduler");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	private LatencyTracker latencies = new LatencyTracker();
+	private double percentile;
+	private double budgetPercentage;
+	private long initialDelay = DEFAULT_INITIAL_DELAY;
+
+	private long budget = 0;
+	private long requests = 0;
+	private long hedges = 0;
+
+	public HedgePolicy() {
+		this(DEFAULT_PERCENTILE, DEFAULT_BUDGET_PERCENTAGE);
+	}
+
+	public HedgePolicy(double percentile, double budgetPercentage) {
+		this.percentile = percentile;
+		this.budgetPercentage = budgetPercentage;
+	}
+
+	public void recordLatency(long millis) {
+		latencies.record(millis);
+	}
+
+	/**
+	 * Returns how long to wait for a response before hedging. Until enough round trips were observed the initial
+	 * delay is used
+	 */
+	public long getHedgeDelay() {
+		if (latencies.getSampleCount() < MINIMUM_SAMPLES)
+			return initialDelay;
+		return latencies.getPercentile(percentile);
+	}
+
+	public synchronized void requestSent() {
+		requests++;
+		budget = Math.min(MAXIMUM_SAVED_HEDGES * HEDGE_COST, budget + Math.round(budgetPercentage * 100));
+	}
+
+	/**
+	 * Takes one hedge from the budget, returning false if the budget is exhausted
+	 */
+	public synchronized boolean tryAcquireHedge() {
+		if (budget < HEDGE_COST)
+			return false;
+		budget -= HEDGE_COST;
+		hedges++;
+		return true;
+	}
+
+	ScheduledFuture<?> schedule(Runnable hedge, long delay) {
+		return HEDGE_SCHEDULER.schedule(hedge, delay, TimeUnit.MILLISECONDS);
+	}
+
+	public synchronized long getRequests() {
+		return requests;
+	}
+
+	public synchronized long getHedges() {
+		return hedges;
+	}
+
+	public double getPercentile() {
+		return percentile;
+	}
+
+	public double getBudgetPercentage() {
+		return budgetPercentage;
+	}
+
+	public long getInitialDelay() {
+		return initialDelay;
+	}
+
+	public void setInitialDelay(long initialDelay) {
+		this.initialDelay = initialDelay;
+	}
+}
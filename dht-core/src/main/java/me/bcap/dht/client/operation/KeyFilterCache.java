@@ -0,0 +1,69 @@
+package me.bcap.dht.client.operation;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import me.bcap.dht.node.Contact;
+import me.bcap.dht.node.Identifier;
+import me.bcap.dht.node.filter.BloomFilter;
+
+/**
+ * Key summaries fetched from other nodes with {@link FetchKeyFilter}, used by {@link FindValue} to skip asking nodes
+ * that certainly do not hold a key. A summary does not know about the keys stored after it was taken, so it is only
+ * trusted up to a maximum age.
+ */
+public class KeyFilterCache {
+
+	public static final long DEFAULT_MAX_AGE = 60000;
+
+	private long maxAge;
+	private Map<Identifier, Summary> summaries = new ConcurrentHashMap<Identifier, Summary>();
+
+	public KeyFilterCache() {
+		this(DEFAULT_MAX_AGE);
+	}
+
+	public KeyFilterCache(long maxAge) {
+		this.maxAge = maxAge;
+	}
+
+	public void update(Contact contact, BloomFilter filter) {
+		summaries.put(contact.asIdentifier(), new Summary(filter, System.currentTimeMillis()));
+	}
+
+	/**
+	 * Returns true only if a summary of the contact no older than the maximum age proves it does not hold the key
+	 */
+	public boolean isCertainlyMissing(Contact contact, Identifier key) {
+		Summary summary = summaries.get(contact.asIdentifier());
+		if (summary == null)
+			return false;
+		if (System.currentTimeMillis() - summary.timestamp > maxAge) {
+			summaries.remove(contact.asIdentifier());
+			return false;
+		}
+		return !summary.filter.mightContain(key);
+	}
+
+	public void remove(Contact contact) {
+		summaries.remove(contact.asIdentifier());
+	}
+
+	public int size() {
+		return summaries.size();
+	}
+
+	public long getMaxAge() {
+		return maxAge;
+	}
+
+	static class Summary {
+		private BloomFilter filter;
+		private long timestamp;
+
+		Summary(BloomFilter filter, long timestamp) {
+			this.filter = filter;
+			this.timestamp = timestamp;
+		}
+	}
+}
@@ -0,0 +1,195 @@
+package me.bcap.dht.client.operation;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+import me.bcap.dht.message.request.HandoffRequest;
+import me.bcap.dht.message.response.HandoffResponse;
+import me.bcap.dht.message.response.Response;
+import me.bcap.dht.node.Bucket;
+import me.bcap.dht.node.Contact;
+import me.bcap.dht.node.Identifier;
+import me.bcap.dht.node.Node;
+
+/**
+ * Streams to a contact the stored keys it should hold as well, closest first: those closer to it than to the source
+ * node and for which it is among the {@link #getReplication()} closest contacts the source node knows of. Keys are sent
+ * in batches of about {@link #getBatchSize()} bytes, one batch at a time, and the next batch is held back as long as
+ * needed to keep the stream under {@link #getBandwidth()} bytes per second.
+ */
+public class KeyHandoff extends Operation<KeyHandoffResult> {
+
+	private static final Logger logger = Logger.getLogger(KeyHandoff.class);
+
+	public static final int DEFAULT_BATCH_SIZE = 64 * 1024;
+	public static final long DEFAULT_BANDWIDTH = 256 * 1024;
+	public static final int DEFAULT_REPLICATION = Bucket.MAX_SIZE;
+
+	private static final ScheduledExecutorService STREAM_SCHEDULER = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "KeyHandoff-stream");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	private Contact destination;
+
+	private int batchSize = DEFAULT_BATCH_SIZE;
+	private long bandwidth = DEFAULT_BANDWIDTH;
+	private int replication = DEFAULT_REPLICATION;
+
+	private Iterator<Identifier> keys;
+	private long start;
+	private int sentKeys = 0;
+	private int accepted = 0;
+	private long sentBytes = 0;
+
+	public KeyHandoff(Node source, Contact destination) {
+		super(source);
+		this.destination = destination;
+	}
+
+	protected void executeImpl() {
+		keys = keysFor(getSource(), destination, replication);
+		start = System.currentTimeMillis();
+		scheduleNextBatch(0);
+	}
+
+	/**
+	 * The keys of the node that should be handed off to the contact, closest to it first
+	 */
+	static Iterator<Identifier> keysFor(final Node node, final Contact contact, final int replication) {
+		final Iterator<Identifier> closer = node.getKeyIndex().closerTo(contact, node);
+		return new Iterator<Identifier>() {
+			private Identifier next;
+
+			public boolean hasNext() {
+				while (next == null && closer.hasNext()) {
+					Identifier key = closer.next();
+					if (node.isAmongClosestContacts(contact, key, replication))
+						next = key;
+				}
+				return next != null;
+			}
+
+			public Identifier next() {
+				if (!hasNext())
+					throw new NoSuchElementException();
+				Identifier key = next;
+				next = null;
+				return key;
+			}
+
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	private void sendNextBatch() {
+		Map<Identifier, byte[]> entries = new LinkedHashMap<Identifier, byte[]>();
+		long batchBytes = 0;
+		while (batchBytes < batchSize && keys.hasNext()) {
+			Identifier key = keys.next();
+			byte[] value = getSource().getDataStorage().get(key);
+			// removed since the index was read
+			if (value == null)
+				continue;
+			entries.put(key, value);
+			batchBytes += value.length;
+		}
+
+		if (entries.isEmpty()) {
+			logger.debug("Handed off " + sentKeys + " keys (" + sentBytes + " bytes) to " + destination + " in " + (System.currentTimeMillis() - start) + "ms");
+			this.setResult(createResult());
+			return;
+		}
+
+		synchronized (this) {
+			sentKeys += entries.size();
+			sentBytes += batchBytes;
+		}
+
+		HandoffRequest request = new HandoffRequest();
+		request.setEntries(entries);
+		request.setDestination(destination);
+		this.sendRequest(request);
+	}
+
+	private void scheduleNextBatch(long delay) {
+		STREAM_SCHEDULER.schedule(new Runnable() {
+			public void run() {
+				try {
+					sendNextBatch();
+				} catch (RuntimeException e) {
+					handleException(e);
+				}
+			}
+		}, delay, TimeUnit.MILLISECONDS);
+	}
+
+	public void handleResponse(Response response) {
+		long delay;
+		synchronized (this) {
+			accepted += ((HandoffResponse) response).getAccepted();
+			// the time the bytes sent so far should have taken at the configured bandwidth, minus the time they took
+			delay = sentBytes * 1000 / bandwidth - (System.currentTimeMillis() - start);
+		}
+		scheduleNextBatch(Math.max(0, delay));
+	}
+
+	public void handleException(Exception exception) {
+		logger.warn("Handoff of keys to " + destination + " failed after " + sentKeys + " keys", exception);
+		KeyHandoffResult result = createResult();
+		result.setException(exception);
+		this.setResult(result);
+	}
+
+	private synchronized KeyHandoffResult createResult() {
+		KeyHandoffResult result = new KeyHandoffResult();
+		result.setKeys(sentKeys);
+		result.setAccepted(accepted);
+		result.setBytes(sentBytes);
+		return result;
+	}
+
+	public Contact getDestination() {
+		return destination;
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	public long getBandwidth() {
+		return bandwidth;
+	}
+
+	public void setBandwidth(long bandwidth) {
+		this.bandwidth = bandwidth;
+	}
+
+	/**
+	 * How many of the contacts closest to a key should hold it
+	 */
+	public int getReplication() {
+		return replication;
+	}
+
+	public void setReplication(int replication) {
+		this.replication = replication;
+	}
+}
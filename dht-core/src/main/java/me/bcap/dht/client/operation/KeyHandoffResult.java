@@ -0,0 +1,38 @@
+package me.bcap.dht.client.operation;
+
+public class KeyHandoffResult extends OperationResult {
+
+	private int keys;
+	private int accepted;
+	private long bytes;
+
+	/**
+	 * How many keys were sent to the destination
+	 */
+	public int getKeys() {
+		return keys;
+	}
+
+	public void setKeys(int keys) {
+		this.keys = keys;
+	}
+
+	/**
+	 * How many of the keys sent the destination did not have yet
+	 */
+	public int getAccepted() {
+		return accepted;
+	}
+
+	public void setAccepted(int accepted) {
+		this.accepted = accepted;
+	}
+
+	public long getBytes() {
+		return bytes;
+	}
+
+	public void setBytes(long bytes) {
+		this.bytes = bytes;
+	}
+}
@@ -0,0 +1,94 @@
+package me.bcap.dht.client.operation;
+
+import java.util.LinkedList;
+import java.util.Queue;
+
+import me.bcap.dht.client.MessageSender;
+import me.bcap.dht.node.Contact;
+import me.bcap.dht.node.ContactListener;
+import me.bcap.dht.node.Node;
+
+/**
+ * Starts a {@link KeyHandoff} whenever a node it is registered in learns about a contact that should hold some of its
+ * keys, being closer than the node to them and among the {@link #getReplication()} closest contacts it knows of for
+ * them. The check is made when the contact enters the routing table, whatever put it there, a request of the contact
+ * included, so that nodes joining through their own lookup get their keys. Handoffs run one at a time, so the
+ * configured bandwidth is the total used by all of them.
+ */
+public class KeyHandoffTrigger implements ContactListener {
+
+	private MessageSender messageServer;
+
+	private int batchSize = KeyHandoff.DEFAULT_BATCH_SIZE;
+	private long bandwidth = KeyHandoff.DEFAULT_BANDWIDTH;
+	private int replication = KeyHandoff.DEFAULT_REPLICATION;
+
+	private Queue<KeyHandoff> pending = new LinkedList<KeyHandoff>();
+	private KeyHandoff running;
+
+	public KeyHandoffTrigger(MessageSender messageServer) {
+		this.messageServer = messageServer;
+	}
+
+	public void contactAdded(Node node, Contact contact) {
+		if (!KeyHandoff.keysFor(node, contact, replication).hasNext())
+			return;
+
+		KeyHandoff handoff = new KeyHandoff(node, contact);
+		handoff.setMessageServer(messageServer);
+		handoff.setBatchSize(batchSize);
+		handoff.setBandwidth(bandwidth);
+		handoff.setReplication(replication);
+		synchronized (this) {
+			pending.add(handoff);
+		}
+		startNext();
+	}
+
+	private void startNext() {
+		KeyHandoff next;
+		synchronized (this) {
+			if (running != null || pending.isEmpty())
+				return;
+			next = running = pending.poll();
+		}
+
+		next.addListener(new OperationListener<KeyHandoffResult>() {
+			public void operationCompleted(KeyHandoffResult result) {
+				synchronized (KeyHandoffTrigger.this) {
+					running = null;
+				}
+				startNext();
+			}
+		});
+		next.execute();
+	}
+
+	public synchronized int getPendingCount() {
+		return pending.size() + (running != null ? 1 : 0);
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	public long getBandwidth() {
+		return bandwidth;
+	}
+
+	public void setBandwidth(long bandwidth) {
+		this.bandwidth = bandwidth;
+	}
+
+	public int getReplication() {
+		return replication;
+	}
+
+	public void setReplication(int replication) {
+		this.replication = replication;
+	}
+}
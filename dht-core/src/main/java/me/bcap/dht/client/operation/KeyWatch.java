@@ -0,0 +1,132 @@
+package me.bcap.dht.client.operation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+import me.bcap.dht.client.MessageSender;
+import me.bcap.dht.node.Contact;
+import me.bcap.dht.node.Identifier;
+import me.bcap.dht.node.Node;
+
+/**
+ * Keeps a node subscribed to a key until cancelled. The subscription is renewed halfway through each lease, with a
+ * new lookup every time so that it follows the key as the nodes closest to it change.
+ */
+public class KeyWatch {
+
+	private static final Logger logger = Logger.getLogger(KeyWatch.class);
+
+	public static final long DEFAULT_LEASE = 60000;
+
+	private static final ScheduledExecutorService RENEWAL_SCHEDULER = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "KeyWatch-renewal");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	private Node source;
+	private Identifier key;
+	private MessageSender messageServer;
+
+	private long lease = DEFAULT_LEASE;
+	private int replication = Subscribe.DEFAULT_REPLICATION;
+
+	private List<Contact> subscribed = new ArrayList<Contact>();
+	private ScheduledFuture<?> renewal;
+	private boolean cancelled = false;
+
+	public KeyWatch(Node source, Identifier key, MessageSender messageServer) {
+		this.source = source;
+		this.key = key;
+		this.messageServer = messageServer;
+	}
+
+	/**
+	 * Subscribes right away and keeps renewing the subscription
+	 */
+	public void start() {
+		renew();
+	}
+
+	/**
+	 * Stops renewing and cancels the subscription on the contacts it was last made with
+	 */
+	public void cancel() {
+		List<Contact> toCancel;
+		synchronized (this) {
+			cancelled = true;
+			if (renewal != null)
+				renewal.cancel(false);
+			toCancel = new ArrayList<Contact>(subscribed);
+			subscribed.clear();
+		}
+		if (!toCancel.isEmpty()) {
+			Subscribe unsubscribe = new Subscribe(source, toCancel, key, 0);
+			unsubscribe.setMessageServer(messageServer);
+			unsubscribe.execute();
+		}
+	}
+
+	private void renew() {
+		synchronized (this) {
+			if (cancelled)
+				return;
+		}
+		Subscribe subscribe = new Subscribe(source, key, lease);
+		subscribe.setMessageServer(messageServer);
+		subscribe.setReplication(replication);
+		subscribe.addListener(new OperationListener<SubscribeResult>() {
+			public void operationCompleted(SubscribeResult result) {
+				renewed(result);
+			}
+		});
+		subscribe.execute();
+	}
+
+	private void renewed(SubscribeResult result) {
+		if (result.getException() != null)
+			logger.warn("Could not renew the subscription to key " + key, result.getException());
+
+		// failed renewals are retried sooner, before the leases still held run out
+		long delay = result.getLease() > 0 ? result.getLease() / 2 : lease / 4;
+		synchronized (this) {
+			if (cancelled)
+				return;
+			subscribed = new ArrayList<Contact>(result.getSubscribed());
+			renewal = RENEWAL_SCHEDULER.schedule(new Runnable() {
+				public void run() {
+					renew();
+				}
+			}, Math.max(1, delay), TimeUnit.MILLISECONDS);
+		}
+	}
+
+	public synchronized List<Contact> getSubscribed() {
+		return new ArrayList<Contact>(subscribed);
+	}
+
+	public long getLease() {
+		return lease;
+	}
+
+	public void setLease(long lease) {
+		this.lease = lease;
+	}
+
+	public int getReplication() {
+		return replication;
+	}
+
+	public void setReplication(int replication) {
+		this.replication = replication;
+	}
+}
@@ -0,0 +1,285 @@
+package me.bcap.dht.client.operation;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import org.apache.log4j.Logger;
+
+import me.bcap.dht.client.ResponseHandler;
+import me.bcap.dht.message.request.IdentifierRequest;
+import me.bcap.dht.message.response.FindNodeResponse;
+import me.bcap.dht.message.response.Response;
+import me.bcap.dht.node.Bucket;
+import me.bcap.dht.node.Contact;
+import me.bcap.dht.node.DistanceComparator;
+import me.bcap.dht.node.Identifier;
+import me.bcap.dht.node.Node;
+import me.bcap.dht.trace.Tracer;
+
+/**
+ * Base of the iterative Kademlia lookups. Starting from the closest contacts known by the source node, it keeps
+ * querying the closest contacts not yet asked, at most {@link #getParallelism()} at a time, until every one of the
+ * closest {@link #getResultSize()} contacts seen so far has answered or failed.
+ * <p>
+ * With a {@link LookupCoalescer} set, a lookup of a target already being looked up completes with the result of the
+ * running lookup instead of sending its own requests.
+ * <p>
+ * With a {@link Tracer} set, sampled lookups record each request in a {@link #getTrace() trace}, finished and written to
+ * the trace log when the lookup completes.
+ */
+public abstract class Lookup<T extends OperationResult> extends Operation<T> {
+
+	private static final Logger logger = Logger.getLogger(Lookup.class);
+
+	public static final int DEFAULT_PARALLELISM = 3;
+
+	protected Identifier key;
+
+	private int parallelism = DEFAULT_PARALLELISM;
+	private int resultSize = Bucket.MAX_SIZE;
+	private LookupCoalescer coalescer;
+	private Tracer tracer;
+
+	private SortedSet<Contact> shortlist;
+	private SortedSet<Contact> responded;
+	private Set<Identifier> contacted = new HashSet<Identifier>();
+	private int inFlight = 0;
+	private boolean finished = false;
+
+	public Lookup(Node source, Identifier key) {
+		super(source);
+		this.key = key;
+		this.shortlist = new TreeSet<Contact>(new DistanceComparator(key));
+		this.responded = new TreeSet<Contact>(new DistanceComparator(key));
+	}
+
+	protected void executeImpl() {
+		if (coalescer != null && coalescer.join(this))
+			return;
+		if (tracer != null)
+			setTrace(tracer.startTrace(getClass().getSimpleName() + " of " + key + " from " + getSource().asIdentifier()));
+		addContacts(getSource().getClosestContacts(key, resultSize));
+		queryNext();
+	}
+
+	/**
+	 * Identifies what the lookup looks for, lookups with equal keys are coalesced. Subclasses with settings that change
+	 * the result have to add them
+	 */
+	protected String coalescingKey() {
+		return getClass().getName() + "/" + getSource().asIdentifier() + "/" + key + "/" + resultSize;
+	}
+
+	/**
+	 * Completes the lookup with a result it did not look up itself
+	 */
+	void complete(T result) {
+		this.setResult(result);
+	}
+
+	protected boolean setResult(T result) {
+		// the trace is finished before the result is published, so that the caller finds it complete
+		if (getTrace() != null)
+			tracer.finishTrace(getTrace());
+		return super.setResult(result);
+	}
+
+	/**
+	 * Creates the request sent to each contact, its identifier and destination are filled in by the lookup
+	 */
+	protected abstract IdentifierRequest createRequest();
+
+	/**
+	 * Called when the lookup ends without having been stopped by {@link #handleLookupResponse(Contact, Response)},
+	 * with the closest contacts that answered, closest first
+	 */
+	protected abstract void lookupFinished(List<Contact> closest);
+
+	/**
+	 * Handles a successful response from a contact. Returns true to stop the lookup right away, in which case the
+	 * subclass is responsible for setting the operation result
+	 */
+	protected boolean handleLookupResponse(Contact contact, Response response) {
+		if (response instanceof FindNodeResponse)
+			addContacts(((FindNodeResponse) response).getContacts());
+		return false;
+	}
+
+	/**
+	 * Sends the lookup request to the given contact. Subclasses may override it to change how each contact is asked,
+	 * but must report back through {@link #contactResponded(Contact, Response)} or
+	 * {@link #contactFailed(Contact, Exception)} exactly once
+	 */
+	protected void query(final Contact contact) {
+		IdentifierRequest request = createRequest();
+		request.setIdentifier(key);
+		request.setDestination(contact);
+		sendRequest(request, new ResponseHandler() {
+			public void handleResponse(Response response) {
+				contactResponded(contact, response);
+			}
+
+			public void handleException(Exception exception) {
+				contactFailed(contact, exception);
+			}
+		});
+	}
+
+	protected synchronized void addContacts(Collection<Contact> contacts) {
+		if (contacts == null)
+			return;
+		for (Contact contact : contacts)
+			if (!contact.asIdentifier().equals(getSource().asIdentifier()))
+				shortlist.add(contact);
+	}
+
+	protected void contactResponded(Contact contact, Response response) {
+		synchronized (this) {
+			inFlight--;
+			if (finished)
+				return;
+			responded.add(contact);
+		}
+
+		if (handleLookupResponse(contact, response))
+			stop();
+		else
+			queryNext();
+	}
+
+	protected void contactFailed(Contact contact, Exception exception) {
+		logger.debug("Contact " + contact + " failed to answer the lookup for key " + key + ": " + exception);
+		synchronized (this) {
+			inFlight--;
+			shortlist.remove(contact);
+		}
+		queryNext();
+	}
+
+	/**
+	 * Takes the closest contact not yet asked, outside of the parallelism limit, for subclasses that send extra
+	 * requests on their own. Returns null if there is none
+	 */
+	protected synchronized Contact claimNextContact() {
+		int position = 0;
+		for (Contact contact : shortlist) {
+			if (position++ >= resultSize)
+				break;
+			if (contacted.add(contact.asIdentifier()))
+				return contact;
+		}
+		return null;
+	}
+
+	/**
+	 * Gives back a contact taken with {@link #claimNextContact()} without having used its answer
+	 */
+	protected synchronized void releaseContact(Contact contact) {
+		contacted.remove(contact.asIdentifier());
+	}
+
+	/**
+	 * Removes a contact taken with {@link #claimNextContact()} that failed to answer
+	 */
+	protected synchronized void dropContact(Contact contact) {
+		shortlist.remove(contact);
+	}
+
+	/**
+	 * Stops the lookup, no more contacts are asked and {@link #lookupFinished(List)} is not called. Returns false if
+	 * the lookup had already finished
+	 */
+	protected synchronized boolean stop() {
+		if (finished)
+			return false;
+		finished = true;
+		return true;
+	}
+
+	protected synchronized boolean isFinished() {
+		return finished;
+	}
+
+	private void queryNext() {
+		List<Contact> toQuery = new ArrayList<Contact>();
+		List<Contact> closest = null;
+
+		synchronized (this) {
+			if (finished)
+				return;
+
+			int position = 0;
+			for (Contact contact : shortlist) {
+				if (position++ >= resultSize || inFlight >= parallelism)
+					break;
+				if (contacted.add(contact.asIdentifier())) {
+					inFlight++;
+					toQuery.add(contact);
+				}
+			}
+
+			if (inFlight == 0) {
+				finished = true;
+				closest = new ArrayList<Contact>(responded);
+				if (closest.size() > resultSize)
+					closest = new ArrayList<Contact>(closest.subList(0, resultSize));
+			}
+		}
+
+		for (Contact contact : toQuery)
+			query(contact);
+
+		if (closest != null)
+			lookupFinished(closest);
+	}
+
+	// responses and failures are handled per contact, so the operation level ones are never used
+	public void handleResponse(Response response) {
+		logger.warn("Ignoring response not bound to a contact of the lookup: " + response);
+	}
+
+	public void handleException(Exception exception) {
+		logger.warn("Ignoring exception not bound to a contact of the lookup", exception);
+	}
+
+	public Identifier getKey() {
+		return key;
+	}
+
+	public LookupCoalescer getCoalescer() {
+		return coalescer;
+	}
+
+	public void setCoalescer(LookupCoalescer coalescer) {
+		this.coalescer = coalescer;
+	}
+
+	public Tracer getTracer() {
+		return tracer;
+	}
+
+	public void setTracer(Tracer tracer) {
+		this.tracer = tracer;
+	}
+
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	public void setParallelism(int parallelism) {
+		this.parallelism = parallelism;
+	}
+
+	public int getResultSize() {
+		return resultSize;
+	}
+
+	public void setResultSize(int resultSize) {
+		this.resultSize = resultSize;
+	}
+}
@@ -0,0 +1,73 @@
+package me.bcap.dht.client.operation;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs concurrent lookups of the same target only once. A lookup started while another one of the same kind, from the
+ * same node and for the same key is running does not send anything: it completes with the result of the running one.
+ * One coalescer is meant to be shared by all the lookups of a process.
+ */
+public class LookupCoalescer {
+
+	private Map<String, Lookup<?>> running = new HashMap<String, Lookup<?>>();
+
+	private AtomicLong started = new AtomicLong();
+	private AtomicLong coalesced = new AtomicLong();
+
+	/**
+	 * Joins the lookup to a running one with the same target. Returns false if there is none, in which case the lookup
+	 * has to run itself and the next lookups of its target join it until it completes
+	 */
+	@SuppressWarnings("unchecked")
+	public <T extends OperationResult> boolean join(final Lookup<T> lookup) {
+		final String target = lookup.coalescingKey();
+		Lookup<T> leader;
+		synchronized (this) {
+			// lookups with the same target are of the same class, so they share the result type
+			leader = (Lookup<T>) running.get(target);
+			if (leader == null)
+				running.put(target, lookup);
+		}
+
+		if (leader == null) {
+			started.incrementAndGet();
+			lookup.addListener(new OperationListener<T>() {
+				public void operationCompleted(T result) {
+					synchronized (LookupCoalescer.this) {
+						if (running.get(target) == lookup)
+							running.remove(target);
+					}
+				}
+			});
+			return false;
+		}
+
+		coalesced.incrementAndGet();
+		leader.addListener(new OperationListener<T>() {
+			public void operationCompleted(T result) {
+				lookup.complete(result);
+			}
+		});
+		return true;
+	}
+
+	public synchronized int countRunning() {
+		return running.size();
+	}
+
+	/**
+	 * Lookups that ran themselves
+	 */
+	public long getStarted() {
+		return started.get();
+	}
+
+	/**
+	 * Lookups that completed with the result of a running one
+	 */
+	public long getCoalesced() {
+		return coalesced.get();
+	}
+}
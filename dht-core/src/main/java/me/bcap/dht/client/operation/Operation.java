@@ -1,9 +1,12 @@
 package me.bcap.dht.client.operation;
 
-import java.util.concurrent.Callable;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
-import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.apache.log4j.Logger;
 
@@ -11,6 +14,7 @@ import me.bcap.dht.client.MessageSender;
 import me.bcap.dht.client.ResponseHandler;
 import me.bcap.dht.message.request.Request;
 import me.bcap.dht.node.Node;
+import me.bcap.dht.trace.Trace;
 
 public abstract class Operation <T extends OperationResult> implements ResponseHandler {
 
@@ -20,20 +24,22 @@ public abstract class Operation <T extends OperationResult> implements ResponseH
 
 	private T result;
 	private CountDownLatch resultLatch = new CountDownLatch(1);
+	private List<OperationListener<T>> listeners = new ArrayList<OperationListener<T>>();
 
 	private Node source;
-	
+	private Trace trace;
+
 	public Operation(Node source) {
 		this.source = source;
 	}
-	
+
 	public Future<T> execute() {
 		this.executeImpl();
-		return new FutureTask<T>(new CallableResult(this));
+		return new OperationFuture<T>(this);
 	}
-	
+
 	protected abstract void executeImpl();
-	
+
 	protected T getResult() {
 		try {
 			resultLatch.await();
@@ -42,15 +48,73 @@ public abstract class Operation <T extends OperationResult> implements ResponseH
 		}
 		return result;
 	}
-	
-	protected void setResult(T result) {
-		this.result = result;
-		resultLatch.countDown();
+
+	protected T getResult(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+		if (!resultLatch.await(timeout, unit))
+			throw new TimeoutException("Operation " + this.getClass().getSimpleName() + " did not complete within " + unit.toMillis(timeout) + "ms");
+		return result;
+	}
+
+	/**
+	 * Completes the operation, notifying its listeners. Only the first result set is kept, later ones are ignored and
+	 * make this method return false
+	 */
+	protected boolean setResult(T result) {
+		List<OperationListener<T>> toNotify;
+		synchronized (this) {
+			if (isDone())
+				return false;
+			this.result = result;
+			resultLatch.countDown();
+			toNotify = new ArrayList<OperationListener<T>>(listeners);
+			listeners.clear();
+		}
+		for (OperationListener<T> listener : toNotify)
+			notifyListener(listener, result);
+		return true;
+	}
+
+	public boolean isDone() {
+		return resultLatch.getCount() == 0;
+	}
+
+	/**
+	 * Registers a listener to be called once the operation completes, or right away if it already did
+	 */
+	public void addListener(OperationListener<T> listener) {
+		synchronized (this) {
+			if (!isDone()) {
+				listeners.add(listener);
+				return;
+			}
+		}
+		notifyListener(listener, result);
 	}
 
 	protected void sendRequest(Request request) {
+		sendRequest(request, this);
+	}
+
+	protected void sendRequest(Request request, ResponseHandler handler) {
 		request.setSource(source.asContact());
-		messageServer.send(request, this);
+		if (trace != null)
+			handler = trace.trace(request, handler);
+		messageServer.send(request, handler);
+	}
+
+	protected Node getSource() {
+		return source;
+	}
+
+	/**
+	 * The trace of the requests sent by this operation, null if it is not traced
+	 */
+	public Trace getTrace() {
+		return trace;
+	}
+
+	protected void setTrace(Trace trace) {
+		this.trace = trace;
 	}
 
 	public MessageSender getMessageServer() {
@@ -60,17 +124,41 @@ public abstract class Operation <T extends OperationResult> implements ResponseH
 	public void setMessageServer(MessageSender server) {
 		this.messageServer = server;
 	}
+
+	private void notifyListener(OperationListener<T> listener, T result) {
+		try {
+			listener.operationCompleted(result);
+		} catch (RuntimeException e) {
+			logger.error("Listener " + listener + " failed while handling the result of operation " + this.getClass().getSimpleName(), e);
+		}
+	}
 }
 
-class CallableResult<T extends OperationResult> implements Callable<T> {
+class OperationFuture<T extends OperationResult> implements Future<T> {
 
 	private Operation<T> operation;
-	
-	public CallableResult(Operation<T> operation) {
+
+	public OperationFuture(Operation<T> operation) {
 		this.operation = operation;
 	}
 
-	public T call() throws Exception {
+	public T get() throws InterruptedException, ExecutionException {
 		return operation.getResult();
 	}
-}
\ No newline at end of file
+
+	public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+		return operation.getResult(timeout, unit);
+	}
+
+	public boolean isDone() {
+		return operation.isDone();
+	}
+
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		return false;
+	}
+
+	public boolean isCancelled() {
+		return false;
+	}
+}
@@ -0,0 +1,14 @@
+package me.bcap.dht.client.operation;
+
+public class OperationException extends Exception {
+
+	private static final long serialVersionUID = 1L;
+
+	public OperationException(String message, Throwable cause) {
+		super(message, cause);
+	}
+
+	public OperationException(String message) {
+		super(message);
+	}
+}
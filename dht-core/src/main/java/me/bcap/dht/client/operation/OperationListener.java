@@ -0,0 +1,7 @@
+package me.bcap.dht.client.operation;
+
+public interface OperationListener<T extends OperationResult> {
+
+	public void operationCompleted(T result);
+
+}
@@ -28,7 +28,9 @@ public class Ping extends Operation<PingResult> {
 	}
 
 	public void handleException(Exception exception) {
-		// TODO Auto-generated method stub
+		PingResult result = new PingResult();
+		result.setException(exception);
+		this.setResult(result);
 	}
 
 }
@@ -0,0 +1,202 @@
+package me.bcap.dht.client.operation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+import me.bcap.dht.message.response.Response;
+import me.bcap.dht.node.Bucket;
+import me.bcap.dht.node.Contact;
+import me.bcap.dht.node.Identifier;
+import me.bcap.dht.node.Node;
+
+/**
+ * Stores a value on the nodes closest to its key. The closest nodes are found with a {@link FindNode} lookup and the
+ * value is sent to all of them in parallel, the operation completing as soon as the write quorum acknowledged it.
+ * Replicas that fail or time out keep being retried in the background, even after the operation completed.
+ */
+public class ReplicatedStore extends Operation<ReplicatedStoreResult> {
+
+	private static final Logger logger = Logger.getLogger(ReplicatedStore.class);
+
+	public static final int DEFAULT_REPLICATION = Bucket.MAX_SIZE;
+	public static final int DEFAULT_WRITE_QUORUM = 3;
+	public static final int DEFAULT_MAX_ATTEMPTS = 3;
+	public static final long DEFAULT_RETRY_DELAY = 2000;
+
+	private static final ScheduledExecutorService RETRY_SCHEDULER = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "ReplicatedStore-retry");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	private Identifier key;
+	private byte[] data;
+
+	private int replication = DEFAULT_REPLICATION;
+	private int writeQuorum = DEFAULT_WRITE_QUORUM;
+	private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+	private long retryDelay = DEFAULT_RETRY_DELAY;
+
+	private List<Contact> replicas;
+	private List<Contact> acknowledged = new ArrayList<Contact>();
+	private int quorum;
+	private int givenUp = 0;
+
+	public ReplicatedStore(Node source, Identifier key, byte[] data) {
+		super(source);
+		this.key = key;
+		this.data = data;
+	}
+
+	protected void executeImpl() {
+		FindNode lookup = new FindNode(getSource(), key);
+		lookup.setMessageServer(messageServer);
+		lookup.setResultSize(replication);
+		lookup.addListener(new OperationListener<FindNodeResult>() {
+			public void operationCompleted(FindNodeResult result) {
+				replicate(result);
+			}
+		});
+		lookup.execute();
+	}
+
+	private void replicate(FindNodeResult lookupResult) {
+		if (lookupResult.getException() != null) {
+			fail(new OperationException("Lookup of the nodes closest to key " + key + " failed", lookupResult.getException()));
+			return;
+		}
+
+		List<Contact> closest = lookupResult.getContacts();
+		if (closest.isEmpty()) {
+			fail(new OperationException("No node was found to store key " + key));
+			return;
+		}
+
+		synchronized (this) {
+			this.replicas = closest;
+			this.quorum = Math.min(writeQuorum, closest.size());
+		}
+
+		logger.debug("Storing key " + key + " on " + closest.size() + " replicas with a write quorum of " + quorum);
+		for (Contact replica : closest)
+			new ReplicaWriter(replica).write();
+	}
+
+	private void replicaAcknowledged(Contact replica) {
+		ReplicatedStoreResult result = null;
+		synchronized (this) {
+			acknowledged.add(replica);
+			if (acknowledged.size() == quorum)
+				result = createResult();
+		}
+		if (result != null)
+			this.setResult(result);
+	}
+
+	private void replicaGivenUp(Contact replica, Exception exception) {
+		logger.warn("Giving up storing key " + key + " on replica " + replica, exception);
+		ReplicatedStoreResult result = null;
+		synchronized (this) {
+			givenUp++;
+			if (!isDone() && replicas.size() - givenUp < quorum) {
+				result = createResult();
+				result.setException(new OperationException("Write quorum of " + quorum + " could not be reached for key " + key + ", only " + acknowledged.size() + " of " + replicas.size() + " replicas acknowledged", exception));
+			}
+		}
+		if (result != null)
+			this.setResult(result);
+	}
+
+	private void fail(Exception exception) {
+		ReplicatedStoreResult result = new ReplicatedStoreResult();
+		result.setException(exception);
+		this.setResult(result);
+	}
+
+	// must be called holding this operation monitor
+	private ReplicatedStoreResult createResult() {
+		ReplicatedStoreResult result = new ReplicatedStoreResult();
+		result.setReplicas(new ArrayList<Contact>(replicas));
+		result.setAcknowledged(new ArrayList<Contact>(acknowledged));
+		return result;
+	}
+
+	class ReplicaWriter implements OperationListener<StoreResult> {
+		private Contact replica;
+		private int attempts = 0;
+
+		ReplicaWriter(Contact replica) {
+			this.replica = replica;
+		}
+
+		void write() {
+			attempts++;
+			Store store = new Store(getSource(), replica, key, data);
+			store.setMessageServer(messageServer);
+			store.addListener(this);
+			store.execute();
+		}
+
+		public void operationCompleted(StoreResult result) {
+			if (result.getException() == null) {
+				replicaAcknowledged(replica);
+			} else if (attempts < maxAttempts) {
+				logger.debug("Attempt " + attempts + " to store key " + key + " on replica " + replica + " failed, retrying in background");
+				RETRY_SCHEDULER.schedule(new Runnable() {
+					public void run() {
+						write();
+					}
+				}, retryDelay * attempts, TimeUnit.MILLISECONDS);
+			} else {
+				replicaGivenUp(replica, result.getException());
+			}
+		}
+	}
+
+	// this operation sends no request of its own, the lookup and the stores it starts handle their responses
+	public void handleResponse(Response response) {
+	}
+
+	public void handleException(Exception exception) {
+	}
+
+	public int getReplication() {
+		return replication;
+	}
+
+	public void setReplication(int replication) {
+		this.replication = replication;
+	}
+
+	public int getWriteQuorum() {
+		return writeQuorum;
+	}
+
+	public void setWriteQuorum(int writeQuorum) {
+		this.writeQuorum = writeQuorum;
+	}
+
+	public int getMaxAttempts() {
+		return maxAttempts;
+	}
+
+	public void setMaxAttempts(int maxAttempts) {
+		this.maxAttempts = maxAttempts;
+	}
+
+	public long getRetryDelay() {
+		return retryDelay;
+	}
+
+	public void setRetryDelay(long retryDelay) {
+		this.retryDelay = retryDelay;
+	}
+}
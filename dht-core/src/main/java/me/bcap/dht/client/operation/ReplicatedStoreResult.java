@@ -0,0 +1,27 @@
+package me.bcap.dht.client.operation;
+
+import java.util.List;
+
+import me.bcap.dht.node.Contact;
+
+public class ReplicatedStoreResult extends StoreResult {
+
+	private List<Contact> replicas;
+	private List<Contact> acknowledged;
+
+	public List<Contact> getReplicas() {
+		return replicas;
+	}
+
+	public void setReplicas(List<Contact> replicas) {
+		this.replicas = replicas;
+	}
+
+	public List<Contact> getAcknowledged() {
+		return acknowledged;
+	}
+
+	public void setAcknowledged(List<Contact> acknowledged) {
+		this.acknowledged = acknowledged;
+	}
+}
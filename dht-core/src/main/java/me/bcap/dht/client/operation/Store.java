@@ -1,5 +1,9 @@
 package me.bcap.dht.client.operation;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
 import me.bcap.dht.message.request.StoreRequest;
 import me.bcap.dht.message.response.Response;
 import me.bcap.dht.message.response.StoreResponse;
@@ -7,27 +11,79 @@ import me.bcap.dht.node.Contact;
 import me.bcap.dht.node.Identifier;
 import me.bcap.dht.node.Node;
 
+/**
+ * Stores a value on a contact. Values larger than {@link #getChunkingThreshold()} are sent with a {@link ChunkedStore}.
+ * The value can be read from a file, which is only loaded in memory if it is sent in one go.
+ */
 public class Store extends Operation<StoreResult> {
 
+	public static final int DEFAULT_CHUNKING_THRESHOLD = 4 * 1024 * 1024;
+
 	private Identifier key;
 	private byte[] data;
+	private File file;
 	private Contact destination;
 	
+	private int chunkingThreshold = DEFAULT_CHUNKING_THRESHOLD;
+	
 	public Store(Node source, Contact destination, Identifier key, byte[] data) {
 		super(source);
 		this.destination = destination;
 		this.key = key;
 		this.data = data;
 	}
+
+	public Store(Node source, Contact destination, Identifier key, File file) {
+		super(source);
+		this.destination = destination;
+		this.key = key;
+		this.file = file;
+	}
 	
 	protected void executeImpl() {
+		long length = data != null ? data.length : file.length();
+		if (length > chunkingThreshold) {
+			ChunkedStore chunked = data != null ? new ChunkedStore(getSource(), destination, key, data) : new ChunkedStore(getSource(), destination, key, file);
+			chunked.setMessageServer(messageServer);
+			// chunks are kept within what would have been sent in one go
+			chunked.setChunkSize(Math.max(1, Math.min(chunked.getChunkSize(), chunkingThreshold)));
+			chunked.addListener(new OperationListener<StoreResult>() {
+				public void operationCompleted(StoreResult result) {
+					setResult(result);
+				}
+			});
+			chunked.execute();
+			return;
+		}
+
+		byte[] value = data;
+		if (value == null) {
+			try {
+				value = readFile();
+			} catch (IOException e) {
+				handleException(new OperationException("Could not read the value of key " + key + " from " + file, e));
+				return;
+			}
+		}
+
 		StoreRequest request = new StoreRequest();
 		request.setIdentifier(key);
-		request.setData(data);
+		request.setData(value);
 		request.setDestination(destination);
 		this.sendRequest(request);
 	}
 	
+	private byte[] readFile() throws IOException {
+		RandomAccessFile input = new RandomAccessFile(file, "r");
+		try {
+			byte[] value = new byte[(int) input.length()];
+			input.readFully(value);
+			return value;
+		} finally {
+			input.close();
+		}
+	}
+	
 	public void handleResponse(Response response) {
 		StoreResponse storeResponse = (StoreResponse) response;
 		StoreResult result = new StoreResult();
@@ -35,8 +91,16 @@ public class Store extends Operation<StoreResult> {
 	}
 
 	public void handleException(Exception exception) {
-		// TODO Auto-generated method stub
-		
+		StoreResult result = new StoreResult();
+		result.setException(exception);
+		this.setResult(result);
+	}
+
+	public int getChunkingThreshold() {
+		return chunkingThreshold;
 	}
 
+	public void setChunkingThreshold(int chunkingThreshold) {
+		this.chunkingThreshold = chunkingThreshold;
+	}
 }
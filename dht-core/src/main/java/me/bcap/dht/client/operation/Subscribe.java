@@ -0,0 +1,140 @@
+package me.bcap.dht.client.operation;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+import me.bcap.dht.client.ResponseHandler;
+import me.bcap.dht.message.request.SubscribeRequest;
+import me.bcap.dht.message.response.Response;
+import me.bcap.dht.message.response.SubscribeResponse;
+import me.bcap.dht.node.Bucket;
+import me.bcap.dht.node.Contact;
+import me.bcap.dht.node.Identifier;
+import me.bcap.dht.node.Node;
+
+/**
+ * Subscribes the source node to the changes of a key on the nodes storing it, found with a {@link FindNode} lookup
+ * unless the contacts are given. The changes are then pushed to the source node, see
+ * {@link me.bcap.dht.node.KeyChangeListener}, until the lease ends. A lease of 0 cancels the subscriptions. Keys
+ * holding a set cannot be watched, the elements appended to them are not pushed.
+ * <p>
+ * Use a {@link KeyWatch} to have the subscription renewed.
+ */
+public class Subscribe extends Operation<SubscribeResult> {
+
+	private static final Logger logger = Logger.getLogger(Subscribe.class);
+
+	public static final int DEFAULT_REPLICATION = Bucket.MAX_SIZE;
+
+	private Identifier key;
+	private long lease;
+	private List<Contact> contacts;
+
+	private int replication = DEFAULT_REPLICATION;
+
+	private List<Contact> subscribed = new ArrayList<Contact>();
+	private long grantedLease = Long.MAX_VALUE;
+	private int pending;
+
+	public Subscribe(Node source, Identifier key, long lease) {
+		super(source);
+		this.key = key;
+		this.lease = lease;
+	}
+
+	public Subscribe(Node source, List<Contact> contacts, Identifier key, long lease) {
+		this(source, key, lease);
+		this.contacts = contacts;
+	}
+
+	protected void executeImpl() {
+		if (contacts != null) {
+			subscribe(contacts);
+			return;
+		}
+
+		FindNode lookup = new FindNode(getSource(), key);
+		lookup.setMessageServer(messageServer);
+		lookup.setResultSize(replication);
+		lookup.addListener(new OperationListener<FindNodeResult>() {
+			public void operationCompleted(FindNodeResult result) {
+				if (result.getException() != null)
+					fail(new OperationException("Lookup of the nodes closest to key " + key + " failed", result.getException()));
+				else
+					subscribe(result.getContacts());
+			}
+		});
+		lookup.execute();
+	}
+
+	private void subscribe(List<Contact> targets) {
+		if (targets.isEmpty()) {
+			fail(new OperationException("No node was found to subscribe to key " + key));
+			return;
+		}
+		synchronized (this) {
+			pending = targets.size();
+		}
+
+		for (final Contact target : targets) {
+			SubscribeRequest request = new SubscribeRequest();
+			request.setIdentifier(key);
+			request.setLease(lease);
+			request.setDestination(target);
+			sendRequest(request, new ResponseHandler() {
+				public void handleResponse(Response response) {
+					long granted = ((SubscribeResponse) response).getLease();
+					finished(granted > 0 ? target : null, granted);
+				}
+
+				public void handleException(Exception exception) {
+					logger.debug("Could not subscribe to key " + key + " on " + target + ": " + exception);
+					finished(null, 0);
+				}
+			});
+		}
+	}
+
+	private void finished(Contact target, long granted) {
+		SubscribeResult result = null;
+		synchronized (this) {
+			if (target != null) {
+				subscribed.add(target);
+				grantedLease = Math.min(grantedLease, granted);
+			}
+			if (--pending == 0) {
+				result = new SubscribeResult();
+				result.setSubscribed(new ArrayList<Contact>(subscribed));
+				result.setLease(subscribed.isEmpty() ? 0 : grantedLease);
+				if (subscribed.isEmpty() && lease > 0)
+					result.setException(new OperationException("No node granted a subscription to key " + key));
+			}
+		}
+		if (result != null)
+			this.setResult(result);
+	}
+
+	private void fail(Exception exception) {
+		SubscribeResult result = new SubscribeResult();
+		result.setSubscribed(new ArrayList<Contact>());
+		result.setException(exception);
+		this.setResult(result);
+	}
+
+	// the subscriptions are sent with their own handlers
+	public void handleResponse(Response response) {
+	}
+
+	public void handleException(Exception exception) {
+	}
+
+	public int getReplication() {
+		return replication;
+	}
+
+	public void setReplication(int replication) {
+		this.replication = replication;
+	}
+}
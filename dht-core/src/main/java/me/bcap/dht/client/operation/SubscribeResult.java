@@ -0,0 +1,33 @@
+package me.bcap.dht.client.operation;
+
+import java.util.List;
+
+import me.bcap.dht.node.Contact;
+
+public class SubscribeResult extends OperationResult {
+
+	private List<Contact> subscribed;
+	private long lease;
+
+	/**
+	 * The contacts that granted a lease
+	 */
+	public List<Contact> getSubscribed() {
+		return subscribed;
+	}
+
+	public void setSubscribed(List<Contact> subscribed) {
+		this.subscribed = subscribed;
+	}
+
+	/**
+	 * The shortest of the leases granted, 0 if none was
+	 */
+	public long getLease() {
+		return lease;
+	}
+
+	public void setLease(long lease) {
+		this.lease = lease;
+	}
+}
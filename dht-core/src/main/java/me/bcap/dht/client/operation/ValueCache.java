@@ -0,0 +1,227 @@
+package me.bcap.dht.client.operation;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import me.bcap.dht.message.request.KeyChangedRequest;
+import me.bcap.dht.node.Contact;
+import me.bcap.dht.node.Identifier;
+import me.bcap.dht.node.KeyChangeListener;
+import me.bcap.dht.node.Node;
+
+/**
+ * Values recently found by {@link FindValue}, so that reading a key again shortly after does not go to the network.
+ * Values do not expire in storage, so entries are trusted for a fixed time to live and the cache is bounded by the
+ * number of bytes it holds, evicting the least recently used entries first. Registered as a
+ * {@link KeyChangeListener}, it also drops the keys the node is told have changed, and does not cache the result of a
+ * lookup of a key that changed while the lookup was running.
+ * <p>
+ * Concurrent lookups of a key that is not cached share a single lookup, see {@link LookupCoalescer}: only the first
+ * goes to the network, the others complete with its result. One cache is meant to be shared by all the lookups of a
+ * process.
+ * <p>
+ * The data of a cached value is handed to every lookup that hits it and must not be modified.
+ */
+public class ValueCache implements KeyChangeListener {
+
+	public static final long DEFAULT_TTL = 30000;
+	public static final long DEFAULT_MAX_BYTES = 16 * 1024 * 1024;
+
+	// rough cost of an entry besides its data, so that a cache of small values stays bounded too
+	static final int ENTRY_OVERHEAD = 128;
+
+	private long ttl;
+	private long maxBytes;
+
+	private LinkedHashMap<Identifier, Entry> entries = new LinkedHashMap<Identifier, Entry>(16, 0.75f, true);
+	private long bytes = 0;
+
+	// invalidations of the keys with a lookup in flight, so that a result read before one is not cached after it
+	private Map<Identifier, Generation> generations = new HashMap<Identifier, Generation>();
+
+	private LookupCoalescer lookups = new LookupCoalescer();
+
+	private AtomicLong hits = new AtomicLong();
+	private AtomicLong misses = new AtomicLong();
+
+	public ValueCache() {
+		this(DEFAULT_TTL, DEFAULT_MAX_BYTES);
+	}
+
+	public ValueCache(long ttl, long maxBytes) {
+		this.ttl = ttl;
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Returns the cached result for the key, null if it is not cached or its time to live is over
+	 */
+	public synchronized FindValueResult get(Identifier key) {
+		Entry entry = entries.get(key);
+		if (entry == null)
+			return null;
+		if (System.currentTimeMillis() >= entry.expiresAt) {
+			remove(key);
+			return null;
+		}
+		return entry.result;
+	}
+
+	/**
+	 * Caches a found value. Results that found nothing, failed or hold a sample of a set are not cached
+	 */
+	public void put(Identifier key, FindValueResult result) {
+		if (result.getException() != null || !result.isFound() || result.getElements() != null)
+			return;
+		int weight = weigh(result);
+		if (weight > maxBytes)
+			return;
+
+		synchronized (this) {
+			remove(key);
+			entries.put(key, new Entry(result, weight, System.currentTimeMillis() + ttl));
+			bytes += weight;
+			for (Iterator<Entry> iterator = entries.values().iterator(); bytes > maxBytes && iterator.hasNext();) {
+				bytes -= iterator.next().weight;
+				iterator.remove();
+			}
+		}
+	}
+
+	public synchronized void invalidate(Identifier key) {
+		remove(key);
+		Generation generation = generations.get(key);
+		if (generation != null)
+			generation.invalidations++;
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+		bytes = 0;
+		for (Generation generation : generations.values())
+			generation.invalidations++;
+	}
+
+	public void keyChanged(Node watcher, Contact origin, KeyChangedRequest.Change change) {
+		invalidate(change.getKey());
+	}
+
+	/**
+	 * Serves a lookup from the cache or joins it to a lookup of the same key already running. Returns false if the
+	 * lookup has to go to the network, in which case it is the one the next lookups of the key will join
+	 */
+	boolean serve(final FindValue lookup) {
+		FindValueResult cached = get(lookup.getKey());
+		if (cached != null) {
+			hits.incrementAndGet();
+			lookup.complete(cached);
+			return true;
+		}
+		if (lookups.join(lookup))
+			return true;
+
+		misses.incrementAndGet();
+		final long invalidations = started(lookup.getKey());
+		lookup.addListener(new OperationListener<FindValueResult>() {
+			public void operationCompleted(FindValueResult result) {
+				finished(lookup.getKey(), result, invalidations);
+			}
+		});
+		return false;
+	}
+
+	/**
+	 * Records a lookup of the key going to the network, returning the invalidations of the key so far
+	 */
+	private synchronized long started(Identifier key) {
+		Generation generation = generations.get(key);
+		if (generation == null) {
+			generation = new Generation();
+			generations.put(key, generation);
+		}
+		generation.lookups++;
+		return generation.invalidations;
+	}
+
+	/**
+	 * Caches the result of a lookup unless the key was invalidated while it was running, as the result may then be
+	 * older than the change
+	 */
+	private synchronized void finished(Identifier key, FindValueResult result, long invalidations) {
+		Generation generation = generations.get(key);
+		if (--generation.lookups == 0)
+			generations.remove(key);
+		if (generation.invalidations == invalidations)
+			put(key, result);
+	}
+
+	private void remove(Identifier key) {
+		Entry entry = entries.remove(key);
+		if (entry != null)
+			bytes -= entry.weight;
+	}
+
+	private static int weigh(FindValueResult result) {
+		return ENTRY_OVERHEAD + (result.getData() != null ? result.getData().length : 0);
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Bytes held by the cached entries, counting a fixed overhead per entry
+	 */
+	public synchronized long getBytes() {
+		return bytes;
+	}
+
+	/**
+	 * Lookups served from the cache
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * Lookups that went to the network
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * Lookups that shared the result of a lookup of the same key already running
+	 */
+	public long getCoalesced() {
+		return lookups.getCoalesced();
+	}
+
+	public long getTtl() {
+		return ttl;
+	}
+
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	static class Generation {
+		private long invalidations;
+		private int lookups;
+	}
+
+	static class Entry {
+		private FindValueResult result;
+		private int weight;
+		private long expiresAt;
+
+		Entry(FindValueResult result, int weight, long expiresAt) {
+			this.result = result;
+			this.weight = weight;
+			this.expiresAt = expiresAt;
+		}
+	}
+}
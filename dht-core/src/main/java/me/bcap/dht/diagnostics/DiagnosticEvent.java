@@ -0,0 +1,44 @@
+package me.bcap.dht.diagnostics;
+
+/**
+ * Kinds of events kept by {@link Diagnostics}. Each event has up to two references and one number, named here for
+ * the dump
+ */
+public enum DiagnosticEvent {
+
+	CONNECTION_ACCEPTED("from", null, "port"),
+	CONNECTION_REJECTED("from", null, "port"),
+	REQUEST_RECEIVED("type", "destination", null),
+	RESPONSE_SENT("type", null, "bytes"),
+	REQUEST_FAILED("type", "error", null),
+	REQUEST_REJECTED("type", null, null),
+	WORKER_FAILED("error", null, null),
+
+	SEND_QUEUED("type", "destination", null),
+	SEND_CANCELLED(null, null, null),
+	SEND_STARTED("type", "destination", null),
+	RESPONSE_RECEIVED("type", null, "micros"),
+	SEND_FAILED("error", null, "micros");
+
+	private final String first;
+	private final String second;
+	private final String value;
+
+	private DiagnosticEvent(String first, String second, String value) {
+		this.first = first;
+		this.second = second;
+		this.value = value;
+	}
+
+	String getFirst() {
+		return first;
+	}
+
+	String getSecond() {
+		return second;
+	}
+
+	String getValue() {
+		return value;
+	}
+}
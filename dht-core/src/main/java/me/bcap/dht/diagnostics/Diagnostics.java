@@ -0,0 +1,198 @@
+package me.bcap.dht.diagnostics;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+
+/**
+ * Keeps the last {@link #getCapacity()} events of each thread in a ring of its own, to be dumped when something goes
+ * wrong instead of logging every message as it goes. Recording an event stores a few numbers and references the
+ * caller already holds, nothing is formatted nor allocated until the events are dumped.
+ * <p>
+ * The rings of threads that died are kept until {@value #MAX_DEAD_RINGS} of them pile up, the oldest being dropped
+ * first.
+ */
+public final class Diagnostics {
+
+	private static final Logger logger = Logger.getLogger(Diagnostics.class);
+
+	public static final int DEFAULT_CAPACITY = 256;
+	public static final int MAX_DEAD_RINGS = 32;
+
+	private static volatile boolean enabled = true;
+	private static volatile boolean dumpOnError = true;
+	private static volatile int capacity = DEFAULT_CAPACITY;
+
+	private static final List<EventRing> rings = new ArrayList<EventRing>();
+
+	private static final ThreadLocal<EventRing> threadRing = new ThreadLocal<EventRing>() {
+		protected EventRing initialValue() {
+			EventRing ring = new EventRing(Thread.currentThread(), capacity);
+			register(ring);
+			return ring;
+		}
+	};
+
+	// event times are taken with nanoTime, which is turned into wall clock time when dumping
+	private static final long BASE_MILLIS = System.currentTimeMillis();
+	private static final long BASE_NANOS = System.nanoTime();
+
+	private Diagnostics() {
+	}
+
+	/**
+	 * Records an event in the ring of the calling thread. References are kept as they are and only turned into text
+	 * when dumped, classes by their simple name
+	 */
+	public static void record(DiagnosticEvent event, long conversationId, Object first, Object second, long value) {
+		if (enabled)
+			threadRing.get().record(event, conversationId, first, second, value);
+	}
+
+	/**
+	 * Writes the events of every thread, oldest first
+	 */
+	public static void dump(Writer writer) throws IOException {
+		List<EventRing> toDump;
+		synchronized (rings) {
+			toDump = new ArrayList<EventRing>(rings);
+		}
+		List<EventRing.Entry> entries = new ArrayList<EventRing.Entry>();
+		for (EventRing ring : toDump)
+			ring.copyTo(entries);
+		Collections.sort(entries);
+		write(entries, writer);
+	}
+
+	public static String dump() {
+		StringWriter writer = new StringWriter();
+		try {
+			dump(writer);
+		} catch (IOException e) {
+			throw new RuntimeException("IOException should never occur while writing to a String", e);
+		}
+		return writer.toString();
+	}
+
+	/**
+	 * Returns the events of the calling thread, oldest first
+	 */
+	public static String dumpCurrentThread() {
+		List<EventRing.Entry> entries = new ArrayList<EventRing.Entry>();
+		threadRing.get().copyTo(entries);
+		StringWriter writer = new StringWriter();
+		try {
+			write(entries, writer);
+		} catch (IOException e) {
+			throw new RuntimeException("IOException should never occur while writing to a String", e);
+		}
+		return writer.toString();
+	}
+
+	/**
+	 * Logs the events of the calling thread at ERROR level, unless dumps on error are switched off. Meant to be called
+	 * right after logging an unexpected error, to tell what the thread was doing before it
+	 */
+	public static void dumpOnError(Logger errorLogger) {
+		if (dumpOnError && enabled && errorLogger.isEnabledFor(Level.ERROR))
+			errorLogger.error("Last events of thread " + Thread.currentThread().getName() + ":\n" + dumpCurrentThread());
+	}
+
+	/**
+	 * Registers the diagnostics in the platform MBean server under me.bcap.dht:type=Diagnostics, so that events can be
+	 * dumped on demand
+	 */
+	public static ObjectName registerMBean() throws JMException {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = new ObjectName("me.bcap.dht:type=Diagnostics");
+		if (!server.isRegistered(name))
+			server.registerMBean(new DiagnosticsControl(), name);
+		return name;
+	}
+
+	private static void register(EventRing ring) {
+		synchronized (rings) {
+			rings.add(ring);
+			int dead = 0;
+			for (EventRing existing : rings)
+				if (!existing.isAlive())
+					dead++;
+			for (Iterator<EventRing> iterator = rings.iterator(); dead > MAX_DEAD_RINGS && iterator.hasNext();) {
+				if (!iterator.next().isAlive()) {
+					iterator.remove();
+					dead--;
+				}
+			}
+		}
+		logger.debug("Created a diagnostic event ring of " + ring.getThreadName());
+	}
+
+	private static void write(List<EventRing.Entry> entries, Writer writer) throws IOException {
+		SimpleDateFormat format = new SimpleDateFormat("HH:mm:ss.SSS");
+		for (EventRing.Entry entry : entries) {
+			long nanos = entry.time - BASE_NANOS;
+			writer.write(format.format(new Date(BASE_MILLIS + nanos / 1000000)));
+			writer.write(String.format("%03d [", Math.abs(nanos / 1000 % 1000)));
+			writer.write(entry.thread);
+			writer.write("] ");
+			writer.write(entry.event.name());
+			if (entry.conversationId >= 0)
+				writer.write(" conversation=" + entry.conversationId);
+			writeArgument(writer, entry.event.getFirst(), entry.first);
+			writeArgument(writer, entry.event.getSecond(), entry.second);
+			if (entry.event.getValue() != null)
+				writer.write(" " + entry.event.getValue() + "=" + entry.value);
+			writer.write('\n');
+		}
+	}
+
+	private static void writeArgument(Writer writer, String name, Object argument) throws IOException {
+		if (name == null)
+			return;
+		writer.write(" " + name + "=");
+		writer.write(argument instanceof Class<?> ? ((Class<?>) argument).getSimpleName() : String.valueOf(argument));
+	}
+
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	public static void setEnabled(boolean enabled) {
+		Diagnostics.enabled = enabled;
+	}
+
+	public static boolean isDumpOnError() {
+		return dumpOnError;
+	}
+
+	public static void setDumpOnError(boolean dumpOnError) {
+		Diagnostics.dumpOnError = dumpOnError;
+	}
+
+	/**
+	 * Events kept per thread. Changes only apply to the threads recording their first event afterwards
+	 */
+	public static int getCapacity() {
+		return capacity;
+	}
+
+	public static void setCapacity(int capacity) {
+		if (capacity <= 0)
+			throw new IllegalArgumentException("Capacity must be positive, got " + capacity);
+		Diagnostics.capacity = capacity;
+	}
+}
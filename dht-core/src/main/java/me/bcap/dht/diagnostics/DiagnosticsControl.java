@@ -0,0 +1,31 @@
+package me.bcap.dht.diagnostics;
+
+/**
+ * Standard MBean delegating to {@link Diagnostics}, see {@link Diagnostics#registerMBean()}
+ */
+public class DiagnosticsControl implements DiagnosticsControlMBean {
+
+	public String dump() {
+		return Diagnostics.dump();
+	}
+
+	public boolean isEnabled() {
+		return Diagnostics.isEnabled();
+	}
+
+	public void setEnabled(boolean enabled) {
+		Diagnostics.setEnabled(enabled);
+	}
+
+	public boolean isDumpOnError() {
+		return Diagnostics.isDumpOnError();
+	}
+
+	public void setDumpOnError(boolean dumpOnError) {
+		Diagnostics.setDumpOnError(dumpOnError);
+	}
+
+	public int getCapacity() {
+		return Diagnostics.getCapacity();
+	}
+}
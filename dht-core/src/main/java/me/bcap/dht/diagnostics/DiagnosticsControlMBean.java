@@ -0,0 +1,19 @@
+package me.bcap.dht.diagnostics;
+
+/**
+ * JMX view of {@link Diagnostics}
+ */
+public interface DiagnosticsControlMBean {
+
+	public String dump();
+
+	public boolean isEnabled();
+
+	public void setEnabled(boolean enabled);
+
+	public boolean isDumpOnError();
+
+	public void setDumpOnError(boolean dumpOnError);
+
+	public int getCapacity();
+}
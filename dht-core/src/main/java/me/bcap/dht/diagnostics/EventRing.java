@@ -0,0 +1,98 @@
+package me.bcap.dht.diagnostics;
+
+import java.lang.ref.WeakReference;
+import java.util.List;
+
+/**
+ * The last events recorded by one thread. Only that thread writes to it; readers copy the events and drop the ones
+ * overwritten while they were copying, telling them apart by their sequence number
+ */
+class EventRing {
+
+	// time, conversation id and value of each event
+	private static final int LONGS = 3;
+	// kind and both references of each event
+	private static final int REFERENCES = 3;
+
+	private final int capacity;
+	private final long[] longs;
+	private final Object[] references;
+
+	private final WeakReference<Thread> thread;
+	private final String threadName;
+
+	// events recorded so far, written by the owner thread only
+	private volatile long sequence = 0;
+
+	EventRing(Thread thread, int capacity) {
+		this.capacity = capacity;
+		this.longs = new long[capacity * LONGS];
+		this.references = new Object[capacity * REFERENCES];
+		this.thread = new WeakReference<Thread>(thread);
+		this.threadName = thread.getName();
+	}
+
+	void record(DiagnosticEvent event, long conversationId, Object first, Object second, long value) {
+		long next = sequence;
+		int slot = (int) (next % capacity);
+		longs[slot * LONGS] = System.nanoTime();
+		longs[slot * LONGS + 1] = conversationId;
+		longs[slot * LONGS + 2] = value;
+		references[slot * REFERENCES] = event;
+		references[slot * REFERENCES + 1] = first;
+		references[slot * REFERENCES + 2] = second;
+		sequence = next + 1;
+	}
+
+	boolean isAlive() {
+		Thread owner = thread.get();
+		return owner != null && owner.isAlive();
+	}
+
+	String getThreadName() {
+		return threadName;
+	}
+
+	/**
+	 * Adds the events still in the ring to the list, oldest first. Unless called by the owner thread, the oldest event
+	 * is left out as the owner may be overwriting it
+	 */
+	void copyTo(List<Entry> entries) {
+		boolean owner = thread.get() == Thread.currentThread();
+		long end = sequence;
+		long start = Math.max(0, end - capacity);
+		int added = entries.size();
+		for (long i = start; i < end; i++) {
+			int slot = (int) (i % capacity);
+			entries.add(new Entry(threadName, longs[slot * LONGS], longs[slot * LONGS + 1], longs[slot * LONGS + 2], (DiagnosticEvent) references[slot * REFERENCES], references[slot * REFERENCES + 1], references[slot * REFERENCES + 2]));
+		}
+		// events the owner overwrote, or may have been overwriting, while they were being copied are not trusted
+		long overwritten = sequence + (owner ? 0 : 1) - capacity - start;
+		if (overwritten > 0)
+			entries.subList(added, added + (int) Math.min(overwritten, entries.size() - added)).clear();
+	}
+
+	static class Entry implements Comparable<Entry> {
+		final String thread;
+		final long time;
+		final long conversationId;
+		final long value;
+		final DiagnosticEvent event;
+		final Object first;
+		final Object second;
+
+		Entry(String thread, long time, long conversationId, long value, DiagnosticEvent event, Object first, Object second) {
+			this.thread = thread;
+			this.time = time;
+			this.conversationId = conversationId;
+			this.value = value;
+			this.event = event;
+			this.first = first;
+			this.second = second;
+		}
+
+		public int compareTo(Entry other) {
+			return time < other.time ? -1 : (time == other.time ? 0 : 1);
+		}
+	}
+}
@@ -18,6 +18,7 @@ public abstract class Message implements Serializable, ToStringFriendly {
 	private Contact source;
 	private Contact destination;
 	private long conversationId;
+	private long traceId;
 	private transient Date issuedDate;
 	
 
@@ -49,6 +50,8 @@ public abstract class Message implements Serializable, ToStringFriendly {
 		propertiesMap.put("source", source);
 		propertiesMap.put("destination", destination);
 		propertiesMap.put("conversationId", conversationId);
+		if (traceId != 0)
+			propertiesMap.put("traceId", Long.toHexString(traceId));
 		propertiesMap.put("issuedDate", issuedDate);
 	}
 	
@@ -76,6 +79,18 @@ public abstract class Message implements Serializable, ToStringFriendly {
 		this.conversationId = conversationId;
 	}
 
+	/**
+	 * Identifies the trace the message is part of, 0 if it is not traced. Responses carry the trace id of their
+	 * request
+	 */
+	public long getTraceId() {
+		return traceId;
+	}
+
+	public void setTraceId(long traceId) {
+		this.traceId = traceId;
+	}
+
 	public Date getIssuedDate() {
 		return issuedDate != null ? (Date) issuedDate.clone() : null;
 	}
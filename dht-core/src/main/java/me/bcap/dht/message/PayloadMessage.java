@@ -0,0 +1,26 @@
+package me.bcap.dht.message;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A message carrying bulk bytes that travel right after its serialized form instead of inside it. The bytes are then
+ * neither copied through the object streams nor wrapped in their block framing, and the sending side can move them
+ * straight from where they are stored to the socket.
+ * <p>
+ * Messages delivered without going through a socket keep their payload in memory, so implementations must give access
+ * to it whether or not it was ever written or read.
+ */
+public interface PayloadMessage {
+
+	/**
+	 * Length of the payload following the message, -1 if there is none
+	 */
+	public int getPayloadLength();
+
+	public void writePayload(WritableByteChannel channel) throws IOException;
+
+	public void readPayload(InputStream in) throws IOException;
+
+}
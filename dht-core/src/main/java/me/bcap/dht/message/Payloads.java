@@ -0,0 +1,37 @@
+package me.bcap.dht.message;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Helpers for the {@link PayloadMessage} implementations
+ */
+public class Payloads {
+
+	private Payloads() {
+	}
+
+	public static void write(WritableByteChannel channel, byte[] bytes) throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+	}
+
+	/**
+	 * Reads exactly length bytes, straight into the returned array
+	 */
+	public static byte[] read(InputStream in, int length) throws IOException {
+		byte[] bytes = new byte[length];
+		int offset = 0;
+		while (offset < length) {
+			int read = in.read(bytes, offset, length - offset);
+			if (read < 0)
+				throw new EOFException("Connection closed after " + offset + " of the " + length + " payload bytes");
+			offset += read;
+		}
+		return bytes;
+	}
+}
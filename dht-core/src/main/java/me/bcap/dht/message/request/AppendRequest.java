@@ -0,0 +1,49 @@
+package me.bcap.dht.message.request;
+
+import java.io.Serializable;
+import java.util.SortedMap;
+
+/**
+ * Adds an element to the set held under a key, see {@link me.bcap.dht.node.storage.ValueSets}. Appending an element
+ * already in the set only extends its expiry.
+ */
+public class AppendRequest extends IdentifierRequest implements Serializable {
+
+	protected static final long serialVersionUID = IdentifierRequest.serialVersionUID + 1L;
+
+	private byte[] element;
+	private long ttl;
+
+	public AppendRequest() {
+		super();
+	}
+
+	public byte[] getElement() {
+		return element;
+	}
+
+	public void setElement(byte[] element) {
+		this.element = element;
+	}
+
+	/**
+	 * How long the element is kept, in milliseconds
+	 */
+	public long getTtl() {
+		return ttl;
+	}
+
+	public void setTtl(long ttl) {
+		this.ttl = ttl;
+	}
+	
+	public int getOpcode() {
+		return Opcodes.APPEND;
+	}
+
+	public void addToStringProperties(SortedMap<String, Object> propertiesMap) {
+		super.addToStringProperties(propertiesMap);
+		propertiesMap.put("element.length", element != null ? element.length : "null");
+		propertiesMap.put("ttl", ttl);
+	}
+}
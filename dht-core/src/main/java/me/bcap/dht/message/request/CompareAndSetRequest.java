@@ -0,0 +1,68 @@
+package me.bcap.dht.message.request;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.nio.channels.WritableByteChannel;
+import java.util.SortedMap;
+
+import me.bcap.dht.message.PayloadMessage;
+import me.bcap.dht.message.Payloads;
+
+/**
+ * Stores a value only if the key is still at the expected version on the destination node, 0 meaning the key must not
+ * be stored there yet
+ */
+public class CompareAndSetRequest extends IdentifierRequest implements Serializable, PayloadMessage {
+
+	protected static final long serialVersionUID = IdentifierRequest.serialVersionUID + 1L;
+
+	private long expectedVersion;
+	private transient byte[] data;
+	private int payloadLength = -1;
+
+	public CompareAndSetRequest() {
+		super();
+	}
+
+	public long getExpectedVersion() {
+		return expectedVersion;
+	}
+
+	public void setExpectedVersion(long expectedVersion) {
+		this.expectedVersion = expectedVersion;
+	}
+
+	public byte[] getData() {
+		return data;
+	}
+
+	public void setData(byte[] data) {
+		this.data = data;
+		this.payloadLength = data != null ? data.length : -1;
+	}
+
+	public int getPayloadLength() {
+		return payloadLength;
+	}
+
+	public void writePayload(WritableByteChannel channel) throws IOException {
+		if (data != null)
+			Payloads.write(channel, data);
+	}
+
+	public void readPayload(InputStream in) throws IOException {
+		if (payloadLength >= 0)
+			data = Payloads.read(in, payloadLength);
+	}
+	
+	public int getOpcode() {
+		return Opcodes.COMPARE_AND_SET;
+	}
+
+	public void addToStringProperties(SortedMap<String, Object> propertiesMap) {
+		super.addToStringProperties(propertiesMap);
+		propertiesMap.put("expectedVersion", expectedVersion);
+		propertiesMap.put("data.length", payloadLength >= 0 ? payloadLength : "null");
+	}
+}
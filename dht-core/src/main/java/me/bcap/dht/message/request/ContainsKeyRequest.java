@@ -0,0 +1,24 @@
+package me.bcap.dht.message.request;
+
+import java.io.Serializable;
+import java.util.SortedMap;
+
+/**
+ * Asks whether the destination node stores a key, without transferring its value
+ */
+public class ContainsKeyRequest extends IdentifierRequest implements Serializable {
+
+	protected static final long serialVersionUID = IdentifierRequest.serialVersionUID + 1L;
+
+	public ContainsKeyRequest() {
+		super();
+	}
+	
+	public int getOpcode() {
+		return Opcodes.CONTAINS_KEY;
+	}
+
+	public void addToStringProperties(SortedMap<String, Object> propertiesMap) {
+		super.addToStringProperties(propertiesMap);
+	}
+}
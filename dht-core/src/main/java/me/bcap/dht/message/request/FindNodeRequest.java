@@ -11,6 +11,10 @@ public class FindNodeRequest extends IdentifierRequest implements Serializable {
 		super();
 	}
 	
+	public int getOpcode() {
+		return Opcodes.FIND_NODE;
+	}
+
 	public void addToStringProperties(SortedMap<String, Object> propertiesMap) {
 		super.addToStringProperties(propertiesMap);
 	}
@@ -7,12 +7,30 @@ public class FindValueRequest extends IdentifierRequest implements Serializable
 
 	protected static final long serialVersionUID = IdentifierRequest.serialVersionUID + 1L;
 
+	private int maxElements;
+
 	public FindValueRequest() {
 		super();
 	}
+
+	/**
+	 * How many elements to sample when the key holds a set, 0 leaving it to the node
+	 */
+	public int getMaxElements() {
+		return maxElements;
+	}
+
+	public void setMaxElements(int maxElements) {
+		this.maxElements = maxElements;
+	}
 	
+	public int getOpcode() {
+		return Opcodes.FIND_VALUE;
+	}
+
 	public void addToStringProperties(SortedMap<String, Object> propertiesMap) {
 		super.addToStringProperties(propertiesMap);
+		propertiesMap.put("maxElements", maxElements);
 	}
 
 }
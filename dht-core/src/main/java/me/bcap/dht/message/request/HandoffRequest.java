@@ -0,0 +1,39 @@
+package me.bcap.dht.message.request;
+
+import java.io.Serializable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SortedMap;
+
+import me.bcap.dht.node.Identifier;
+
+/**
+ * A batch of key/value pairs handed off to a node that became closer to them than the sender
+ */
+public class HandoffRequest extends Request implements Serializable {
+
+	protected static final long serialVersionUID = Request.serialVersionUID + 1L;
+
+	private Map<Identifier, byte[]> entries = new LinkedHashMap<Identifier, byte[]>();
+
+	public HandoffRequest() {
+		super();
+	}
+
+	public Map<Identifier, byte[]> getEntries() {
+		return entries;
+	}
+
+	public void setEntries(Map<Identifier, byte[]> entries) {
+		this.entries = entries;
+	}
+	
+	public int getOpcode() {
+		return Opcodes.HANDOFF;
+	}
+
+	public void addToStringProperties(SortedMap<String, Object> propertiesMap) {
+		super.addToStringProperties(propertiesMap);
+		propertiesMap.put("entries.size", entries != null ? entries.size() : "null");
+	}
+}
@@ -0,0 +1,86 @@
+package me.bcap.dht.message.request;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedMap;
+
+import me.bcap.dht.node.Identifier;
+
+/**
+ * Pushes to a watcher the changes of the keys it subscribed to, as a batch of all the keys that changed since the
+ * previous push. Several changes of a key in between are collapsed into its latest state.
+ */
+public class KeyChangedRequest extends Request implements Serializable {
+
+	protected static final long serialVersionUID = Request.serialVersionUID + 1L;
+
+	private List<Change> changes = new ArrayList<Change>();
+
+	public KeyChangedRequest() {
+		super();
+	}
+
+	public List<Change> getChanges() {
+		return changes;
+	}
+
+	public void setChanges(List<Change> changes) {
+		this.changes = changes;
+	}
+	
+	public int getOpcode() {
+		return Opcodes.KEY_CHANGED;
+	}
+
+	public void addToStringProperties(SortedMap<String, Object> propertiesMap) {
+		super.addToStringProperties(propertiesMap);
+		propertiesMap.put("changes.size", changes != null ? changes.size() : "null");
+	}
+
+	public static class Change implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		private Identifier key;
+		private long version;
+		private int length;
+		private byte[] value;
+
+		public Change(Identifier key, long version, int length, byte[] value) {
+			this.key = key;
+			this.version = version;
+			this.length = length;
+			this.value = value;
+		}
+
+		public Identifier getKey() {
+			return key;
+		}
+
+		/**
+		 * The version of the key after the change, 0 if it was removed
+		 */
+		public long getVersion() {
+			return version;
+		}
+
+		public boolean isRemoved() {
+			return version == 0;
+		}
+
+		/**
+		 * Length of the new value, -1 if the key was removed
+		 */
+		public int getLength() {
+			return length;
+		}
+
+		/**
+		 * The new value, null if the key was removed or the value is too large to be pushed, in which case it has to
+		 * be read
+		 */
+		public byte[] getValue() {
+			return value;
+		}
+	}
+}
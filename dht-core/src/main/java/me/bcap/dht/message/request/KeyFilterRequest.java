@@ -0,0 +1,21 @@
+package me.bcap.dht.message.request;
+
+import java.io.Serializable;
+import java.util.SortedMap;
+
+public class KeyFilterRequest extends Request implements Serializable {
+
+	protected static final long serialVersionUID = Request.serialVersionUID + 1L;
+
+	public KeyFilterRequest() {
+		super();
+	}
+	
+	public int getOpcode() {
+		return Opcodes.KEY_FILTER;
+	}
+
+	public void addToStringProperties(SortedMap<String, Object> propertiesMap) {
+		super.addToStringProperties(propertiesMap);
+	}
+}
@@ -0,0 +1,87 @@
+package me.bcap.dht.message.request;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SortedMap;
+
+import me.bcap.dht.node.Identifier;
+
+/**
+ * Asks a replica about its {@link me.bcap.dht.node.storage.MerkleTree}. Depending on what is filled in, the response
+ * carries the hashes of the given positions of a tree level, the entry digests of the given leaves, or the values of
+ * the given keys.
+ */
+public class MerkleTreeRequest extends Request implements Serializable {
+
+	protected static final long serialVersionUID = Request.serialVersionUID + 1L;
+
+	private int depth;
+	private int level;
+	private int[] positions;
+	private boolean leafDigests;
+	private List<Identifier> keys;
+
+	public MerkleTreeRequest() {
+		super();
+	}
+
+	/**
+	 * Depth of the sender tree, both trees must have the same shape to be compared
+	 */
+	public int getDepth() {
+		return depth;
+	}
+
+	public void setDepth(int depth) {
+		this.depth = depth;
+	}
+
+	public int getLevel() {
+		return level;
+	}
+
+	public void setLevel(int level) {
+		this.level = level;
+	}
+
+	public int[] getPositions() {
+		return positions;
+	}
+
+	public void setPositions(int[] positions) {
+		this.positions = positions;
+	}
+
+	/**
+	 * Whether the entry digests of the leaves at the given positions are wanted instead of their hashes
+	 */
+	public boolean isLeafDigests() {
+		return leafDigests;
+	}
+
+	public void setLeafDigests(boolean leafDigests) {
+		this.leafDigests = leafDigests;
+	}
+
+	public List<Identifier> getKeys() {
+		return keys;
+	}
+
+	public void setKeys(List<Identifier> keys) {
+		this.keys = keys;
+	}
+	
+	public int getOpcode() {
+		return Opcodes.MERKLE_TREE;
+	}
+
+	public void addToStringProperties(SortedMap<String, Object> propertiesMap) {
+		super.addToStringProperties(propertiesMap);
+		propertiesMap.put("depth", depth);
+		propertiesMap.put("level", level);
+		propertiesMap.put("positions", positions != null ? Arrays.toString(positions) : "null");
+		propertiesMap.put("leafDigests", leafDigests);
+		propertiesMap.put("keys.size", keys != null ? keys.size() : "null");
+	}
+}
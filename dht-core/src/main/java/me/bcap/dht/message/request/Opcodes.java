@@ -0,0 +1,72 @@
+package me.bcap.dht.message.request;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Dense numbering of the types of request, used by servers to index their dispatch table. The built-in types have
+ * fixed opcodes, any other type gets the next free one the first time it is seen
+ */
+public final class Opcodes {
+
+	public static final int PING = 0;
+	public static final int FIND_NODE = 1;
+	public static final int STORE = 2;
+	public static final int FIND_VALUE = 3;
+	public static final int KEY_FILTER = 4;
+	public static final int HANDOFF = 5;
+	public static final int MERKLE_TREE = 6;
+	public static final int STORE_CHUNK = 7;
+	public static final int VALUE_RANGE = 8;
+	public static final int CONTAINS_KEY = 9;
+	public static final int COMPARE_AND_SET = 10;
+	public static final int APPEND = 11;
+	public static final int KEY_CHANGED = 12;
+	public static final int SUBSCRIBE = 13;
+
+	/**
+	 * Number of built-in types, the first opcode handed out to other types
+	 */
+	public static final int BUILT_IN = 14;
+
+	private static final Map<Class<?>, Integer> opcodes = new ConcurrentHashMap<Class<?>, Integer>();
+	private static int next = BUILT_IN;
+
+	static {
+		opcodes.put(PingRequest.class, PING);
+		opcodes.put(FindNodeRequest.class, FIND_NODE);
+		opcodes.put(StoreRequest.class, STORE);
+		opcodes.put(FindValueRequest.class, FIND_VALUE);
+		opcodes.put(KeyFilterRequest.class, KEY_FILTER);
+		opcodes.put(HandoffRequest.class, HANDOFF);
+		opcodes.put(MerkleTreeRequest.class, MERKLE_TREE);
+		opcodes.put(StoreChunkRequest.class, STORE_CHUNK);
+		opcodes.put(ValueRangeRequest.class, VALUE_RANGE);
+		opcodes.put(ContainsKeyRequest.class, CONTAINS_KEY);
+		opcodes.put(CompareAndSetRequest.class, COMPARE_AND_SET);
+		opcodes.put(AppendRequest.class, APPEND);
+		opcodes.put(KeyChangedRequest.class, KEY_CHANGED);
+		opcodes.put(SubscribeRequest.class, SUBSCRIBE);
+	}
+
+	private Opcodes() {
+	}
+
+	/**
+	 * Opcode of the given type of request, numbering it if it has none yet. Opcodes of types other than the built-in
+	 * ones are only meaningful within this JVM
+	 */
+	public static int of(Class<? extends Request> requestClass) {
+		Integer opcode = opcodes.get(requestClass);
+		if (opcode != null)
+			return opcode;
+		synchronized (opcodes) {
+			opcode = opcodes.get(requestClass);
+			if (opcode == null) {
+				opcode = next++;
+				opcodes.put(requestClass, opcode);
+			}
+			return opcode;
+		}
+	}
+}
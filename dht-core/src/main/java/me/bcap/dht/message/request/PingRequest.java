@@ -11,6 +11,10 @@ public class PingRequest extends Request implements Serializable {
 		super();
 	}
 	
+	public int getOpcode() {
+		return Opcodes.PING;
+	}
+
 	public void addToStringProperties(SortedMap<String, Object> propertiesMap) {
 		super.addToStringProperties(propertiesMap);
 	}
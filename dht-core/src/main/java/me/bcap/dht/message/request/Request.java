@@ -26,7 +26,14 @@ public abstract class Request extends Message implements Serializable {
 	public void setTimeout(long timeout) {
 		this.timeout = timeout;
 	}
-	
+
+	/**
+	 * Number of the type of this request, see {@link Opcodes}. Built-in types return a constant, others are looked up
+	 */
+	public int getOpcode() {
+		return Opcodes.of(getClass());
+	}
+
 	public void addToStringProperties(SortedMap<String, Object> propertiesMap) {
 		super.addToStringProperties(propertiesMap);
 		propertiesMap.put("timeout", timeout);
@@ -0,0 +1,135 @@
+package me.bcap.dht.message.request;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.SortedMap;
+
+import me.bcap.dht.message.PayloadMessage;
+import me.bcap.dht.message.Payloads;
+
+/**
+ * One chunk of a value too large to be sent in a single {@link StoreRequest}. Chunks must be sent in order, each one
+ * starting where the receiver says the previous ones ended. A request with no chunk only asks for that position,
+ * which is how an interrupted transfer is resumed.
+ * <p>
+ * The chunk travels as the message payload. It can be given as a region of a file, which is then transferred from the
+ * file to the socket without being read into memory.
+ */
+public class StoreChunkRequest extends IdentifierRequest implements Serializable, PayloadMessage {
+
+	protected static final long serialVersionUID = IdentifierRequest.serialVersionUID + 1L;
+
+	private int totalLength;
+	private int offset;
+	private int payloadLength = -1;
+
+	private transient byte[] chunk;
+	private transient File file;
+	private transient long filePosition;
+
+	public StoreChunkRequest() {
+		super();
+	}
+
+	public int getTotalLength() {
+		return totalLength;
+	}
+
+	public void setTotalLength(int totalLength) {
+		this.totalLength = totalLength;
+	}
+
+	public int getOffset() {
+		return offset;
+	}
+
+	public void setOffset(int offset) {
+		this.offset = offset;
+	}
+
+	public byte[] getChunk() {
+		if (chunk == null && file != null) {
+			try {
+				chunk = readFileChunk();
+			} catch (IOException e) {
+				throw new IllegalStateException("Could not read the chunk from " + file, e);
+			}
+		}
+		return chunk;
+	}
+
+	public void setChunk(byte[] chunk) {
+		this.chunk = chunk;
+		this.file = null;
+		this.payloadLength = chunk != null ? chunk.length : -1;
+	}
+
+	/**
+	 * Sets the chunk as length bytes of a file starting at the given position, read only when the request is written
+	 */
+	public void setChunk(File file, long position, int length) {
+		this.chunk = null;
+		this.file = file;
+		this.filePosition = position;
+		this.payloadLength = length;
+	}
+
+	public int getPayloadLength() {
+		return payloadLength;
+	}
+
+	public void writePayload(WritableByteChannel channel) throws IOException {
+		if (chunk != null) {
+			Payloads.write(channel, chunk);
+		} else if (file != null) {
+			FileInputStream input = new FileInputStream(file);
+			try {
+				FileChannel source = input.getChannel();
+				long position = filePosition;
+				long end = filePosition + payloadLength;
+				while (position < end) {
+					long transferred = source.transferTo(position, end - position, channel);
+					if (transferred <= 0 && position >= source.size())
+						throw new IOException("File " + file + " ended before the chunk at position " + filePosition);
+					position += transferred;
+				}
+			} finally {
+				input.close();
+			}
+		}
+	}
+
+	public void readPayload(InputStream in) throws IOException {
+		if (payloadLength >= 0)
+			chunk = Payloads.read(in, payloadLength);
+	}
+
+	private byte[] readFileChunk() throws IOException {
+		RandomAccessFile input = new RandomAccessFile(file, "r");
+		try {
+			byte[] bytes = new byte[payloadLength];
+			input.seek(filePosition);
+			input.readFully(bytes);
+			return bytes;
+		} finally {
+			input.close();
+		}
+	}
+	
+	public int getOpcode() {
+		return Opcodes.STORE_CHUNK;
+	}
+
+	public void addToStringProperties(SortedMap<String, Object> propertiesMap) {
+		super.addToStringProperties(propertiesMap);
+		propertiesMap.put("totalLength", totalLength);
+		propertiesMap.put("offset", offset);
+		propertiesMap.put("chunk.length", payloadLength >= 0 ? payloadLength : "null");
+	}
+}
@@ -1,13 +1,23 @@
 package me.bcap.dht.message.request;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.Serializable;
+import java.nio.channels.WritableByteChannel;
 import java.util.SortedMap;
 
-public class StoreRequest extends IdentifierRequest implements Serializable {
+import me.bcap.dht.message.PayloadMessage;
+import me.bcap.dht.message.Payloads;
+
+/**
+ * The data travels as the message payload, read by the receiver straight into the array that gets stored
+ */
+public class StoreRequest extends IdentifierRequest implements Serializable, PayloadMessage {
 
 	protected static final long serialVersionUID = IdentifierRequest.serialVersionUID + 1L;
 
-	private byte[] data;
+	private transient byte[] data;
+	private int payloadLength = -1;
 
 	public StoreRequest() {
 		super();
@@ -19,10 +29,29 @@ public class StoreRequest extends IdentifierRequest implements Serializable {
 
 	public void setData(byte[] data) {
 		this.data = data;
+		this.payloadLength = data != null ? data.length : -1;
+	}
+
+	public int getPayloadLength() {
+		return payloadLength;
+	}
+
+	public void writePayload(WritableByteChannel channel) throws IOException {
+		if (data != null)
+			Payloads.write(channel, data);
+	}
+
+	public void readPayload(InputStream in) throws IOException {
+		if (payloadLength >= 0)
+			data = Payloads.read(in, payloadLength);
 	}
 	
+	public int getOpcode() {
+		return Opcodes.STORE;
+	}
+
 	public void addToStringProperties(SortedMap<String, Object> propertiesMap) {
 		super.addToStringProperties(propertiesMap);
-		propertiesMap.put("data.length", data != null ? data.length : "null");
+		propertiesMap.put("data.length", payloadLength >= 0 ? payloadLength : "null");
 	}
 }
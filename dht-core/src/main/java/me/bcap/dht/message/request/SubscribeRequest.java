@@ -0,0 +1,39 @@
+package me.bcap.dht.message.request;
+
+import java.io.Serializable;
+import java.util.SortedMap;
+
+/**
+ * Registers the source of the request as a watcher of a key on the destination node, which then pushes the changes of
+ * the key to it until the lease ends. Subscribing again renews the lease, a lease of 0 cancels the subscription.
+ */
+public class SubscribeRequest extends IdentifierRequest implements Serializable {
+
+	protected static final long serialVersionUID = IdentifierRequest.serialVersionUID + 1L;
+
+	private long lease;
+
+	public SubscribeRequest() {
+		super();
+	}
+
+	/**
+	 * How long the subscription lasts, in milliseconds
+	 */
+	public long getLease() {
+		return lease;
+	}
+
+	public void setLease(long lease) {
+		this.lease = lease;
+	}
+	
+	public int getOpcode() {
+		return Opcodes.SUBSCRIBE;
+	}
+
+	public void addToStringProperties(SortedMap<String, Object> propertiesMap) {
+		super.addToStringProperties(propertiesMap);
+		propertiesMap.put("lease", lease);
+	}
+}
@@ -0,0 +1,45 @@
+package me.bcap.dht.message.request;
+
+import java.io.Serializable;
+import java.util.SortedMap;
+
+/**
+ * Reads a range of a value stored on the destination node
+ */
+public class ValueRangeRequest extends IdentifierRequest implements Serializable {
+
+	protected static final long serialVersionUID = IdentifierRequest.serialVersionUID + 1L;
+
+	private int offset;
+	private int length;
+
+	public ValueRangeRequest() {
+		super();
+	}
+
+	public int getOffset() {
+		return offset;
+	}
+
+	public void setOffset(int offset) {
+		this.offset = offset;
+	}
+
+	public int getLength() {
+		return length;
+	}
+
+	public void setLength(int length) {
+		this.length = length;
+	}
+	
+	public int getOpcode() {
+		return Opcodes.VALUE_RANGE;
+	}
+
+	public void addToStringProperties(SortedMap<String, Object> propertiesMap) {
+		super.addToStringProperties(propertiesMap);
+		propertiesMap.put("offset", offset);
+		propertiesMap.put("length", length);
+	}
+}
@@ -0,0 +1,41 @@
+package me.bcap.dht.message.response;
+
+import java.io.Serializable;
+import java.util.SortedMap;
+
+public class AppendResponse extends Response implements Serializable {
+
+	protected static final long serialVersionUID = Response.serialVersionUID + 1L;
+
+	private boolean added;
+	private int size;
+
+	public AppendResponse() {
+		super();
+	}
+
+	/**
+	 * Whether the element was new to the set, false if only its expiry was extended
+	 */
+	public boolean isAdded() {
+		return added;
+	}
+
+	public void setAdded(boolean added) {
+		this.added = added;
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	public void setSize(int size) {
+		this.size = size;
+	}
+	
+	public void addToStringProperties(SortedMap<String, Object> propertiesMap) {
+		super.addToStringProperties(propertiesMap);
+		propertiesMap.put("added", added);
+		propertiesMap.put("size", size);
+	}
+}
@@ -0,0 +1,74 @@
+package me.bcap.dht.message.response;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.nio.channels.WritableByteChannel;
+import java.util.SortedMap;
+
+import me.bcap.dht.message.PayloadMessage;
+import me.bcap.dht.message.Payloads;
+
+/**
+ * On success carries the new version of the key. On failure carries its current version and value, null if the key is
+ * not stored, so that the client can retry without reading it again.
+ */
+public class CompareAndSetResponse extends Response implements Serializable, PayloadMessage {
+
+	protected static final long serialVersionUID = Response.serialVersionUID + 1L;
+
+	private boolean successful;
+	private long version;
+	private transient byte[] data;
+	private int payloadLength = -1;
+
+	public CompareAndSetResponse() {
+		super();
+	}
+
+	public boolean isSuccessful() {
+		return successful;
+	}
+
+	public void setSuccessful(boolean successful) {
+		this.successful = successful;
+	}
+
+	public long getVersion() {
+		return version;
+	}
+
+	public void setVersion(long version) {
+		this.version = version;
+	}
+
+	public byte[] getData() {
+		return data;
+	}
+
+	public void setData(byte[] data) {
+		this.data = data;
+		this.payloadLength = data != null ? data.length : -1;
+	}
+
+	public int getPayloadLength() {
+		return payloadLength;
+	}
+
+	public void writePayload(WritableByteChannel channel) throws IOException {
+		if (data != null)
+			Payloads.write(channel, data);
+	}
+
+	public void readPayload(InputStream in) throws IOException {
+		if (payloadLength >= 0)
+			data = Payloads.read(in, payloadLength);
+	}
+	
+	public void addToStringProperties(SortedMap<String, Object> propertiesMap) {
+		super.addToStringProperties(propertiesMap);
+		propertiesMap.put("successful", successful);
+		propertiesMap.put("version", version);
+		propertiesMap.put("data.length", payloadLength >= 0 ? payloadLength : "null");
+	}
+}
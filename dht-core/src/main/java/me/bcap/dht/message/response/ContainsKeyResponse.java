@@ -0,0 +1,35 @@
+package me.bcap.dht.message.response;
+
+import java.io.Serializable;
+import java.util.SortedMap;
+
+public class ContainsKeyResponse extends Response implements Serializable {
+
+	protected static final long serialVersionUID = Response.serialVersionUID + 1L;
+
+	private int length = -1;
+
+	public ContainsKeyResponse() {
+		super();
+	}
+
+	public boolean isContained() {
+		return length >= 0;
+	}
+
+	/**
+	 * Length of the stored value, -1 if the node does not store the key
+	 */
+	public int getLength() {
+		return length;
+	}
+
+	public void setLength(int length) {
+		this.length = length;
+	}
+	
+	public void addToStringProperties(SortedMap<String, Object> propertiesMap) {
+		super.addToStringProperties(propertiesMap);
+		propertiesMap.put("length", length);
+	}
+}
@@ -1,28 +1,117 @@
 package me.bcap.dht.message.response;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.Serializable;
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
 import java.util.SortedMap;
 
-public class FindValueResponse extends Response implements Serializable {
+import me.bcap.dht.message.PayloadMessage;
+import me.bcap.dht.message.Payloads;
+import me.bcap.dht.node.storage.StoredValue;
+
+/**
+ * The value travels as the message payload. On the serving side it can be given as a {@link StoredValue}, so that it
+ * is written from the storage straight to the socket.
+ */
+public class FindValueResponse extends Response implements Serializable, PayloadMessage {
 
 	protected static final long serialVersionUID = FindNodeResponse.serialVersionUID + 1L;
 
-	private byte[] data;
+	private transient byte[] data;
+	private transient StoredValue value;
+	private int payloadLength = -1;
+	private int length;
+	private long version;
+	private List<byte[]> elements;
 	
 	public FindValueResponse() {
 		super();
 	}
 
 	public byte[] getData() {
+		if (data == null && value != null)
+			data = value.getRange(0, payloadLength);
 		return data;
 	}
 
 	public void setData(byte[] data) {
 		this.data = data;
+		this.value = null;
+		this.payloadLength = data != null ? data.length : -1;
+	}
+
+	/**
+	 * Sets the value to be sent, read from the storage only when the response is written
+	 */
+	public void setValue(StoredValue value) {
+		this.data = null;
+		this.value = value;
+		this.payloadLength = value != null ? value.getLength() : -1;
+	}
+	
+	/**
+	 * Length of the value. When it is too large to be sent inline the data is left null and the value has to be read
+	 * in ranges with {@link me.bcap.dht.message.request.ValueRangeRequest}s
+	 */
+	public int getLength() {
+		return length;
+	}
+
+	public void setLength(int length) {
+		this.length = length;
+	}
+
+	/**
+	 * Version of the value on the responding node, to be used in a
+	 * {@link me.bcap.dht.message.request.CompareAndSetRequest}. It is read before the value, so it may be older than
+	 * the value sent but never newer, and a compare and set based on it can only fail needlessly
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	public void setVersion(long version) {
+		this.version = version;
+	}
+
+	/**
+	 * A random sample of the elements of a key holding a set, null for keys holding a single value
+	 */
+	public List<byte[]> getElements() {
+		return elements;
+	}
+
+	public void setElements(List<byte[]> elements) {
+		this.elements = elements;
+	}
+
+	public boolean isChunked() {
+		return payloadLength < 0 && elements == null;
+	}
+
+	public int getPayloadLength() {
+		return payloadLength;
+	}
+
+	public void writePayload(WritableByteChannel channel) throws IOException {
+		if (value != null)
+			value.transferTo(channel, 0, payloadLength);
+		else if (data != null)
+			Payloads.write(channel, data);
+	}
+
+	public void readPayload(InputStream in) throws IOException {
+		if (payloadLength >= 0)
+			data = Payloads.read(in, payloadLength);
 	}
 	
 	public void addToStringProperties(SortedMap<String, Object> propertiesMap) {
 		super.addToStringProperties(propertiesMap);
-		propertiesMap.put("data.length", data != null ? data.length : "null");
+		propertiesMap.put("data.length", payloadLength >= 0 ? payloadLength : "null");
+		propertiesMap.put("length", length);
+		propertiesMap.put("version", version);
+		propertiesMap.put("elements.size", elements != null ? elements.size() : "null");
 	}
 }
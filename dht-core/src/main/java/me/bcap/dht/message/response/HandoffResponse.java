@@ -0,0 +1,31 @@
+package me.bcap.dht.message.response;
+
+import java.io.Serializable;
+import java.util.SortedMap;
+
+public class HandoffResponse extends Response implements Serializable {
+
+	protected static final long serialVersionUID = Response.serialVersionUID + 1L;
+
+	private int accepted;
+
+	public HandoffResponse() {
+		super();
+	}
+
+	/**
+	 * How many of the handed off keys were actually stored, keys the node already had are left untouched
+	 */
+	public int getAccepted() {
+		return accepted;
+	}
+
+	public void setAccepted(int accepted) {
+		this.accepted = accepted;
+	}
+	
+	public void addToStringProperties(SortedMap<String, Object> propertiesMap) {
+		super.addToStringProperties(propertiesMap);
+		propertiesMap.put("accepted", accepted);
+	}
+}
@@ -0,0 +1,17 @@
+package me.bcap.dht.message.response;
+
+import java.io.Serializable;
+import java.util.SortedMap;
+
+public class KeyChangedResponse extends Response implements Serializable {
+
+	protected static final long serialVersionUID = Response.serialVersionUID + 1L;
+
+	public KeyChangedResponse() {
+		super();
+	}
+	
+	public void addToStringProperties(SortedMap<String, Object> propertiesMap) {
+		super.addToStringProperties(propertiesMap);
+	}
+}
@@ -0,0 +1,30 @@
+package me.bcap.dht.message.response;
+
+import java.io.Serializable;
+import java.util.SortedMap;
+
+import me.bcap.dht.node.filter.BloomFilter;
+
+public class KeyFilterResponse extends Response implements Serializable {
+
+	protected static final long serialVersionUID = Response.serialVersionUID + 1L;
+
+	private BloomFilter filter;
+
+	public KeyFilterResponse() {
+		super();
+	}
+
+	public BloomFilter getFilter() {
+		return filter;
+	}
+
+	public void setFilter(BloomFilter filter) {
+		this.filter = filter;
+	}
+	
+	public void addToStringProperties(SortedMap<String, Object> propertiesMap) {
+		super.addToStringProperties(propertiesMap);
+		propertiesMap.put("filter.size", filter != null ? filter.getSize() : "null");
+	}
+}
@@ -0,0 +1,57 @@
+package me.bcap.dht.message.response;
+
+import java.io.Serializable;
+import java.util.Map;
+import java.util.SortedMap;
+
+import me.bcap.dht.node.Identifier;
+
+public class MerkleTreeResponse extends Response implements Serializable {
+
+	protected static final long serialVersionUID = Response.serialVersionUID + 1L;
+
+	private long[] hashes;
+	private Map<Identifier, Long> digests;
+	private Map<Identifier, byte[]> values;
+
+	public MerkleTreeResponse() {
+		super();
+	}
+
+	/**
+	 * Hashes of the requested positions, in the order they were requested
+	 */
+	public long[] getHashes() {
+		return hashes;
+	}
+
+	public void setHashes(long[] hashes) {
+		this.hashes = hashes;
+	}
+
+	public Map<Identifier, Long> getDigests() {
+		return digests;
+	}
+
+	public void setDigests(Map<Identifier, Long> digests) {
+		this.digests = digests;
+	}
+
+	/**
+	 * Values of the requested keys, keys no longer stored are left out
+	 */
+	public Map<Identifier, byte[]> getValues() {
+		return values;
+	}
+
+	public void setValues(Map<Identifier, byte[]> values) {
+		this.values = values;
+	}
+	
+	public void addToStringProperties(SortedMap<String, Object> propertiesMap) {
+		super.addToStringProperties(propertiesMap);
+		propertiesMap.put("hashes.length", hashes != null ? hashes.length : "null");
+		propertiesMap.put("digests.size", digests != null ? digests.size() : "null");
+		propertiesMap.put("values.size", values != null ? values.size() : "null");
+	}
+}
@@ -14,6 +14,7 @@ public abstract class Response extends Message implements Serializable {
 	}
 
 	private Status status = Status.OK;
+	private long handlerTime = -1;
 
 	public Response() {
 		super();
@@ -21,6 +22,8 @@ public abstract class Response extends Message implements Serializable {
 
 	public void addToStringProperties(SortedMap<String, Object> propertiesMap) {
 		super.addToStringProperties(propertiesMap);
+		if (handlerTime >= 0)
+			propertiesMap.put("handlerTime", handlerTime);
 	}
 	
 	public boolean isSuccess() {
@@ -35,4 +38,16 @@ public abstract class Response extends Message implements Serializable {
 		this.status = status;
 	}
 
+	/**
+	 * Microseconds the request spent in its handler on the responding server, only filled in for traced requests and
+	 * -1 otherwise
+	 */
+	public long getHandlerTime() {
+		return handlerTime;
+	}
+
+	public void setHandlerTime(long handlerTime) {
+		this.handlerTime = handlerTime;
+	}
+
 }
@@ -0,0 +1,44 @@
+package me.bcap.dht.message.response;
+
+import java.io.Serializable;
+import java.util.SortedMap;
+
+public class StoreChunkResponse extends Response implements Serializable {
+
+	protected static final long serialVersionUID = Response.serialVersionUID + 1L;
+
+	private int received;
+	private boolean complete;
+
+	public StoreChunkResponse() {
+		super();
+	}
+
+	/**
+	 * How many bytes of the value were received so far, the offset the next chunk must start at
+	 */
+	public int getReceived() {
+		return received;
+	}
+
+	public void setReceived(int received) {
+		this.received = received;
+	}
+
+	/**
+	 * Whether the whole value was received and stored
+	 */
+	public boolean isComplete() {
+		return complete;
+	}
+
+	public void setComplete(boolean complete) {
+		this.complete = complete;
+	}
+	
+	public void addToStringProperties(SortedMap<String, Object> propertiesMap) {
+		super.addToStringProperties(propertiesMap);
+		propertiesMap.put("received", received);
+		propertiesMap.put("complete", complete);
+	}
+}
@@ -0,0 +1,44 @@
+package me.bcap.dht.message.response;
+
+import java.io.Serializable;
+import java.util.SortedMap;
+
+public class SubscribeResponse extends Response implements Serializable {
+
+	protected static final long serialVersionUID = Response.serialVersionUID + 1L;
+
+	private long lease;
+	private long version;
+
+	public SubscribeResponse() {
+		super();
+	}
+
+	/**
+	 * The lease granted, possibly shorter than asked, 0 if the subscription was cancelled
+	 */
+	public long getLease() {
+		return lease;
+	}
+
+	public void setLease(long lease) {
+		this.lease = lease;
+	}
+
+	/**
+	 * Version of the key when the subscription was made, 0 if it is not stored
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	public void setVersion(long version) {
+		this.version = version;
+	}
+	
+	public void addToStringProperties(SortedMap<String, Object> propertiesMap) {
+		super.addToStringProperties(propertiesMap);
+		propertiesMap.put("lease", lease);
+		propertiesMap.put("version", version);
+	}
+}
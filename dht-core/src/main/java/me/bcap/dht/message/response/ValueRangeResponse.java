@@ -0,0 +1,84 @@
+package me.bcap.dht.message.response;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.nio.channels.WritableByteChannel;
+import java.util.SortedMap;
+
+import me.bcap.dht.message.PayloadMessage;
+import me.bcap.dht.message.Payloads;
+import me.bcap.dht.node.storage.StoredValue;
+
+public class ValueRangeResponse extends Response implements Serializable, PayloadMessage {
+
+	protected static final long serialVersionUID = Response.serialVersionUID + 1L;
+
+	private transient byte[] data;
+	private transient StoredValue value;
+	private transient int valueOffset;
+	private int payloadLength = -1;
+	private int totalLength;
+
+	public ValueRangeResponse() {
+		super();
+	}
+
+	/**
+	 * The bytes of the range, fewer than asked if the value ends before
+	 */
+	public byte[] getData() {
+		if (data == null && value != null)
+			data = value.getRange(valueOffset, payloadLength);
+		return data;
+	}
+
+	public void setData(byte[] data) {
+		this.data = data;
+		this.value = null;
+		this.payloadLength = data != null ? data.length : -1;
+	}
+
+	/**
+	 * Sets the range to be sent as a part of a stored value, read from the storage only when the response is written
+	 */
+	public void setRange(StoredValue value, int offset, int length) {
+		this.data = null;
+		this.value = value;
+		this.valueOffset = offset;
+		this.payloadLength = length;
+	}
+
+	/**
+	 * Length of the whole value, -1 if the node does not store it
+	 */
+	public int getTotalLength() {
+		return totalLength;
+	}
+
+	public void setTotalLength(int totalLength) {
+		this.totalLength = totalLength;
+	}
+
+	public int getPayloadLength() {
+		return payloadLength;
+	}
+
+	public void writePayload(WritableByteChannel channel) throws IOException {
+		if (value != null)
+			value.transferTo(channel, valueOffset, payloadLength);
+		else if (data != null)
+			Payloads.write(channel, data);
+	}
+
+	public void readPayload(InputStream in) throws IOException {
+		if (payloadLength >= 0)
+			data = Payloads.read(in, payloadLength);
+	}
+	
+	public void addToStringProperties(SortedMap<String, Object> propertiesMap) {
+		super.addToStringProperties(propertiesMap);
+		propertiesMap.put("data.length", payloadLength >= 0 ? payloadLength : "null");
+		propertiesMap.put("totalLength", totalLength);
+	}
+}
@@ -0,0 +1,56 @@
+package me.bcap.dht.metrics;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Adds the bytes read through it to a counter, and keeps the count of this stream alone
+ */
+public class CountingInputStream extends FilterInputStream {
+
+	private StripedCounter counter;
+	private long count = 0;
+
+	public CountingInputStream(InputStream in, StripedCounter counter) {
+		super(in);
+		this.counter = counter;
+	}
+
+	@Override
+	public int read() throws IOException {
+		int read = in.read();
+		if (read >= 0) {
+			counter.increment();
+			count++;
+		}
+		return read;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		int read = in.read(b, off, len);
+		if (read > 0) {
+			counter.add(read);
+			count += read;
+		}
+		return read;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		long skipped = in.skip(n);
+		if (skipped > 0) {
+			counter.add(skipped);
+			count += skipped;
+		}
+		return skipped;
+	}
+
+	/**
+	 * Bytes read through this stream
+	 */
+	public long getCount() {
+		return count;
+	}
+}
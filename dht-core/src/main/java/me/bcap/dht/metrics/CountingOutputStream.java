@@ -0,0 +1,41 @@
+package me.bcap.dht.metrics;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Adds the bytes written through it to a counter, and keeps the count of this stream alone
+ */
+public class CountingOutputStream extends FilterOutputStream {
+
+	private StripedCounter counter;
+	private long count = 0;
+
+	public CountingOutputStream(OutputStream out, StripedCounter counter) {
+		super(out);
+		this.counter = counter;
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		out.write(b);
+		counter.increment();
+		count++;
+	}
+
+	// FilterOutputStream would write the array one byte at a time
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		out.write(b, off, len);
+		counter.add(len);
+		count += len;
+	}
+
+	/**
+	 * Bytes written through this stream
+	 */
+	public long getCount() {
+		return count;
+	}
+}
@@ -0,0 +1,9 @@
+package me.bcap.dht.metrics;
+
+/**
+ * A value read when the metrics are read, such as the size of a queue
+ */
+public interface Gauge {
+
+	public long getValue();
+}
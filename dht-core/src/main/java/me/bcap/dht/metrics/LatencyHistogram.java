@@ -0,0 +1,122 @@
+package me.bcap.dht.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of durations, recorded in nanoseconds and reported in microseconds, meant to be updated from many threads
+ * at once without locking.
+ * <p>
+ * Each power of two is split in 4 buckets, so percentiles are reported as the upper bound of their bucket, at most 25%
+ * above the actual value. Counts are striped like the ones of a {@link StripedCounter}. Durations above
+ * {@link #MAX_VALUE} microseconds fall in the last bucket.
+ */
+public class LatencyHistogram {
+
+	public static final long MAX_VALUE = 1L << 40;
+
+	private static final int SUB_BUCKET_BITS = 2;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int BUCKETS = bucketOf(MAX_VALUE) + 1;
+
+	// histograms are far larger than counters, so fewer slots are kept
+	private static final int STRIPES = Math.min(Striping.STRIPES, 8);
+
+	private AtomicLongArray counts = new AtomicLongArray(STRIPES * BUCKETS);
+	private StripedCounter sum = new StripedCounter();
+	private AtomicLong max = new AtomicLong();
+
+	public void record(long nanos) {
+		long micros = TimeUnit.NANOSECONDS.toMicros(Math.max(0, nanos));
+		int bucket = bucketOf(Math.min(micros, MAX_VALUE));
+		counts.getAndIncrement((Striping.stripe() & (STRIPES - 1)) * BUCKETS + bucket);
+		sum.add(micros);
+
+		long currentMax = max.get();
+		while (micros > currentMax && !max.compareAndSet(currentMax, micros))
+			currentMax = max.get();
+	}
+
+	public Snapshot snapshot() {
+		long[] buckets = new long[BUCKETS];
+		long count = 0;
+		for (int stripe = 0; stripe < STRIPES; stripe++) {
+			for (int bucket = 0; bucket < BUCKETS; bucket++) {
+				long value = counts.get(stripe * BUCKETS + bucket);
+				buckets[bucket] += value;
+				count += value;
+			}
+		}
+		return new Snapshot(buckets, count, sum.get(), max.get());
+	}
+
+	static int bucketOf(long value) {
+		if (value < SUB_BUCKETS)
+			return (int) value;
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return SUB_BUCKETS + (exponent - SUB_BUCKET_BITS) * SUB_BUCKETS + subBucket;
+	}
+
+	static long upperBoundOf(int bucket) {
+		if (bucket < SUB_BUCKETS)
+			return bucket;
+		int shift = (bucket - SUB_BUCKETS) / SUB_BUCKETS;
+		int subBucket = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+		long lower = (long) (SUB_BUCKETS + subBucket) << shift;
+		return lower + (1L << shift) - 1;
+	}
+
+	/**
+	 * The state of a histogram at the time it was taken. Updates made while it was being taken may be partially
+	 * included
+	 */
+	public static class Snapshot {
+		private long[] buckets;
+		private long count;
+		private long sum;
+		private long max;
+
+		private Snapshot(long[] buckets, long count, long sum, long max) {
+			this.buckets = buckets;
+			this.count = count;
+			this.sum = sum;
+			this.max = max;
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		/**
+		 * Mean in microseconds, 0 if nothing was recorded
+		 */
+		public long getMean() {
+			return count == 0 ? 0 : sum / count;
+		}
+
+		/**
+		 * Largest duration recorded, in microseconds
+		 */
+		public long getMax() {
+			return max;
+		}
+
+		/**
+		 * Returns the given percentile (0 to 100) in microseconds, or 0 if nothing was recorded
+		 */
+		public long getPercentile(double percentile) {
+			if (count == 0)
+				return 0;
+			long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+			long seen = 0;
+			for (int bucket = 0; bucket < buckets.length; bucket++) {
+				seen += buckets[bucket];
+				if (seen >= rank)
+					return Math.min(upperBoundOf(bucket), max);
+			}
+			return max;
+		}
+	}
+}
@@ -0,0 +1,86 @@
+package me.bcap.dht.metrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.net.InetSocketAddress;
+
+import org.apache.log4j.Logger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serves the text dump of a {@link MetricsRegistry} over HTTP, on {@link #PATH}, for monitoring systems that pull
+ * metrics. Metrics are read on each request, nothing is computed between scrapes.
+ */
+public class MetricsEndpoint {
+
+	private static final Logger logger = Logger.getLogger(MetricsEndpoint.class);
+
+	public static final String PATH = "/metrics";
+
+	private MetricsRegistry registry;
+	private InetSocketAddress address;
+
+	private HttpServer httpServer;
+
+	public MetricsEndpoint(MetricsRegistry registry, int port) {
+		this(registry, new InetSocketAddress(port));
+	}
+
+	public MetricsEndpoint(MetricsRegistry registry, InetSocketAddress address) {
+		this.registry = registry;
+		this.address = address;
+	}
+
+	public synchronized void start() throws IOException {
+		if (httpServer != null)
+			return;
+		httpServer = HttpServer.create(address, 0);
+		httpServer.createContext(PATH, new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				serve(exchange);
+			}
+		});
+		httpServer.start();
+		logger.info("Serving metrics on " + httpServer.getAddress() + PATH);
+	}
+
+	public synchronized void stop() {
+		if (httpServer != null) {
+			httpServer.stop(0);
+			httpServer = null;
+		}
+	}
+
+	/**
+	 * The address the endpoint listens on, with the actual port if started on port 0
+	 */
+	public synchronized InetSocketAddress getAddress() {
+		return httpServer != null ? httpServer.getAddress() : address;
+	}
+
+	private void serve(HttpExchange exchange) throws IOException {
+		try {
+			if (!"GET".equals(exchange.getRequestMethod())) {
+				exchange.sendResponseHeaders(405, -1);
+				return;
+			}
+			StringWriter text = new StringWriter();
+			registry.writeText(text);
+			byte[] body = text.toString().getBytes("UTF-8");
+			exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+			exchange.sendResponseHeaders(200, body.length);
+			OutputStream out = exchange.getResponseBody();
+			out.write(body);
+			out.flush();
+		} catch (IOException e) {
+			logger.warn("Could not serve metrics to " + exchange.getRemoteAddress(), e);
+			throw e;
+		} finally {
+			exchange.close();
+		}
+	}
+}
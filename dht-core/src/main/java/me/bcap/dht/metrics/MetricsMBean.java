@@ -0,0 +1,98 @@
+package me.bcap.dht.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Exposes a {@link MetricsRegistry} through JMX, one read only attribute per value of its
+ * {@link MetricsRegistry#snapshot() snapshot}. Metrics created after the bean was registered show up the next time
+ * its attributes are listed.
+ */
+public class MetricsMBean implements DynamicMBean {
+
+	private static final Logger logger = Logger.getLogger(MetricsMBean.class);
+
+	public static final String DOMAIN = "me.bcap.dht";
+
+	private MetricsRegistry registry;
+
+	public MetricsMBean(MetricsRegistry registry) {
+		this.registry = registry;
+	}
+
+	/**
+	 * Registers the registry in the platform MBean server under {@value #DOMAIN}:type=Metrics,name=&lt;name&gt;,
+	 * replacing any bean already registered there
+	 */
+	public static ObjectName register(MetricsRegistry registry, String name) throws JMException {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName objectName = new ObjectName(DOMAIN + ":type=Metrics,name=" + ObjectName.quote(name));
+		if (server.isRegistered(objectName))
+			server.unregisterMBean(objectName);
+		server.registerMBean(new MetricsMBean(registry), objectName);
+		logger.debug("Registered metrics MBean " + objectName);
+		return objectName;
+	}
+
+	public static void unregister(ObjectName objectName) {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			if (server.isRegistered(objectName))
+				server.unregisterMBean(objectName);
+		} catch (JMException e) {
+			logger.warn("Could not unregister the metrics MBean " + objectName, e);
+		}
+	}
+
+	public Object getAttribute(String attribute) throws AttributeNotFoundException {
+		Long value = registry.read(attribute);
+		if (value == null)
+			throw new AttributeNotFoundException("No metric named " + attribute);
+		return value;
+	}
+
+	public AttributeList getAttributes(String[] attributes) {
+		AttributeList list = new AttributeList();
+		Map<String, Long> snapshot = registry.snapshot();
+		for (String attribute : attributes) {
+			Long value = snapshot.get(attribute);
+			if (value != null)
+				list.add(new Attribute(attribute, value));
+		}
+		return list;
+	}
+
+	public MBeanInfo getMBeanInfo() {
+		List<MBeanAttributeInfo> attributes = new ArrayList<MBeanAttributeInfo>();
+		for (String name : registry.snapshot().keySet())
+			attributes.add(new MBeanAttributeInfo(name, Long.class.getName(), name, true, false, false));
+		return new MBeanInfo(getClass().getName(), "DHT metrics", attributes.toArray(new MBeanAttributeInfo[attributes.size()]), null, new MBeanOperationInfo[0], null);
+	}
+
+	public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+		throw new AttributeNotFoundException("Metric " + attribute.getName() + " is read only");
+	}
+
+	public AttributeList setAttributes(AttributeList attributes) {
+		return new AttributeList();
+	}
+
+	public Object invoke(String actionName, Object[] params, String[] signature) {
+		throw new UnsupportedOperationException("Metrics have no operations");
+	}
+}
@@ -0,0 +1,122 @@
+package me.bcap.dht.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Named set of counters, histograms and gauges. Metrics are created the first time they are asked for and the same
+ * instance is returned afterwards, so callers on hot paths should keep a reference instead of looking them up each
+ * time.
+ * <p>
+ * Metrics are only read when pulled, through {@link #snapshot()}, {@link #writeText(Writer)}, a {@link MetricsMBean}
+ * or a {@link MetricsEndpoint}. Histograms are flattened into one value per statistic, named after the histogram
+ * followed by .count, .mean, .p50, .p90, .p99, .p999 or .max, all in microseconds but the count.
+ */
+public class MetricsRegistry {
+
+	private ConcurrentMap<String, Object> metrics = new ConcurrentHashMap<String, Object>();
+
+	public StripedCounter counter(String name) {
+		return get(name, StripedCounter.class);
+	}
+
+	public LatencyHistogram histogram(String name) {
+		return get(name, LatencyHistogram.class);
+	}
+
+	/**
+	 * Registers a gauge, replacing any gauge previously registered with the same name
+	 */
+	public void gauge(String name, Gauge gauge) {
+		Object old = metrics.put(name, gauge);
+		if (old != null && !(old instanceof Gauge)) {
+			metrics.put(name, old);
+			throw new IllegalArgumentException("Metric " + name + " is already registered as a " + old.getClass().getSimpleName());
+		}
+	}
+
+	public void remove(String name) {
+		metrics.remove(name);
+	}
+
+	private <T> T get(String name, Class<T> type) {
+		Object metric = metrics.get(name);
+		if (metric == null) {
+			try {
+				metric = type.newInstance();
+			} catch (Exception e) {
+				throw new RuntimeException("Could not create a metric of type " + type, e);
+			}
+			Object existing = metrics.putIfAbsent(name, metric);
+			if (existing != null)
+				metric = existing;
+		}
+		if (!type.isInstance(metric))
+			throw new IllegalArgumentException("Metric " + name + " is already registered as a " + metric.getClass().getSimpleName());
+		return type.cast(metric);
+	}
+
+	/**
+	 * Reads every metric, sorted by name
+	 */
+	public SortedMap<String, Long> snapshot() {
+		SortedMap<String, Long> values = new TreeMap<String, Long>();
+		for (Entry<String, Object> entry : metrics.entrySet())
+			read(entry.getKey(), entry.getValue(), values);
+		return values;
+	}
+
+	private void read(String name, Object metric, Map<String, Long> values) {
+		if (metric instanceof StripedCounter) {
+			values.put(name, ((StripedCounter) metric).get());
+		} else if (metric instanceof Gauge) {
+			values.put(name, ((Gauge) metric).getValue());
+		} else {
+			LatencyHistogram.Snapshot histogram = ((LatencyHistogram) metric).snapshot();
+			values.put(name + ".count", histogram.getCount());
+			values.put(name + ".mean", histogram.getMean());
+			values.put(name + ".p50", histogram.getPercentile(50));
+			values.put(name + ".p90", histogram.getPercentile(90));
+			values.put(name + ".p99", histogram.getPercentile(99));
+			values.put(name + ".p999", histogram.getPercentile(99.9));
+			values.put(name + ".max", histogram.getMax());
+		}
+	}
+
+	/**
+	 * Reads a single value as named in {@link #snapshot()}, returning null if there is no such metric
+	 */
+	public Long read(String name) {
+		String metricName = name;
+		Object metric = metrics.get(name);
+		int dot = name.lastIndexOf('.');
+		if (metric == null && dot > 0) {
+			metricName = name.substring(0, dot);
+			metric = metrics.get(metricName);
+		}
+		if (metric == null)
+			return null;
+		Map<String, Long> values = new TreeMap<String, Long>();
+		read(metricName, metric, values);
+		return values.get(name);
+	}
+
+	/**
+	 * Writes every metric as a "name value" line, sorted by name. Dots and other characters not allowed in Prometheus
+	 * metric names are written as underscores, so the output can be scraped as is
+	 */
+	public void writeText(Writer writer) throws IOException {
+		for (Map.Entry<String, Long> entry : snapshot().entrySet()) {
+			writer.write(entry.getKey().replaceAll("[^a-zA-Z0-9_:]", "_"));
+			writer.write(' ');
+			writer.write(String.valueOf(entry.getValue()));
+			writer.write('\n');
+		}
+	}
+}
@@ -0,0 +1,30 @@
+package me.bcap.dht.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counter meant to be incremented from many threads at once. Each thread adds to its own slot, padded to a cache line
+ * of its own, and reads sum all slots, so a read concurrent with updates is not an atomic snapshot
+ */
+public class StripedCounter {
+
+	// 8 longs to a 64 bytes cache line
+	private static final int PADDING = 8;
+
+	private AtomicLongArray cells = new AtomicLongArray(Striping.STRIPES * PADDING);
+
+	public void increment() {
+		add(1);
+	}
+
+	public void add(long delta) {
+		cells.getAndAdd(Striping.stripe() * PADDING, delta);
+	}
+
+	public long get() {
+		long sum = 0;
+		for (int i = 0; i < Striping.STRIPES; i++)
+			sum += cells.get(i * PADDING);
+		return sum;
+	}
+}
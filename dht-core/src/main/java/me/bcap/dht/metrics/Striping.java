@@ -0,0 +1,32 @@
+package me.bcap.dht.metrics;
+
+/**
+ * Spreads the updates of concurrent threads over separate slots so that they do not contend on the same cache line.
+ * Readers sum the slots
+ */
+final class Striping {
+
+	/**
+	 * Number of slots, a power of two at least as large as the number of processors, capped at 64
+	 */
+	static final int STRIPES;
+
+	static {
+		int processors = Runtime.getRuntime().availableProcessors();
+		int stripes = 1;
+		while (stripes < processors && stripes < 64)
+			stripes <<= 1;
+		STRIPES = stripes;
+	}
+
+	private Striping() {
+	}
+
+	/**
+	 * The slot of the calling thread. Thread ids are handed out in sequence, so consecutive threads get different
+	 * slots
+	 */
+	static int stripe() {
+		return (int) (Thread.currentThread().getId() & (STRIPES - 1));
+	}
+}
@@ -7,6 +7,9 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 
+import me.bcap.dht.probe.Probe;
+import me.bcap.dht.probe.Probes;
+
 public class Bucket extends Identifier implements Serializable {
 
 	private static final long serialVersionUID = 1L;
@@ -22,29 +25,36 @@ public class Bucket extends Identifier implements Serializable {
 		super(id);
 	}
 
-	public int size() {
+	public synchronized int size() {
 		return contacts.size();
 	}
 
-	public boolean updateContact(Contact contact) {
+	public synchronized boolean updateContact(Contact contact) {
 		Identifier key = contact.asIdentifier();
-		if (contacts.containsKey(key) || this.size() < MAX_SIZE) {
+		boolean known = contacts.containsKey(key);
+		boolean updated = known || this.size() < MAX_SIZE;
+		if (updated)
 			contacts.put(key, contact);
-			return true;
-		} else {
-			return false;
-		}
+
+		Probe probe = Probes.get();
+		if (probe != null)
+			probe.bucketUpdated(this, contact, known, updated && !known, contacts.size());
+		return updated;
 	}
 
-	public boolean removeContact(Contact contact) {
-		return this.contacts.remove(contact.asIdentifier()) != null;
+	public synchronized boolean removeContact(Contact contact) {
+		boolean removed = this.contacts.remove(contact.asIdentifier()) != null;
+		Probe probe = Probes.get();
+		if (removed && probe != null)
+			probe.bucketEvicted(this, contact, contacts.size());
+		return removed;
 	}
 	
-	public Contact getContact(Identifier id) {
+	public synchronized Contact getContact(Identifier id) {
 		return contacts.get(id.asIdentifier());
 	}
 	
-	public Collection<Contact> getContacts() {
+	public synchronized Collection<Contact> getContacts() {
 		return new ArrayList<Contact>(contacts.values());
 	}
 }
\ No newline at end of file
@@ -0,0 +1,10 @@
+package me.bcap.dht.node;
+
+/**
+ * Gets notified when a node learns about a contact it did not know before
+ */
+public interface ContactListener {
+
+	public void contactAdded(Node node, Contact contact);
+
+}
@@ -0,0 +1,19 @@
+package me.bcap.dht.node;
+
+import java.util.Comparator;
+
+/**
+ * Orders identifiers by their XOR distance to a target identifier, closest first
+ */
+public class DistanceComparator implements Comparator<Identifier> {
+
+	private Identifier target;
+
+	public DistanceComparator(Identifier target) {
+		this.target = target;
+	}
+
+	public int compare(Identifier id1, Identifier id2) {
+		return target.getDistance(id1).compareTo(target.getDistance(id2));
+	}
+}
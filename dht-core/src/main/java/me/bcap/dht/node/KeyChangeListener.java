@@ -0,0 +1,12 @@
+package me.bcap.dht.node;
+
+import me.bcap.dht.message.request.KeyChangedRequest;
+
+/**
+ * Told about the changes of the keys a node subscribed to, as pushed by the nodes storing them
+ */
+public interface KeyChangeListener {
+
+	public void keyChanged(Node watcher, Contact origin, KeyChangedRequest.Change change);
+
+}
@@ -1,18 +1,45 @@
 package me.bcap.dht.node;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.math.BigInteger;
 import java.net.InetAddress;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apache.log4j.Logger;
+
+import me.bcap.dht.node.filter.CountingBloomFilter;
+import me.bcap.dht.node.storage.DistanceIndex;
+import me.bcap.dht.node.storage.MemoryStorage;
+import me.bcap.dht.node.storage.MerkleTree;
+import me.bcap.dht.node.storage.Storage;
+import me.bcap.dht.node.storage.ValueSets;
 
 public class Node extends Contact implements Serializable {
 
 	private static final long serialVersionUID = 1L;
 
+	private static final Logger logger = Logger.getLogger(Node.class);
+
 	private Bucket[] buckets;
 	
-	private Map<Identifier, byte[]> dataStorage;
+	private Storage dataStorage;
+	
+	private CountingBloomFilter keyFilter;
+	
+	private DistanceIndex keyIndex;
+	
+	private MerkleTree merkleTree;
+	
+	private ValueSets valueSets = new ValueSets();
+	
+	// contact listeners usually hold on to network resources, so they stay with the running node only
+	private transient List<ContactListener> contactListeners = new CopyOnWriteArrayList<ContactListener>();
 	
 	protected Node() {
 		init();
@@ -25,7 +52,26 @@ public class Node extends Contact implements Serializable {
 	
 	public boolean updateContact(Contact contact) {
 		Bucket bucket = getBucketForId(contact);
-		return bucket.updateContact(contact);
+		boolean known = bucket.getContact(contact) != null;
+		boolean updated = bucket.updateContact(contact);
+		if (updated && !known) {
+			for (ContactListener listener : contactListeners) {
+				try {
+					listener.contactAdded(this, contact);
+				} catch (RuntimeException e) {
+					logger.error("Contact listener " + listener + " failed while handling the new contact " + contact, e);
+				}
+			}
+		}
+		return updated;
+	}
+	
+	public void addContactListener(ContactListener listener) {
+		contactListeners.add(listener);
+	}
+	
+	public void removeContactListener(ContactListener listener) {
+		contactListeners.remove(listener);
 	}
 	
 	public int getBucketIndex(Identifier id) {
@@ -43,6 +89,30 @@ public class Node extends Contact implements Serializable {
 		return getBucket(getBucketIndex(id));
 	}
 	
+	public List<Contact> getClosestContacts(Identifier id, int count) {
+		List<Contact> contacts = new ArrayList<Contact>();
+		for (int i = 0; i < buckets.length; i++)
+			contacts.addAll(buckets[i].getContacts());
+		Collections.sort(contacts, new DistanceComparator(id));
+		return contacts.size() > count ? new ArrayList<Contact>(contacts.subList(0, count)) : contacts;
+	}
+	
+	/**
+	 * Whether fewer than count known contacts are closer to the id than the given contact, that is whether the contact
+	 * is among the count closest to the id this node knows of
+	 */
+	public boolean isAmongClosestContacts(Contact contact, Identifier id, int count) {
+		BigInteger distance = contact.getDistance(id);
+		int closer = 0;
+		for (int i = 0; i < buckets.length; i++) {
+			for (Contact other : buckets[i].getContacts()) {
+				if (other.getDistance(id).compareTo(distance) < 0 && ++closer >= count)
+					return false;
+			}
+		}
+		return true;
+	}
+
 	public int countContacts() {
 		int count = 0;
 		for (int i = 0; i < buckets.length; i++)
@@ -65,14 +135,97 @@ public class Node extends Contact implements Serializable {
 	}
 	
 	private void createDataStorage() {
-		this.dataStorage = new ConcurrentHashMap<Identifier, byte[]>();
+		this.keyFilter = new CountingBloomFilter();
+		this.keyIndex = new DistanceIndex();
+		this.merkleTree = new MerkleTree();
+		this.dataStorage = new MemoryStorage();
+		this.dataStorage.addListener(keyFilter);
+		this.dataStorage.addListener(keyIndex);
+		this.dataStorage.addListener(merkleTree);
+		// keys holding sets are looked up with the same requests, so the filter has to know about them too
+		this.valueSets.addListener(keyFilter);
+	}
+	
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		this.contactListeners = new CopyOnWriteArrayList<ContactListener>();
+	}
+
+	/**
+	 * The keys holding sets of elements, kept apart from the data storage
+	 */
+	public ValueSets getValueSets() {
+		return valueSets;
 	}
 
-	public Map<Identifier, byte[]> getDataStorage() {
+	public Storage getDataStorage() {
 		return dataStorage;
 	}
 
-	public void setDataStorage(Map<Identifier, byte[]> dataStorage) {
+	/**
+	 * Replaces the data storage of this node, moving the key filter, index and Merkle tree over to the new storage.
+	 * Meant to be done before the node starts being served
+	 */
+	public void setDataStorage(Storage dataStorage) {
+		this.dataStorage.removeListener(keyFilter);
+		this.dataStorage.removeListener(keyIndex);
+		this.dataStorage.removeListener(merkleTree);
 		this.dataStorage = dataStorage;
+		rebuildKeyFilter();
+		rebuildKeyIndex();
+		rebuildMerkleTree();
+		dataStorage.addListener(keyFilter);
+		dataStorage.addListener(keyIndex);
+		dataStorage.addListener(merkleTree);
+	}
+
+	public CountingBloomFilter getKeyFilter() {
+		return keyFilter;
+	}
+
+	/**
+	 * Replaces the key filter, for instance with one sized for more keys, filling it with the keys already stored
+	 */
+	public void setKeyFilter(CountingBloomFilter keyFilter) {
+		this.dataStorage.removeListener(this.keyFilter);
+		this.valueSets.removeListener(this.keyFilter);
+		this.keyFilter = keyFilter;
+		rebuildKeyFilter();
+		this.dataStorage.addListener(keyFilter);
+		this.valueSets.addListener(keyFilter);
+	}
+
+	/**
+	 * Index of the stored keys by distance, used to find the keys to hand off to closer nodes
+	 */
+	public DistanceIndex getKeyIndex() {
+		return keyIndex;
+	}
+
+	/**
+	 * Hash tree over the stored entries, compared with other replicas to repair the differences between them
+	 */
+	public MerkleTree getMerkleTree() {
+		return merkleTree;
+	}
+
+	private void rebuildMerkleTree() {
+		merkleTree.clear();
+		for (Entry<Identifier, byte[]> entry : dataStorage.entrySet())
+			merkleTree.valueStored(entry.getKey(), entry.getValue(), true);
+	}
+
+	private void rebuildKeyIndex() {
+		keyIndex.clear();
+		for (Identifier key : dataStorage.keySet())
+			keyIndex.add(key);
+	}
+
+	private void rebuildKeyFilter() {
+		keyFilter.clear();
+		for (Identifier key : dataStorage.keySet())
+			keyFilter.add(key);
+		for (Identifier key : valueSets.keySet())
+			keyFilter.add(key);
 	}
 }
\ No newline at end of file
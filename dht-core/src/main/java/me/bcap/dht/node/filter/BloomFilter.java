@@ -0,0 +1,55 @@
+package me.bcap.dht.node.filter;
+
+import java.io.Serializable;
+
+import me.bcap.dht.node.Identifier;
+
+/**
+ * Plain bloom filter over identifiers. Nodes hand it out as a compact summary of the keys they store, see
+ * {@link CountingBloomFilter#toBloomFilter()}
+ */
+public class BloomFilter implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private long[] bits;
+	private int size;
+	private int hashes;
+
+	public BloomFilter(int size, int hashes) {
+		this.bits = new long[(size + 63) / 64];
+		this.size = size;
+		this.hashes = hashes;
+	}
+
+	public void add(Identifier id) {
+		long hash = FilterHash.hash(id);
+		for (int i = 0; i < hashes; i++)
+			set(FilterHash.index(hash, i, size));
+	}
+
+	/**
+	 * Returns false if the identifier was certainly never added, true if it may have been
+	 */
+	public boolean mightContain(Identifier id) {
+		long hash = FilterHash.hash(id);
+		for (int i = 0; i < hashes; i++) {
+			int index = FilterHash.index(hash, i, size);
+			if ((bits[index >>> 6] & (1L << index)) == 0)
+				return false;
+		}
+		return true;
+	}
+
+	void set(int index) {
+		bits[index >>> 6] |= 1L << index;
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	public int getHashes() {
+		return hashes;
+	}
+}
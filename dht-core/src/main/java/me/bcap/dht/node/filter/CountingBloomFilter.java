@@ -0,0 +1,115 @@
+package me.bcap.dht.node.filter;
+
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import me.bcap.dht.node.Identifier;
+import me.bcap.dht.node.storage.StorageListener;
+
+/**
+ * Bloom filter supporting removals, kept over the keys of a node storage so that lookups of keys that are certainly
+ * not stored can skip the storage altogether.
+ * <p>
+ * Each position holds a 4 bit counter, eight of them packed in an int and updated lock free. A counter that reaches
+ * its maximum sticks there, as decrementing it could produce false negatives.
+ */
+public class CountingBloomFilter implements StorageListener, Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	public static final int DEFAULT_EXPECTED_KEYS = 10000;
+	public static final double DEFAULT_FALSE_POSITIVE_RATE = 0.01;
+
+	private static final int COUNTER_BITS = 4;
+	private static final int COUNTERS_PER_INT = 32 / COUNTER_BITS;
+	private static final int MAX_COUNT = (1 << COUNTER_BITS) - 1;
+
+	private AtomicIntegerArray counters;
+	private int size;
+	private int hashes;
+
+	public CountingBloomFilter() {
+		this(DEFAULT_EXPECTED_KEYS, DEFAULT_FALSE_POSITIVE_RATE);
+	}
+
+	public CountingBloomFilter(int expectedKeys, double falsePositiveRate) {
+		this.size = FilterHash.optimalSize(expectedKeys, falsePositiveRate);
+		this.hashes = FilterHash.optimalHashes(expectedKeys, size);
+		this.counters = new AtomicIntegerArray((size + COUNTERS_PER_INT - 1) / COUNTERS_PER_INT);
+	}
+
+	public void add(Identifier id) {
+		long hash = FilterHash.hash(id);
+		for (int i = 0; i < hashes; i++)
+			update(FilterHash.index(hash, i, size), 1);
+	}
+
+	public void remove(Identifier id) {
+		long hash = FilterHash.hash(id);
+		for (int i = 0; i < hashes; i++)
+			update(FilterHash.index(hash, i, size), -1);
+	}
+
+	/**
+	 * Returns false if the identifier is certainly not in the filter, true if it may be
+	 */
+	public boolean mightContain(Identifier id) {
+		long hash = FilterHash.hash(id);
+		for (int i = 0; i < hashes; i++)
+			if (count(FilterHash.index(hash, i, size)) == 0)
+				return false;
+		return true;
+	}
+
+	public void clear() {
+		for (int i = 0; i < counters.length(); i++)
+			counters.set(i, 0);
+	}
+
+	/**
+	 * Returns a plain bloom filter with the same keys, compact enough to be sent to other nodes
+	 */
+	public BloomFilter toBloomFilter() {
+		BloomFilter filter = new BloomFilter(size, hashes);
+		for (int i = 0; i < size; i++)
+			if (count(i) > 0)
+				filter.set(i);
+		return filter;
+	}
+
+	public void valueStored(Identifier key, byte[] value, boolean newKey) {
+		if (newKey)
+			add(key);
+	}
+
+	public void valueRemoved(Identifier key) {
+		remove(key);
+	}
+
+	private int count(int index) {
+		int shift = (index % COUNTERS_PER_INT) * COUNTER_BITS;
+		return (counters.get(index / COUNTERS_PER_INT) >>> shift) & MAX_COUNT;
+	}
+
+	private void update(int index, int delta) {
+		int slot = index / COUNTERS_PER_INT;
+		int shift = (index % COUNTERS_PER_INT) * COUNTER_BITS;
+		while (true) {
+			int packed = counters.get(slot);
+			int count = (packed >>> shift) & MAX_COUNT;
+			if (count == MAX_COUNT || (count == 0 && delta < 0))
+				return;
+			int updated = (packed & ~(MAX_COUNT << shift)) | ((count + delta) << shift);
+			if (counters.compareAndSet(slot, packed, updated))
+				return;
+		}
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	public int getHashes() {
+		return hashes;
+	}
+}
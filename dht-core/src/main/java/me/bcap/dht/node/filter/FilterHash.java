@@ -0,0 +1,42 @@
+package me.bcap.dht.node.filter;
+
+import me.bcap.dht.node.Identifier;
+
+/**
+ * Hashing shared by the filters, so that a {@link BloomFilter} summary answers exactly like the
+ * {@link CountingBloomFilter} it was taken from. Identifiers are not assumed to be uniformly distributed, so their
+ * bytes are mixed into a 64 bit hash split in two halves for double hashing.
+ */
+class FilterHash {
+
+	private FilterHash() {
+	}
+
+	static long hash(Identifier id) {
+		long hash = 0xcbf29ce484222325L;
+		for (byte b : id.getValue().toByteArray()) {
+			hash ^= b & 0xff;
+			hash *= 0x100000001b3L;
+		}
+		// final mix from MurmurHash3, spreads the FNV bits over the whole word
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+
+	static int index(long hash, int i, int size) {
+		int combined = (int) hash + i * (int) (hash >>> 32);
+		return (combined & Integer.MAX_VALUE) % size;
+	}
+
+	static int optimalSize(long expectedKeys, double falsePositiveRate) {
+		return (int) Math.max(64, Math.ceil(-expectedKeys * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2))));
+	}
+
+	static int optimalHashes(long expectedKeys, int size) {
+		return (int) Math.max(1, Math.round((double) size / expectedKeys * Math.log(2)));
+	}
+}
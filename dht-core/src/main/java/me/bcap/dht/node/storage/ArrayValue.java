@@ -0,0 +1,34 @@
+package me.bcap.dht.node.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+/**
+ * A stored value that is already in memory
+ */
+class ArrayValue implements StoredValue {
+
+	private byte[] value;
+
+	ArrayValue(byte[] value) {
+		this.value = value;
+	}
+
+	public int getLength() {
+		return value.length;
+	}
+
+	public byte[] getRange(int offset, int length) {
+		if (offset == 0 && length == value.length)
+			return value;
+		return Arrays.copyOfRange(value, offset, offset + length);
+	}
+
+	public void transferTo(WritableByteChannel channel, int offset, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap(value, offset, length);
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+	}
+}
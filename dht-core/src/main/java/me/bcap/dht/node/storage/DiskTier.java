@@ -0,0 +1,270 @@
+package me.bcap.dht.node.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.log4j.Logger;
+
+import me.bcap.dht.node.Identifier;
+
+/**
+ * Append only spill file holding the values demoted from the memory tier of a {@link TieredStorage}. The index of
+ * the file lives in memory, so the file is not meant to survive a restart: it is truncated when opened and deleted
+ * when closed. Space left behind by forgotten values is reclaimed by {@link #compact()}.
+ * <p>
+ * Appends and compactions are only issued by the mover thread of the owning storage, reads and forgets may come from
+ * any thread.
+ */
+class DiskTier {
+
+	private static final Logger logger = Logger.getLogger(DiskTier.class);
+
+	static class Location {
+		private final long position;
+		private final int length;
+		private final int generation;
+
+		private Location(long position, int length, int generation) {
+			this.position = position;
+			this.length = length;
+			this.generation = generation;
+		}
+
+		int getLength() {
+			return length;
+		}
+	}
+
+	private File file;
+	private RandomAccessFile randomAccessFile;
+	private FileChannel channel;
+	private int generation = 0;
+
+	private long end = 0;
+	private long liveBytes = 0;
+	private long garbageBytes = 0;
+
+	private Map<Identifier, Location> index = new ConcurrentHashMap<Identifier, Location>();
+
+	// reads share the channel, compaction swaps it
+	private ReadWriteLock channelLock = new ReentrantReadWriteLock();
+
+	DiskTier(File file) throws IOException {
+		this.file = file;
+		this.randomAccessFile = new RandomAccessFile(file, "rw");
+		this.randomAccessFile.setLength(0);
+		this.channel = randomAccessFile.getChannel();
+	}
+
+	Location locate(Identifier key) {
+		return index.get(key);
+	}
+
+	boolean contains(Identifier key) {
+		return index.containsKey(key);
+	}
+
+	Set<Identifier> keys() {
+		return index.keySet();
+	}
+
+	int size() {
+		return index.size();
+	}
+
+	/**
+	 * Appends the value to the end of the file. The returned location is not visible to readers until it is
+	 * {@link #publish(Identifier, Location) published}
+	 */
+	Location append(byte[] value) throws IOException {
+		channelLock.readLock().lock();
+		try {
+			long position;
+			synchronized (this) {
+				position = end;
+				end += value.length;
+			}
+			ByteBuffer buffer = ByteBuffer.wrap(value);
+			long writePosition = position;
+			while (buffer.hasRemaining())
+				writePosition += channel.write(buffer, writePosition);
+			return new Location(position, value.length, generation);
+		} finally {
+			channelLock.readLock().unlock();
+		}
+	}
+
+	synchronized boolean publish(Identifier key, Location location) {
+		if (location.generation != generation)
+			return false;
+		Location old = index.put(key, location);
+		liveBytes += location.length;
+		if (old != null)
+			release(old);
+		return true;
+	}
+
+	synchronized void discard(Location location) {
+		if (location.generation == generation)
+			garbageBytes += location.length;
+	}
+
+	synchronized boolean forget(Identifier key) {
+		Location old = index.remove(key);
+		if (old != null) {
+			release(old);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Reads the value at the given location, returning null if the location is no longer valid because the file was
+	 * compacted since it was handed out
+	 */
+	byte[] read(Location location) throws IOException {
+		return read(location, 0, location.length);
+	}
+
+	/**
+	 * Reads part of the value at the given location, with the same semantics as {@link #read(Location)}
+	 */
+	byte[] read(Location location, int offset, int length) throws IOException {
+		channelLock.readLock().lock();
+		try {
+			if (location.generation != generation)
+				return null;
+			ByteBuffer buffer = ByteBuffer.allocate(length);
+			long readPosition = location.position + offset;
+			while (buffer.hasRemaining()) {
+				int read = channel.read(buffer, readPosition);
+				if (read < 0)
+					throw new IOException("Unexpected end of file " + file + " at position " + readPosition);
+				readPosition += read;
+			}
+			return buffer.array();
+		} finally {
+			channelLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Writes part of the value at the given location to a channel, straight from the file. Returns false, having
+	 * written nothing, if the location is no longer valid. Compactions wait for the transfer to end
+	 */
+	boolean transferTo(Location location, int offset, int length, WritableByteChannel target) throws IOException {
+		channelLock.readLock().lock();
+		try {
+			if (location.generation != generation)
+				return false;
+			long position = location.position + offset;
+			long end = position + length;
+			while (position < end) {
+				long transferred = channel.transferTo(position, end - position, target);
+				if (transferred <= 0 && position >= channel.size())
+					throw new IOException("Unexpected end of file " + file + " at position " + position);
+				position += transferred;
+			}
+			return true;
+		} finally {
+			channelLock.readLock().unlock();
+		}
+	}
+
+	synchronized boolean needsCompaction(long minimumGarbage) {
+		return garbageBytes >= minimumGarbage && garbageBytes > liveBytes;
+	}
+
+	/**
+	 * Rewrites the live values into a fresh file, dropping the space of the forgotten ones. Values forgotten while the
+	 * copy is running are left out of the new index
+	 */
+	void compact() throws IOException {
+		channelLock.writeLock().lock();
+		try {
+			Map<Identifier, Location> snapshot = new HashMap<Identifier, Location>(index);
+			Map<Identifier, Location> compacted = new HashMap<Identifier, Location>();
+			int newGeneration = generation + 1;
+
+			File compactFile = new File(file.getPath() + ".compact");
+			RandomAccessFile compactRandomAccessFile = new RandomAccessFile(compactFile, "rw");
+			compactRandomAccessFile.setLength(0);
+			FileChannel compactChannel = compactRandomAccessFile.getChannel();
+
+			long position = 0;
+			for (Entry<Identifier, Location> entry : snapshot.entrySet()) {
+				Location location = entry.getValue();
+				long transferred = 0;
+				while (transferred < location.length)
+					transferred += channel.transferTo(location.position + transferred, location.length - transferred, compactChannel);
+				compacted.put(entry.getKey(), new Location(position, location.length, newGeneration));
+				position += location.length;
+			}
+
+			logger.debug("Compacted spill file " + file + " from " + end + " to " + position + " bytes");
+
+			channel.close();
+			randomAccessFile.close();
+			compactChannel.close();
+			compactRandomAccessFile.close();
+			if (!file.delete() || !compactFile.renameTo(file))
+				throw new IOException("Could not replace spill file " + file + " with its compacted version " + compactFile);
+
+			this.randomAccessFile = new RandomAccessFile(file, "rw");
+			this.channel = randomAccessFile.getChannel();
+
+			synchronized (this) {
+				this.generation = newGeneration;
+				this.end = position;
+				this.liveBytes = 0;
+				this.garbageBytes = 0;
+				for (Entry<Identifier, Location> entry : compacted.entrySet()) {
+					Location location = entry.getValue();
+					if (index.get(entry.getKey()) == snapshot.get(entry.getKey())) {
+						index.put(entry.getKey(), location);
+						liveBytes += location.length;
+					} else {
+						garbageBytes += location.length;
+					}
+				}
+			}
+		} finally {
+			channelLock.writeLock().unlock();
+		}
+	}
+
+	synchronized void clear() {
+		for (Location location : index.values())
+			release(location);
+		index.clear();
+	}
+
+	void close() throws IOException {
+		channelLock.writeLock().lock();
+		try {
+			index.clear();
+			channel.close();
+			randomAccessFile.close();
+			if (!file.delete())
+				logger.warn("Could not delete spill file " + file);
+		} finally {
+			channelLock.writeLock().unlock();
+		}
+	}
+
+	private void release(Location location) {
+		liveBytes -= location.length;
+		garbageBytes += location.length;
+	}
+}
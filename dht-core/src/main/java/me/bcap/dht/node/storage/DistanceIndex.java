@@ -0,0 +1,128 @@
+package me.bcap.dht.node.storage;
+
+import java.io.Serializable;
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+import me.bcap.dht.node.Identifier;
+
+/**
+ * Sorted index over the keys of a {@link Storage}, able to enumerate them by XOR distance to any identifier.
+ * <p>
+ * The keys are kept in numeric order, where every run of keys sharing a prefix is contiguous. Walking that order as a
+ * binary trie, always descending first into the half that shares the next bit with the target, yields the keys
+ * closest first without ever looking at the empty parts of the key space.
+ */
+public class DistanceIndex implements StorageListener, Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private NavigableSet<BigInteger> keys = new ConcurrentSkipListSet<BigInteger>();
+
+	public void valueStored(Identifier key, byte[] value, boolean newKey) {
+		if (newKey)
+			keys.add(key.getValue());
+	}
+
+	public void valueRemoved(Identifier key) {
+		keys.remove(key.getValue());
+	}
+
+	public void add(Identifier key) {
+		keys.add(key.getValue());
+	}
+
+	public void clear() {
+		keys.clear();
+	}
+
+	public int size() {
+		return keys.size();
+	}
+
+	/**
+	 * Iterates over all the keys, closest to the target first. The iteration is lazy and weakly consistent: keys
+	 * added or removed while iterating may or may not be seen
+	 */
+	public Iterator<Identifier> closestTo(Identifier target) {
+		return new DistanceIterator(target.getValue(), -1);
+	}
+
+	/**
+	 * Iterates over the keys that are closer to the target than to the other identifier, closest to the target first
+	 */
+	public Iterator<Identifier> closerTo(Identifier target, Identifier other) {
+		BigInteger distance = target.getDistance(other);
+		if (distance.signum() == 0)
+			return new DistanceIterator(target.getValue(), Identifier.LENGTH);
+		// a key is closer to the target exactly when it agrees with the target on the highest bit where target and
+		// other differ, so the other half of the trie at that bit is never visited
+		return new DistanceIterator(target.getValue(), distance.bitLength() - 1);
+	}
+
+	class DistanceIterator implements Iterator<Identifier> {
+		private BigInteger target;
+		private int splitBit;
+		private Deque<Range> pending = new ArrayDeque<Range>();
+		private Identifier next;
+
+		DistanceIterator(BigInteger target, int splitBit) {
+			this.target = target;
+			this.splitBit = splitBit;
+			if (splitBit < Identifier.LENGTH)
+				pending.push(new Range(BigInteger.ZERO, Identifier.LENGTH - 1));
+		}
+
+		public boolean hasNext() {
+			while (next == null && !pending.isEmpty()) {
+				Range range = pending.pop();
+				NavigableSet<BigInteger> inRange = keys.subSet(range.low, true, range.low.add(BigInteger.ONE.shiftLeft(range.bit + 1)), false);
+				if (inRange.isEmpty())
+					continue;
+
+				BigInteger first = inRange.first();
+				if (first.equals(inRange.last())) {
+					next = new Identifier(first);
+				} else {
+					BigInteger high = range.low.setBit(range.bit);
+					Range near = target.testBit(range.bit) ? new Range(high, range.bit - 1) : new Range(range.low, range.bit - 1);
+					Range far = target.testBit(range.bit) ? new Range(range.low, range.bit - 1) : new Range(high, range.bit - 1);
+					if (range.bit != splitBit)
+						pending.push(far);
+					pending.push(near);
+				}
+			}
+			return next != null;
+		}
+
+		public Identifier next() {
+			if (!hasNext())
+				throw new NoSuchElementException();
+			Identifier result = next;
+			next = null;
+			return result;
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException("Keys can only be removed through the storage");
+		}
+	}
+
+	/**
+	 * The keys from low inclusive to low + 2^(bit + 1) exclusive, all sharing the bits above bit
+	 */
+	static class Range {
+		BigInteger low;
+		int bit;
+
+		Range(BigInteger low, int bit) {
+			this.low = low;
+			this.bit = bit;
+		}
+	}
+}
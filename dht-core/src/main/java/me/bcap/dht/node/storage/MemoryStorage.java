@@ -0,0 +1,114 @@
+package me.bcap.dht.node.storage;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import me.bcap.dht.node.Identifier;
+import me.bcap.dht.probe.Probe;
+import me.bcap.dht.probe.Probes;
+
+/**
+ * Storage keeping all the values in memory, the default storage of a node.
+ * <p>
+ * A deduplicating storage keeps a single array for identical values stored under different keys, counting its
+ * references. Every put then hashes the value, so it only pays off when many keys share their values.
+ */
+public class MemoryStorage extends Storage {
+
+	private static final long serialVersionUID = 1L;
+
+	private Map<Identifier, byte[]> values = new ConcurrentHashMap<Identifier, byte[]>();
+
+	private boolean deduplicating;
+	private transient ValueDeduplicator deduplicator;
+
+	public MemoryStorage() {
+		this(false);
+	}
+
+	public MemoryStorage(boolean deduplicating) {
+		this.deduplicating = deduplicating;
+		if (deduplicating)
+			this.deduplicator = new ValueDeduplicator();
+	}
+
+	public MemoryStorage(Map<Identifier, byte[]> values) {
+		// through put, so that every key gets a version
+		for (Entry<Identifier, byte[]> entry : values.entrySet())
+			put(entry.getKey(), entry.getValue());
+	}
+
+	@Override
+	public byte[] get(Object key) {
+		Probe probe = Probes.get();
+		if (probe == null || !(key instanceof Identifier))
+			return values.get(key);
+		long start = System.nanoTime();
+		byte[] value = values.get(key);
+		probe.storageRead((Identifier) key, value != null ? value.length : -1, System.nanoTime() - start);
+		return value;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return values.containsKey(key);
+	}
+
+	@Override
+	public int size() {
+		return values.size();
+	}
+
+	@Override
+	protected byte[] putImpl(Identifier key, byte[] value) {
+		if (deduplicator == null)
+			return values.put(key, value);
+		byte[] old = values.put(key, deduplicator.acquire(value));
+		if (old != null)
+			deduplicator.release(old);
+		return old;
+	}
+
+	@Override
+	protected byte[] removeImpl(Identifier key) {
+		byte[] old = values.remove(key);
+		if (old != null && deduplicator != null)
+			deduplicator.release(old);
+		return old;
+	}
+
+	@Override
+	protected Set<Entry<Identifier, byte[]>> entrySetImpl() {
+		return values.entrySet();
+	}
+
+	public boolean isDeduplicating() {
+		return deduplicating;
+	}
+
+	/**
+	 * Number of distinct values held, or -1 if the storage is not deduplicating
+	 */
+	public int getDistinctValues() {
+		return deduplicator != null ? deduplicator.getDistinctValues() : -1;
+	}
+
+	/**
+	 * Bytes saved by sharing identical values, 0 if the storage is not deduplicating
+	 */
+	public long getDeduplicatedBytes() {
+		return deduplicator != null ? deduplicator.getSavedBytes() : 0;
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		if (deduplicating) {
+			deduplicator = new ValueDeduplicator();
+			for (Entry<Identifier, byte[]> entry : values.entrySet())
+				entry.setValue(deduplicator.acquire(entry.getValue()));
+		}
+	}
+}
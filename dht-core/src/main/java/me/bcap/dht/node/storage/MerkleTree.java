@@ -0,0 +1,134 @@
+package me.bcap.dht.node.storage;
+
+import java.io.Serializable;
+import java.math.BigInteger;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import me.bcap.dht.node.Identifier;
+
+/**
+ * Hash tree over the entries of a {@link Storage}, used by replicas to find out where their contents differ without
+ * exchanging them.
+ * <p>
+ * Keys are bucketed in leaves by their highest {@link #BITS_PER_LEVEL} * depth bits, each inner node covering the
+ * {@link #FANOUT} nodes below it. The hash of a node is the XOR of the digests of all the entries under it, so a put
+ * or remove updates the path from its leaf to the root in place, with no rehashing of siblings.
+ */
+public class MerkleTree implements StorageListener, Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	public static final int BITS_PER_LEVEL = 4;
+	public static final int FANOUT = 1 << BITS_PER_LEVEL;
+	public static final int DEFAULT_DEPTH = 3;
+
+	private int depth;
+	private AtomicLongArray[] levels;
+	private ConcurrentSkipListMap<BigInteger, Long> digests = new ConcurrentSkipListMap<BigInteger, Long>();
+
+	public MerkleTree() {
+		this(DEFAULT_DEPTH);
+	}
+
+	public MerkleTree(int depth) {
+		if (depth < 1 || depth * BITS_PER_LEVEL > 30)
+			throw new IllegalArgumentException("Unsupported tree depth: " + depth);
+		this.depth = depth;
+		this.levels = new AtomicLongArray[depth + 1];
+		for (int level = 0; level <= depth; level++)
+			levels[level] = new AtomicLongArray(1 << (level * BITS_PER_LEVEL));
+	}
+
+	public void valueStored(Identifier key, byte[] value, boolean newKey) {
+		long digest = digest(key, value);
+		Long old = digests.put(key.getValue(), digest);
+		update(key, old != null ? old ^ digest : digest);
+	}
+
+	public void valueRemoved(Identifier key) {
+		Long old = digests.remove(key.getValue());
+		if (old != null)
+			update(key, old);
+	}
+
+	public void clear() {
+		digests.clear();
+		for (AtomicLongArray level : levels)
+			for (int i = 0; i < level.length(); i++)
+				level.set(i, 0);
+	}
+
+	/**
+	 * Hash of the node at the given position of a level, level 0 holding only the root and level {@link #getDepth()}
+	 * the leaves
+	 */
+	public long getHash(int level, int position) {
+		return levels[level].get(position);
+	}
+
+	/**
+	 * The digests of the entries bucketed in a leaf, in key order
+	 */
+	public Map<Identifier, Long> getLeafDigests(int leaf) {
+		int shift = Identifier.LENGTH - depth * BITS_PER_LEVEL;
+		BigInteger from = BigInteger.valueOf(leaf).shiftLeft(shift);
+		BigInteger to = BigInteger.valueOf(leaf + 1).shiftLeft(shift);
+
+		Map<Identifier, Long> result = new LinkedHashMap<Identifier, Long>();
+		for (Map.Entry<BigInteger, Long> entry : digests.subMap(from, to).entrySet())
+			result.put(new Identifier(entry.getKey()), entry.getValue());
+		return result;
+	}
+
+	public long getDigest(Identifier key) {
+		Long digest = digests.get(key.getValue());
+		return digest != null ? digest : 0;
+	}
+
+	public int getLeaf(Identifier key) {
+		return key.getValue().shiftRight(Identifier.LENGTH - depth * BITS_PER_LEVEL).intValue();
+	}
+
+	public int getDepth() {
+		return depth;
+	}
+
+	private void update(Identifier key, long delta) {
+		int leaf = getLeaf(key);
+		for (int level = depth; level >= 0; level--) {
+			int position = leaf >>> ((depth - level) * BITS_PER_LEVEL);
+			AtomicLongArray hashes = levels[level];
+			long current;
+			do {
+				current = hashes.get(position);
+			} while (!hashes.compareAndSet(position, current, current ^ delta));
+		}
+	}
+
+	/**
+	 * 64 bit digest of an entry, FNV-1a over the key and value bytes with the MurmurHash3 final mix. Never 0, so that
+	 * no entry goes unnoticed in the tree hashes
+	 */
+	public static long digest(Identifier key, byte[] value) {
+		long hash = 0xcbf29ce484222325L;
+		for (byte b : key.getValue().toByteArray()) {
+			hash ^= b & 0xff;
+			hash *= 0x100000001b3L;
+		}
+		hash ^= value.length;
+		hash *= 0x100000001b3L;
+		for (byte b : value) {
+			hash ^= b & 0xff;
+			hash *= 0x100000001b3L;
+		}
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return hash != 0 ? hash : 1;
+	}
+}
@@ -0,0 +1,243 @@
+package me.bcap.dht.node.storage;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import me.bcap.dht.node.Identifier;
+import me.bcap.dht.probe.Probe;
+import me.bcap.dht.probe.Probes;
+
+/**
+ * Base of the node data storages. Writes go through {@link #put(Identifier, byte[])} and {@link #remove(Object)},
+ * which serialize the changes to each key and notify the registered {@link StorageListener}s, and are then carried
+ * out by the subclasses in {@link #putImpl(Identifier, byte[])} and {@link #removeImpl(Identifier)}.
+ * <p>
+ * Every put gives the key a new version, taken from a sequence shared by all the keys so that a key removed and
+ * stored again never gets back a version it had before. Versions are local to each storage.
+ */
+public abstract class Storage extends AbstractMap<Identifier, byte[]> implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final int LOCK_STRIPES = 64;
+
+	private transient List<StorageListener> listeners = new CopyOnWriteArrayList<StorageListener>();
+
+	private Map<Identifier, Long> versions = new ConcurrentHashMap<Identifier, Long>();
+	private AtomicLong versionSequence = new AtomicLong();
+
+	private transient Object[] locks = createLocks();
+
+	@Override
+	public byte[] put(Identifier key, byte[] value) {
+		if (key == null || value == null)
+			throw new NullPointerException("Null keys and values are not supported");
+
+		Probe probe = Probes.get();
+		long start = probe != null ? System.nanoTime() : 0;
+		byte[] old;
+		synchronized (lockFor(key)) {
+			boolean newKey = !containsKey(key);
+			for (StorageListener listener : listeners)
+				listener.valueStored(key, value, newKey);
+			old = putImpl(key, value);
+			versions.put(key, versionSequence.incrementAndGet());
+		}
+		if (probe != null)
+			probe.storageWritten(key, value.length, System.nanoTime() - start);
+		return old;
+	}
+
+	/**
+	 * Stores the value only if the key is at the expected version, 0 standing for a key not stored. Returns the new
+	 * version of the key, or -1 if its version did not match
+	 */
+	public long compareAndPut(Identifier key, long expectedVersion, byte[] value) {
+		synchronized (lockFor(key)) {
+			if (getVersion(key) != expectedVersion)
+				return -1;
+			put(key, value);
+			return getVersion(key);
+		}
+	}
+
+	/**
+	 * Returns the current version of a key, 0 if it is not stored
+	 */
+	public long getVersion(Identifier key) {
+		Long version = versions.get(key);
+		return version != null ? version : 0;
+	}
+
+	/**
+	 * Returns the value of a key together with its version, or null if it is not stored
+	 */
+	public VersionedValue getVersioned(Identifier key) {
+		synchronized (lockFor(key)) {
+			byte[] value = get(key);
+			return value != null ? new VersionedValue(value, getVersion(key)) : null;
+		}
+	}
+
+	@Override
+	public byte[] remove(Object key) {
+		if (!(key instanceof Identifier))
+			return null;
+
+		synchronized (lockFor(key)) {
+			if (!containsKey(key))
+				return null;
+			byte[] old = removeImpl((Identifier) key);
+			versions.remove(key);
+			for (StorageListener listener : listeners)
+				listener.valueRemoved((Identifier) key);
+			return old;
+		}
+	}
+
+	@Override
+	public void clear() {
+		for (Identifier key : new ArrayList<Identifier>(keySet()))
+			remove(key);
+	}
+
+	@Override
+	public Set<Entry<Identifier, byte[]>> entrySet() {
+		final Set<Entry<Identifier, byte[]>> entries = entrySetImpl();
+
+		// changes made through the entry set must go through put and remove as well
+		return new AbstractSet<Entry<Identifier, byte[]>>() {
+			public int size() {
+				return entries.size();
+			}
+
+			public Iterator<Entry<Identifier, byte[]>> iterator() {
+				final Iterator<Entry<Identifier, byte[]>> iterator = entries.iterator();
+				return new Iterator<Entry<Identifier, byte[]>>() {
+					private Entry<Identifier, byte[]> current;
+
+					public boolean hasNext() {
+						return iterator.hasNext();
+					}
+
+					public Entry<Identifier, byte[]> next() {
+						current = iterator.next();
+						return new SimpleEntry<Identifier, byte[]>(current) {
+							private static final long serialVersionUID = 1L;
+
+							public byte[] setValue(byte[] value) {
+								super.setValue(value);
+								return put(getKey(), value);
+							}
+						};
+					}
+
+					public void remove() {
+						Storage.this.remove(current.getKey());
+					}
+				};
+			}
+		};
+	}
+
+	/**
+	 * Returns the length of the value of a key, or -1 if it is not stored. Subclasses keeping values out of memory
+	 * should override it to avoid loading the value
+	 */
+	public int getLength(Identifier key) {
+		byte[] value = get(key);
+		return value != null ? value.length : -1;
+	}
+
+	/**
+	 * Returns up to length bytes of the value of a key starting at offset, fewer if the value ends before, or null if
+	 * the key is not stored. Subclasses keeping values out of memory should override it to read only the range asked
+	 */
+	public byte[] getRange(Identifier key, int offset, int length) {
+		byte[] value = get(key);
+		if (value == null)
+			return null;
+		int from = Math.min(offset, value.length);
+		return Arrays.copyOfRange(value, from, from + Math.max(0, Math.min(length, value.length - from)));
+	}
+
+	/**
+	 * Returns a handle on the value of a key, or null if it is not stored. Subclasses keeping values out of memory
+	 * should override it to return handles that read the value only when, and as far as, it is used
+	 */
+	public StoredValue openValue(Identifier key) {
+		byte[] value = get(key);
+		return value != null ? new ArrayValue(value) : null;
+	}
+
+	public void addListener(StorageListener listener) {
+		listeners.add(listener);
+	}
+
+	public boolean removeListener(StorageListener listener) {
+		return listeners.remove(listener);
+	}
+
+	/**
+	 * Stores the value, the caller holds the lock of the key
+	 */
+	protected abstract byte[] putImpl(Identifier key, byte[] value);
+
+	/**
+	 * Removes the value of a key known to be stored, the caller holds the lock of the key
+	 */
+	protected abstract byte[] removeImpl(Identifier key);
+
+	/**
+	 * Returns a view of the stored entries. Its iterator does not need to support removal
+	 */
+	protected abstract Set<Entry<Identifier, byte[]>> entrySetImpl();
+
+	/**
+	 * Returns the lock guarding the changes to the given key
+	 */
+	protected Object lockFor(Object key) {
+		return locks[(key.hashCode() & Integer.MAX_VALUE) % LOCK_STRIPES];
+	}
+
+	// listeners that are not serializable usually hold on to resources of the running node, so they stay behind
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		List<StorageListener> serializable = new ArrayList<StorageListener>();
+		for (StorageListener listener : listeners)
+			if (listener instanceof Serializable)
+				serializable.add(listener);
+		out.writeObject(serializable);
+	}
+
+	@SuppressWarnings("unchecked")
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		this.listeners = new CopyOnWriteArrayList<StorageListener>((List<StorageListener>) in.readObject());
+		this.locks = createLocks();
+	}
+
+	private static Object[] createLocks() {
+		Object[] locks = new Object[LOCK_STRIPES];
+		for (int i = 0; i < locks.length; i++)
+			locks[i] = new Object();
+		return locks;
+	}
+
+	protected List<StorageListener> getListeners() {
+		return listeners;
+	}
+}
@@ -0,0 +1,19 @@
+package me.bcap.dht.node.storage;
+
+import me.bcap.dht.node.Identifier;
+
+/**
+ * Gets notified of the changes made to a {@link Storage}. Stores are notified right before the value becomes visible
+ * and removals right after it is gone, so a listener never misses a key that can be read. Notifications for the same
+ * key never overlap, but notifications for different keys may come from many threads at once.
+ * <p>
+ * Listeners are serialized together with the storage they are registered in, unless they are not
+ * {@link java.io.Serializable}, in which case they stay with the running storage.
+ */
+public interface StorageListener {
+
+	public void valueStored(Identifier key, byte[] value, boolean newKey);
+
+	public void valueRemoved(Identifier key);
+
+}
@@ -0,0 +1,24 @@
+package me.bcap.dht.node.storage;
+
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Handle on a value held by a {@link Storage}, letting it be sent without first being copied into a new array.
+ * Storages keeping values on disk transfer them from their file straight to the channel.
+ */
+public interface StoredValue {
+
+	public int getLength();
+
+	/**
+	 * Copies a range of the value into a new array
+	 */
+	public byte[] getRange(int offset, int length);
+
+	/**
+	 * Writes a range of the value to the channel
+	 */
+	public void transferTo(WritableByteChannel channel, int offset, int length) throws IOException;
+
+}
@@ -0,0 +1,555 @@
+package me.bcap.dht.node.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectStreamException;
+import java.nio.channels.WritableByteChannel;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+import me.bcap.dht.node.Identifier;
+import me.bcap.dht.probe.Probe;
+import me.bcap.dht.probe.Probes;
+
+/**
+ * Data storage keeping the recently read values in memory and spilling the rest to a file on disk.
+ * <p>
+ * Values are written to the memory (hot) tier and, once it grows over its capacity, the least recently read ones are
+ * demoted to the disk (cold) tier by a background mover thread. Reading a cold value goes to disk on the calling
+ * thread, but its promotion back to memory is left to the mover, so reads of hot keys never wait on disk I/O. A
+ * promoted value keeps its copy on disk until it is overwritten, so demoting it again costs nothing.
+ * <p>
+ * As the cold tier is not persistent, serializing this storage writes a {@link MemoryStorage} copy of its contents.
+ */
+public class TieredStorage extends Storage {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final Logger logger = Logger.getLogger(TieredStorage.class);
+
+	public static final long DEFAULT_HOT_CAPACITY = 64 * 1024 * 1024;
+	public static final long DEFAULT_COMPACTION_THRESHOLD = 16 * 1024 * 1024;
+
+	private static int STORAGE_COUNTER = 0;
+
+	private long hotCapacity;
+	private long compactionThreshold;
+	private long hotBytes = 0;
+
+	// hot and demoting are guarded by this storage monitor
+	private transient LinkedHashMap<Identifier, byte[]> hot = new LinkedHashMap<Identifier, byte[]>(16, 0.75f, true);
+	private transient Map<Identifier, byte[]> demoting = new HashMap<Identifier, byte[]>();
+	private transient DiskTier cold;
+
+	private transient ExecutorService mover;
+	private transient AtomicBoolean compactionScheduled = new AtomicBoolean(false);
+
+	private transient AtomicLong hotHits = new AtomicLong();
+	private transient AtomicLong coldHits = new AtomicLong();
+	private transient AtomicLong misses = new AtomicLong();
+
+	public TieredStorage(File spillFile) throws IOException {
+		this(spillFile, DEFAULT_HOT_CAPACITY, DEFAULT_COMPACTION_THRESHOLD);
+	}
+
+	public TieredStorage(File spillFile, long hotCapacity) throws IOException {
+		this(spillFile, hotCapacity, DEFAULT_COMPACTION_THRESHOLD);
+	}
+
+	public TieredStorage(File spillFile, long hotCapacity, long compactionThreshold) throws IOException {
+		this.hotCapacity = hotCapacity;
+		this.compactionThreshold = compactionThreshold;
+		this.cold = new DiskTier(spillFile);
+
+		final String threadName = "TieredStorage-" + STORAGE_COUNTER++ + "-mover";
+		this.mover = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, threadName);
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+
+		logger.debug("Created tiered storage with a hot capacity of " + hotCapacity + " bytes spilling to " + spillFile);
+	}
+
+	@Override
+	public byte[] get(Object key) {
+		Probe probe = Probes.get();
+		if (probe == null || !(key instanceof Identifier))
+			return read(key);
+		long start = System.nanoTime();
+		byte[] value = read(key);
+		probe.storageRead((Identifier) key, value != null ? value.length : -1, System.nanoTime() - start);
+		return value;
+	}
+
+	private byte[] read(Object key) {
+		while (true) {
+			DiskTier.Location location;
+			synchronized (this) {
+				byte[] value = hot.get(key);
+				if (value == null)
+					value = demoting.get(key);
+				if (value != null) {
+					hotHits.incrementAndGet();
+					return value;
+				}
+				location = cold.locate((Identifier) key);
+			}
+
+			if (location == null) {
+				misses.incrementAndGet();
+				return null;
+			}
+
+			byte[] value = readCold(location);
+			if (value != null) {
+				coldHits.incrementAndGet();
+				// once the storage is closed values are still served, they are just not promoted any more
+				if (!mover.isShutdown())
+					mover.execute(new Promotion((Identifier) key, location, value));
+				return value;
+			}
+			// the spill file was compacted while we were reading, look the key up again
+		}
+	}
+
+	@Override
+	public int getLength(Identifier key) {
+		synchronized (this) {
+			byte[] value = hot.get(key);
+			if (value == null)
+				value = demoting.get(key);
+			if (value != null)
+				return value.length;
+			DiskTier.Location location = cold.locate(key);
+			return location != null ? location.getLength() : -1;
+		}
+	}
+
+	/**
+	 * Reads a range of a value. Cold values are read in place and, unlike {@link #get(Object)}, are not promoted, so
+	 * streaming a large value does not flush the memory tier
+	 */
+	@Override
+	public byte[] getRange(Identifier key, int offset, int length) {
+		Probe probe = Probes.get();
+		if (probe == null)
+			return readRange(key, offset, length);
+		long start = System.nanoTime();
+		byte[] range = readRange(key, offset, length);
+		probe.storageRead(key, range != null ? range.length : -1, System.nanoTime() - start);
+		return range;
+	}
+
+	private byte[] readRange(Identifier key, int offset, int length) {
+		while (true) {
+			DiskTier.Location location;
+			synchronized (this) {
+				byte[] value = hot.get(key);
+				if (value == null)
+					value = demoting.get(key);
+				if (value != null) {
+					hotHits.incrementAndGet();
+					int from = Math.min(offset, value.length);
+					return Arrays.copyOfRange(value, from, from + Math.max(0, Math.min(length, value.length - from)));
+				}
+				location = cold.locate(key);
+			}
+
+			if (location == null) {
+				misses.incrementAndGet();
+				return null;
+			}
+
+			int from = Math.min(offset, location.getLength());
+			int rangeLength = Math.max(0, Math.min(length, location.getLength() - from));
+			byte[] range;
+			try {
+				range = cold.read(location, from, rangeLength);
+			} catch (IOException e) {
+				throw new StorageException("Could not read " + rangeLength + " bytes from the spill file", e);
+			}
+			if (range != null) {
+				coldHits.incrementAndGet();
+				return range;
+			}
+			// the spill file was compacted while we were reading, look the key up again
+		}
+	}
+
+	/**
+	 * Returns a handle on a value. Cold values are not read nor promoted, the handle transfers them from the spill
+	 * file straight to the channel they are written to
+	 */
+	@Override
+	public StoredValue openValue(Identifier key) {
+		Probe probe = Probes.get();
+		if (probe == null)
+			return open(key);
+		long start = System.nanoTime();
+		StoredValue value = open(key);
+		probe.storageRead(key, value != null ? value.getLength() : -1, System.nanoTime() - start);
+		return value;
+	}
+
+	private StoredValue open(Identifier key) {
+		DiskTier.Location location;
+		synchronized (this) {
+			byte[] value = hot.get(key);
+			if (value == null)
+				value = demoting.get(key);
+			if (value != null) {
+				hotHits.incrementAndGet();
+				return new ArrayValue(value);
+			}
+			location = cold.locate(key);
+		}
+		if (location == null) {
+			misses.incrementAndGet();
+			return null;
+		}
+		coldHits.incrementAndGet();
+		return new ColdValue(key, location);
+	}
+
+	/**
+	 * Stores the value in the memory tier. As the previous value is only known without going to disk when it is held
+	 * in memory, null is returned for keys whose previous value was in the cold tier
+	 */
+	@Override
+	protected byte[] putImpl(Identifier key, byte[] value) {
+		byte[] old;
+		synchronized (this) {
+			old = removeFromMemory(key);
+			cold.forget(key);
+			hot.put(key, value);
+			hotBytes += value.length;
+			evict();
+		}
+		scheduleCompactionIfNeeded();
+		return old;
+	}
+
+	/**
+	 * Removes the value from both tiers. As in {@link #putImpl(Identifier, byte[])}, the removed value is only
+	 * returned if it was held in memory
+	 */
+	@Override
+	protected byte[] removeImpl(Identifier key) {
+		byte[] old;
+		synchronized (this) {
+			old = removeFromMemory(key);
+			cold.forget(key);
+		}
+		scheduleCompactionIfNeeded();
+		return old;
+	}
+
+	@Override
+	public synchronized boolean containsKey(Object key) {
+		return hot.containsKey(key) || demoting.containsKey(key) || cold.contains((Identifier) key);
+	}
+
+	@Override
+	public synchronized int size() {
+		// a key may be both in memory and on disk only when it is hot, demoting keys are never on disk
+		int size = cold.size() + demoting.size();
+		for (Identifier key : hot.keySet())
+			if (!cold.contains(key))
+				size++;
+		return size;
+	}
+
+	@Override
+	protected Set<Entry<Identifier, byte[]>> entrySetImpl() {
+		final Set<Identifier> keys;
+		synchronized (this) {
+			keys = new HashSet<Identifier>(cold.keys());
+			keys.addAll(hot.keySet());
+			keys.addAll(demoting.keySet());
+		}
+
+		return new AbstractSet<Entry<Identifier, byte[]>>() {
+			public int size() {
+				return keys.size();
+			}
+
+			public Iterator<Entry<Identifier, byte[]>> iterator() {
+				final Iterator<Identifier> keyIterator = keys.iterator();
+				return new Iterator<Entry<Identifier, byte[]>>() {
+					public boolean hasNext() {
+						return keyIterator.hasNext();
+					}
+
+					public Entry<Identifier, byte[]> next() {
+						Identifier key = keyIterator.next();
+						return new SimpleEntry<Identifier, byte[]>(key, peek(key));
+					}
+
+					public void remove() {
+						throw new UnsupportedOperationException();
+					}
+				};
+			}
+		};
+	}
+
+	/**
+	 * Stops the mover thread and deletes the spill file. The storage must not be used after being closed
+	 */
+	public void close() throws IOException {
+		mover.shutdown();
+		try {
+			mover.awaitTermination(10, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			logger.warn("Interrupted while waiting for the mover thread to finish", e);
+		}
+		cold.close();
+	}
+
+	public long getHotHits() {
+		return hotHits.get();
+	}
+
+	public long getColdHits() {
+		return coldHits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public double getHotHitRatio() {
+		return ratio(hotHits.get());
+	}
+
+	public double getColdHitRatio() {
+		return ratio(coldHits.get());
+	}
+
+	public synchronized long getHotBytes() {
+		return hotBytes;
+	}
+
+	public long getHotCapacity() {
+		return hotCapacity;
+	}
+
+	public synchronized int getHotSize() {
+		return hot.size() + demoting.size();
+	}
+
+	public int getColdSize() {
+		return cold.size();
+	}
+
+	private Object writeReplace() throws ObjectStreamException {
+		MemoryStorage copy = new MemoryStorage(this);
+		for (StorageListener listener : getListeners())
+			copy.addListener(listener);
+		return copy;
+	}
+
+	private double ratio(long hits) {
+		long lookups = hotHits.get() + coldHits.get() + misses.get();
+		return lookups > 0 ? (double) hits / lookups : 0;
+	}
+
+	/**
+	 * Reads a value without accounting for it in the hit ratios nor promoting it
+	 */
+	private byte[] peek(Identifier key) {
+		while (true) {
+			DiskTier.Location location;
+			synchronized (this) {
+				byte[] value = hot.get(key);
+				if (value == null)
+					value = demoting.get(key);
+				if (value != null)
+					return value;
+				location = cold.locate(key);
+			}
+			if (location == null)
+				return null;
+			byte[] value = readCold(location);
+			if (value != null)
+				return value;
+		}
+	}
+
+	private byte[] readCold(DiskTier.Location location) {
+		try {
+			return cold.read(location);
+		} catch (IOException e) {
+			throw new StorageException("Could not read a value of " + location.getLength() + " bytes from the spill file", e);
+		}
+	}
+
+	// must be called holding this storage monitor
+	private byte[] removeFromMemory(Object key) {
+		byte[] old = hot.remove(key);
+		if (old != null)
+			hotBytes -= old.length;
+		byte[] demoted = demoting.remove(key);
+		return old != null ? old : demoted;
+	}
+
+	// must be called holding this storage monitor
+	private void evict() {
+		// promotions still queued when the storage is closed leave the memory tier over capacity, nothing is demoted
+		if (mover.isShutdown())
+			return;
+		Iterator<Entry<Identifier, byte[]>> eldest = hot.entrySet().iterator();
+		while (hotBytes > hotCapacity && eldest.hasNext()) {
+			Entry<Identifier, byte[]> entry = eldest.next();
+			eldest.remove();
+			hotBytes -= entry.getValue().length;
+			// values promoted from disk still have their copy there, only dirty ones need to be written
+			if (!cold.contains(entry.getKey())) {
+				demoting.put(entry.getKey(), entry.getValue());
+				mover.execute(new Demotion(entry.getKey(), entry.getValue()));
+			}
+		}
+	}
+
+	private void scheduleCompactionIfNeeded() {
+		// demotions still queued when the storage is closed must not schedule anything else
+		if (!mover.isShutdown() && cold.needsCompaction(compactionThreshold) && compactionScheduled.compareAndSet(false, true))
+			mover.execute(new Compaction());
+	}
+
+	/**
+	 * A value of the cold tier. If the spill file is compacted or the value promoted before it is used, it is looked
+	 * up again, and used only if its length did not change
+	 */
+	class ColdValue implements StoredValue {
+		private Identifier key;
+		private DiskTier.Location location;
+		private byte[] promoted;
+
+		ColdValue(Identifier key, DiskTier.Location location) {
+			this.key = key;
+			this.location = location;
+		}
+
+		public int getLength() {
+			return location.getLength();
+		}
+
+		public synchronized byte[] getRange(int offset, int length) {
+			try {
+				while (promoted == null) {
+					byte[] range = cold.read(location, offset, length);
+					if (range != null)
+						return range;
+					relocate();
+				}
+			} catch (IOException e) {
+				throw new StorageException("Could not read " + length + " bytes of key " + key + " from the spill file", e);
+			}
+			return Arrays.copyOfRange(promoted, offset, offset + length);
+		}
+
+		public synchronized void transferTo(WritableByteChannel channel, int offset, int length) throws IOException {
+			while (promoted == null) {
+				if (cold.transferTo(location, offset, length, channel))
+					return;
+				relocate();
+			}
+			new ArrayValue(promoted).transferTo(channel, offset, length);
+		}
+
+		private void relocate() throws IOException {
+			int length = location.getLength();
+			synchronized (TieredStorage.this) {
+				byte[] value = hot.get(key);
+				if (value == null)
+					value = demoting.get(key);
+				if (value != null && value.length == length) {
+					promoted = value;
+					return;
+				}
+				DiskTier.Location newLocation = value == null ? cold.locate(key) : null;
+				if (newLocation == null || newLocation.getLength() != length)
+					throw new IOException("The value of key " + key + " changed or was removed while being read");
+				location = newLocation;
+			}
+		}
+	}
+
+	class Demotion implements Runnable {
+		private Identifier key;
+		private byte[] value;
+
+		Demotion(Identifier key, byte[] value) {
+			this.key = key;
+			this.value = value;
+		}
+
+		public void run() {
+			try {
+				DiskTier.Location location = cold.append(value);
+				synchronized (TieredStorage.this) {
+					// the value may have been overwritten or removed while it was being written
+					if (demoting.get(key) == value && cold.publish(key, location))
+						demoting.remove(key);
+					else
+						cold.discard(location);
+				}
+			} catch (IOException e) {
+				logger.error("IOException occured while demoting the value of key " + key + " to disk, keeping it in memory", e);
+			}
+			scheduleCompactionIfNeeded();
+		}
+	}
+
+	class Promotion implements Runnable {
+		private Identifier key;
+		private DiskTier.Location location;
+		private byte[] value;
+
+		Promotion(Identifier key, DiskTier.Location location, byte[] value) {
+			this.key = key;
+			this.location = location;
+			this.value = value;
+		}
+
+		public void run() {
+			synchronized (TieredStorage.this) {
+				if (value.length <= hotCapacity && cold.locate(key) == location && !hot.containsKey(key)) {
+					hot.put(key, value);
+					hotBytes += value.length;
+					evict();
+				}
+			}
+		}
+	}
+
+	class Compaction implements Runnable {
+		public void run() {
+			compactionScheduled.set(false);
+			try {
+				if (cold.needsCompaction(compactionThreshold))
+					cold.compact();
+			} catch (IOException e) {
+				logger.error("IOException occured while compacting the spill file", e);
+			}
+		}
+	}
+}
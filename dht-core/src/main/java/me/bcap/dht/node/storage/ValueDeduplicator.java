@@ -0,0 +1,79 @@
+package me.bcap.dht.node.storage;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import me.bcap.dht.node.Identifier;
+import me.bcap.dht.util.ContentKeys;
+
+/**
+ * Reference counted table of the distinct values held by a storage, so that identical values stored under different
+ * keys share a single array. Values are matched by their SHA-1, confirmed by comparing their bytes.
+ */
+class ValueDeduplicator {
+
+	private Map<Identifier, SharedValue> byDigest = new HashMap<Identifier, SharedValue>();
+	private Map<byte[], SharedValue> byArray = new IdentityHashMap<byte[], SharedValue>();
+	private long savedBytes = 0;
+
+	/**
+	 * Returns the array to store for the value, a previously stored one if it is identical
+	 */
+	byte[] acquire(byte[] value) {
+		Identifier digest = ContentKeys.of(value);
+		synchronized (this) {
+			SharedValue shared = byDigest.get(digest);
+			if (shared == null) {
+				shared = new SharedValue(digest, value);
+				byDigest.put(digest, shared);
+				byArray.put(value, shared);
+			} else if (shared.value != value && !Arrays.equals(shared.value, value)) {
+				// a digest collision, the value is just kept on its own
+				return value;
+			} else {
+				savedBytes += value.length;
+			}
+			shared.references++;
+			return shared.value;
+		}
+	}
+
+	/**
+	 * Drops a reference to an array returned by {@link #acquire(byte[])}
+	 */
+	synchronized void release(byte[] value) {
+		SharedValue shared = byArray.get(value);
+		if (shared == null)
+			return;
+		if (--shared.references == 0) {
+			byArray.remove(value);
+			byDigest.remove(shared.digest);
+		} else {
+			savedBytes -= value.length;
+		}
+	}
+
+	synchronized int getDistinctValues() {
+		return byArray.size();
+	}
+
+	/**
+	 * Bytes not held thanks to sharing, the length of each value times its references beyond the first
+	 */
+	synchronized long getSavedBytes() {
+		return savedBytes;
+	}
+
+	static class SharedValue {
+		Identifier digest;
+		byte[] value;
+		int references = 0;
+
+		SharedValue(Identifier digest, byte[] value) {
+			this.digest = digest;
+			this.value = value;
+		}
+	}
+}
@@ -0,0 +1,313 @@
+package me.bcap.dht.node.storage;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import me.bcap.dht.node.Identifier;
+
+/**
+ * Keys holding a set of small elements instead of a single value, for announcements where many nodes publish under
+ * the same key. Each key holds at most {@link #getMaxElements()} distinct elements, each one expiring on its own.
+ * <p>
+ * Adding an element and drawing a random sample of a set take constant time whatever the size of the set: elements
+ * are kept in an array indexed by their content, expired ones are dropped as they are met, and a full set makes room
+ * by evicting the element closest to expiring among a few picked at random. Every add also checks one other key and
+ * drops it if all its elements expired, so that keys no longer announced go away.
+ * <p>
+ * Registered {@link StorageListener}s are told about every element added, with the element as value and the key as
+ * new when its set was just created, and about every key dropped. They are called holding the monitor of the set.
+ */
+public class ValueSets implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	public static final int DEFAULT_MAX_ELEMENTS = 1000;
+	public static final int DEFAULT_MAX_ELEMENT_SIZE = 4 * 1024;
+	public static final long DEFAULT_MAX_TTL = 60 * 60 * 1000;
+
+	private static final int EVICTION_PROBES = 8;
+
+	private ConcurrentMap<Identifier, ValueSet> sets = new ConcurrentHashMap<Identifier, ValueSet>();
+	private Random random = new Random();
+	private transient Iterator<Identifier> sweepCursor;
+	private transient List<StorageListener> listeners = new CopyOnWriteArrayList<StorageListener>();
+
+	private int maxElements = DEFAULT_MAX_ELEMENTS;
+	private int maxElementSize = DEFAULT_MAX_ELEMENT_SIZE;
+	private long maxTtl = DEFAULT_MAX_TTL;
+
+	/**
+	 * Adds an element to the set of a key, or extends its expiry if it is already there. The time to live is capped at
+	 * {@link #getMaxTtl()}. Returns true if the element was not in the set
+	 */
+	public boolean add(Identifier key, byte[] element, long ttl) {
+		if (element.length > maxElementSize)
+			throw new IllegalArgumentException("Elements are limited to " + maxElementSize + " bytes, got " + element.length);
+		long now = System.currentTimeMillis();
+		long expiresAt = now + Math.min(ttl, maxTtl);
+
+		boolean added;
+		while (true) {
+			ValueSet set = sets.get(key);
+			if (set == null) {
+				set = new ValueSet();
+				ValueSet existing = sets.putIfAbsent(key, set);
+				if (existing != null)
+					set = existing;
+			}
+			synchronized (set) {
+				// lost a race with a sweep that dropped the set
+				if (set.dropped)
+					continue;
+				added = set.add(element, expiresAt);
+				if (added) {
+					boolean newKey = !set.announced;
+					set.announced = true;
+					for (StorageListener listener : listeners)
+						listener.valueStored(key, element, newKey);
+				}
+				break;
+			}
+		}
+		sweepOne(now);
+		return added;
+	}
+
+	/**
+	 * Returns up to count elements of the set of a key picked at random, an empty list if it holds none
+	 */
+	public List<byte[]> sample(Identifier key, int count) {
+		ValueSet set = sets.get(key);
+		if (set == null)
+			return new ArrayList<byte[]>();
+		synchronized (set) {
+			List<byte[]> sample = set.sample(count, System.currentTimeMillis());
+			if (set.elements.isEmpty())
+				drop(key, set);
+			return sample;
+		}
+	}
+
+	/**
+	 * Number of elements held for a key, expired ones included until they are dropped
+	 */
+	public int size(Identifier key) {
+		ValueSet set = sets.get(key);
+		if (set == null)
+			return 0;
+		synchronized (set) {
+			return set.elements.size();
+		}
+	}
+
+	public boolean containsKey(Identifier key) {
+		return sets.containsKey(key);
+	}
+
+	public Set<Identifier> keySet() {
+		return sets.keySet();
+	}
+
+	public int countKeys() {
+		return sets.size();
+	}
+
+	private void sweepOne(long now) {
+		Identifier key;
+		synchronized (this) {
+			if (sweepCursor == null || !sweepCursor.hasNext())
+				sweepCursor = sets.keySet().iterator();
+			if (!sweepCursor.hasNext())
+				return;
+			key = sweepCursor.next();
+		}
+		ValueSet set = sets.get(key);
+		if (set == null)
+			return;
+		synchronized (set) {
+			if (set.latestExpiry <= now)
+				drop(key, set);
+		}
+	}
+
+	// must be called holding the set monitor
+	private void drop(Identifier key, ValueSet set) {
+		set.dropped = true;
+		sets.remove(key);
+		if (set.announced) {
+			for (StorageListener listener : listeners)
+				listener.valueRemoved(key);
+		}
+	}
+
+	public void addListener(StorageListener listener) {
+		listeners.add(listener);
+	}
+
+	public boolean removeListener(StorageListener listener) {
+		return listeners.remove(listener);
+	}
+
+	// like the ones of a storage, listeners that are not serializable stay behind
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		List<StorageListener> serializable = new ArrayList<StorageListener>();
+		for (StorageListener listener : listeners)
+			if (listener instanceof Serializable)
+				serializable.add(listener);
+		out.writeObject(serializable);
+	}
+
+	@SuppressWarnings("unchecked")
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		this.listeners = new CopyOnWriteArrayList<StorageListener>((List<StorageListener>) in.readObject());
+	}
+
+	class ValueSet implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		private List<Element> elements = new ArrayList<Element>();
+		private Map<ElementKey, Element> index = new HashMap<ElementKey, Element>();
+		private long latestExpiry = 0;
+		private boolean dropped = false;
+		// whether the listeners were told about the key
+		private boolean announced = false;
+
+		boolean add(byte[] value, long expiresAt) {
+			latestExpiry = Math.max(latestExpiry, expiresAt);
+			ElementKey elementKey = new ElementKey(value);
+			Element element = index.get(elementKey);
+			if (element != null) {
+				element.expiresAt = Math.max(element.expiresAt, expiresAt);
+				return false;
+			}
+			if (elements.size() >= maxElements)
+				evict();
+			element = new Element(elementKey, expiresAt);
+			element.position = elements.size();
+			elements.add(element);
+			index.put(elementKey, element);
+			return true;
+		}
+
+		List<byte[]> sample(int count, long now) {
+			List<byte[]> sample = new ArrayList<byte[]>(Math.min(count, elements.size()));
+			List<Element> expired = new ArrayList<Element>();
+			if (count >= elements.size()) {
+				for (Element element : elements) {
+					if (element.expiresAt > now)
+						sample.add(element.key.value);
+					else
+						expired.add(element);
+				}
+			} else {
+				Set<Integer> picked = new HashSet<Integer>();
+				while (sample.size() < count && picked.size() < elements.size()) {
+					int position = random.nextInt(elements.size());
+					if (!picked.add(position))
+						continue;
+					Element element = elements.get(position);
+					if (element.expiresAt > now)
+						sample.add(element.key.value);
+					else
+						expired.add(element);
+				}
+			}
+			// removed only now, as removals move elements around
+			for (Element element : expired)
+				remove(element);
+			return sample;
+		}
+
+		private void evict() {
+			Element victim = null;
+			for (int i = 0; i < EVICTION_PROBES; i++) {
+				Element candidate = elements.get(random.nextInt(elements.size()));
+				if (victim == null || candidate.expiresAt < victim.expiresAt)
+					victim = candidate;
+			}
+			remove(victim);
+		}
+
+		private void remove(Element element) {
+			Element last = elements.remove(elements.size() - 1);
+			if (last != element) {
+				elements.set(element.position, last);
+				last.position = element.position;
+			}
+			index.remove(element.key);
+		}
+	}
+
+	static class Element implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		ElementKey key;
+		long expiresAt;
+		int position;
+
+		Element(ElementKey key, long expiresAt) {
+			this.key = key;
+			this.expiresAt = expiresAt;
+		}
+	}
+
+	static class ElementKey implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		byte[] value;
+		int hash;
+
+		ElementKey(byte[] value) {
+			this.value = value;
+			this.hash = Arrays.hashCode(value);
+		}
+
+		public int hashCode() {
+			return hash;
+		}
+
+		public boolean equals(Object other) {
+			return other instanceof ElementKey && Arrays.equals(value, ((ElementKey) other).value);
+		}
+	}
+
+	public int getMaxElements() {
+		return maxElements;
+	}
+
+	public void setMaxElements(int maxElements) {
+		this.maxElements = maxElements;
+	}
+
+	public int getMaxElementSize() {
+		return maxElementSize;
+	}
+
+	public void setMaxElementSize(int maxElementSize) {
+		this.maxElementSize = maxElementSize;
+	}
+
+	public long getMaxTtl() {
+		return maxTtl;
+	}
+
+	public void setMaxTtl(long maxTtl) {
+		this.maxTtl = maxTtl;
+	}
+}
@@ -0,0 +1,23 @@
+package me.bcap.dht.node.storage;
+
+/**
+ * A stored value and the version it had when it was read
+ */
+public class VersionedValue {
+
+	private byte[] value;
+	private long version;
+
+	public VersionedValue(byte[] value, long version) {
+		this.value = value;
+		this.version = version;
+	}
+
+	public byte[] getValue() {
+		return value;
+	}
+
+	public long getVersion() {
+		return version;
+	}
+}
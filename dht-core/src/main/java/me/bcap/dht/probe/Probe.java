@@ -0,0 +1,74 @@
+package me.bcap.dht.probe;
+
+import java.net.InetAddress;
+
+import me.bcap.dht.message.request.Request;
+import me.bcap.dht.message.response.Response;
+import me.bcap.dht.node.Contact;
+import me.bcap.dht.node.Identifier;
+
+/**
+ * Receives the internal events of servers, senders, buckets and storages, for tools that record them such as
+ * profilers. Calls are made on the hot paths, by the threads doing the work, so implementations have to be quick and
+ * must not block. Durations are in nanoseconds, sizes in bytes.
+ * <p>
+ * A probe only receives events once {@link Probes#install(Probe) installed}. With none installed the events are not
+ * even timed.
+ */
+public interface Probe {
+
+	/**
+	 * A server accepted a connection
+	 */
+	public void connectionAccepted(InetAddress address, int port);
+
+	/**
+	 * A server read a request, including its payload
+	 */
+	public void requestDecoded(Request request, long bytes, long duration);
+
+	/**
+	 * A request went through its handler, successfully or not
+	 */
+	public void requestHandled(Request request, boolean succeeded, long duration);
+
+	/**
+	 * A server wrote a response, including its payload
+	 */
+	public void responseEncoded(Response response, long bytes, long duration);
+
+	/**
+	 * A sender connected to the destination of a request
+	 */
+	public void senderConnected(Request request, long duration);
+
+	/**
+	 * A sender wrote a request, including its payload
+	 */
+	public void requestSent(Request request, long bytes, long duration);
+
+	/**
+	 * A sender read the response to a request, the duration covering the wait for the server as well
+	 */
+	public void responseReceived(Request request, Response response, long bytes, long duration);
+
+	/**
+	 * A bucket was asked to hold a contact, which it was already holding, added, or turned down for being full
+	 */
+	public void bucketUpdated(Identifier bucket, Contact contact, boolean known, boolean added, int size);
+
+	/**
+	 * A contact was removed from a bucket
+	 */
+	public void bucketEvicted(Identifier bucket, Contact contact, int size);
+
+	/**
+	 * A value, or part of it, was read from a storage. Bytes are -1 if the key was not stored
+	 */
+	public void storageRead(Identifier key, long bytes, long duration);
+
+	/**
+	 * A value was written to a storage
+	 */
+	public void storageWritten(Identifier key, long bytes, long duration);
+}
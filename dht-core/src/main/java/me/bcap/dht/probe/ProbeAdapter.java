@@ -0,0 +1,47 @@
+package me.bcap.dht.probe;
+
+import java.net.InetAddress;
+
+import me.bcap.dht.message.request.Request;
+import me.bcap.dht.message.response.Response;
+import me.bcap.dht.node.Contact;
+import me.bcap.dht.node.Identifier;
+
+/**
+ * Probe ignoring every event, to be extended by probes interested in only some of them
+ */
+public class ProbeAdapter implements Probe {
+
+	public void connectionAccepted(InetAddress address, int port) {
+	}
+
+	public void requestDecoded(Request request, long bytes, long duration) {
+	}
+
+	public void requestHandled(Request request, boolean succeeded, long duration) {
+	}
+
+	public void responseEncoded(Response response, long bytes, long duration) {
+	}
+
+	public void senderConnected(Request request, long duration) {
+	}
+
+	public void requestSent(Request request, long bytes, long duration) {
+	}
+
+	public void responseReceived(Request request, Response response, long bytes, long duration) {
+	}
+
+	public void bucketUpdated(Identifier bucket, Contact contact, boolean known, boolean added, int size) {
+	}
+
+	public void bucketEvicted(Identifier bucket, Contact contact, int size) {
+	}
+
+	public void storageRead(Identifier key, long bytes, long duration) {
+	}
+
+	public void storageWritten(Identifier key, long bytes, long duration) {
+	}
+}
@@ -0,0 +1,35 @@
+package me.bcap.dht.probe;
+
+/**
+ * Holds the probe installed in this JVM. Instrumented code reads it once per event and skips the event, timing
+ * included, when it is null:
+ * 
+ * <pre>
+ * Probe probe = Probes.get();
+ * long start = probe != null ? System.nanoTime() : 0;
+ * ...
+ * if (probe != null)
+ * 	probe.storageWritten(key, value.length, System.nanoTime() - start);
+ * </pre>
+ */
+public final class Probes {
+
+	private static volatile Probe probe;
+
+	private Probes() {
+	}
+
+	/**
+	 * The installed probe, null if there is none
+	 */
+	public static Probe get() {
+		return probe;
+	}
+
+	/**
+	 * Installs a probe, replacing the one installed before if any. Installing null switches the events off
+	 */
+	public static void install(Probe probe) {
+		Probes.probe = probe;
+	}
+}
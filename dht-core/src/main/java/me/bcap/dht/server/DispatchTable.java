@@ -0,0 +1,88 @@
+package me.bcap.dht.server;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import me.bcap.dht.message.request.Opcodes;
+import me.bcap.dht.message.request.Request;
+import me.bcap.dht.server.handler.RequestHandler;
+
+/**
+ * Handlers and executors of a {@link Server} indexed by the {@link Opcodes opcode} of the request type. Lookups read a
+ * plain array, changes copy it
+ */
+class DispatchTable {
+
+	/**
+	 * How one type of request is handled, a null executor meaning on the thread that read the request
+	 */
+	static class Entry {
+		final Class<? extends Request> type;
+		final RequestHandler handler;
+		final Executor executor;
+
+		Entry(Class<? extends Request> type, RequestHandler handler, Executor executor) {
+			this.type = type;
+			this.handler = handler;
+			this.executor = executor;
+		}
+	}
+
+	private volatile Entry[] entries = new Entry[Opcodes.BUILT_IN];
+
+	/**
+	 * The entry of the type of the given request, or null if the type has no handler
+	 */
+	Entry get(Request request) {
+		Entry[] entries = this.entries;
+		int opcode = request.getOpcode();
+		Entry entry = opcode < entries.length ? entries[opcode] : null;
+		if (entry != null && entry.type == request.getClass())
+			return entry;
+		// subclasses of a built-in type answer with its opcode, their own one has to be looked up
+		opcode = Opcodes.of(request.getClass());
+		entry = opcode < entries.length ? entries[opcode] : null;
+		return entry != null && entry.type == request.getClass() ? entry : null;
+	}
+
+	Entry get(Class<? extends Request> type) {
+		Entry[] entries = this.entries;
+		int opcode = Opcodes.of(type);
+		return opcode < entries.length ? entries[opcode] : null;
+	}
+
+	synchronized void put(Class<? extends Request> type, RequestHandler handler, Executor executor) {
+		set(Opcodes.of(type), new Entry(type, handler, executor));
+	}
+
+	synchronized void setExecutor(Class<? extends Request> type, Executor executor) {
+		Entry entry = get(type);
+		if (entry == null)
+			throw new IllegalArgumentException("No handler was added for type " + type);
+		set(Opcodes.of(type), new Entry(type, entry.handler, executor));
+	}
+
+	synchronized Entry remove(Class<? extends Request> type) {
+		Entry entry = get(type);
+		if (entry != null)
+			set(Opcodes.of(type), null);
+		return entry;
+	}
+
+	List<Class<? extends Request>> types() {
+		List<Class<? extends Request>> types = new ArrayList<Class<? extends Request>>();
+		for (Entry entry : entries) {
+			if (entry != null)
+				types.add(entry.type);
+		}
+		return types;
+	}
+
+	private void set(int opcode, Entry entry) {
+		Entry[] copy = Arrays.copyOf(entries, Math.max(entries.length, opcode + 1));
+		copy[opcode] = entry;
+		this.entries = copy;
+	}
+}
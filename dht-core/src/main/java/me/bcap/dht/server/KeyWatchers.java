@@ -0,0 +1,309 @@
+package me.bcap.dht.server;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+import me.bcap.dht.client.MessageSender;
+import me.bcap.dht.client.ResponseHandler;
+import me.bcap.dht.message.request.KeyChangedRequest;
+import me.bcap.dht.message.response.Response;
+import me.bcap.dht.node.Contact;
+import me.bcap.dht.node.Identifier;
+import me.bcap.dht.node.Node;
+import me.bcap.dht.node.storage.Storage;
+import me.bcap.dht.node.storage.StorageListener;
+import me.bcap.dht.node.storage.VersionedValue;
+
+/**
+ * The watchers subscribed to the keys of the nodes of a server, and the pushing of the changes to them.
+ * <p>
+ * Each watched node gets a {@link StorageListener}, so every write reaches the watchers whichever request caused it.
+ * The listener only marks the key as changed: the changes are pushed {@link #getBatchDelay()} later, all the keys a
+ * watcher follows going in a single {@link KeyChangedRequest} and several changes of a key in between collapsing into
+ * its latest state. Stores to a key watched by many are then never slowed down by the fan out. Values larger than
+ * {@link #getMaxPushedValue()} are never loaded by a push, only their length and version are sent.
+ * <p>
+ * Only the keys of the storage can be watched: elements added to the {@link me.bcap.dht.node.storage.ValueSets sets}
+ * of a node are not pushed, a subscription to a set key only ever hears of a value stored under the same key.
+ */
+public class KeyWatchers {
+
+	private static final Logger logger = Logger.getLogger(KeyWatchers.class);
+
+	public static final long DEFAULT_MAX_LEASE = 5 * 60 * 1000;
+	public static final long DEFAULT_BATCH_DELAY = 50;
+	public static final int DEFAULT_MAX_PUSHED_VALUE = 64 * 1024;
+	public static final int DEFAULT_MAX_WATCHERS_PER_KEY = 1000;
+
+	private static final ScheduledExecutorService PUSH_SCHEDULER = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "KeyWatchers-push");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	private MessageSender sender;
+	private ConcurrentMap<Identifier, NodeWatches> nodes = new ConcurrentHashMap<Identifier, NodeWatches>();
+
+	private long maxLease = DEFAULT_MAX_LEASE;
+	private long batchDelay = DEFAULT_BATCH_DELAY;
+	private int maxPushedValue = DEFAULT_MAX_PUSHED_VALUE;
+	private int maxWatchersPerKey = DEFAULT_MAX_WATCHERS_PER_KEY;
+
+	public KeyWatchers(MessageSender sender) {
+		this.sender = sender;
+	}
+
+	/**
+	 * Subscribes a watcher to a key of a node, or renews its subscription, for a lease capped at
+	 * {@link #getMaxLease()}. A lease of 0 cancels the subscription. Returns the lease granted, 0 if none was
+	 */
+	public long subscribe(Node node, Identifier key, Contact watcher, long lease) {
+		NodeWatches watches = nodes.get(node.asIdentifier());
+		if (watches == null) {
+			if (lease <= 0)
+				return 0;
+			watches = new NodeWatches(node);
+			NodeWatches existing = nodes.putIfAbsent(node.asIdentifier(), watches);
+			if (existing != null)
+				watches = existing;
+			else
+				node.getDataStorage().addListener(watches);
+		}
+		return watches.subscribe(key, watcher, Math.min(lease, maxLease));
+	}
+
+	/**
+	 * Number of watchers with a lease on a key of a node
+	 */
+	public int countWatchers(Node node, Identifier key) {
+		NodeWatches watches = nodes.get(node.asIdentifier());
+		return watches != null ? watches.live(key, System.currentTimeMillis()).size() : 0;
+	}
+
+	class NodeWatches implements StorageListener {
+		private Node node;
+		// key -> watcher id -> watch
+		private ConcurrentMap<Identifier, Map<Identifier, Watch>> watches = new ConcurrentHashMap<Identifier, Map<Identifier, Watch>>();
+		private Set<Identifier> changed = new LinkedHashSet<Identifier>();
+		private boolean pushScheduled = false;
+		private long lastSweep = System.currentTimeMillis();
+
+		NodeWatches(Node node) {
+			this.node = node;
+		}
+
+		long subscribe(Identifier key, Contact watcher, long lease) {
+			long now = System.currentTimeMillis();
+			sweepIfDue(now);
+			while (true) {
+				Map<Identifier, Watch> keyWatches = watches.get(key);
+				if (keyWatches == null) {
+					if (lease <= 0)
+						return 0;
+					keyWatches = new HashMap<Identifier, Watch>();
+					Map<Identifier, Watch> existing = watches.putIfAbsent(key, keyWatches);
+					if (existing != null)
+						keyWatches = existing;
+				}
+				synchronized (keyWatches) {
+					// dropped by a sweep in between
+					if (watches.get(key) != keyWatches)
+						continue;
+					if (lease <= 0) {
+						keyWatches.remove(watcher.asIdentifier());
+						return 0;
+					}
+					Watch watch = keyWatches.get(watcher.asIdentifier());
+					if (watch == null) {
+						if (keyWatches.size() >= maxWatchersPerKey)
+							return 0;
+						watch = new Watch(watcher.asContact());
+						keyWatches.put(watcher.asIdentifier(), watch);
+					}
+					watch.expiresAt = now + lease;
+					return lease;
+				}
+			}
+		}
+
+		public void valueStored(Identifier key, byte[] value, boolean newKey) {
+			keyChanged(key);
+		}
+
+		public void valueRemoved(Identifier key) {
+			keyChanged(key);
+		}
+
+		private void keyChanged(Identifier key) {
+			if (!watches.containsKey(key))
+				return;
+			synchronized (this) {
+				changed.add(key);
+				if (pushScheduled)
+					return;
+				pushScheduled = true;
+			}
+			// stores call this before the value is in place, the push reads it later anyway
+			PUSH_SCHEDULER.schedule(new Runnable() {
+				public void run() {
+					push();
+				}
+			}, batchDelay, TimeUnit.MILLISECONDS);
+		}
+
+		private void push() {
+			List<Identifier> keys;
+			synchronized (this) {
+				keys = new ArrayList<Identifier>(changed);
+				changed.clear();
+				pushScheduled = false;
+			}
+
+			long now = System.currentTimeMillis();
+			Map<Identifier, KeyChangedRequest> batches = new HashMap<Identifier, KeyChangedRequest>();
+			for (Identifier key : keys) {
+				List<Watch> live = live(key, now);
+				if (live.isEmpty())
+					continue;
+				KeyChangedRequest.Change change = change(key);
+				for (Watch watch : live) {
+					KeyChangedRequest batch = batches.get(watch.watcher.asIdentifier());
+					if (batch == null) {
+						batch = new KeyChangedRequest();
+						batch.setSource(node.asContact());
+						batch.setDestination(watch.watcher);
+						batches.put(watch.watcher.asIdentifier(), batch);
+					}
+					batch.getChanges().add(change);
+				}
+			}
+
+			for (final KeyChangedRequest batch : batches.values()) {
+				sender.send(batch, new ResponseHandler() {
+					public void handleResponse(Response response) {
+					}
+
+					// the watcher keeps its lease, it will renew or let it expire
+					public void handleException(Exception exception) {
+						logger.debug("Could not push " + batch.getChanges().size() + " key changes to watcher " + batch.getDestination() + ": " + exception);
+					}
+				});
+			}
+		}
+
+		/**
+		 * The latest state of a key. Only values small enough to be pushed are loaded, larger ones are announced from
+		 * their length and version, which a change in between may leave out of step, in which case that change is
+		 * pushed next
+		 */
+		private KeyChangedRequest.Change change(Identifier key) {
+			Storage storage = node.getDataStorage();
+			int length = storage.getLength(key);
+			if (length > maxPushedValue) {
+				long version = storage.getVersion(key);
+				if (version != 0)
+					return new KeyChangedRequest.Change(key, version, length, null);
+			} else if (length >= 0) {
+				VersionedValue current = storage.getVersioned(key);
+				if (current != null) {
+					byte[] value = current.getValue();
+					return new KeyChangedRequest.Change(key, current.getVersion(), value.length, value.length <= maxPushedValue ? value : null);
+				}
+			}
+			return new KeyChangedRequest.Change(key, 0, -1, null);
+		}
+
+		List<Watch> live(Identifier key, long now) {
+			List<Watch> live = new ArrayList<Watch>();
+			Map<Identifier, Watch> keyWatches = watches.get(key);
+			if (keyWatches == null)
+				return live;
+			synchronized (keyWatches) {
+				for (Iterator<Watch> iterator = keyWatches.values().iterator(); iterator.hasNext();) {
+					Watch watch = iterator.next();
+					if (watch.expiresAt > now)
+						live.add(watch);
+					else
+						iterator.remove();
+				}
+			}
+			return live;
+		}
+
+		/**
+		 * Drops the expired watches of all the keys, at most once per maximum lease
+		 */
+		private void sweepIfDue(long now) {
+			synchronized (this) {
+				if (now - lastSweep < maxLease)
+					return;
+				lastSweep = now;
+			}
+			for (Identifier key : watches.keySet()) {
+				Map<Identifier, Watch> keyWatches = watches.get(key);
+				if (live(key, now).isEmpty() && keyWatches != null) {
+					synchronized (keyWatches) {
+						if (keyWatches.isEmpty())
+							watches.remove(key, keyWatches);
+					}
+				}
+			}
+		}
+	}
+
+	static class Watch {
+		Contact watcher;
+		long expiresAt;
+
+		Watch(Contact watcher) {
+			this.watcher = watcher;
+		}
+	}
+
+	public long getMaxLease() {
+		return maxLease;
+	}
+
+	public void setMaxLease(long maxLease) {
+		this.maxLease = maxLease;
+	}
+
+	public long getBatchDelay() {
+		return batchDelay;
+	}
+
+	public void setBatchDelay(long batchDelay) {
+		this.batchDelay = batchDelay;
+	}
+
+	public int getMaxPushedValue() {
+		return maxPushedValue;
+	}
+
+	public void setMaxPushedValue(int maxPushedValue) {
+		this.maxPushedValue = maxPushedValue;
+	}
+
+	public int getMaxWatchersPerKey() {
+		return maxWatchersPerKey;
+	}
+
+	public void setMaxWatchersPerKey(int maxWatchersPerKey) {
+		this.maxWatchersPerKey = maxWatchersPerKey;
+	}
+}
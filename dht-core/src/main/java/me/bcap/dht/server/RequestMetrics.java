@@ -0,0 +1,49 @@
+package me.bcap.dht.server;
+
+import me.bcap.dht.metrics.LatencyHistogram;
+import me.bcap.dht.metrics.MetricsRegistry;
+import me.bcap.dht.metrics.StripedCounter;
+
+/**
+ * Metrics of one type of request handled by a {@link Server}, registered as
+ * server.requests.&lt;type&gt;.received, .rejected, .handled, .failed and .time
+ */
+public class RequestMetrics {
+
+	private StripedCounter received;
+	private StripedCounter rejected;
+	private StripedCounter handled;
+	private StripedCounter failed;
+	private LatencyHistogram time;
+
+	RequestMetrics(MetricsRegistry registry, String type) {
+		String prefix = "server.requests." + type;
+		this.received = registry.counter(prefix + ".received");
+		this.rejected = registry.counter(prefix + ".rejected");
+		this.handled = registry.counter(prefix + ".handled");
+		this.failed = registry.counter(prefix + ".failed");
+		this.time = registry.histogram(prefix + ".time");
+	}
+
+	public void received() {
+		received.increment();
+	}
+
+	/**
+	 * Records a request turned down because the executor of its type was full
+	 */
+	public void rejected() {
+		rejected.increment();
+	}
+
+	/**
+	 * Records a request that went through its handler, successfully or not, along with the time it took
+	 */
+	public void handled(long nanos, boolean succeeded) {
+		if (succeeded)
+			handled.increment();
+		else
+			failed.increment();
+		time.record(nanos);
+	}
+}
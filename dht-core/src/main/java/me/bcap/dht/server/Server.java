@@ -1,6 +1,7 @@
 package me.bcap.dht.server;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
@@ -11,35 +12,73 @@ import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
-import java.net.SocketException;
 import java.net.UnknownHostException;
+import java.nio.channels.ServerSocketChannel;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Map;
 import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.log4j.Logger;
 
+import me.bcap.dht.client.MessageSender;
+import me.bcap.dht.diagnostics.DiagnosticEvent;
+import me.bcap.dht.diagnostics.Diagnostics;
+import me.bcap.dht.message.PayloadMessage;
+import me.bcap.dht.metrics.CountingInputStream;
+import me.bcap.dht.metrics.CountingOutputStream;
+import me.bcap.dht.metrics.Gauge;
+import me.bcap.dht.metrics.MetricsRegistry;
+import me.bcap.dht.metrics.StripedCounter;
+import me.bcap.dht.message.request.AppendRequest;
+import me.bcap.dht.message.request.CompareAndSetRequest;
+import me.bcap.dht.message.request.ContainsKeyRequest;
 import me.bcap.dht.message.request.FindNodeRequest;
 import me.bcap.dht.message.request.FindValueRequest;
+import me.bcap.dht.message.request.KeyChangedRequest;
+import me.bcap.dht.message.request.HandoffRequest;
+import me.bcap.dht.message.request.KeyFilterRequest;
+import me.bcap.dht.message.request.MerkleTreeRequest;
 import me.bcap.dht.message.request.PingRequest;
 import me.bcap.dht.message.request.Request;
+import me.bcap.dht.message.request.StoreChunkRequest;
 import me.bcap.dht.message.request.StoreRequest;
+import me.bcap.dht.message.request.SubscribeRequest;
+import me.bcap.dht.message.request.ValueRangeRequest;
 import me.bcap.dht.message.response.PingResponse;
 import me.bcap.dht.message.response.Response;
 import me.bcap.dht.node.Contact;
 import me.bcap.dht.node.Identifier;
 import me.bcap.dht.node.Node;
+import me.bcap.dht.probe.Probe;
+import me.bcap.dht.probe.Probes;
+import me.bcap.dht.server.handler.AppendRequestHandler;
+import me.bcap.dht.server.handler.CompareAndSetRequestHandler;
+import me.bcap.dht.server.handler.ContainsKeyRequestHandler;
 import me.bcap.dht.server.handler.FindNodeRequestHandler;
 import me.bcap.dht.server.handler.FindValueRequestHandler;
+import me.bcap.dht.server.handler.HandoffRequestHandler;
+import me.bcap.dht.server.handler.KeyChangedRequestHandler;
+import me.bcap.dht.server.handler.KeyFilterRequestHandler;
+import me.bcap.dht.server.handler.MerkleTreeRequestHandler;
 import me.bcap.dht.server.handler.PingRequestHandler;
 import me.bcap.dht.server.handler.RequestHandler;
 import me.bcap.dht.server.handler.RequestHandlerException;
+import me.bcap.dht.server.handler.StoreChunkRequestHandler;
 import me.bcap.dht.server.handler.StoreRequestHandler;
+import me.bcap.dht.server.handler.SubscribeRequestHandler;
+import me.bcap.dht.server.handler.ValueRangeRequestHandler;
 
 public class Server extends Thread implements Runnable {
 
@@ -49,10 +88,17 @@ public class Server extends Thread implements Runnable {
 	public static final int DEFAULT_MINIMUM_POOL_SIZE = 1;
 	public static final int DEFAULT_MAXIMUM_POOL_SIZE = 30;
 	public static final long DEFAULT_POLL_THREAD_ALIVE_TIME = 60000;
+	public static final int DEFAULT_CONNECTION_SHARDS = 0;
+	public static final int DEFAULT_CONNECTION_SHARD_QUEUE_SIZE = 100;
+	public static final int DEFAULT_CONNECTION_SHARD_READ_TIMEOUT = 5000;
+	public static final int DEFAULT_STORAGE_POOL_SIZE = 8;
+	public static final int DEFAULT_STORAGE_QUEUE_SIZE = 100;
+	public static final int DEFAULT_NODE_SHARDS = 0;
+	public static final int DEFAULT_NODE_SHARD_QUEUE_SIZE = 1000;
 
 	private static int SERVER_COUNTER = 0;
 	
-	private Map<Class<? extends Request>, RequestHandler> handlers;
+	private DispatchTable dispatchTable = new DispatchTable();
 	private Map<Identifier, Node> nodes;
 
 	private InetAddress ip;
@@ -61,16 +107,42 @@ public class Server extends Thread implements Runnable {
 	private int minimumPoolSize;
 	private int maximumPoolSize;
 	private long poolThreadAliveTime;
+	private int connectionShards = DEFAULT_CONNECTION_SHARDS;
+	private int connectionShardQueueSize = DEFAULT_CONNECTION_SHARD_QUEUE_SIZE;
+	private int connectionShardReadTimeout = DEFAULT_CONNECTION_SHARD_READ_TIMEOUT;
+	private int storagePoolSize = DEFAULT_STORAGE_POOL_SIZE;
+	private int storageQueueSize = DEFAULT_STORAGE_QUEUE_SIZE;
+	private int nodeShards = DEFAULT_NODE_SHARDS;
+	private int nodeShardQueueSize = DEFAULT_NODE_SHARD_QUEUE_SIZE;
 	
 	private Server serverRef = this;
 
 	private ServerSocket serverSocket;
-	private ThreadPoolExecutor workerThreadPool;
+	private volatile ThreadPoolExecutor workerThreadPool;
+	private volatile ThreadPoolExecutor[] connectionShardThreads;
+	private volatile ThreadPoolExecutor storageThreadPool;
+	private volatile ThreadPoolExecutor[] nodeShardThreads;
+
+	private Executor storageExecutor = new Executor() {
+		public void execute(Runnable task) {
+			ThreadPoolExecutor pool = storageThreadPool;
+			if (pool == null)
+				throw new RejectedExecutionException("The storage pool of server " + getName() + " is not running");
+			pool.execute(task);
+		}
+	};
 
-	private boolean hasToRun = true;
+	private volatile boolean hasToRun = true;
 	private boolean running = false;
 	
 	private CountDownLatch startingLatch = new CountDownLatch(1);
+
+	private MetricsRegistry metrics;
+	private ConcurrentMap<Class<?>, RequestMetrics> requestMetrics = new ConcurrentHashMap<Class<?>, RequestMetrics>();
+	private StripedCounter acceptedConnections;
+	private StripedCounter rejectedConnections;
+	private StripedCounter bytesIn;
+	private StripedCounter bytesOut;
 	
 	public Server(int port) {
 		this(null, port);
@@ -97,9 +169,9 @@ public class Server extends Thread implements Runnable {
 		this.minimumPoolSize = minimumPoolSize;
 		this.maximumPoolSize = maximumPoolSize;
 		this.poolThreadAliveTime = poolThreadAliveTime;
-		this.handlers = new ConcurrentHashMap<Class<? extends Request>, RequestHandler>();
 		this.nodes = new ConcurrentHashMap<Identifier, Node>();
 		this.setName("Server-" + SERVER_COUNTER++);
+		this.setMetrics(new MetricsRegistry());
 	}
 
 	@Override
@@ -114,25 +186,17 @@ public class Server extends Thread implements Runnable {
 			
 		try {
 			logger.debug("Opening socket on address " + ip + ":" + port + " with a message backlog of size " + backlogSize);
-			serverSocket = new ServerSocket(port, backlogSize, ip);
+			// accepted sockets come with a channel, which values are transferred to without going through the heap
+			ServerSocketChannel serverChannel = ServerSocketChannel.open();
+			serverSocket = serverChannel.socket();
+			serverSocket.setReuseAddress(true);
+			serverSocket.bind(new InetSocketAddress(ip, port), backlogSize);
 
 			logger.info("Server started, waiting for connections");
 			
 			startingLatch.countDown();
 			
-			while (hasToRun) {
-				try {
-					Socket socket = serverSocket.accept();
-					logger.info("Incoming connection from " + socket.getInetAddress() + ":" + socket.getPort());
-					Worker worker = new Worker(socket);
-					logger.debug("Submiting request to a new worker in the pool (active/size: " + workerThreadPool.getActiveCount() + "/" + workerThreadPool.getPoolSize() + ")");
-					this.workerThreadPool.submit(worker);
-				} catch (IOException e) {
-					// when the server is shutting down a SocketException is generated as the socket is closed
-					if (!(e instanceof SocketException && e.getMessage().equals("Socket closed") && !hasToRun))
-						logger.error("IOException occured while trying to accept new connections", e);
-				}
-			}
+			accept();
 
 		} catch (IOException e) {
 			logger.fatal("Could not create main server socket!", e);
@@ -141,7 +205,49 @@ public class Server extends Thread implements Runnable {
 		running = false;
 	}
 	
+	/**
+	 * Accepts connections until the server shuts down. They go to the worker pool or, when the server is split in
+	 * {@link #setConnectionShards(int) connection shards}, to the shards in turn
+	 */
+	private void accept() {
+		int nextShard = 0;
+		while (hasToRun) {
+			try {
+				Socket socket = serverSocket.accept();
+				acceptedConnections.increment();
+				Probe probe = Probes.get();
+				if (probe != null)
+					probe.connectionAccepted(socket.getInetAddress(), socket.getPort());
+				Diagnostics.record(DiagnosticEvent.CONNECTION_ACCEPTED, -1, socket.getInetAddress(), null, socket.getPort());
+				ThreadPoolExecutor[] shards = connectionShardThreads;
+				ThreadPoolExecutor target = workerThreadPool;
+				if (shards != null) {
+					target = shards[nextShard];
+					nextShard = (nextShard + 1) % shards.length;
+					// a shard serves its connections one after another, a client slow to send its request must not
+					// hold up the ones queued behind it
+					socket.setSoTimeout(connectionShardReadTimeout);
+				}
+				Worker worker = new Worker(socket);
+				try {
+					target.execute(worker);
+				} catch (RejectedExecutionException e) {
+					// every worker is busy and the queue is full, the client sees the connection closed
+					rejectedConnections.increment();
+					Diagnostics.record(DiagnosticEvent.CONNECTION_REJECTED, -1, socket.getInetAddress(), null, socket.getPort());
+					socket.close();
+				}
+			} catch (IOException e) {
+				// when the server is shutting down an exception is generated as the socket is closed
+				if (hasToRun)
+					logger.error("IOException occured while trying to accept new connections", e);
+			}
+		}
+	}
+
 	public synchronized void start() {
+		if (connectionShards > 0 && nodeShards > 0)
+			throw new IllegalStateException("A server cannot be split in both connection shards and node shards");
 		super.start();
 		
 		try {
@@ -154,6 +260,10 @@ public class Server extends Thread implements Runnable {
 	class Worker implements Runnable {
 
 		private Socket socket;
+		private CountingInputStream in;
+		private CountingOutputStream out;
+		private ObjectInputStream inStream;
+		private ObjectOutputStream outStream;
 
 		public Worker(Socket socket) {
 			this.socket = socket;
@@ -161,24 +271,27 @@ public class Server extends Thread implements Runnable {
 
 		@Override
 		public void run() {
-			ObjectInputStream inStream = null;
-			ObjectOutputStream outStream = null;
+			boolean handedOff = false;
 			try {
 				try {
-					inStream = new ObjectInputStream(socket.getInputStream());
+					in = new CountingInputStream(socket.getInputStream(), bytesIn);
+					inStream = new ObjectInputStream(in);
 				} catch (IOException e) {
 					logger.error("IOException occured while trying to open the socket inputStream");
 					throw e;
 				}
 
 				try {
-					outStream = new ObjectOutputStream(socket.getOutputStream());
+					out = new CountingOutputStream(socket.getOutputStream(), bytesOut);
+					outStream = new ObjectOutputStream(out);
 				} catch (IOException e) {
 					logger.error("IOException occured while trying to open the socket outputStream");
 					throw e;
 				}
 
 				Object readObj = null;
+				Probe probe = Probes.get();
+				long decodeStart = probe != null ? System.nanoTime() : 0;
 
 				try {
 					readObj = inStream.readObject();
@@ -191,26 +304,55 @@ public class Server extends Thread implements Runnable {
 				}
 
 				if (readObj instanceof Request) {
-					Request request = (Request) readObj;
-
-					logger.debug("Received request: " + request);
-
-					RequestHandler handler = handlers.get(request.getClass());
-					if (handler == null)
+					final Request request = (Request) readObj;
+					RequestMetrics typeMetrics = getRequestMetrics(request.getClass());
+					typeMetrics.received();
+					// payloads follow the object on the raw stream, which the object stream has not read ahead of
+					if (request instanceof PayloadMessage)
+						((PayloadMessage) request).readPayload(in);
+					if (probe != null)
+						probe.requestDecoded(request, in.getCount(), System.nanoTime() - decodeStart);
+
+					Diagnostics.record(DiagnosticEvent.REQUEST_RECEIVED, request.getConversationId(), request.getClass(), request.getDestination(), 0);
+
+					final DispatchTable.Entry entry = dispatchTable.get(request);
+					if (entry == null)
 						throw new IllegalArgumentException("Received request cannot be handled by this server as no handler was found for type " + request.getClass());
 
-					try {
+					Executor executor = entry.executor;
+					ThreadPoolExecutor[] nodeShards = nodeShardThreads;
+					ThreadPoolExecutor nodeShard = null;
+					// requests answered from memory are handled by the thread of the shard of their node, the storage ones
+					// still go to their own executor so that slow storage never holds up the shard
+					if (executor == null && nodeShards != null && request.getDestination() != null)
+						nodeShard = nodeShards[getNodeShard(request.getDestination())];
+					if (nodeShard != null) {
+						try {
+							respond(entry.handler, request, nodeShard);
+						} catch (RejectedExecutionException e) {
+							rejected(typeMetrics, request);
+						}
+					} else if (executor == null) {
+						respond(entry.handler, request);
+					} else {
 						try {
-							Response response = handler.handle(serverRef, request);
-							logger.debug("Writing the response object back to the client: " + response);
-							outStream.writeObject(response);
-						} catch (RequestHandlerException e) {
-							logger.warn("RequestHandlerException occured while trying to handle the request, sending an error with same message and with no stack back to the client", e);
-							outStream.writeObject(new ServerException(e));
+							// from here on the socket belongs to the task, which serves this one request on it, while this worker
+							// thread goes back to its pool
+							executor.execute(new Runnable() {
+								public void run() {
+									try {
+										respond(entry.handler, request);
+									} catch (Exception e) {
+										failed(e);
+									} finally {
+										closeResources(socket, inStream, outStream);
+									}
+								}
+							});
+							handedOff = true;
+						} catch (RejectedExecutionException e) {
+							rejected(typeMetrics, request);
 						}
-					} catch (IOException e) {
-						logger.error("IOException occured while trying to write the response object back to the client");
-						throw e;
 					}
 
 				} else {
@@ -218,12 +360,88 @@ public class Server extends Thread implements Runnable {
 				}
 
 			} catch (Exception e) {
-				logger.error(null, e);
+				failed(e);
 			} finally {
-				closeResources(socket, inStream, outStream);
+				if (!handedOff)
+					closeResources(socket, inStream, outStream);
+			}
+		}
+
+		private void respond(RequestHandler handler, Request request) throws IOException {
+			respond(handler, request, null);
+		}
+
+		/**
+		 * Handles the request on the given node shard, or on this thread if null. The response is always written from
+		 * this thread, so that a slow client or a large payload never holds up the shard
+		 */
+		private void respond(RequestHandler handler, Request request, ThreadPoolExecutor nodeShard) throws IOException {
+			Probe probe = Probes.get();
+			try {
+				try {
+					Response response = nodeShard != null ? handleOn(nodeShard, handler, request) : handler.handle(serverRef, request);
+					long encodeStart = probe != null ? System.nanoTime() : 0;
+					long headerBytes = out.getCount();
+					outStream.writeObject(response);
+					outStream.flush();
+					long bytes = out.getCount() - headerBytes;
+					if (response instanceof PayloadMessage) {
+						((PayloadMessage) response).writePayload(socket.getChannel());
+						bytesOut.add(((PayloadMessage) response).getPayloadLength());
+						bytes += ((PayloadMessage) response).getPayloadLength();
+					}
+					if (probe != null)
+						probe.responseEncoded(response, bytes, System.nanoTime() - encodeStart);
+					Diagnostics.record(DiagnosticEvent.RESPONSE_SENT, response.getConversationId(), response.getClass(), null, bytes);
+				} catch (RequestHandlerException e) {
+					// handlers fail on requests they cannot serve, which is not an error of this server
+					Diagnostics.record(DiagnosticEvent.REQUEST_FAILED, request.getConversationId(), request.getClass(), e.getClass(), 0);
+					if (logger.isDebugEnabled())
+						logger.debug("RequestHandlerException occured while trying to handle the request, sending an error with same message and with no stack back to the client", e);
+					outStream.writeObject(new ServerException(e));
+				}
+			} catch (IOException e) {
+				logger.error("IOException occured while trying to write the response object back to the client");
+				throw e;
+			}
+		}
+
+		private Response handleOn(ThreadPoolExecutor nodeShard, final RequestHandler handler, final Request request) throws RequestHandlerException, IOException {
+			Future<Response> handled = nodeShard.submit(new Callable<Response>() {
+				public Response call() throws RequestHandlerException {
+					return handler.handle(serverRef, request);
+				}
+			});
+			try {
+				return handled.get();
+			} catch (InterruptedException e) {
+				handled.cancel(false);
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while waiting for the node shard to handle the request");
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof RequestHandlerException)
+					throw (RequestHandlerException) cause;
+				if (cause instanceof RuntimeException)
+					throw (RuntimeException) cause;
+				if (cause instanceof Error)
+					throw (Error) cause;
+				throw new IllegalStateException(cause);
 			}
 		}
 
+		private void rejected(RequestMetrics typeMetrics, Request request) throws IOException {
+			typeMetrics.rejected();
+			Diagnostics.record(DiagnosticEvent.REQUEST_REJECTED, request.getConversationId(), request.getClass(), null, 0);
+			outStream.writeObject(new ServerException("The server is too busy to handle requests of type " + request.getClass().getSimpleName()));
+		}
+
+		private void failed(Exception e) {
+			Diagnostics.record(DiagnosticEvent.WORKER_FAILED, -1, e.getClass(), null, 0);
+			logger.error(null, e);
+			Diagnostics.dumpOnError(logger);
+		}
+
 		private void closeResources(Socket socket, InputStream inputStream, OutputStream outputStream) {
 			if (inputStream != null) {
 				try {
@@ -267,6 +485,18 @@ public class Server extends Thread implements Runnable {
 			
 			if(workerThreadPool != null)
 				workerThreadPool.shutdown();
+			ThreadPoolExecutor[] connectionShardPools = connectionShardThreads;
+			if(connectionShardPools != null) {
+				for (ThreadPoolExecutor shard : connectionShardPools)
+					shard.shutdown();
+			}
+			if(storageThreadPool != null)
+				storageThreadPool.shutdown();
+			ThreadPoolExecutor[] shards = nodeShardThreads;
+			if(shards != null) {
+				for (ThreadPoolExecutor shard : shards)
+					shard.shutdown();
+			}
 			
 			logger.debug("Server " + this.getName() + " successfully shutted down");
 		}
@@ -282,11 +512,35 @@ public class Server extends Thread implements Runnable {
 		});
 	}
 	
+	/**
+	 * Adds the handlers of the built-in types of request. Pings, node lookups and the other requests answered from
+	 * memory are handled by the thread that read them, those that go to the storage are queued on the
+	 * {@link #getStorageExecutor() storage pool}, so that slow storage never holds up routing
+	 */
 	public void addDefaultHandlers() {
-		this.handlers.put(PingRequest.class, new PingRequestHandler());
-		this.handlers.put(StoreRequest.class, new StoreRequestHandler());
-		this.handlers.put(FindNodeRequest.class, new FindNodeRequestHandler());
-		this.handlers.put(FindValueRequest.class, new FindValueRequestHandler());
+		this.addHandler(PingRequest.class, new PingRequestHandler());
+		this.addHandler(FindNodeRequest.class, new FindNodeRequestHandler());
+		this.addHandler(KeyFilterRequest.class, new KeyFilterRequestHandler());
+		this.addHandler(ContainsKeyRequest.class, new ContainsKeyRequestHandler());
+		this.addHandler(KeyChangedRequest.class, new KeyChangedRequestHandler());
+		this.addHandler(StoreRequest.class, new StoreRequestHandler(), storageExecutor);
+		this.addHandler(FindValueRequest.class, new FindValueRequestHandler(), storageExecutor);
+		this.addHandler(HandoffRequest.class, new HandoffRequestHandler(), storageExecutor);
+		this.addHandler(MerkleTreeRequest.class, new MerkleTreeRequestHandler(), storageExecutor);
+		this.addHandler(StoreChunkRequest.class, new StoreChunkRequestHandler(), storageExecutor);
+		this.addHandler(ValueRangeRequest.class, new ValueRangeRequestHandler(), storageExecutor);
+		this.addHandler(CompareAndSetRequest.class, new CompareAndSetRequestHandler(), storageExecutor);
+		this.addHandler(AppendRequest.class, new AppendRequestHandler(), storageExecutor);
+	}
+
+	/**
+	 * Lets other nodes subscribe to the keys of the nodes of this server, their changes being pushed with the given
+	 * sender. Returns the watchers registry, to be tuned if needed
+	 */
+	public KeyWatchers enableKeyWatching(MessageSender sender) {
+		KeyWatchers watchers = new KeyWatchers(sender);
+		this.addHandler(SubscribeRequest.class, new SubscribeRequestHandler(watchers));
+		return watchers;
 	}
 	
 	public boolean isRunning() {
@@ -294,20 +548,194 @@ public class Server extends Thread implements Runnable {
 	}
 
 	private void createWorkerThreadPool() {
-		logger.debug("Creating a worker thread pool with size ranging from " + minimumPoolSize + " to " + maximumPoolSize + " and with a thread alive timeout of " + poolThreadAliveTime + "ms");
-		workerThreadPool = new ThreadPoolExecutor(minimumPoolSize, maximumPoolSize, poolThreadAliveTime, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(10));
+		if (connectionShards > 0) {
+			logger.debug("Creating " + connectionShards + " connection shard threads with a queue of " + connectionShardQueueSize + " connections each");
+			connectionShardThreads = createShardThreads(connectionShards, connectionShardQueueSize, "-shard-");
+		} else {
+			logger.debug("Creating a worker thread pool with size ranging from " + minimumPoolSize + " to " + maximumPoolSize + " and with a thread alive timeout of " + poolThreadAliveTime + "ms");
+			workerThreadPool = new ThreadPoolExecutor(minimumPoolSize, maximumPoolSize, poolThreadAliveTime, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(10));
+		}
+		logger.debug("Creating a storage thread pool of size " + storagePoolSize + " with a queue of " + storageQueueSize + " requests");
+		storageThreadPool = new ThreadPoolExecutor(storagePoolSize, storagePoolSize, poolThreadAliveTime, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(storageQueueSize));
+		storageThreadPool.allowCoreThreadTimeOut(true);
+		if (nodeShards > 0) {
+			logger.debug("Creating " + nodeShards + " node shard threads with a queue of " + nodeShardQueueSize + " requests each");
+			nodeShardThreads = createShardThreads(nodeShards, nodeShardQueueSize, "-node-shard-");
+		}
+	}
+
+	private ThreadPoolExecutor[] createShardThreads(int count, int queueSize, String namePart) {
+		ThreadPoolExecutor[] shards = new ThreadPoolExecutor[count];
+		for (int i = 0; i < shards.length; i++) {
+			final String threadName = this.getName() + namePart + i;
+			shards[i] = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(queueSize), new ThreadFactory() {
+				public Thread newThread(Runnable runnable) {
+					return new Thread(runnable, threadName);
+				}
+			});
+		}
+		return shards;
 	}
 
+	/**
+	 * Adds a handler run by the thread that read the request
+	 */
 	public void addHandler(Class<? extends Request> requestClass, RequestHandler handler) {
-		this.handlers.put(requestClass, handler);
+		this.addHandler(requestClass, handler, null);
+	}
+
+	/**
+	 * Adds a handler run by the given executor, or by the thread that read the request if null. Requests the executor
+	 * rejects get a {@link ServerException} back
+	 */
+	public void addHandler(Class<? extends Request> requestClass, RequestHandler handler, Executor executor) {
+		this.dispatchTable.put(requestClass, handler, executor);
+	}
+
+	/**
+	 * Metrics of the server, all named server.*: connections accepted and rejected, bytes in and out, the worker pool
+	 * active count, size and queue depth, the storage pool active count and queue depth, the connections queued on
+	 * connection shards and the requests queued on node shards, the number of nodes, and per type of request the ones
+	 * received, rejected, handled and failed along with the time spent in their handler
+	 */
+	public MetricsRegistry getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Registers the metrics of the server in the given registry, so that it can be shared with other components. Has
+	 * to be called before the server is started
+	 */
+	public void setMetrics(MetricsRegistry metrics) {
+		this.metrics = metrics;
+		this.requestMetrics.clear();
+		this.acceptedConnections = metrics.counter("server.connections.accepted");
+		this.rejectedConnections = metrics.counter("server.connections.rejected");
+		this.bytesIn = metrics.counter("server.bytes.in");
+		this.bytesOut = metrics.counter("server.bytes.out");
+		metrics.gauge("server.pool.active", new Gauge() {
+			public long getValue() {
+				ThreadPoolExecutor pool = workerThreadPool;
+				return pool != null ? pool.getActiveCount() : 0;
+			}
+		});
+		metrics.gauge("server.pool.size", new Gauge() {
+			public long getValue() {
+				ThreadPoolExecutor pool = workerThreadPool;
+				return pool != null ? pool.getPoolSize() : 0;
+			}
+		});
+		metrics.gauge("server.pool.queue", new Gauge() {
+			public long getValue() {
+				ThreadPoolExecutor pool = workerThreadPool;
+				return pool != null ? pool.getQueue().size() : 0;
+			}
+		});
+		metrics.gauge("server.connectionShards.queue", new Gauge() {
+			public long getValue() {
+				return queued(connectionShardThreads);
+			}
+		});
+		metrics.gauge("server.storagePool.active", new Gauge() {
+			public long getValue() {
+				ThreadPoolExecutor pool = storageThreadPool;
+				return pool != null ? pool.getActiveCount() : 0;
+			}
+		});
+		metrics.gauge("server.storagePool.queue", new Gauge() {
+			public long getValue() {
+				ThreadPoolExecutor pool = storageThreadPool;
+				return pool != null ? pool.getQueue().size() : 0;
+			}
+		});
+		metrics.gauge("server.nodeShards.queue", new Gauge() {
+			public long getValue() {
+				return queued(nodeShardThreads);
+			}
+		});
+		metrics.gauge("server.nodes", new Gauge() {
+			public long getValue() {
+				return nodes.size();
+			}
+		});
+	}
+
+	private static long queued(ThreadPoolExecutor[] shards) {
+		long queued = 0;
+		if (shards != null) {
+			for (ThreadPoolExecutor shard : shards)
+				queued += shard.getQueue().size();
+		}
+		return queued;
+	}
+
+	public RequestMetrics getRequestMetrics(Class<? extends Request> requestClass) {
+		RequestMetrics typeMetrics = requestMetrics.get(requestClass);
+		if (typeMetrics == null) {
+			typeMetrics = new RequestMetrics(metrics, requestClass.getSimpleName());
+			RequestMetrics existing = requestMetrics.putIfAbsent(requestClass, typeMetrics);
+			if (existing != null)
+				typeMetrics = existing;
+		}
+		return typeMetrics;
+	}
+
+	public RequestHandler getHandler(Class<? extends Request> requestClass) {
+		DispatchTable.Entry entry = this.dispatchTable.get(requestClass);
+		return entry != null ? entry.handler : null;
 	}
 
 	public RequestHandler removeHandler(Class<? extends Request> requestClass) {
-		return this.handlers.remove(requestClass);
+		DispatchTable.Entry entry = this.dispatchTable.remove(requestClass);
+		return entry != null ? entry.handler : null;
 	}
 
 	public Collection<Class<? extends Request>> getHandledTypes() {
-		return new ArrayList<Class<? extends Request>>(handlers.keySet());
+		return dispatchTable.types();
+	}
+
+	/**
+	 * Shard the node with the given id is pinned to, from its id alone, or -1 if nodes are not sharded
+	 */
+	public int getNodeShard(Identifier id) {
+		if (nodeShards == 0)
+			return -1;
+		int hash = id.asIdentifier().hashCode();
+		hash ^= hash >>> 16;
+		return (hash & Integer.MAX_VALUE) % nodeShards;
+	}
+
+	/**
+	 * Single thread executor handling the requests answered from memory of the node with the given id, null if nodes
+	 * are not sharded or the server is not running
+	 */
+	public Executor getNodeShardExecutor(Identifier id) {
+		ThreadPoolExecutor[] shards = nodeShardThreads;
+		return shards != null ? shards[getNodeShard(id)] : null;
+	}
+
+	/**
+	 * The executor handling the given type of request, null if handled by the thread that read it
+	 */
+	public Executor getExecutor(Class<? extends Request> requestClass) {
+		DispatchTable.Entry entry = this.dispatchTable.get(requestClass);
+		return entry != null ? entry.executor : null;
+	}
+
+	/**
+	 * Moves the handling of a type of request to the given executor, or to the thread that read it if null
+	 */
+	public void setExecutor(Class<? extends Request> requestClass, Executor executor) {
+		this.dispatchTable.setExecutor(requestClass, executor);
+	}
+
+	/**
+	 * Executor of the bounded pool shared by the requests going to the storage, sized with
+	 * {@link #setStoragePoolSize(int)} and {@link #setStorageQueueSize(int)}. It rejects requests while the server is
+	 * not running
+	 */
+	public Executor getStorageExecutor() {
+		return storageExecutor;
 	}
 
 	public void addNode(Node node) {
@@ -342,9 +770,60 @@ public class Server extends Thread implements Runnable {
 		return poolThreadAliveTime;
 	}
 	
+	/**
+	 * The pool the accepted connections go to, null when the server is split in connection shards
+	 */
 	public ThreadPoolExecutor getWorkerThreadPool() {
 		return workerThreadPool;
 	}
+
+	/**
+	 * The thread of the connection shard with the given index, null if the server is not split or not running
+	 */
+	public ThreadPoolExecutor getConnectionShardThread(int index) {
+		ThreadPoolExecutor[] shards = connectionShardThreads;
+		return shards != null ? shards[index] : null;
+	}
+
+	/**
+	 * The thread of the node shard with the given index, null if nodes are not sharded or the server is not running
+	 */
+	public ThreadPoolExecutor getNodeShardThread(int index) {
+		ThreadPoolExecutor[] shards = nodeShardThreads;
+		return shards != null ? shards[index] : null;
+	}
+
+	public int getConnectionShards() {
+		return connectionShards;
+	}
+
+	public int getConnectionShardQueueSize() {
+		return connectionShardQueueSize;
+	}
+
+	public int getConnectionShardReadTimeout() {
+		return connectionShardReadTimeout;
+	}
+
+	public int getNodeShards() {
+		return nodeShards;
+	}
+
+	public int getNodeShardQueueSize() {
+		return nodeShardQueueSize;
+	}
+
+	public ThreadPoolExecutor getStorageThreadPool() {
+		return storageThreadPool;
+	}
+
+	public int getStoragePoolSize() {
+		return storagePoolSize;
+	}
+
+	public int getStorageQueueSize() {
+		return storageQueueSize;
+	}
 	
 	public InetAddress getIp() {
 		return ip;
@@ -378,6 +857,71 @@ public class Server extends Thread implements Runnable {
 		this.poolThreadAliveTime = poolThreadAliveTime;
 	}
 
+	/**
+	 * Splits the server in the given number of connection shards, 0 to serve connections from the worker pool. The
+	 * server thread keeps accepting connections alone and hands them to the shards in turn, each of them a single
+	 * thread reading its connections one after another, with a {@link #setConnectionShardReadTimeout(int) read
+	 * timeout}. Requests answered from memory are served on the shard, those with an executor of their own, such as
+	 * the storage ones, are still handed to it. Cannot be combined with {@link #setNodeShards(int) node shards}
+	 */
+	public void setConnectionShards(int connectionShards) {
+		if(this.isRunning())
+			throw new IllegalStateException("Cannot change the server connectionShards as the server is already running");
+		if(connectionShards < 0)
+			throw new IllegalArgumentException("The number of connection shards cannot be negative, got " + connectionShards);
+		this.connectionShards = connectionShards;
+	}
+
+	/**
+	 * Milliseconds a connection shard waits for a client to send its request before dropping the connection
+	 */
+	public void setConnectionShardReadTimeout(int connectionShardReadTimeout) {
+		if(this.isRunning())
+			throw new IllegalStateException("Cannot change the server connectionShardReadTimeout as the server is already running");
+		this.connectionShardReadTimeout = connectionShardReadTimeout;
+	}
+
+	public void setConnectionShardQueueSize(int connectionShardQueueSize) {
+		if(this.isRunning())
+			throw new IllegalStateException("Cannot change the server connectionShardQueueSize as the server is already running");
+		this.connectionShardQueueSize = connectionShardQueueSize;
+	}
+
+	/**
+	 * Pins each hosted node to one of the given number of shards, 0 to turn sharding off. Requests to a node that are
+	 * answered from memory, such as pings and node lookups, are then handled by the single thread of its shard in place
+	 * of the worker thread, which still reads the request and writes the response. Requests with an executor of their
+	 * own, such as the storage ones, are still handed to it. Keeps the routing work of a node on one thread and core,
+	 * but does not make it the only thread touching the node: background tasks such as key handoffs still run on their
+	 * own. Meant for servers hosting many virtual nodes. Cannot be combined with {@link #setConnectionShards(int)
+	 * connection shards}
+	 */
+	public void setNodeShards(int nodeShards) {
+		if(this.isRunning())
+			throw new IllegalStateException("Cannot change the server nodeShards as the server is already running");
+		if(nodeShards < 0)
+			throw new IllegalArgumentException("The number of node shards cannot be negative, got " + nodeShards);
+		this.nodeShards = nodeShards;
+	}
+
+	public void setNodeShardQueueSize(int nodeShardQueueSize) {
+		if(this.isRunning())
+			throw new IllegalStateException("Cannot change the server nodeShardQueueSize as the server is already running");
+		this.nodeShardQueueSize = nodeShardQueueSize;
+	}
+
+	public void setStoragePoolSize(int storagePoolSize) {
+		if(this.isRunning())
+			throw new IllegalStateException("Cannot change the server storagePoolSize as the server is already running");
+		this.storagePoolSize = storagePoolSize;
+	}
+
+	public void setStorageQueueSize(int storageQueueSize) {
+		if(this.isRunning())
+			throw new IllegalStateException("Cannot change the server storageQueueSize as the server is already running");
+		this.storageQueueSize = storageQueueSize;
+	}
+
 	public void setIp(InetAddress ip) {
 		if(this.isRunning())
 			throw new IllegalStateException("Cannot change the server ip as the server is already running");
@@ -0,0 +1,27 @@
+package me.bcap.dht.server.handler;
+
+import me.bcap.dht.message.request.AppendRequest;
+import me.bcap.dht.message.request.Request;
+import me.bcap.dht.message.response.AppendResponse;
+import me.bcap.dht.message.response.Response;
+import me.bcap.dht.node.Node;
+import me.bcap.dht.node.storage.ValueSets;
+
+public class AppendRequestHandler extends RequestHandler {
+
+	@Override
+	public Response handleImpl(Node node, Request request) throws RequestHandlerException {
+		AppendRequest append = (AppendRequest) request;
+		ValueSets sets = node.getValueSets();
+		if (append.getElement() == null || append.getTtl() <= 0)
+			throw new RequestHandlerException("Invalid append to key " + append.getIdentifier() + " with a time to live of " + append.getTtl() + "ms");
+		if (append.getElement().length > sets.getMaxElementSize())
+			throw new RequestHandlerException("Element of " + append.getElement().length + " bytes is larger than the " + sets.getMaxElementSize() + " bytes allowed");
+
+		AppendResponse response = new AppendResponse();
+		response.setAdded(sets.add(append.getIdentifier(), append.getElement(), append.getTtl()));
+		response.setSize(sets.size(append.getIdentifier()));
+		return response;
+	}
+
+}
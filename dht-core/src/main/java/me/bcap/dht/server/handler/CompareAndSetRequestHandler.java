@@ -0,0 +1,38 @@
+package me.bcap.dht.server.handler;
+
+import me.bcap.dht.message.request.CompareAndSetRequest;
+import me.bcap.dht.message.request.Request;
+import me.bcap.dht.message.response.CompareAndSetResponse;
+import me.bcap.dht.message.response.Response;
+import me.bcap.dht.node.Identifier;
+import me.bcap.dht.node.Node;
+import me.bcap.dht.node.storage.Storage;
+import me.bcap.dht.node.storage.VersionedValue;
+
+public class CompareAndSetRequestHandler extends RequestHandler {
+
+	@Override
+	public Response handleImpl(Node node, Request request) throws RequestHandlerException {
+		CompareAndSetRequest cas = (CompareAndSetRequest) request;
+		Identifier key = cas.getIdentifier();
+		if (cas.getData() == null || cas.getExpectedVersion() < 0)
+			throw new RequestHandlerException("Invalid compare and set of key " + key + " at version " + cas.getExpectedVersion());
+
+		Storage storage = node.getDataStorage();
+		CompareAndSetResponse response = new CompareAndSetResponse();
+		long version = storage.compareAndPut(key, cas.getExpectedVersion(), cas.getData());
+		if (version >= 0) {
+			response.setSuccessful(true);
+			response.setVersion(version);
+		} else {
+			// the current value goes back, sparing the client a read before retrying
+			VersionedValue current = storage.getVersioned(key);
+			if (current != null) {
+				response.setVersion(current.getVersion());
+				response.setData(current.getValue());
+			}
+		}
+		return response;
+	}
+
+}
@@ -0,0 +1,21 @@
+package me.bcap.dht.server.handler;
+
+import me.bcap.dht.message.request.ContainsKeyRequest;
+import me.bcap.dht.message.request.Request;
+import me.bcap.dht.message.response.ContainsKeyResponse;
+import me.bcap.dht.message.response.Response;
+import me.bcap.dht.node.Identifier;
+import me.bcap.dht.node.Node;
+
+public class ContainsKeyRequestHandler extends RequestHandler {
+
+	public Response handleImpl(Node node, Request request) {
+		Identifier key = ((ContainsKeyRequest) request).getIdentifier();
+		ContainsKeyResponse response = new ContainsKeyResponse();
+		// definite misses do not even get to the storage
+		if (node.getKeyFilter().mightContain(key))
+			response.setLength(node.getDataStorage().getLength(key));
+		return response;
+	}
+
+}
@@ -1,25 +1,208 @@
 package me.bcap.dht.server.handler;
 
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
 import me.bcap.dht.message.request.FindValueRequest;
 import me.bcap.dht.message.request.Request;
 import me.bcap.dht.message.response.FindValueResponse;
 import me.bcap.dht.message.response.Response;
 import me.bcap.dht.node.Identifier;
 import me.bcap.dht.node.Node;
+import me.bcap.dht.node.storage.Storage;
+import me.bcap.dht.node.storage.StoredValue;
 
 public class FindValueRequestHandler extends FindNodeRequestHandler {
 
+	public static final int DEFAULT_INLINE_LIMIT = 4 * 1024 * 1024;
+	public static final int DEFAULT_SAMPLE_SIZE = 20;
+	public static final int DEFAULT_MAX_SAMPLE_SIZE = 200;
+	public static final int DEFAULT_SHARED_READ_LIMIT = 64 * 1024;
+
+	private int inlineLimit = DEFAULT_INLINE_LIMIT;
+	private int sampleSize = DEFAULT_SAMPLE_SIZE;
+	private int maxSampleSize = DEFAULT_MAX_SAMPLE_SIZE;
+	private int sharedReadLimit = DEFAULT_SHARED_READ_LIMIT;
+	private boolean collapseReads = false;
+
+	private ConcurrentMap<String, Read> reads = new ConcurrentHashMap<String, Read>();
+	private AtomicLong collapsed = new AtomicLong();
+
 	public Response handleImpl(Node node, Request request) {
 		FindValueRequest findValue = (FindValueRequest) request;
 		Identifier key = findValue.getIdentifier();
-		byte[] data = node.getDataStorage().get(key);
-		if (data != null) {
-			FindValueResponse response = new FindValueResponse();
-			response.setData(data);
-			return response;
-		} else {
+
+		Read read = collapseReads ? collapsedRead(node, key) : read(node, key);
+		if (read.length < 0) {
+			if (node.getValueSets().containsKey(key)) {
+				int count = findValue.getMaxElements() > 0 ? Math.min(findValue.getMaxElements(), maxSampleSize) : sampleSize;
+				List<byte[]> elements = node.getValueSets().sample(key, count);
+				if (!elements.isEmpty()) {
+					FindValueResponse response = new FindValueResponse();
+					response.setElements(elements);
+					return response;
+				}
+			}
 			return super.handleImpl(node, request);
 		}
+
+		FindValueResponse response = new FindValueResponse();
+		response.setLength(read.length);
+		response.setVersion(read.version);
+		if (read.data != null)
+			response.setData(read.data);
+		else if (read.value != null)
+			response.setValue(read.value);
+		return response;
+	}
+
+	private Read read(Node node, Identifier key) {
+		Storage storage = node.getDataStorage();
+		Read read = new Read();
+		// definite misses do not even get to the storage
+		read.length = node.getKeyFilter().mightContain(key) ? storage.getLength(key) : -1;
+		if (read.length < 0)
+			return read;
+
+		// read before the value, see FindValueResponse#getVersion()
+		read.version = storage.getVersion(key);
+		// larger values are only announced, the client reads them in ranges
+		if (read.length <= inlineLimit) {
+			// only a handle is taken here, the value is written from the storage when the response is sent
+			read.value = storage.openValue(key);
+			read.length = read.value != null ? read.value.getLength() : -1;
+		}
+		return read;
+	}
+
+	/**
+	 * Reads the key, or waits for a read of the same key on the same node that is already running and shares its
+	 * outcome. Values up to {@link #getSharedReadLimit()} bytes are copied once and the copy is sent to every waiter.
+	 * Larger ones are not shared, as a storage handle may serialize its readers: each waiter then only reuses the
+	 * length and version and opens its own handle
+	 */
+	private Read collapsedRead(Node node, Identifier key) {
+		String id = node.asIdentifier() + "/" + key;
+		Read read = new Read();
+		Read running = reads.putIfAbsent(id, read);
+		if (running != null) {
+			collapsed.incrementAndGet();
+			Read shared = running.await();
+			if (shared.value == null)
+				return shared;
+
+			Read own = new Read();
+			own.version = shared.version;
+			own.value = node.getDataStorage().openValue(key);
+			own.length = own.value != null ? own.value.getLength() : -1;
+			return own;
+		}
+
+		try {
+			Read done = read(node, key);
+			if (done.value != null && done.length <= sharedReadLimit)
+				read.complete(done.length, done.version, done.value.getRange(0, done.length), null, null);
+			else
+				read.complete(done.length, done.version, null, done.value, null);
+		} catch (RuntimeException e) {
+			read.complete(-1, 0, null, null, e);
+			throw e;
+		} finally {
+			reads.remove(id, read);
+		}
+		return read;
+	}
+
+	static class Read {
+		private int length = -1;
+		private long version;
+		private byte[] data;
+		private StoredValue value;
+		private RuntimeException failure;
+		private CountDownLatch done = new CountDownLatch(1);
+
+		void complete(int length, long version, byte[] data, StoredValue value, RuntimeException failure) {
+			this.length = length;
+			this.version = version;
+			this.data = data;
+			this.value = value;
+			this.failure = failure;
+			done.countDown();
+		}
+
+		Read await() {
+			boolean interrupted = false;
+			while (true) {
+				try {
+					done.await();
+					break;
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (interrupted)
+				Thread.currentThread().interrupt();
+			if (failure != null)
+				throw failure;
+			return this;
+		}
 	}
 
+	/**
+	 * Whether concurrent requests for the same key on the same node share a single storage read. Worth it for hot keys
+	 * kept in slow tiers. Values up to {@link #getSharedReadLimit()} bytes are copied once for all the requests, for
+	 * larger ones only the length and version are shared and each request sends the value from its own handle
+	 */
+	public boolean isCollapseReads() {
+		return collapseReads;
+	}
+
+	public void setCollapseReads(boolean collapseReads) {
+		this.collapseReads = collapseReads;
+	}
+
+	/**
+	 * Requests that were answered from the read of another request
+	 */
+	public long getCollapsedReads() {
+		return collapsed.get();
+	}
+
+	/**
+	 * Largest value, in bytes, that a collapsed read copies once for all its waiters
+	 */
+	public int getSharedReadLimit() {
+		return sharedReadLimit;
+	}
+
+	public void setSharedReadLimit(int sharedReadLimit) {
+		this.sharedReadLimit = sharedReadLimit;
+	}
+
+	public int getSampleSize() {
+		return sampleSize;
+	}
+
+	public void setSampleSize(int sampleSize) {
+		this.sampleSize = sampleSize;
+	}
+
+	public int getMaxSampleSize() {
+		return maxSampleSize;
+	}
+
+	public void setMaxSampleSize(int maxSampleSize) {
+		this.maxSampleSize = maxSampleSize;
+	}
+
+	public int getInlineLimit() {
+		return inlineLimit;
+	}
+
+	public void setInlineLimit(int inlineLimit) {
+		this.inlineLimit = inlineLimit;
+	}
 }
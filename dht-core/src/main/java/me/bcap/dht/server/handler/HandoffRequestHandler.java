@@ -0,0 +1,32 @@
+package me.bcap.dht.server.handler;
+
+import java.util.Map.Entry;
+
+import me.bcap.dht.message.request.HandoffRequest;
+import me.bcap.dht.message.request.Request;
+import me.bcap.dht.message.response.HandoffResponse;
+import me.bcap.dht.message.response.Response;
+import me.bcap.dht.node.Identifier;
+import me.bcap.dht.node.Node;
+import me.bcap.dht.node.storage.Storage;
+
+public class HandoffRequestHandler extends RequestHandler {
+
+	@Override
+	public Response handleImpl(Node node, Request request) {
+		HandoffRequest handoff = (HandoffRequest) request;
+		Storage storage = node.getDataStorage();
+		int accepted = 0;
+		for (Entry<Identifier, byte[]> entry : handoff.getEntries().entrySet()) {
+			// a value already here may have been stored after the sender's copy, so it is kept
+			if (!storage.containsKey(entry.getKey())) {
+				storage.put(entry.getKey(), entry.getValue());
+				accepted++;
+			}
+		}
+		HandoffResponse response = new HandoffResponse();
+		response.setAccepted(accepted);
+		return response;
+	}
+
+}
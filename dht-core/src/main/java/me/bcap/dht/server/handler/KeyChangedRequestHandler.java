@@ -0,0 +1,46 @@
+package me.bcap.dht.server.handler;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apache.log4j.Logger;
+
+import me.bcap.dht.message.request.KeyChangedRequest;
+import me.bcap.dht.message.request.Request;
+import me.bcap.dht.message.response.KeyChangedResponse;
+import me.bcap.dht.message.response.Response;
+import me.bcap.dht.node.KeyChangeListener;
+import me.bcap.dht.node.Node;
+
+/**
+ * Receives the key changes pushed to the watching nodes of the server and hands them to the registered listeners
+ */
+public class KeyChangedRequestHandler extends RequestHandler {
+
+	private static final Logger logger = Logger.getLogger(KeyChangedRequestHandler.class);
+
+	private List<KeyChangeListener> listeners = new CopyOnWriteArrayList<KeyChangeListener>();
+
+	@Override
+	public Response handleImpl(Node node, Request request) {
+		KeyChangedRequest changed = (KeyChangedRequest) request;
+		for (KeyChangedRequest.Change change : changed.getChanges()) {
+			for (KeyChangeListener listener : listeners) {
+				try {
+					listener.keyChanged(node, request.getSource(), change);
+				} catch (RuntimeException e) {
+					logger.error("Key change listener " + listener + " failed while handling the change of key " + change.getKey(), e);
+				}
+			}
+		}
+		return new KeyChangedResponse();
+	}
+
+	public void addListener(KeyChangeListener listener) {
+		listeners.add(listener);
+	}
+
+	public boolean removeListener(KeyChangeListener listener) {
+		return listeners.remove(listener);
+	}
+}
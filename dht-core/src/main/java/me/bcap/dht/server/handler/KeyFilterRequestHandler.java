@@ -0,0 +1,16 @@
+package me.bcap.dht.server.handler;
+
+import me.bcap.dht.message.request.Request;
+import me.bcap.dht.message.response.KeyFilterResponse;
+import me.bcap.dht.message.response.Response;
+import me.bcap.dht.node.Node;
+
+public class KeyFilterRequestHandler extends RequestHandler {
+
+	public Response handleImpl(Node node, Request request) {
+		KeyFilterResponse response = new KeyFilterResponse();
+		response.setFilter(node.getKeyFilter().toBloomFilter());
+		return response;
+	}
+
+}
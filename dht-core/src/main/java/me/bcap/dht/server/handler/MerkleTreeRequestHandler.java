@@ -0,0 +1,62 @@
+package me.bcap.dht.server.handler;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import me.bcap.dht.message.request.MerkleTreeRequest;
+import me.bcap.dht.message.request.Request;
+import me.bcap.dht.message.response.MerkleTreeResponse;
+import me.bcap.dht.message.response.Response;
+import me.bcap.dht.node.Identifier;
+import me.bcap.dht.node.Node;
+import me.bcap.dht.node.storage.MerkleTree;
+
+public class MerkleTreeRequestHandler extends RequestHandler {
+
+	@Override
+	public Response handleImpl(Node node, Request request) throws RequestHandlerException {
+		MerkleTreeRequest treeRequest = (MerkleTreeRequest) request;
+		MerkleTree tree = node.getMerkleTree();
+		MerkleTreeResponse response = new MerkleTreeResponse();
+
+		if (treeRequest.getKeys() != null) {
+			Map<Identifier, byte[]> values = new LinkedHashMap<Identifier, byte[]>();
+			for (Identifier key : treeRequest.getKeys()) {
+				byte[] value = node.getDataStorage().get(key);
+				if (value != null)
+					values.put(key, value);
+			}
+			response.setValues(values);
+			return response;
+		}
+
+		if (treeRequest.getDepth() != tree.getDepth())
+			throw new RequestHandlerException("Merkle tree depth " + treeRequest.getDepth() + " does not match the local depth " + tree.getDepth());
+		int level = treeRequest.getLevel();
+		if (level < 0 || level > tree.getDepth())
+			throw new RequestHandlerException("Invalid Merkle tree level " + level);
+		int[] positions = treeRequest.getPositions();
+		if (positions == null)
+			throw new RequestHandlerException("No Merkle tree positions were given");
+		int levelSize = 1 << (level * MerkleTree.BITS_PER_LEVEL);
+		for (int position : positions)
+			if (position < 0 || position >= levelSize)
+				throw new RequestHandlerException("Invalid position " + position + " for Merkle tree level " + level);
+
+		if (treeRequest.isLeafDigests()) {
+			if (level != tree.getDepth())
+				throw new RequestHandlerException("Entry digests can only be asked for the leaves, not for level " + level);
+			Map<Identifier, Long> digests = new LinkedHashMap<Identifier, Long>();
+			for (int leaf : positions)
+				digests.putAll(tree.getLeafDigests(leaf));
+			response.setDigests(digests);
+		} else {
+			long[] hashes = new long[positions.length];
+			for (int i = 0; i < positions.length; i++)
+				hashes[i] = tree.getHash(level, positions[i]);
+			response.setHashes(hashes);
+		}
+		return response;
+	}
+
+}
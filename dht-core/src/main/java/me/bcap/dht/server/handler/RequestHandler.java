@@ -1,22 +1,58 @@
 package me.bcap.dht.server.handler;
 
 import java.util.Date;
+import java.util.concurrent.TimeUnit;
 
 import me.bcap.dht.message.request.Request;
 import me.bcap.dht.message.response.Response;
 import me.bcap.dht.node.Contact;
 import me.bcap.dht.node.Node;
+import me.bcap.dht.probe.Probe;
+import me.bcap.dht.probe.Probes;
+import me.bcap.dht.server.RequestMetrics;
 import me.bcap.dht.server.Server;
 
 public abstract class RequestHandler {
 	
+	/**
+	 * Handles the request on behalf of the node it is addressed to, recording the outcome and the time taken in the
+	 * {@link Server#getRequestMetrics(Class) metrics} of its type. Responses to traced requests carry the trace id and
+	 * the time spent handling them
+	 */
 	public Response handle(Server server, Request request) throws RequestHandlerException {
+		RequestMetrics metrics = server.getRequestMetrics(request.getClass());
+		long start = System.nanoTime();
+		boolean succeeded = false;
+		try {
+			Response response = handleRequest(server, request);
+			succeeded = true;
+			if (request.getTraceId() != 0) {
+				response.setTraceId(request.getTraceId());
+				response.setHandlerTime(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+			}
+			return response;
+		} finally {
+			long duration = System.nanoTime() - start;
+			metrics.handled(duration, succeeded);
+			Probe probe = Probes.get();
+			if (probe != null)
+				probe.requestHandled(request, succeeded, duration);
+		}
+	}
+
+	private Response handleRequest(Server server, Request request) throws RequestHandlerException {
 		Contact destination = request.getDestination();
 		Node node = server.getNode(destination);
 
 		if (node == null)
 			throw new RequestHandlerException("Received request is intended for a node with id " + destination.asIdentifier() + " that is not managed by this server");
 
+		// every request is a sign of life of its sender, which may be a node this one did not know yet. Contact listeners
+		// such as key handoffs decide for themselves whether a new contact is worth acting on
+		Contact source = request.getSource();
+		if (source != null && !source.asIdentifier().equals(node.asIdentifier()))
+			node.updateContact(source.asContact());
+
 		Response response = this.handleImpl(node, request);
 		
 		response.setSource(new Contact(node.getValue(), server.getIp(), server.getPort()));
@@ -0,0 +1,149 @@
+package me.bcap.dht.server.handler;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.log4j.Logger;
+
+import me.bcap.dht.message.request.Request;
+import me.bcap.dht.message.request.StoreChunkRequest;
+import me.bcap.dht.message.response.Response;
+import me.bcap.dht.message.response.StoreChunkResponse;
+import me.bcap.dht.node.Node;
+
+/**
+ * Receives values sent in chunks. The chunks of each transfer are spooled to a temporary file instead of being held in
+ * memory, and the value is only put in the node storage once complete. Transfers that receive nothing for
+ * {@link #getTransferTimeout()} milliseconds are dropped.
+ */
+public class StoreChunkRequestHandler extends RequestHandler {
+
+	private static final Logger logger = Logger.getLogger(StoreChunkRequestHandler.class);
+
+	public static final long DEFAULT_TRANSFER_TIMEOUT = 60000;
+
+	private long transferTimeout = DEFAULT_TRANSFER_TIMEOUT;
+
+	private Map<String, Transfer> transfers = new ConcurrentHashMap<String, Transfer>();
+
+	@Override
+	public Response handleImpl(Node node, Request request) throws RequestHandlerException {
+		StoreChunkRequest chunkRequest = (StoreChunkRequest) request;
+		if (chunkRequest.getTotalLength() < 0 || chunkRequest.getOffset() < 0)
+			throw new RequestHandlerException("Invalid chunk at offset " + chunkRequest.getOffset() + " of a value of " + chunkRequest.getTotalLength() + " bytes");
+		dropExpiredTransfers();
+
+		// a transfer is identified by who sends which key to which node, and how long the value is
+		String id = node.asIdentifier() + "/" + chunkRequest.getIdentifier() + "/" + (request.getSource() != null ? request.getSource().asIdentifier() : null) + "/" + chunkRequest.getTotalLength();
+		Transfer transfer;
+		synchronized (transfers) {
+			transfer = transfers.get(id);
+			if (transfer == null) {
+				transfer = new Transfer(chunkRequest.getTotalLength());
+				transfers.put(id, transfer);
+			}
+		}
+
+		StoreChunkResponse response = new StoreChunkResponse();
+		synchronized (transfer) {
+			if (transfer.dropped)
+				throw new RequestHandlerException("The transfer of key " + chunkRequest.getIdentifier() + " was dropped while stalled, it has to start over");
+			try {
+				transfer.lastActivity = System.currentTimeMillis();
+				byte[] chunk = chunkRequest.getChunk();
+				// chunks already received or beyond a gap are ignored, the response tells where to go on from
+				if (chunk != null && chunkRequest.getOffset() == transfer.received && transfer.received + chunk.length <= transfer.totalLength)
+					transfer.write(chunk);
+
+				if (transfer.received == transfer.totalLength && !transfer.complete) {
+					node.getDataStorage().put(chunkRequest.getIdentifier(), transfer.readAll());
+					transfer.complete = true;
+					transfer.close();
+					transfers.remove(id);
+				}
+			} catch (IOException e) {
+				transfer.dropped = true;
+				transfer.close();
+				transfers.remove(id);
+				throw new RequestHandlerException("Could not spool a chunk of key " + chunkRequest.getIdentifier(), e);
+			}
+			response.setReceived(transfer.received);
+			response.setComplete(transfer.complete);
+		}
+		return response;
+	}
+
+	private void dropExpiredTransfers() {
+		long now = System.currentTimeMillis();
+		for (Iterator<Transfer> iterator = transfers.values().iterator(); iterator.hasNext();) {
+			Transfer transfer = iterator.next();
+			synchronized (transfer) {
+				if (now - transfer.lastActivity > transferTimeout) {
+					logger.info("Dropping a chunked transfer stalled after " + transfer.received + " of " + transfer.totalLength + " bytes");
+					iterator.remove();
+					transfer.dropped = true;
+					transfer.close();
+				}
+			}
+		}
+	}
+
+	static class Transfer {
+		int totalLength;
+		int received = 0;
+		boolean complete = false;
+		boolean dropped = false;
+		long lastActivity = System.currentTimeMillis();
+
+		private File spool;
+		private RandomAccessFile file;
+
+		Transfer(int totalLength) {
+			this.totalLength = totalLength;
+		}
+
+		void write(byte[] chunk) throws IOException {
+			if (file == null) {
+				spool = File.createTempFile("dht-transfer-", ".part");
+				file = new RandomAccessFile(spool, "rw");
+			}
+			file.seek(received);
+			file.write(chunk);
+			received += chunk.length;
+		}
+
+		byte[] readAll() throws IOException {
+			byte[] value = new byte[totalLength];
+			if (file != null) {
+				file.seek(0);
+				file.readFully(value);
+			}
+			return value;
+		}
+
+		void close() {
+			if (file != null) {
+				try {
+					file.close();
+				} catch (IOException e) {
+					logger.warn("Could not close the spool file " + spool, e);
+				}
+				if (!spool.delete())
+					logger.warn("Could not delete the spool file " + spool);
+				file = null;
+			}
+		}
+	}
+
+	public long getTransferTimeout() {
+		return transferTimeout;
+	}
+
+	public void setTransferTimeout(long transferTimeout) {
+		this.transferTimeout = transferTimeout;
+	}
+}
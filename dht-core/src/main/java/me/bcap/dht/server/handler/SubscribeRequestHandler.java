@@ -0,0 +1,33 @@
+package me.bcap.dht.server.handler;
+
+import me.bcap.dht.message.request.Request;
+import me.bcap.dht.message.request.SubscribeRequest;
+import me.bcap.dht.message.response.Response;
+import me.bcap.dht.message.response.SubscribeResponse;
+import me.bcap.dht.node.Node;
+import me.bcap.dht.server.KeyWatchers;
+
+public class SubscribeRequestHandler extends RequestHandler {
+
+	private KeyWatchers watchers;
+
+	public SubscribeRequestHandler(KeyWatchers watchers) {
+		this.watchers = watchers;
+	}
+
+	@Override
+	public Response handleImpl(Node node, Request request) throws RequestHandlerException {
+		SubscribeRequest subscribe = (SubscribeRequest) request;
+		if (request.getSource() == null)
+			throw new RequestHandlerException("Subscriptions to key " + subscribe.getIdentifier() + " need a source to push the changes to");
+
+		SubscribeResponse response = new SubscribeResponse();
+		response.setLease(watchers.subscribe(node, subscribe.getIdentifier(), request.getSource(), subscribe.getLease()));
+		response.setVersion(node.getDataStorage().getVersion(subscribe.getIdentifier()));
+		return response;
+	}
+
+	public KeyWatchers getWatchers() {
+		return watchers;
+	}
+}
@@ -0,0 +1,41 @@
+package me.bcap.dht.server.handler;
+
+import me.bcap.dht.message.request.Request;
+import me.bcap.dht.message.request.ValueRangeRequest;
+import me.bcap.dht.message.response.Response;
+import me.bcap.dht.message.response.ValueRangeResponse;
+import me.bcap.dht.node.Node;
+import me.bcap.dht.node.storage.StoredValue;
+
+public class ValueRangeRequestHandler extends RequestHandler {
+
+	public static final int DEFAULT_MAX_RANGE = 4 * 1024 * 1024;
+
+	private int maxRange = DEFAULT_MAX_RANGE;
+
+	@Override
+	public Response handleImpl(Node node, Request request) throws RequestHandlerException {
+		ValueRangeRequest range = (ValueRangeRequest) request;
+		if (range.getOffset() < 0 || range.getLength() < 0)
+			throw new RequestHandlerException("Invalid range of " + range.getLength() + " bytes at offset " + range.getOffset());
+
+		ValueRangeResponse response = new ValueRangeResponse();
+		StoredValue value = node.getDataStorage().openValue(range.getIdentifier());
+		if (value == null) {
+			response.setTotalLength(-1);
+			return response;
+		}
+		int offset = Math.min(range.getOffset(), value.getLength());
+		response.setTotalLength(value.getLength());
+		response.setRange(value, offset, Math.min(Math.min(range.getLength(), maxRange), value.getLength() - offset));
+		return response;
+	}
+
+	public int getMaxRange() {
+		return maxRange;
+	}
+
+	public void setMaxRange(int maxRange) {
+		this.maxRange = maxRange;
+	}
+}
@@ -0,0 +1,137 @@
+package me.bcap.dht.trace;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import me.bcap.dht.node.Contact;
+
+/**
+ * One step of a {@link Trace}: the whole operation for the root span, a request sent to a contact for the others.
+ * The span of a request is the child of the span of the request whose response introduced its destination, so the
+ * depth of a span in the tree is the hop it was sent at.
+ * <p>
+ * Spans are filled in by the threads handling the responses, they should be read once the trace is finished.
+ */
+public class Span {
+
+	private String name;
+	private Contact destination;
+	private Contact responder;
+	private List<Contact> returned;
+	private String error;
+
+	private long sendTime;
+	private long receiveTime;
+	private long startNanos;
+	private long endNanos;
+	private long handlerTime = -1;
+
+	private List<Span> children = new ArrayList<Span>();
+
+	Span(String name, Contact destination) {
+		this.name = name;
+		this.destination = destination;
+		this.sendTime = System.currentTimeMillis();
+		this.startNanos = System.nanoTime();
+	}
+
+	void end() {
+		if (endNanos == 0) {
+			endNanos = System.nanoTime();
+			receiveTime = System.currentTimeMillis();
+		}
+	}
+
+	void addChild(Span child) {
+		children.add(child);
+	}
+
+	void setResponder(Contact responder) {
+		this.responder = responder;
+	}
+
+	void setReturned(List<Contact> returned) {
+		this.returned = returned;
+	}
+
+	void setHandlerTime(long handlerTime) {
+		this.handlerTime = handlerTime;
+	}
+
+	void setError(String error) {
+		this.error = error;
+	}
+
+	long getStartNanos() {
+		return startNanos;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * The contact the request was sent to, null for the root span
+	 */
+	public Contact getDestination() {
+		return destination;
+	}
+
+	/**
+	 * The contact that answered, null if the request failed
+	 */
+	public Contact getResponder() {
+		return responder;
+	}
+
+	/**
+	 * The contacts returned in the response, null if it returned none
+	 */
+	public List<Contact> getReturned() {
+		return returned;
+	}
+
+	/**
+	 * Why the request failed, null if it did not
+	 */
+	public String getError() {
+		return error;
+	}
+
+	/**
+	 * Wall clock time the request was sent at, in milliseconds
+	 */
+	public long getSendTime() {
+		return sendTime;
+	}
+
+	/**
+	 * Wall clock time the response or failure was received at, in milliseconds, 0 while pending
+	 */
+	public long getReceiveTime() {
+		return receiveTime;
+	}
+
+	/**
+	 * Microseconds from the request being sent to its response being received, -1 while pending
+	 */
+	public long getDuration() {
+		return endNanos == 0 ? -1 : (endNanos - startNanos) / 1000;
+	}
+
+	/**
+	 * Microseconds the responder spent in its handler, -1 if unknown
+	 */
+	public long getHandlerTime() {
+		return handlerTime;
+	}
+
+	public boolean isFinished() {
+		return endNanos != 0;
+	}
+
+	public List<Span> getChildren() {
+		return Collections.unmodifiableList(children);
+	}
+}
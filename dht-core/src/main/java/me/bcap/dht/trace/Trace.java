@@ -0,0 +1,159 @@
+package me.bcap.dht.trace;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import me.bcap.dht.client.ResponseHandler;
+import me.bcap.dht.message.request.Request;
+import me.bcap.dht.message.response.FindNodeResponse;
+import me.bcap.dht.message.response.Response;
+import me.bcap.dht.node.Contact;
+import me.bcap.dht.node.Identifier;
+
+/**
+ * Tree of {@link Span spans} of one traced operation. Requests sent through {@link #trace(Request, ResponseHandler)}
+ * carry the trace id, get a span of their own and are answered with the time the responder spent handling them.
+ */
+public class Trace {
+
+	private long id;
+	private Span root;
+
+	// the span of the first response that returned each contact
+	private Map<Identifier, Span> introducers = new HashMap<Identifier, Span>();
+	private int spanCount = 0;
+
+	Trace(long id, String name) {
+		this.id = id;
+		this.root = new Span(name, null);
+	}
+
+	public long getId() {
+		return id;
+	}
+
+	public Span getRoot() {
+		return root;
+	}
+
+	/**
+	 * Marks the request as part of the trace and starts its span, returning the handler to send it with so that the
+	 * span is ended along with it
+	 */
+	public ResponseHandler trace(Request request, final ResponseHandler handler) {
+		request.setTraceId(id);
+		final Span span = startSpan(request);
+		return new ResponseHandler() {
+			public void handleResponse(Response response) {
+				endSpan(span, response);
+				handler.handleResponse(response);
+			}
+
+			public void handleException(Exception exception) {
+				failSpan(span, exception);
+				handler.handleException(exception);
+			}
+		};
+	}
+
+	private synchronized Span startSpan(Request request) {
+		Contact destination = request.getDestination();
+		Span span = new Span(request.getClass().getSimpleName(), destination);
+		Span parent = destination != null ? introducers.get(destination.asIdentifier()) : null;
+		(parent != null ? parent : root).addChild(span);
+		spanCount++;
+		return span;
+	}
+
+	private synchronized void endSpan(Span span, Response response) {
+		span.end();
+		span.setResponder(response.getSource());
+		span.setHandlerTime(response.getHandlerTime());
+		if (response instanceof FindNodeResponse && ((FindNodeResponse) response).getContacts() != null) {
+			List<Contact> returned = new ArrayList<Contact>(((FindNodeResponse) response).getContacts());
+			span.setReturned(returned);
+			for (Contact contact : returned)
+				if (!introducers.containsKey(contact.asIdentifier()))
+					introducers.put(contact.asIdentifier(), span);
+		}
+	}
+
+	private synchronized void failSpan(Span span, Exception exception) {
+		span.end();
+		span.setError(exception.getClass().getSimpleName() + (exception.getMessage() != null ? ": " + exception.getMessage() : ""));
+	}
+
+	/**
+	 * Ends the root span, returning false if it had already ended
+	 */
+	synchronized boolean finish() {
+		if (root.isFinished())
+			return false;
+		root.end();
+		return true;
+	}
+
+	public synchronized boolean isFinished() {
+		return root.isFinished();
+	}
+
+	/**
+	 * Number of requests sent as part of the trace
+	 */
+	public synchronized int getSpanCount() {
+		return spanCount;
+	}
+
+	/**
+	 * Number of hops of the deepest request, 0 if none was sent
+	 */
+	public synchronized int getDepth() {
+		return depth(root);
+	}
+
+	private int depth(Span span) {
+		int depth = 0;
+		for (Span child : span.getChildren())
+			depth = Math.max(depth, depth(child) + 1);
+		return depth;
+	}
+
+	/**
+	 * Renders the tree, one span per line indented by hop, times in milliseconds from the start of the trace
+	 */
+	public synchronized String toString() {
+		StringBuilder builder = new StringBuilder();
+		builder.append("trace ").append(Long.toHexString(id)).append(' ').append(root.getName());
+		builder.append(" took ").append(millis(root.getDuration())).append("ms, ").append(spanCount).append(" requests");
+		for (Span child : root.getChildren())
+			append(builder, child, 1);
+		return builder.toString();
+	}
+
+	private void append(StringBuilder builder, Span span, int depth) {
+		builder.append('\n');
+		for (int i = 0; i < depth; i++)
+			builder.append("  ");
+		builder.append("+").append(millis((span.getStartNanos() - root.getStartNanos()) / 1000)).append("ms ");
+		builder.append(span.getName()).append(" to ").append(span.getDestination());
+		if (!span.isFinished()) {
+			builder.append(" pending");
+		} else if (span.getError() != null) {
+			builder.append(" failed after ").append(millis(span.getDuration())).append("ms: ").append(span.getError());
+		} else {
+			builder.append(" answered in ").append(millis(span.getDuration())).append("ms");
+			if (span.getHandlerTime() >= 0)
+				builder.append(" (handler ").append(millis(span.getHandlerTime())).append("ms)");
+			if (span.getReturned() != null)
+				builder.append(", returned ").append(span.getReturned().size()).append(" contacts");
+		}
+		for (Span child : span.getChildren())
+			append(builder, child, depth + 1);
+	}
+
+	private static String millis(long micros) {
+		return micros < 0 ? "?" : String.valueOf(micros / 1000) + "." + String.valueOf(micros % 1000 / 100);
+	}
+}
@@ -0,0 +1,69 @@
+package me.bcap.dht.trace;
+
+import java.util.Random;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Decides which operations are traced and writes the finished traces to the trace log, the INFO level of this class
+ * logger, which can be sent to an appender of its own.
+ * <p>
+ * Only a {@link #getSampleRate() fraction} of the operations are traced. At a rate of 0 no trace is created and
+ * requests carry no trace id, so that the tracer costs nothing while switched off.
+ */
+public class Tracer {
+
+	private static final Logger logger = Logger.getLogger(Tracer.class);
+
+	public static final double DEFAULT_SAMPLE_RATE = 0.01;
+
+	private volatile double sampleRate;
+	private Random random = new Random();
+
+	public Tracer() {
+		this(DEFAULT_SAMPLE_RATE);
+	}
+
+	public Tracer(double sampleRate) {
+		setSampleRate(sampleRate);
+	}
+
+	/**
+	 * Starts a trace if this operation is sampled, returns null otherwise
+	 */
+	public Trace startTrace(String name) {
+		double rate = sampleRate;
+		if (rate <= 0 || (rate < 1 && random.nextDouble() >= rate))
+			return null;
+		return new Trace(nextId(), name);
+	}
+
+	/**
+	 * Ends the trace and writes it to the trace log. A trace is only logged once, spans still pending are logged as such
+	 */
+	public void finishTrace(Trace trace) {
+		if (trace.finish() && logger.isInfoEnabled())
+			logger.info(trace);
+	}
+
+	private long nextId() {
+		long id;
+		do {
+			id = random.nextLong();
+		} while (id == 0);
+		return id;
+	}
+
+	/**
+	 * Fraction of the operations traced, from 0 (none) to 1 (all)
+	 */
+	public double getSampleRate() {
+		return sampleRate;
+	}
+
+	public void setSampleRate(double sampleRate) {
+		if (sampleRate < 0 || sampleRate > 1)
+			throw new IllegalArgumentException("Sample rate must be between 0 and 1, got " + sampleRate);
+		this.sampleRate = sampleRate;
+	}
+}
@@ -0,0 +1,66 @@
+package me.bcap.dht.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import me.bcap.dht.node.Identifier;
+
+/**
+ * Derives content addressed keys, the SHA-1 of the value taken as a 160 bit identifier. Streams and files are hashed
+ * a buffer at a time, so values of any size can be keyed without being loaded in memory.
+ */
+public class ContentKeys {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private ContentKeys() {
+	}
+
+	public static Identifier of(byte[] value) {
+		MessageDigest sha1 = createDigest();
+		sha1.update(value);
+		return toIdentifier(sha1);
+	}
+
+	public static Identifier of(InputStream in) throws IOException {
+		MessageDigest sha1 = createDigest();
+		byte[] buffer = new byte[BUFFER_SIZE];
+		int read;
+		while ((read = in.read(buffer)) >= 0)
+			sha1.update(buffer, 0, read);
+		return toIdentifier(sha1);
+	}
+
+	public static Identifier of(File file) throws IOException {
+		InputStream in = new FileInputStream(file);
+		try {
+			return of(in);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Tells whether the value is the content of the key
+	 */
+	public static boolean matches(Identifier key, byte[] value) {
+		return of(value).equals(key);
+	}
+
+	private static Identifier toIdentifier(MessageDigest sha1) {
+		return new Identifier(new BigInteger(1, sha1.digest()));
+	}
+
+	private static MessageDigest createDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-1 is not available in this JVM", e);
+		}
+	}
+}
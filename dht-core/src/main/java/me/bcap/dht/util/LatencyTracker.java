@@ -0,0 +1,87 @@
+package me.bcap.dht.util;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the most recent latency samples in a fixed size window and answers percentiles over them. Percentiles are read
+ * from a sorted copy of the window, refreshed once {@link #getRefreshInterval()} samples were recorded since the last
+ * one (or as many as the copy holds, while the window fills up), so they may miss that many of the latest samples.
+ * The copy is sorted outside the tracker lock, recording never waits for it
+ */
+public class LatencyTracker {
+
+	public static final int DEFAULT_WINDOW_SIZE = 1024;
+	public static final int DEFAULT_REFRESH_INTERVAL = 64;
+
+	private long[] samples;
+	private int count = 0;
+	private int next = 0;
+	private int refreshInterval;
+
+	private volatile int sinceRefresh = 0;
+	private volatile long[] sorted = new long[0];
+	private Object refreshLock = new Object();
+
+	public LatencyTracker() {
+		this(DEFAULT_WINDOW_SIZE);
+	}
+
+	public LatencyTracker(int windowSize) {
+		this(windowSize, DEFAULT_REFRESH_INTERVAL);
+	}
+
+	public LatencyTracker(int windowSize, int refreshInterval) {
+		this.samples = new long[windowSize];
+		this.refreshInterval = refreshInterval;
+	}
+
+	public synchronized void record(long latency) {
+		samples[next] = latency;
+		next = (next + 1) % samples.length;
+		if (count < samples.length)
+			count++;
+		sinceRefresh++;
+	}
+
+	/**
+	 * Returns the given percentile (0 to 100) of the samples in the window, or -1 if there are no samples yet
+	 */
+	public long getPercentile(double percentile) {
+		long[] snapshot = sorted;
+		if (isStale(snapshot))
+			snapshot = refresh();
+		if (snapshot.length == 0)
+			return -1;
+		int index = (int) Math.ceil(percentile / 100 * snapshot.length) - 1;
+		return snapshot[Math.max(0, Math.min(snapshot.length - 1, index))];
+	}
+
+	private boolean isStale(long[] snapshot) {
+		int recorded = sinceRefresh;
+		return recorded > 0 && (recorded >= refreshInterval || recorded >= snapshot.length);
+	}
+
+	private long[] refresh() {
+		synchronized (refreshLock) {
+			// another thread may have refreshed it in the meantime
+			if (!isStale(sorted))
+				return sorted;
+			long[] copy;
+			synchronized (this) {
+				copy = Arrays.copyOf(samples, count);
+				sinceRefresh = 0;
+			}
+			Arrays.sort(copy);
+			sorted = copy;
+			return copy;
+		}
+	}
+
+	public synchronized int getSampleCount() {
+		return count;
+	}
+
+	public int getRefreshInterval() {
+		return refreshInterval;
+	}
+}
@@ -0,0 +1,218 @@
+package me.bcap.dht.util;
+
+import java.util.Arrays;
+
+/**
+ * Systematic Reed-Solomon erasure code over GF(2^8). Data shards are kept as they are and parity shards are computed
+ * with a Cauchy matrix, so that any m of the m data plus r parity shards are enough to rebuild all of them.
+ * <p>
+ * Field multiplications are done with a full 256 x 256 product table, turning the inner loops into one table lookup
+ * and one XOR per byte.
+ */
+public class ReedSolomon {
+
+	public static final int MAX_SHARDS = 256;
+
+	private static final int PRIMITIVE_POLYNOMIAL = 0x11d;
+
+	private static final byte[] EXP = new byte[2 * 255];
+	private static final int[] LOG = new int[256];
+	private static final byte[][] MUL = new byte[256][256];
+
+	static {
+		int x = 1;
+		for (int i = 0; i < 255; i++) {
+			EXP[i] = (byte) x;
+			LOG[x] = i;
+			x <<= 1;
+			if ((x & 0x100) != 0)
+				x ^= PRIMITIVE_POLYNOMIAL;
+		}
+		for (int i = 255; i < EXP.length; i++)
+			EXP[i] = EXP[i - 255];
+		for (int a = 1; a < 256; a++)
+			for (int b = 1; b < 256; b++)
+				MUL[a][b] = EXP[LOG[a] + LOG[b]];
+	}
+
+	private int dataShards;
+	private int parityShards;
+	private byte[][] matrix;
+
+	public ReedSolomon(int dataShards, int parityShards) {
+		if (dataShards < 1 || parityShards < 0 || dataShards + parityShards > MAX_SHARDS)
+			throw new IllegalArgumentException("Unsupported shard counts: " + dataShards + " data and " + parityShards + " parity");
+		this.dataShards = dataShards;
+		this.parityShards = parityShards;
+		this.matrix = createMatrix(dataShards, parityShards);
+	}
+
+	/**
+	 * Computes the parity shards from the data shards. All the shards must be allocated and have the same length
+	 */
+	public void encode(byte[][] shards) {
+		checkShards(shards);
+		byte[][] data = new byte[dataShards][];
+		System.arraycopy(shards, 0, data, 0, dataShards);
+		byte[][] parityRows = new byte[parityShards][];
+		byte[][] parity = new byte[parityShards][];
+		for (int i = 0; i < parityShards; i++) {
+			parityRows[i] = matrix[dataShards + i];
+			parity[i] = shards[dataShards + i];
+		}
+		code(parityRows, data, parity);
+	}
+
+	/**
+	 * Rebuilds the missing shards, the ones flagged as not present, in place. Missing shards may be null, in which
+	 * case they are allocated. Returns false, leaving the shards untouched, if fewer than the data shards count are
+	 * present
+	 */
+	public boolean decode(byte[][] shards, boolean[] present) {
+		int shardLength = -1;
+		int[] available = new int[dataShards];
+		int count = 0;
+		for (int i = 0; i < shards.length && count < dataShards; i++) {
+			if (present[i]) {
+				available[count++] = i;
+				shardLength = shards[i].length;
+			}
+		}
+		if (count < dataShards)
+			return false;
+
+		boolean dataMissing = false;
+		for (int i = 0; i < shards.length; i++) {
+			if (!present[i]) {
+				if (shards[i] == null)
+					shards[i] = new byte[shardLength];
+				dataMissing |= i < dataShards;
+			}
+		}
+
+		if (dataMissing) {
+			byte[][] subMatrix = new byte[dataShards][];
+			byte[][] inputs = new byte[dataShards][];
+			for (int i = 0; i < dataShards; i++) {
+				subMatrix[i] = matrix[available[i]];
+				inputs[i] = shards[available[i]];
+			}
+			byte[][] decoding = invert(subMatrix);
+
+			int missing = 0;
+			for (int i = 0; i < dataShards; i++)
+				if (!present[i])
+					missing++;
+			byte[][] rows = new byte[missing][];
+			byte[][] outputs = new byte[missing][];
+			for (int i = 0, j = 0; i < dataShards; i++) {
+				if (!present[i]) {
+					rows[j] = decoding[i];
+					outputs[j++] = shards[i];
+				}
+			}
+			code(rows, inputs, outputs);
+		}
+
+		// with all the data back, missing parity is just encoded again
+		for (int i = dataShards; i < shards.length; i++) {
+			if (!present[i]) {
+				byte[][] data = new byte[dataShards][];
+				System.arraycopy(shards, 0, data, 0, dataShards);
+				code(new byte[][] { matrix[i] }, data, new byte[][] { shards[i] });
+			}
+		}
+		return true;
+	}
+
+	public int getDataShards() {
+		return dataShards;
+	}
+
+	public int getParityShards() {
+		return parityShards;
+	}
+
+	private void checkShards(byte[][] shards) {
+		if (shards.length != dataShards + parityShards)
+			throw new IllegalArgumentException("Expected " + (dataShards + parityShards) + " shards, got " + shards.length);
+		for (byte[] shard : shards)
+			if (shard == null || shard.length != shards[0].length)
+				throw new IllegalArgumentException("All the shards must be allocated and have the same length");
+	}
+
+	private static void code(byte[][] rows, byte[][] inputs, byte[][] outputs) {
+		int length = inputs[0].length;
+		for (int o = 0; o < outputs.length; o++) {
+			byte[] output = outputs[o];
+			byte[] row = rows[o];
+			Arrays.fill(output, (byte) 0);
+			for (int i = 0; i < inputs.length; i++) {
+				int coefficient = row[i] & 0xff;
+				if (coefficient == 0)
+					continue;
+				byte[] input = inputs[i];
+				byte[] products = MUL[coefficient];
+				for (int k = 0; k < length; k++)
+					output[k] ^= products[input[k] & 0xff];
+			}
+		}
+	}
+
+	/**
+	 * Identity on top of a Cauchy matrix, every square sub matrix made of any of its rows being invertible
+	 */
+	private static byte[][] createMatrix(int dataShards, int parityShards) {
+		byte[][] matrix = new byte[dataShards + parityShards][dataShards];
+		for (int i = 0; i < dataShards; i++)
+			matrix[i][i] = 1;
+		for (int i = 0; i < parityShards; i++)
+			for (int j = 0; j < dataShards; j++)
+				matrix[dataShards + i][j] = inverse((dataShards + i) ^ j);
+		return matrix;
+	}
+
+	private static byte[][] invert(byte[][] source) {
+		int size = source.length;
+		byte[][] work = new byte[size][];
+		byte[][] result = new byte[size][size];
+		for (int i = 0; i < size; i++) {
+			work[i] = source[i].clone();
+			result[i][i] = 1;
+		}
+
+		for (int column = 0; column < size; column++) {
+			int pivot = column;
+			while (work[pivot][column] == 0)
+				pivot++;
+			byte[] swap = work[pivot];
+			work[pivot] = work[column];
+			work[column] = swap;
+			swap = result[pivot];
+			result[pivot] = result[column];
+			result[column] = swap;
+
+			byte[] scale = MUL[inverse(work[column][column] & 0xff) & 0xff];
+			for (int k = 0; k < size; k++) {
+				work[column][k] = scale[work[column][k] & 0xff];
+				result[column][k] = scale[result[column][k] & 0xff];
+			}
+
+			for (int row = 0; row < size; row++) {
+				int factor = work[row][column] & 0xff;
+				if (row == column || factor == 0)
+					continue;
+				byte[] products = MUL[factor];
+				for (int k = 0; k < size; k++) {
+					work[row][k] ^= products[work[column][k] & 0xff];
+					result[row][k] ^= products[result[column][k] & 0xff];
+				}
+			}
+		}
+		return result;
+	}
+
+	private static byte inverse(int value) {
+		return EXP[255 - LOG[value]];
+	}
+}
@@ -0,0 +1,49 @@
+package me.bcap.dht.client;
+
+import me.bcap.dht.message.request.Request;
+import me.bcap.dht.message.response.Response;
+import me.bcap.dht.server.Server;
+import me.bcap.dht.server.handler.RequestHandlerException;
+
+/**
+ * Sender for tests delivering the requests straight to the handlers of a server, on the calling thread. Tests needing
+ * to lose, delay or count requests override {@link #send(Request, ResponseHandler)} and {@link #deliver(Request,
+ * ResponseHandler)} the ones that go through
+ */
+public class InProcessSender implements MessageSender {
+
+	private Server server;
+
+	public InProcessSender(Server server) {
+		this.server = server;
+	}
+
+	public void send(Request request, ResponseHandler handler) {
+		deliver(request, handler);
+	}
+
+	/**
+	 * Has the request handled and notifies the outcome to the response handler
+	 */
+	public void deliver(Request request, ResponseHandler handler) {
+		try {
+			handler.handleResponse(handle(request));
+		} catch (RequestHandlerException e) {
+			handler.handleException(e);
+		}
+	}
+
+	/**
+	 * Runs the request through the server handler of its type
+	 */
+	public Response handle(Request request) throws RequestHandlerException {
+		return server.getHandler(request.getClass()).handle(server, request);
+	}
+
+	public void cancel(Request request) {
+	}
+
+	public Server getServer() {
+		return server;
+	}
+}
@@ -0,0 +1,93 @@
+package me.bcap.dht.client.operation;
+
+import static org.junit.Assert.*;
+
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import me.bcap.dht.client.InProcessSender;
+import me.bcap.dht.client.MessageSender;
+import me.bcap.dht.node.Identifier;
+import me.bcap.dht.node.Node;
+import me.bcap.dht.server.Server;
+
+public class AntiEntropyTest {
+
+	private Server server;
+	private MessageSender sender;
+	private Node node1;
+	private Node node2;
+	private List<Identifier> keys;
+
+	@Before
+	public void setUp() throws Exception {
+		InetAddress ip = InetAddress.getByName("localhost");
+		server = new Server(ip, 5000);
+		server.addDefaultHandlers();
+
+		// delivers the requests straight to the server handlers, on the calling thread
+		sender = new InProcessSender(server);
+
+		node1 = new Node(BigInteger.valueOf(1), ip, 5000);
+		node2 = new Node(BigInteger.valueOf(2), ip, 5000);
+		server.addNode(node1);
+		server.addNode(node2);
+		node1.updateContact(node2.asContact());
+		node2.updateContact(node1.asContact());
+
+		Random random = new Random(42);
+		keys = new ArrayList<Identifier>();
+		for (int i = 0; i < 2000; i++) {
+			Identifier key = new Identifier(new BigInteger(Identifier.LENGTH, random));
+			keys.add(key);
+			node1.getDataStorage().put(key, ("value " + i).getBytes());
+			node2.getDataStorage().put(key, ("value " + i).getBytes());
+		}
+	}
+
+	@Test
+	public void testInSync() throws Exception {
+		AntiEntropyResult result = synchronize();
+
+		assertNull(result.getException());
+		assertEquals(1, result.getRequests());
+		assertEquals(0, result.getDifferingLeaves());
+	}
+
+	@Test
+	public void testRepairsMissingKeys() throws Exception {
+		for (int i = 0; i < 5; i++)
+			node1.getDataStorage().remove(keys.get(i));
+		for (int i = 5; i < 8; i++)
+			node2.getDataStorage().remove(keys.get(i));
+		node2.getDataStorage().put(keys.get(10), "changed".getBytes());
+
+		AntiEntropyResult result = synchronize();
+
+		assertNull(result.getException());
+		assertEquals(5, result.getPulled());
+		assertEquals(3, result.getPushed());
+		assertEquals(1, result.getConflicts());
+		// the root and the three levels below it, the leaf digests and one transfer each way
+		assertEquals(7, result.getRequests());
+		assertEquals(keys.size(), node1.getDataStorage().size());
+		assertEquals(keys.size(), node2.getDataStorage().size());
+		assertEquals("changed", new String(node2.getDataStorage().get(keys.get(10))));
+
+		node2.getDataStorage().put(keys.get(10), "value 10".getBytes());
+		assertEquals(node1.getMerkleTree().getHash(0, 0), node2.getMerkleTree().getHash(0, 0));
+	}
+
+	private AntiEntropyResult synchronize() throws Exception {
+		AntiEntropy antiEntropy = new AntiEntropy(node1, node2.asContact());
+		antiEntropy.setMessageServer(sender);
+		return antiEntropy.execute().get(5, TimeUnit.SECONDS);
+	}
+}
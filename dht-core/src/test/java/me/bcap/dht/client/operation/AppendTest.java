@@ -0,0 +1,78 @@
+package me.bcap.dht.client.operation;
+
+import static org.junit.Assert.*;
+
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import me.bcap.dht.client.InProcessSender;
+import me.bcap.dht.client.MessageSender;
+import me.bcap.dht.node.Identifier;
+import me.bcap.dht.node.Node;
+import me.bcap.dht.server.Server;
+
+public class AppendTest {
+
+	private Server server;
+	private MessageSender sender;
+	private Node client;
+	private Node holder;
+	private Identifier key;
+
+	@Before
+	public void setUp() throws Exception {
+		InetAddress ip = InetAddress.getByName("localhost");
+		server = new Server(ip, 5000);
+		server.addDefaultHandlers();
+		client = new Node(BigInteger.valueOf(1), ip, 5000);
+		holder = new Node(BigInteger.valueOf(2), ip, 5000);
+		server.addNode(holder);
+		client.updateContact(holder.asContact());
+		key = new Identifier(BigInteger.valueOf(123456));
+
+		// delivers the requests straight to the server handlers, on the calling thread
+		sender = new InProcessSender(server);
+	}
+
+	@Test
+	public void testAppendAndSample() throws Exception {
+		for (int i = 0; i < 30; i++) {
+			AppendResult result = append(("peer-" + i).getBytes());
+			assertNull(result.getException());
+			assertTrue(result.isAdded());
+			assertEquals(i + 1, result.getSize());
+		}
+		assertFalse(append("peer-0".getBytes()).isAdded());
+
+		FindValue find = new FindValue(client, key);
+		find.setMessageServer(sender);
+		find.setMaxElements(5);
+		FindValueResult found = find.execute().get(5, TimeUnit.SECONDS);
+		assertTrue(found.isFound());
+		assertFalse(found.isChunked());
+		assertNull(found.getData());
+		Set<String> sample = new HashSet<String>();
+		for (byte[] element : found.getElements())
+			sample.add(new String(element));
+		assertEquals(5, sample.size());
+	}
+
+	@Test
+	public void testOversizedElementIsRejected() throws Exception {
+		AppendResult result = append(new byte[holder.getValueSets().getMaxElementSize() + 1]);
+		assertNotNull(result.getException());
+		assertFalse(holder.getValueSets().containsKey(key));
+	}
+
+	private AppendResult append(byte[] element) throws Exception {
+		Append append = new Append(client, holder.asContact(), key, element, 60000);
+		append.setMessageServer(sender);
+		return append.execute().get(5, TimeUnit.SECONDS);
+	}
+}
@@ -0,0 +1,140 @@
+package me.bcap.dht.client.operation;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import me.bcap.dht.client.InProcessSender;
+import me.bcap.dht.client.MessageSender;
+import me.bcap.dht.client.ResponseHandler;
+import me.bcap.dht.message.request.FindValueRequest;
+import me.bcap.dht.message.request.Request;
+import me.bcap.dht.message.request.StoreChunkRequest;
+import me.bcap.dht.node.Identifier;
+import me.bcap.dht.node.Node;
+import me.bcap.dht.server.Server;
+import me.bcap.dht.server.handler.FindValueRequestHandler;
+import me.bcap.dht.server.handler.RequestHandlerException;
+
+public class ChunkedTransferTest {
+
+	private static final int VALUE_SIZE = 1000000;
+	private static final int CHUNK_SIZE = 64 * 1024;
+
+	private Server server;
+	private MessageSender sender;
+	private Node client;
+	private Node holder;
+	private Identifier key;
+	private byte[] value;
+	private int chunkRequests;
+	private int dropEvery;
+
+	@Before
+	public void setUp() throws Exception {
+		InetAddress ip = InetAddress.getByName("localhost");
+		server = new Server(ip, 5000);
+		server.addDefaultHandlers();
+		client = new Node(BigInteger.valueOf(1), ip, 5000);
+		holder = new Node(BigInteger.valueOf(2), ip, 5000);
+		server.addNode(holder);
+		client.updateContact(holder.asContact());
+
+		key = new Identifier(BigInteger.valueOf(123456));
+		value = new byte[VALUE_SIZE];
+		new Random(42).nextBytes(value);
+
+		// delivers the requests straight to the server handlers, on the calling thread, losing some chunks if asked
+		sender = new InProcessSender(server) {
+			public void send(Request request, ResponseHandler handler) {
+				if (request instanceof StoreChunkRequest && ((StoreChunkRequest) request).getChunk() != null && dropEvery > 0 && ++chunkRequests % dropEvery == 0)
+					handler.handleException(new RequestHandlerException("Connection dropped"));
+				else
+					deliver(request, handler);
+			}
+		};
+	}
+
+	@Test
+	public void testStoreInChunks() throws Exception {
+		StoreResult result = store();
+
+		assertNull(result.getException());
+		assertArrayEquals(value, holder.getDataStorage().get(key));
+	}
+
+	@Test
+	public void testStoreResumesAfterDroppedChunks() throws Exception {
+		dropEvery = 3;
+		StoreResult result = store();
+
+		assertNull(result.getException());
+		assertArrayEquals(value, holder.getDataStorage().get(key));
+	}
+
+	@Test
+	public void testRangeRead() throws Exception {
+		holder.getDataStorage().put(key, value);
+
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		ChunkedFetchResult result = fetch(output, 100000, 300000);
+		assertEquals(VALUE_SIZE, result.getTotalLength());
+		assertEquals(300000, result.getTransferred());
+		assertArrayEquals(Arrays.copyOfRange(value, 100000, 400000), output.toByteArray());
+
+		output = new ByteArrayOutputStream();
+		result = fetch(output, VALUE_SIZE - 1000, -1);
+		assertArrayEquals(Arrays.copyOfRange(value, VALUE_SIZE - 1000, VALUE_SIZE), output.toByteArray());
+
+		result = fetchMissing();
+		assertFalse(result.isFound());
+	}
+
+	@Test
+	public void testFindLargeValue() throws Exception {
+		holder.getDataStorage().put(key, value);
+		((FindValueRequestHandler) server.getHandler(FindValueRequest.class)).setInlineLimit(VALUE_SIZE / 2);
+
+		FindValue find = new FindValue(client, key);
+		find.setMessageServer(sender);
+		FindValueResult found = find.execute().get(5, TimeUnit.SECONDS);
+		assertTrue(found.isFound());
+		assertTrue(found.isChunked());
+		assertEquals(VALUE_SIZE, found.getLength());
+
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		ChunkedFetch fetch = new ChunkedFetch(client, found.getHolder(), key, output);
+		fetch.setMessageServer(sender);
+		fetch.setChunkSize(CHUNK_SIZE);
+		fetch.execute().get(5, TimeUnit.SECONDS);
+		assertArrayEquals(value, output.toByteArray());
+	}
+
+	private StoreResult store() throws Exception {
+		Store store = new Store(client, holder.asContact(), key, value);
+		store.setMessageServer(sender);
+		store.setChunkingThreshold(CHUNK_SIZE);
+		return store.execute().get(5, TimeUnit.SECONDS);
+	}
+
+	private ChunkedFetchResult fetch(ByteArrayOutputStream output, int offset, int length) throws Exception {
+		ChunkedFetch fetch = new ChunkedFetch(client, holder.asContact(), key, output, offset, length);
+		fetch.setMessageServer(sender);
+		fetch.setChunkSize(CHUNK_SIZE);
+		return fetch.execute().get(5, TimeUnit.SECONDS);
+	}
+
+	private ChunkedFetchResult fetchMissing() throws Exception {
+		ChunkedFetch fetch = new ChunkedFetch(client, holder.asContact(), new Identifier(BigInteger.TEN), new ByteArrayOutputStream());
+		fetch.setMessageServer(sender);
+		return fetch.execute().get(5, TimeUnit.SECONDS);
+	}
+}
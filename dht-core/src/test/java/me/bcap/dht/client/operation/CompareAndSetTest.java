@@ -0,0 +1,140 @@
+package me.bcap.dht.client.operation;
+
+import static org.junit.Assert.*;
+
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import me.bcap.dht.client.InProcessSender;
+import me.bcap.dht.client.MessageSender;
+import me.bcap.dht.node.Identifier;
+import me.bcap.dht.node.Node;
+import me.bcap.dht.server.Server;
+
+public class CompareAndSetTest {
+
+	private Server server;
+	private MessageSender sender;
+	private Node client;
+	private Node holder;
+	private Identifier key;
+
+	@Before
+	public void setUp() throws Exception {
+		InetAddress ip = InetAddress.getByName("localhost");
+		server = new Server(ip, 5000);
+		server.addDefaultHandlers();
+		client = new Node(BigInteger.valueOf(1), ip, 5000);
+		holder = new Node(BigInteger.valueOf(2), ip, 5000);
+		server.addNode(holder);
+		client.updateContact(holder.asContact());
+		key = new Identifier(BigInteger.valueOf(123456));
+
+		// delivers the requests straight to the server handlers, on the calling thread
+		sender = new InProcessSender(server);
+	}
+
+	@Test
+	public void testCreateAndUpdate() throws Exception {
+		CompareAndSetResult created = compareAndSet(0, "first".getBytes());
+		assertTrue(created.isSuccessful());
+		assertTrue(created.getVersion() > 0);
+
+		// creating again fails and returns what is there
+		CompareAndSetResult failed = compareAndSet(0, "other".getBytes());
+		assertFalse(failed.isSuccessful());
+		assertEquals(created.getVersion(), failed.getVersion());
+		assertArrayEquals("first".getBytes(), failed.getCurrentData());
+
+		CompareAndSetResult updated = compareAndSet(created.getVersion(), "second".getBytes());
+		assertTrue(updated.isSuccessful());
+		assertTrue(updated.getVersion() > created.getVersion());
+		assertArrayEquals("second".getBytes(), holder.getDataStorage().get(key));
+
+		// a stale version loses against the update
+		CompareAndSetResult stale = compareAndSet(created.getVersion(), "third".getBytes());
+		assertFalse(stale.isSuccessful());
+		assertEquals(updated.getVersion(), stale.getVersion());
+		assertArrayEquals("second".getBytes(), stale.getCurrentData());
+	}
+
+	@Test
+	public void testVersionFromFindValue() throws Exception {
+		holder.getDataStorage().put(key, "stored".getBytes());
+
+		FindValue find = new FindValue(client, key);
+		find.setMessageServer(sender);
+		FindValueResult found = find.execute().get(5, TimeUnit.SECONDS);
+		assertEquals(holder.getDataStorage().getVersion(key), found.getVersion());
+
+		// plain stores move the version as well
+		holder.getDataStorage().put(key, "overwritten".getBytes());
+		assertFalse(compareAndSet(found.getVersion(), "updated".getBytes()).isSuccessful());
+
+		holder.getDataStorage().remove(key);
+		CompareAndSetResult missing = compareAndSet(found.getVersion(), "updated".getBytes());
+		assertFalse(missing.isSuccessful());
+		assertEquals(0, missing.getVersion());
+		assertNull(missing.getCurrentData());
+	}
+
+	@Test
+	public void testConcurrentIncrementsAreNotLost() throws Exception {
+		final int threads = 4;
+		final int increments = 100;
+		assertTrue(compareAndSet(0, encode(0)).isSuccessful());
+
+		List<Thread> workers = new ArrayList<Thread>();
+		final List<Exception> errors = new ArrayList<Exception>();
+		for (int t = 0; t < threads; t++) {
+			Thread worker = new Thread() {
+				public void run() {
+					try {
+						long version = holder.getDataStorage().getVersion(key);
+						int counter = decode(holder.getDataStorage().get(key));
+						for (int i = 0; i < increments; i++) {
+							CompareAndSetResult result;
+							while (!(result = compareAndSet(version, encode(counter + 1))).isSuccessful()) {
+								version = result.getVersion();
+								counter = decode(result.getCurrentData());
+							}
+							version = result.getVersion();
+							counter++;
+						}
+					} catch (Exception e) {
+						synchronized (errors) {
+							errors.add(e);
+						}
+					}
+				}
+			};
+			workers.add(worker);
+			worker.start();
+		}
+		for (Thread worker : workers)
+			worker.join();
+
+		assertTrue(errors.isEmpty());
+		assertEquals(threads * increments, decode(holder.getDataStorage().get(key)));
+	}
+
+	private CompareAndSetResult compareAndSet(long expectedVersion, byte[] data) throws Exception {
+		CompareAndSet cas = new CompareAndSet(client, holder.asContact(), key, expectedVersion, data);
+		cas.setMessageServer(sender);
+		return cas.execute().get(5, TimeUnit.SECONDS);
+	}
+
+	private static byte[] encode(int value) {
+		return BigInteger.valueOf(value).toByteArray();
+	}
+
+	private static int decode(byte[] value) {
+		return new BigInteger(value).intValue();
+	}
+}
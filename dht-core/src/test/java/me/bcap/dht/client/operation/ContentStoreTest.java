@@ -0,0 +1,144 @@
+package me.bcap.dht.client.operation;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import me.bcap.dht.client.InProcessSender;
+import me.bcap.dht.client.MessageSender;
+import me.bcap.dht.client.ResponseHandler;
+import me.bcap.dht.message.request.Request;
+import me.bcap.dht.message.request.StoreChunkRequest;
+import me.bcap.dht.message.request.StoreRequest;
+import me.bcap.dht.node.Contact;
+import me.bcap.dht.node.Identifier;
+import me.bcap.dht.node.Node;
+import me.bcap.dht.server.Server;
+import me.bcap.dht.util.ContentKeys;
+
+public class ContentStoreTest {
+
+	private static final int NODES = 20;
+	private static final int REPLICATION = 4;
+
+	private Server server;
+	private List<Node> nodes;
+	private MessageSender sender;
+	private int stores;
+
+	@Before
+	public void setUp() throws Exception {
+		InetAddress ip = InetAddress.getByName("localhost");
+		server = new Server(ip, 5000);
+		server.addDefaultHandlers();
+		nodes = new ArrayList<Node>();
+		for (int i = 1; i <= NODES; i++) {
+			Node node = new Node(BigInteger.valueOf(i).shiftLeft(150), ip, 5000);
+			nodes.add(node);
+			server.addNode(node);
+		}
+		for (Node node : nodes)
+			for (Node other : nodes)
+				if (node != other)
+					node.updateContact(other.asContact());
+
+		// delivers the requests straight to the server handlers, on the calling thread, counting the stores
+		sender = new InProcessSender(server) {
+			public void send(Request request, ResponseHandler handler) {
+				if (request instanceof StoreRequest || request instanceof StoreChunkRequest)
+					stores++;
+				deliver(request, handler);
+			}
+		};
+	}
+
+	@Test
+	public void testStoreUnderContentKey() throws Exception {
+		byte[] value = createValue(1, 10000);
+		ContentStoreResult result = store(value);
+
+		assertNull(result.getException());
+		assertEquals(ContentKeys.of(value), result.getKey());
+		assertEquals(REPLICATION, result.getStored().size());
+		assertEquals(REPLICATION, stores);
+		for (Contact replica : result.getStored())
+			assertArrayEquals(value, server.getNode(replica.asIdentifier()).getDataStorage().get(result.getKey()));
+	}
+
+	@Test
+	public void testStoreSkipsReplicasAlreadyHoldingTheValue() throws Exception {
+		byte[] value = createValue(2, 10000);
+		ContentStoreResult first = store(value);
+		// one replica loses the value, it is the only one sent it again
+		server.getNode(first.getStored().get(0).asIdentifier()).getDataStorage().remove(first.getKey());
+		stores = 0;
+
+		ContentStoreResult second = store(value.clone());
+		assertNull(second.getException());
+		assertEquals(first.getKey(), second.getKey());
+		assertEquals(REPLICATION - 1, second.getAlreadyHeld().size());
+		assertEquals(1, second.getStored().size());
+		assertEquals(1, stores);
+	}
+
+	@Test
+	public void testStoreFromFile() throws Exception {
+		byte[] value = createValue(3, 200000);
+		File file = File.createTempFile("content-store", ".in");
+		file.deleteOnExit();
+		FileOutputStream output = new FileOutputStream(file);
+		output.write(value);
+		output.close();
+
+		ContentStore store = new ContentStore(nodes.get(0), file);
+		store.setMessageServer(sender);
+		store.setReplication(REPLICATION);
+		store.setChunkingThreshold(64 * 1024);
+		ContentStoreResult result = store.execute().get(5, TimeUnit.SECONDS);
+
+		assertNull(result.getException());
+		assertEquals(ContentKeys.of(value), result.getKey());
+		for (Contact replica : result.getStored())
+			assertArrayEquals(value, server.getNode(replica.asIdentifier()).getDataStorage().get(result.getKey()));
+	}
+
+	@Test
+	public void testFindIgnoresTamperedValues() throws Exception {
+		byte[] value = createValue(4, 1000);
+		ContentStoreResult result = store(value);
+		// all but one replica hold something else under the key
+		for (int i = 1; i < REPLICATION; i++)
+			server.getNode(result.getStored().get(i).asIdentifier()).getDataStorage().put(result.getKey(), createValue(5, 1000));
+
+		ContentFindValue find = new ContentFindValue(nodes.get(NODES - 1), result.getKey());
+		find.setMessageServer(sender);
+		find.setParallelism(1);
+		FindValueResult found = find.execute().get(5, TimeUnit.SECONDS);
+		assertTrue(found.isFound());
+		assertArrayEquals(value, found.getData());
+		assertEquals(result.getStored().get(0).asIdentifier(), found.getHolder().asIdentifier());
+	}
+
+	private ContentStoreResult store(byte[] value) throws Exception {
+		ContentStore store = new ContentStore(nodes.get(0), value);
+		store.setMessageServer(sender);
+		store.setReplication(REPLICATION);
+		return store.execute().get(5, TimeUnit.SECONDS);
+	}
+
+	private byte[] createValue(int seed, int size) {
+		byte[] value = new byte[size];
+		new Random(seed).nextBytes(value);
+		return value;
+	}
+}
@@ -0,0 +1,148 @@
+package me.bcap.dht.client.operation;
+
+import static org.junit.Assert.*;
+
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import me.bcap.dht.client.InProcessSender;
+import me.bcap.dht.client.MessageSender;
+import me.bcap.dht.client.ResponseHandler;
+import me.bcap.dht.message.request.FindValueRequest;
+import me.bcap.dht.message.request.Request;
+import me.bcap.dht.message.request.ValueRangeRequest;
+import me.bcap.dht.node.Contact;
+import me.bcap.dht.node.DistanceComparator;
+import me.bcap.dht.node.Identifier;
+import me.bcap.dht.node.Node;
+import me.bcap.dht.server.Server;
+import me.bcap.dht.server.handler.FindValueRequestHandler;
+import me.bcap.dht.server.handler.RequestHandlerException;
+
+public class ErasureCodedStoreTest {
+
+	private static final int NODES = 30;
+
+	private Server server;
+	private List<Node> nodes;
+	private Set<Identifier> down;
+	private AtomicInteger rangeRequests;
+	private MessageSender sender;
+
+	@Before
+	public void setUp() throws Exception {
+		InetAddress ip = InetAddress.getByName("localhost");
+		int port = 5000;
+
+		server = new Server(ip, port);
+		server.addDefaultHandlers();
+		nodes = new ArrayList<Node>();
+		down = new HashSet<Identifier>();
+		rangeRequests = new AtomicInteger();
+
+		for (int i = 1; i <= NODES; i++) {
+			Node node = new Node(BigInteger.valueOf(i * 7919), ip, port);
+			nodes.add(node);
+			server.addNode(node);
+		}
+		for (Node node : nodes)
+			for (Node other : nodes)
+				if (node != other)
+					node.updateContact(other.asContact());
+
+		// delivers the requests straight to the server handlers, on the calling thread
+		sender = new InProcessSender(server) {
+			public void send(Request request, ResponseHandler handler) {
+				if (request instanceof ValueRangeRequest)
+					rangeRequests.incrementAndGet();
+				if (request instanceof FindValueRequest && down.contains(request.getDestination().asIdentifier()))
+					handler.handleException(new RequestHandlerException("Node is down"));
+				else
+					deliver(request, handler);
+			}
+		};
+	}
+
+	@Test
+	public void testStoreAndRead() throws Exception {
+		Identifier key = new Identifier(BigInteger.valueOf(123456));
+		byte[] data = createValue(10001);
+
+		ErasureCodedStoreResult stored = store(key, data);
+		assertNull(stored.getException());
+		assertEquals(6, stored.getStored());
+		assertEquals(6, new HashSet<Contact>(stored.getHolders()).size());
+		for (Contact holder : stored.getHolders())
+			assertTrue(server.getNode(holder).getDataStorage().size() == 1);
+
+		// each fragment is on the node closest to its own identifier, unless that node took an earlier fragment
+		for (int i = 0; i < 6; i++) {
+			List<Node> closest = new ArrayList<Node>(nodes);
+			Collections.sort(closest, new DistanceComparator(Fragments.key(key, i)));
+			assertTrue(closest.subList(0, i + 1).contains(server.getNode(stored.getHolders().get(i))));
+		}
+
+		FindValueResult result = read(key);
+		assertTrue(result.isFound());
+		assertArrayEquals(data, result.getData());
+	}
+
+	@Test
+	public void testReadWithLostFragments() throws Exception {
+		Identifier key = new Identifier(BigInteger.valueOf(123456));
+		byte[] data = createValue(5000);
+		ErasureCodedStoreResult stored = store(key, data);
+
+		down.add(stored.getHolders().get(0).asIdentifier());
+		down.add(stored.getHolders().get(3).asIdentifier());
+		FindValueResult result = read(key);
+		assertTrue(result.isFound());
+		assertArrayEquals(data, result.getData());
+
+		down.add(stored.getHolders().get(5).asIdentifier());
+		assertFalse(read(key).isFound());
+	}
+
+	@Test
+	public void testReadFragmentsTooLargeToBeInline() throws Exception {
+		((FindValueRequestHandler) server.getHandler(FindValueRequest.class)).setInlineLimit(1024);
+		Identifier key = new Identifier(BigInteger.valueOf(123456));
+		byte[] data = createValue(20000);
+		assertNull(store(key, data).getException());
+
+		FindValueResult result = read(key);
+		assertTrue(result.isFound());
+		assertArrayEquals(data, result.getData());
+		// at least the m fragments needed were read in chunks
+		assertTrue(rangeRequests.get() >= 4);
+	}
+
+	private ErasureCodedStoreResult store(Identifier key, byte[] data) throws Exception {
+		ErasureCodedStore store = new ErasureCodedStore(nodes.get(0), key, data);
+		store.setMessageServer(sender);
+		return store.execute().get(5, TimeUnit.SECONDS);
+	}
+
+	private FindValueResult read(Identifier key) throws Exception {
+		ErasureCodedFindValue find = new ErasureCodedFindValue(nodes.get(1), key);
+		find.setMessageServer(sender);
+		return find.execute().get(5, TimeUnit.SECONDS);
+	}
+
+	private byte[] createValue(int size) {
+		byte[] value = new byte[size];
+		new Random(42).nextBytes(value);
+		return value;
+	}
+}
@@ -0,0 +1,156 @@
+package me.bcap.dht.client.operation;
+
+import static org.junit.Assert.*;
+
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import me.bcap.dht.client.InProcessSender;
+import me.bcap.dht.client.MessageSender;
+import me.bcap.dht.client.ResponseHandler;
+import me.bcap.dht.message.request.Request;
+import me.bcap.dht.node.DistanceComparator;
+import me.bcap.dht.node.Identifier;
+import me.bcap.dht.node.Node;
+import me.bcap.dht.server.Server;
+
+public class FindValueTest {
+
+	private static final int NODES = 20;
+	private static final long SLOW_DELAY = 5000;
+
+	private Server server;
+	private List<Node> nodes;
+	private Identifier slowNode;
+	private ExecutorService executor;
+	private MessageSender sender;
+
+	private Identifier key = new Identifier(BigInteger.valueOf(424242));
+	private byte[] data = "polaco".getBytes();
+
+	@Before
+	public void setUp() throws Exception {
+		InetAddress ip = InetAddress.getByName("localhost");
+		int port = 5000;
+
+		server = new Server(ip, port);
+		server.addDefaultHandlers();
+		nodes = new ArrayList<Node>();
+		for (int i = 1; i <= NODES; i++) {
+			Node node = new Node(BigInteger.valueOf(i * 104729), ip, port);
+			nodes.add(node);
+			server.addNode(node);
+		}
+		for (Node node : nodes)
+			for (Node other : nodes)
+				if (node != other)
+					node.updateContact(other.asContact());
+
+		// the value is on the two nodes closest to the key, the closest of them being very slow
+		List<Node> closest = new ArrayList<Node>(nodes.subList(1, nodes.size()));
+		Collections.sort(closest, new DistanceComparator(key));
+		closest.get(0).getDataStorage().put(key, data);
+		closest.get(1).getDataStorage().put(key, data);
+		slowNode = closest.get(0).asIdentifier();
+
+		executor = Executors.newCachedThreadPool();
+		sender = new InProcessSender(server) {
+			private Map<Request, Future<?>> inFlight = new ConcurrentHashMap<Request, Future<?>>();
+			private Map<Request, AtomicBoolean> notified = new ConcurrentHashMap<Request, AtomicBoolean>();
+			private Map<Request, ResponseHandler> handlers = new ConcurrentHashMap<Request, ResponseHandler>();
+
+			public void send(final Request request, final ResponseHandler handler) {
+				notified.put(request, new AtomicBoolean(false));
+				handlers.put(request, handler);
+				inFlight.put(request, executor.submit(new Runnable() {
+					public void run() {
+						try {
+							if (request.getDestination().asIdentifier().equals(slowNode))
+								Thread.sleep(SLOW_DELAY);
+							if (notified.get(request).compareAndSet(false, true))
+								handler.handleResponse(handle(request));
+						} catch (Exception e) {
+							if (notified.get(request).compareAndSet(false, true))
+								handler.handleException(e);
+						}
+					}
+				}));
+			}
+
+			public void cancel(Request request) {
+				if (notified.get(request).compareAndSet(false, true)) {
+					inFlight.get(request).cancel(true);
+					handlers.get(request).handleException(new CancellationException());
+				}
+			}
+		};
+	}
+
+	@After
+	public void tearDown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void testFindValue() throws Exception {
+		FindValue findValue = new FindValue(nodes.get(0), key);
+		findValue.setMessageServer(sender);
+		FindValueResult result = findValue.execute().get(SLOW_DELAY * 2, TimeUnit.MILLISECONDS);
+
+		assertNull(result.getException());
+		assertTrue(result.isFound());
+		assertArrayEquals(data, result.getData());
+	}
+
+	@Test
+	public void testValueNotFound() throws Exception {
+		FindValue findValue = new FindValue(nodes.get(0), new Identifier(BigInteger.valueOf(1)));
+		findValue.setMessageServer(sender);
+		FindValueResult result = findValue.execute().get(SLOW_DELAY * 2, TimeUnit.MILLISECONDS);
+
+		assertFalse(result.isFound());
+		assertFalse(result.getContacts().isEmpty());
+	}
+
+	@Test
+	public void testHedgeAroundSlowNode() throws Exception {
+		HedgePolicy hedgePolicy = new HedgePolicy(95, 100);
+		hedgePolicy.setInitialDelay(50);
+
+		FindValue findValue = new FindValue(nodes.get(0), key);
+		findValue.setMessageServer(sender);
+		findValue.setParallelism(1);
+		findValue.setHedgePolicy(hedgePolicy);
+		FindValueResult result = findValue.execute().get(SLOW_DELAY / 2, TimeUnit.MILLISECONDS);
+
+		assertTrue(result.isFound());
+		assertFalse(result.getHolder().asIdentifier().equals(slowNode));
+		assertEquals(1, hedgePolicy.getHedges());
+	}
+
+	@Test
+	public void testHedgeBudget() {
+		HedgePolicy hedgePolicy = new HedgePolicy(95, 10);
+		for (int i = 0; i < 9; i++)
+			hedgePolicy.requestSent();
+		assertFalse(hedgePolicy.tryAcquireHedge());
+		hedgePolicy.requestSent();
+		assertTrue(hedgePolicy.tryAcquireHedge());
+		assertFalse(hedgePolicy.tryAcquireHedge());
+	}
+}
@@ -0,0 +1,105 @@
+package me.bcap.dht.client.operation;
+
+import static org.junit.Assert.*;
+
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import me.bcap.dht.client.InProcessSender;
+import me.bcap.dht.client.MessageSender;
+import me.bcap.dht.client.ResponseHandler;
+import me.bcap.dht.message.request.FindNodeRequest;
+import me.bcap.dht.message.request.FindValueRequest;
+import me.bcap.dht.message.request.Request;
+import me.bcap.dht.node.Identifier;
+import me.bcap.dht.node.Node;
+import me.bcap.dht.server.Server;
+
+public class KeyFilterCacheTest {
+
+	private Server server;
+	private MessageSender sender;
+	private List<Request> sent;
+
+	private Node source;
+	private Node relay;
+	private Node holder;
+	private KeyFilterCache cache;
+
+	private Identifier key = new Identifier(BigInteger.valueOf(0x0FF0));
+
+	@Before
+	public void setUp() throws Exception {
+		InetAddress ip = InetAddress.getByName("localhost");
+		server = new Server(ip, 5000);
+		server.addDefaultHandlers();
+		sent = new ArrayList<Request>();
+
+		// the source only knows the relay, which only knows the holder
+		source = new Node(BigInteger.valueOf(0x0001), ip, 5000);
+		relay = new Node(BigInteger.valueOf(0x0F00), ip, 5000);
+		holder = new Node(BigInteger.valueOf(0x0FF1), ip, 5000);
+		server.addNode(relay);
+		server.addNode(holder);
+		source.updateContact(relay.asContact());
+		relay.updateContact(holder.asContact());
+
+		sender = new InProcessSender(server) {
+			public void send(Request request, ResponseHandler handler) {
+				synchronized (sent) {
+					sent.add(request);
+				}
+				deliver(request, handler);
+			}
+		};
+		cache = new KeyFilterCache();
+	}
+
+	@Test
+	public void testMissingContactsStillLeadToCloserOnes() throws Exception {
+		holder.getDataStorage().put(key, "value".getBytes());
+		fetchFilter(relay);
+		assertTrue(cache.isCertainlyMissing(relay, key));
+
+		FindValueResult result = find();
+		assertTrue(result.isFound());
+		assertEquals(holder.asIdentifier(), result.getHolder().asIdentifier());
+
+		// the relay was only asked for closer contacts
+		for (Request request : sent) {
+			if (request.getDestination().asIdentifier().equals(relay.asIdentifier()))
+				assertTrue(request instanceof FindNodeRequest && !(request instanceof FindValueRequest));
+		}
+	}
+
+	@Test
+	public void testSetKeysAreInTheFilter() throws Exception {
+		relay.getValueSets().add(key, "element".getBytes(), 60000);
+		fetchFilter(relay);
+		assertFalse(cache.isCertainlyMissing(relay, key));
+
+		FindValueResult result = find();
+		assertTrue(result.isFound());
+		assertEquals(1, result.getElements().size());
+	}
+
+	private void fetchFilter(Node node) throws Exception {
+		FetchKeyFilter fetch = new FetchKeyFilter(source, node.asContact(), cache);
+		fetch.setMessageServer(sender);
+		assertNull(fetch.execute().get(5, TimeUnit.SECONDS).getException());
+		sent.clear();
+	}
+
+	private FindValueResult find() throws Exception {
+		FindValue find = new FindValue(source, key);
+		find.setMessageServer(sender);
+		find.setKeyFilterCache(cache);
+		return find.execute().get(5, TimeUnit.SECONDS);
+	}
+}
@@ -0,0 +1,169 @@
+package me.bcap.dht.client.operation;
+
+import static org.junit.Assert.*;
+
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import me.bcap.dht.client.InProcessSender;
+import me.bcap.dht.client.MessageSender;
+import me.bcap.dht.client.ResponseHandler;
+import me.bcap.dht.message.request.Request;
+import me.bcap.dht.node.Contact;
+import me.bcap.dht.node.Identifier;
+import me.bcap.dht.node.Node;
+import me.bcap.dht.server.Server;
+
+public class KeyHandoffTest {
+
+	private InetAddress ip;
+	private Server server;
+	private MessageSender sender;
+	private List<Request> sent;
+
+	@Before
+	public void setUp() throws Exception {
+		ip = InetAddress.getByName("localhost");
+		server = new Server(ip, 5000);
+		server.addDefaultHandlers();
+		sent = new ArrayList<Request>();
+
+		// delivers the requests straight to the server handlers, on the calling thread
+		sender = new InProcessSender(server) {
+			public void send(Request request, ResponseHandler handler) {
+				synchronized (sent) {
+					sent.add(request);
+				}
+				deliver(request, handler);
+			}
+		};
+	}
+
+	@Test
+	public void testHandsOffCloserKeys() throws Exception {
+		Node old = new Node(BigInteger.valueOf(0x0F00), ip, 5000);
+		Node joined = new Node(BigInteger.valueOf(0x0FF0), ip, 5000);
+		server.addNode(old);
+		server.addNode(joined);
+
+		List<Identifier> closer = new ArrayList<Identifier>();
+		for (int i = 0; i < 0x1000; i += 3) {
+			Identifier key = new Identifier(BigInteger.valueOf(i));
+			old.getDataStorage().put(key, new byte[100]);
+			if (key.getDistance(joined).compareTo(key.getDistance(old)) < 0)
+				closer.add(key);
+		}
+
+		KeyHandoff handoff = new KeyHandoff(old, joined.asContact());
+		handoff.setMessageServer(sender);
+		handoff.setBatchSize(1000);
+		handoff.setBandwidth(Long.MAX_VALUE);
+		KeyHandoffResult result = handoff.execute().get(5, TimeUnit.SECONDS);
+
+		assertNull(result.getException());
+		assertEquals(closer.size(), result.getKeys());
+		assertEquals(closer.size(), result.getAccepted());
+		assertEquals(closer.size(), joined.getDataStorage().size());
+		for (Identifier key : closer)
+			assertTrue(joined.getDataStorage().containsKey(key));
+		// batches of 1000 bytes hold 10 values each
+		assertEquals((closer.size() + 9) / 10, sent.size());
+	}
+
+	@Test
+	public void testOnlyKeysTheContactShouldHold() throws Exception {
+		Node old = new Node(BigInteger.valueOf(0x0F00), ip, 5000);
+		Node joined = new Node(BigInteger.valueOf(0x0F80), ip, 5000);
+		server.addNode(joined);
+		for (int i = 0xF0; i < 0x100; i++)
+			old.getDataStorage().put(new Identifier(BigInteger.valueOf(0x0F00 | i)), new byte[10]);
+		old.getDataStorage().put(new Identifier(BigInteger.valueOf(0x0F90)), new byte[10]);
+
+		// two contacts closer than the joined node to the keys from 0x0FF0 to 0x0FFF, all of them closer to it than to
+		// the old node
+		old.updateContact(new Contact(BigInteger.valueOf(0x0FF1), ip, 5000));
+		old.updateContact(new Contact(BigInteger.valueOf(0x0FF2), ip, 5000));
+		old.updateContact(joined.asContact());
+
+		KeyHandoff handoff = new KeyHandoff(old, joined.asContact());
+		handoff.setMessageServer(sender);
+		handoff.setBandwidth(Long.MAX_VALUE);
+		handoff.setReplication(2);
+		KeyHandoffResult result = handoff.execute().get(5, TimeUnit.SECONDS);
+
+		// only for 0x0F90 is the joined node one of the two closest contacts
+		assertEquals(1, result.getKeys());
+		assertTrue(joined.getDataStorage().containsKey(new Identifier(BigInteger.valueOf(0x0F90))));
+	}
+
+	@Test
+	public void testBandwidthLimit() throws Exception {
+		Node old = new Node(BigInteger.valueOf(0x0F00), ip, 5000);
+		Node joined = new Node(BigInteger.valueOf(0x0FF0), ip, 5000);
+		server.addNode(joined);
+		for (int i = 0xF0; i < 0x100; i++)
+			old.getDataStorage().put(new Identifier(BigInteger.valueOf(0x0F00 | i)), new byte[1000]);
+
+		KeyHandoff handoff = new KeyHandoff(old, joined.asContact());
+		handoff.setMessageServer(sender);
+		handoff.setBatchSize(2000);
+		handoff.setBandwidth(20000);
+		long start = System.currentTimeMillis();
+		KeyHandoffResult result = handoff.execute().get(5, TimeUnit.SECONDS);
+
+		// 16000 bytes at 20000 bytes per second
+		assertEquals(16, result.getKeys());
+		assertTrue(System.currentTimeMillis() - start >= 750);
+	}
+
+	@Test
+	public void testTriggeredByNewContact() throws Exception {
+		Node old = new Node(BigInteger.valueOf(0x0F00), ip, 5000);
+		Node joined = new Node(BigInteger.valueOf(0x0FF0), ip, 5000);
+		Node far = new Node(BigInteger.valueOf(0x0001), ip, 5000);
+		server.addNode(old);
+		server.addNode(joined);
+		for (int i = 0xF0; i < 0x100; i++)
+			old.getDataStorage().put(new Identifier(BigInteger.valueOf(0x0F00 | i)), new byte[10]);
+
+		KeyHandoffTrigger trigger = new KeyHandoffTrigger(sender);
+		old.addContactListener(trigger);
+
+		old.updateContact(far.asContact());
+		assertEquals(0, trigger.getPendingCount());
+
+		old.updateContact(joined.asContact());
+		long deadline = System.currentTimeMillis() + 5000;
+		while (joined.getDataStorage().size() < 16 && System.currentTimeMillis() < deadline)
+			Thread.sleep(10);
+		assertEquals(16, joined.getDataStorage().size());
+	}
+
+	@Test
+	public void testJoiningThroughOwnLookup() throws Exception {
+		Node old = new Node(BigInteger.valueOf(0x0F00), ip, 5000);
+		Node joined = new Node(BigInteger.valueOf(0x0FF0), ip, 5000);
+		server.addNode(old);
+		server.addNode(joined);
+		for (int i = 0xF0; i < 0x100; i++)
+			old.getDataStorage().put(new Identifier(BigInteger.valueOf(0x0F00 | i)), new byte[10]);
+		old.addContactListener(new KeyHandoffTrigger(sender));
+
+		// the joined node only knows the old one and looks itself up, the old node learns about it from the request
+		joined.updateContact(old.asContact());
+		FindNode lookup = new FindNode(joined, joined.asIdentifier());
+		lookup.setMessageServer(sender);
+		assertNull(lookup.execute().get(5, TimeUnit.SECONDS).getException());
+
+		long deadline = System.currentTimeMillis() + 5000;
+		while (joined.getDataStorage().size() < 16 && System.currentTimeMillis() < deadline)
+			Thread.sleep(10);
+		assertEquals(16, joined.getDataStorage().size());
+	}
+}
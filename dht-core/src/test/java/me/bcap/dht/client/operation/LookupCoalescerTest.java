@@ -0,0 +1,112 @@
+package me.bcap.dht.client.operation;
+
+import static org.junit.Assert.*;
+
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import me.bcap.dht.client.InProcessSender;
+import me.bcap.dht.client.MessageSender;
+import me.bcap.dht.client.ResponseHandler;
+import me.bcap.dht.message.request.Request;
+import me.bcap.dht.node.Identifier;
+import me.bcap.dht.node.Node;
+import me.bcap.dht.server.Server;
+
+public class LookupCoalescerTest {
+
+	private Server server;
+	private MessageSender sender;
+	private Node client;
+	private Node other;
+	private Identifier key;
+
+	private AtomicInteger sent = new AtomicInteger();
+	private CountDownLatch release = new CountDownLatch(1);
+
+	@Before
+	public void setUp() throws Exception {
+		InetAddress ip = InetAddress.getByName("localhost");
+		server = new Server(ip, 5000);
+		server.addDefaultHandlers();
+		client = new Node(BigInteger.valueOf(1), ip, 5000);
+		other = new Node(BigInteger.valueOf(2), ip, 5000);
+		server.addNode(other);
+		client.updateContact(other.asContact());
+		key = new Identifier(BigInteger.valueOf(123456));
+		other.getDataStorage().put(key, "value".getBytes());
+
+		// delivers the requests to the server handlers once released, each on its own thread
+		sender = new InProcessSender(server) {
+			public void send(final Request request, final ResponseHandler handler) {
+				sent.incrementAndGet();
+				new Thread() {
+					public void run() {
+						try {
+							release.await();
+						} catch (InterruptedException e) {
+							return;
+						}
+						deliver(request, handler);
+					}
+				}.start();
+			}
+		};
+	}
+
+	@Test
+	public void testConcurrentLookupsShareOne() throws Exception {
+		LookupCoalescer coalescer = new LookupCoalescer();
+		List<Future<FindNodeResult>> nodes = new ArrayList<Future<FindNodeResult>>();
+		List<Future<FindValueResult>> values = new ArrayList<Future<FindValueResult>>();
+		for (int i = 0; i < 5; i++) {
+			FindNode findNode = new FindNode(client, key);
+			findNode.setMessageServer(sender);
+			findNode.setCoalescer(coalescer);
+			nodes.add(findNode.execute());
+
+			FindValue findValue = new FindValue(client, key);
+			findValue.setMessageServer(sender);
+			findValue.setCoalescer(coalescer);
+			values.add(findValue.execute());
+		}
+		assertEquals(2, coalescer.countRunning());
+		release.countDown();
+
+		for (Future<FindNodeResult> future : nodes)
+			assertEquals(other.asIdentifier(), future.get(5, TimeUnit.SECONDS).getContacts().get(0).asIdentifier());
+		for (Future<FindValueResult> future : values)
+			assertEquals("value", new String(future.get(5, TimeUnit.SECONDS).getData()));
+		assertEquals(2, sent.get());
+		assertEquals(2, coalescer.getStarted());
+		assertEquals(8, coalescer.getCoalesced());
+		assertEquals(0, coalescer.countRunning());
+	}
+
+	@Test
+	public void testLookupsWithDifferentSettingsAreNotCoalesced() throws Exception {
+		LookupCoalescer coalescer = new LookupCoalescer();
+		FindValue plain = new FindValue(client, key);
+		plain.setMessageServer(sender);
+		plain.setCoalescer(coalescer);
+		FindValue sampled = new FindValue(client, key);
+		sampled.setMessageServer(sender);
+		sampled.setCoalescer(coalescer);
+		sampled.setMaxElements(5);
+		plain.execute();
+		sampled.execute();
+		release.countDown();
+
+		assertEquals(2, sent.get());
+		assertEquals(0, coalescer.getCoalesced());
+	}
+}
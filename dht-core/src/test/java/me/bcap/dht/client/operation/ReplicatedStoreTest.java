@@ -0,0 +1,109 @@
+package me.bcap.dht.client.operation;
+
+import static org.junit.Assert.*;
+
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import me.bcap.dht.client.InProcessSender;
+import me.bcap.dht.client.MessageSender;
+import me.bcap.dht.client.ResponseHandler;
+import me.bcap.dht.message.request.Request;
+import me.bcap.dht.message.request.StoreRequest;
+import me.bcap.dht.node.Contact;
+import me.bcap.dht.node.DistanceComparator;
+import me.bcap.dht.node.Identifier;
+import me.bcap.dht.node.Node;
+import me.bcap.dht.server.Server;
+import me.bcap.dht.server.handler.RequestHandlerException;
+
+public class ReplicatedStoreTest {
+
+	private static final int NODES = 30;
+
+	private Server server;
+	private List<Node> nodes;
+	private Set<Identifier> rejectingStores;
+	private MessageSender sender;
+
+	@Before
+	public void setUp() throws Exception {
+		InetAddress ip = InetAddress.getByName("localhost");
+		int port = 5000;
+
+		server = new Server(ip, port);
+		server.addDefaultHandlers();
+		nodes = new ArrayList<Node>();
+		rejectingStores = new HashSet<Identifier>();
+
+		for (int i = 1; i <= NODES; i++) {
+			Node node = new Node(BigInteger.valueOf(i * 7919), ip, port);
+			nodes.add(node);
+			server.addNode(node);
+		}
+		for (Node node : nodes)
+			for (Node other : nodes)
+				if (node != other)
+					node.updateContact(other.asContact());
+
+		// delivers the requests straight to the server handlers, on the calling thread
+		sender = new InProcessSender(server) {
+			public void send(Request request, ResponseHandler handler) {
+				if (request instanceof StoreRequest && rejectingStores.contains(request.getDestination().asIdentifier()))
+					handler.handleException(new RequestHandlerException("Store rejected"));
+				else
+					deliver(request, handler);
+			}
+		};
+	}
+
+	@Test
+	public void testStoreOnClosestNodes() throws Exception {
+		Identifier key = new Identifier(BigInteger.valueOf(123456));
+		byte[] data = "polaco".getBytes();
+
+		ReplicatedStore store = new ReplicatedStore(nodes.get(0), key, data);
+		store.setMessageServer(sender);
+		store.setReplication(5);
+		store.setWriteQuorum(3);
+		ReplicatedStoreResult result = store.execute().get();
+
+		assertNull(result.getException());
+		assertEquals(5, result.getReplicas().size());
+		assertEquals(3, result.getAcknowledged().size());
+
+		List<Node> closest = new ArrayList<Node>(nodes.subList(1, nodes.size()));
+		Collections.sort(closest, new DistanceComparator(key));
+		for (int i = 0; i < closest.size(); i++)
+			assertEquals(i < 5, closest.get(i).getDataStorage().containsKey(key));
+	}
+
+	@Test
+	public void testQuorumNotReached() throws Exception {
+		Identifier key = new Identifier(BigInteger.valueOf(123456));
+
+		List<Node> closest = new ArrayList<Node>(nodes.subList(1, nodes.size()));
+		Collections.sort(closest, new DistanceComparator(key));
+
+		ReplicatedStore store = new ReplicatedStore(nodes.get(0), key, "polaco".getBytes());
+		store.setMessageServer(sender);
+		store.setReplication(3);
+		store.setWriteQuorum(3);
+		store.setMaxAttempts(1);
+
+		Node failing = closest.get(0);
+		rejectingStores.add(failing.asIdentifier());
+		ReplicatedStoreResult result = store.execute().get();
+
+		assertNotNull(result.getException());
+		assertFalse(failing.getDataStorage().containsKey(key));
+	}
+}
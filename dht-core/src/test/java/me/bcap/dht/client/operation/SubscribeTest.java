@@ -0,0 +1,173 @@
+package me.bcap.dht.client.operation;
+
+import static org.junit.Assert.*;
+
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import me.bcap.dht.client.InProcessSender;
+import me.bcap.dht.client.MessageSender;
+import me.bcap.dht.message.request.KeyChangedRequest;
+import me.bcap.dht.message.request.KeyChangedRequest.Change;
+import me.bcap.dht.node.Contact;
+import me.bcap.dht.node.Identifier;
+import me.bcap.dht.node.KeyChangeListener;
+import me.bcap.dht.node.Node;
+import me.bcap.dht.node.storage.MemoryStorage;
+import me.bcap.dht.server.KeyWatchers;
+import me.bcap.dht.server.Server;
+import me.bcap.dht.server.handler.KeyChangedRequestHandler;
+
+public class SubscribeTest {
+
+	private Server server;
+	private MessageSender sender;
+	private KeyWatchers watchers;
+	private Node client;
+	private Node holder;
+	private Identifier key;
+
+	private List<Change> changes = new ArrayList<Change>();
+	private CountDownLatch pushed;
+
+	@Before
+	public void setUp() throws Exception {
+		InetAddress ip = InetAddress.getByName("localhost");
+		server = new Server(ip, 5000);
+		server.addDefaultHandlers();
+		client = new Node(BigInteger.valueOf(1), ip, 5000);
+		holder = new Node(BigInteger.valueOf(2), ip, 5000);
+		server.addNode(client);
+		server.addNode(holder);
+		client.updateContact(holder.asContact());
+		key = new Identifier(BigInteger.valueOf(123456));
+
+		// delivers the requests straight to the server handlers, on the calling thread
+		sender = new InProcessSender(server);
+		watchers = server.enableKeyWatching(sender);
+
+		pushed = new CountDownLatch(1);
+		((KeyChangedRequestHandler) server.getHandler(KeyChangedRequest.class)).addListener(new KeyChangeListener() {
+			public void keyChanged(Node watcher, Contact origin, Change change) {
+				synchronized (changes) {
+					changes.add(change);
+				}
+				pushed.countDown();
+			}
+		});
+	}
+
+	@Test
+	public void testChangesArePushedInBatches() throws Exception {
+		SubscribeResult result = subscribe(60000);
+		assertNull(result.getException());
+		assertEquals(1, result.getSubscribed().size());
+		assertEquals(holder.asIdentifier(), result.getSubscribed().get(0).asIdentifier());
+		assertEquals(60000, result.getLease());
+		assertEquals(1, watchers.countWatchers(holder, key));
+
+		// writes within the batch delay collapse into a single change carrying the latest value
+		holder.getDataStorage().put(key, "first".getBytes());
+		holder.getDataStorage().put(key, "second".getBytes());
+		assertTrue(pushed.await(5, TimeUnit.SECONDS));
+		Thread.sleep(100);
+		synchronized (changes) {
+			assertEquals(1, changes.size());
+			assertEquals("second", new String(changes.get(0).getValue()));
+			assertEquals(holder.getDataStorage().getVersion(key), changes.get(0).getVersion());
+		}
+
+		pushed = new CountDownLatch(1);
+		holder.getDataStorage().remove(key);
+		assertTrue(pushed.await(5, TimeUnit.SECONDS));
+		synchronized (changes) {
+			assertTrue(changes.get(changes.size() - 1).isRemoved());
+		}
+	}
+
+	@Test
+	public void testLargeValuesAreOnlyAnnounced() throws Exception {
+		// counts the values loaded by pushes, the lengths being read without loading them
+		final AtomicInteger loads = new AtomicInteger();
+		holder.setDataStorage(new MemoryStorage() {
+			public byte[] get(Object key) {
+				if (Thread.currentThread().getName().equals("KeyWatchers-push"))
+					loads.incrementAndGet();
+				return super.get(key);
+			}
+
+			public int getLength(Identifier key) {
+				byte[] value = super.get(key);
+				return value != null ? value.length : -1;
+			}
+		});
+		watchers.setMaxPushedValue(4);
+		subscribe(60000);
+
+		holder.getDataStorage().put(key, "too large".getBytes());
+		assertTrue(pushed.await(5, TimeUnit.SECONDS));
+		synchronized (changes) {
+			assertEquals(1, changes.size());
+			assertNull(changes.get(0).getValue());
+			assertEquals(9, changes.get(0).getLength());
+			assertEquals(holder.getDataStorage().getVersion(key), changes.get(0).getVersion());
+		}
+		assertEquals(0, loads.get());
+
+		pushed = new CountDownLatch(1);
+		holder.getDataStorage().put(key, "tiny".getBytes());
+		assertTrue(pushed.await(5, TimeUnit.SECONDS));
+		synchronized (changes) {
+			assertEquals("tiny", new String(changes.get(changes.size() - 1).getValue()));
+		}
+	}
+
+	@Test
+	public void testLeaseIsCappedAndCancelled() throws Exception {
+		watchers.setMaxLease(1000);
+		assertEquals(1000, subscribe(60000).getLease());
+
+		subscribe(0);
+		assertEquals(0, watchers.countWatchers(holder, key));
+		holder.getDataStorage().put(key, "value".getBytes());
+		assertFalse(pushed.await(200, TimeUnit.MILLISECONDS));
+	}
+
+	@Test
+	public void testExpiredLeaseStopsPushes() throws Exception {
+		watchers.setMaxLease(50);
+		subscribe(50);
+		Thread.sleep(100);
+		assertEquals(0, watchers.countWatchers(holder, key));
+		holder.getDataStorage().put(key, "value".getBytes());
+		assertFalse(pushed.await(200, TimeUnit.MILLISECONDS));
+	}
+
+	@Test
+	public void testKeyWatchRenewsAndCancels() throws Exception {
+		watchers.setMaxLease(100);
+		KeyWatch watch = new KeyWatch(client, key, sender);
+		watch.start();
+		// renewed every half lease, so still subscribed well past the first lease
+		Thread.sleep(300);
+		assertEquals(1, watchers.countWatchers(holder, key));
+		assertEquals(1, watch.getSubscribed().size());
+
+		watch.cancel();
+		assertEquals(0, watchers.countWatchers(holder, key));
+	}
+
+	private SubscribeResult subscribe(long lease) throws Exception {
+		Subscribe subscribe = new Subscribe(client, key, lease);
+		subscribe.setMessageServer(sender);
+		return subscribe.execute().get(5, TimeUnit.SECONDS);
+	}
+}
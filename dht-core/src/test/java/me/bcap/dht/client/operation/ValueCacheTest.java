@@ -0,0 +1,183 @@
+package me.bcap.dht.client.operation;
+
+import static org.junit.Assert.*;
+
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import me.bcap.dht.client.InProcessSender;
+import me.bcap.dht.client.MessageSender;
+import me.bcap.dht.client.ResponseHandler;
+import me.bcap.dht.message.request.FindValueRequest;
+import me.bcap.dht.message.request.KeyChangedRequest;
+import me.bcap.dht.message.request.Request;
+import me.bcap.dht.node.Identifier;
+import me.bcap.dht.node.Node;
+import me.bcap.dht.server.Server;
+
+public class ValueCacheTest {
+
+	private Server server;
+	private MessageSender sender;
+	private Node client;
+	private Node holder;
+	private Identifier key;
+
+	private AtomicInteger lookups = new AtomicInteger();
+	private CountDownLatch release;
+
+	@Before
+	public void setUp() throws Exception {
+		InetAddress ip = InetAddress.getByName("localhost");
+		server = new Server(ip, 5000);
+		server.addDefaultHandlers();
+		client = new Node(BigInteger.valueOf(1), ip, 5000);
+		holder = new Node(BigInteger.valueOf(2), ip, 5000);
+		server.addNode(holder);
+		client.updateContact(holder.asContact());
+		key = new Identifier(BigInteger.valueOf(123456));
+		holder.getDataStorage().put(key, "value".getBytes());
+
+		// delivers the requests to the server handlers, holding the value lookups back until released
+		sender = new InProcessSender(server) {
+			public void send(final Request request, final ResponseHandler handler) {
+				if (request instanceof FindValueRequest)
+					lookups.incrementAndGet();
+				if (release == null) {
+					deliver(request, handler);
+					return;
+				}
+				final CountDownLatch latch = release;
+				new Thread() {
+					public void run() {
+						try {
+							latch.await();
+						} catch (InterruptedException e) {
+							return;
+						}
+						deliver(request, handler);
+					}
+				}.start();
+			}
+		};
+	}
+
+	@Test
+	public void testFoundValuesAreCached() throws Exception {
+		ValueCache cache = new ValueCache();
+		assertEquals("value", new String(find(cache).getData()));
+		assertEquals("value", new String(find(cache).getData()));
+		assertEquals(1, lookups.get());
+		assertEquals(1, cache.getHits());
+		assertEquals(1, cache.getMisses());
+
+		// misses are not cached
+		Identifier missing = new Identifier(BigInteger.valueOf(654321));
+		FindValue lookup = new FindValue(client, missing);
+		lookup.setMessageServer(sender);
+		lookup.setValueCache(cache);
+		assertFalse(lookup.execute().get(5, TimeUnit.SECONDS).isFound());
+		assertEquals(1, cache.size());
+	}
+
+	@Test
+	public void testEntriesExpire() throws Exception {
+		ValueCache cache = new ValueCache(50, ValueCache.DEFAULT_MAX_BYTES);
+		find(cache);
+		Thread.sleep(100);
+		find(cache);
+		assertEquals(2, lookups.get());
+		assertEquals(0, cache.getHits());
+	}
+
+	@Test
+	public void testChangedKeysAreDropped() throws Exception {
+		ValueCache cache = new ValueCache();
+		find(cache);
+		cache.keyChanged(client, holder.asContact(), new KeyChangedRequest.Change(key, 0, -1, null));
+		assertNull(cache.get(key));
+		find(cache);
+		assertEquals(2, lookups.get());
+	}
+
+	@Test
+	public void testChangesDuringALookupAreNotLost() throws Exception {
+		ValueCache cache = new ValueCache();
+		release = new CountDownLatch(1);
+		FindValue lookup = new FindValue(client, key);
+		lookup.setMessageServer(sender);
+		lookup.setValueCache(cache);
+		Future<FindValueResult> future = lookup.execute();
+
+		// the change arrives while the lookup is held back, its result may be older than it
+		cache.keyChanged(client, holder.asContact(), new KeyChangedRequest.Change(key, 0, -1, null));
+		release.countDown();
+		assertTrue(future.get(5, TimeUnit.SECONDS).isFound());
+		assertNull(cache.get(key));
+
+		// the next lookups are cached again, once they no longer join the first one
+		release = null;
+		for (int i = 0; i < 100 && cache.get(key) == null; i++) {
+			find(cache);
+			Thread.sleep(10);
+		}
+		assertNotNull(cache.get(key));
+	}
+
+	@Test
+	public void testBytesAreBounded() throws Exception {
+		ValueCache cache = new ValueCache(ValueCache.DEFAULT_TTL, 3 * (ValueCache.ENTRY_OVERHEAD + 100));
+		for (int i = 0; i < 5; i++) {
+			FindValueResult result = new FindValueResult();
+			result.setData(new byte[100]);
+			cache.put(new Identifier(BigInteger.valueOf(i)), result);
+		}
+		assertEquals(3, cache.size());
+		assertEquals(3 * (ValueCache.ENTRY_OVERHEAD + 100), cache.getBytes());
+		// least recently used go first
+		assertNull(cache.get(new Identifier(BigInteger.valueOf(0))));
+		assertNotNull(cache.get(new Identifier(BigInteger.valueOf(4))));
+
+		FindValueResult tooLarge = new FindValueResult();
+		tooLarge.setData(new byte[4 * (ValueCache.ENTRY_OVERHEAD + 100)]);
+		cache.put(key, tooLarge);
+		assertNull(cache.get(key));
+		assertEquals(3, cache.size());
+	}
+
+	@Test
+	public void testConcurrentMissesShareOneLookup() throws Exception {
+		ValueCache cache = new ValueCache();
+		release = new CountDownLatch(1);
+		List<Future<FindValueResult>> futures = new ArrayList<Future<FindValueResult>>();
+		for (int i = 0; i < 5; i++) {
+			FindValue lookup = new FindValue(client, key);
+			lookup.setMessageServer(sender);
+			lookup.setValueCache(cache);
+			futures.add(lookup.execute());
+		}
+		release.countDown();
+
+		for (Future<FindValueResult> future : futures)
+			assertEquals("value", new String(future.get(5, TimeUnit.SECONDS).getData()));
+		assertEquals(1, lookups.get());
+		assertEquals(1, cache.getMisses());
+		assertEquals(4, cache.getCoalesced());
+	}
+
+	private FindValueResult find(ValueCache cache) throws Exception {
+		FindValue lookup = new FindValue(client, key);
+		lookup.setMessageServer(sender);
+		lookup.setValueCache(cache);
+		return lookup.execute().get(5, TimeUnit.SECONDS);
+	}
+}
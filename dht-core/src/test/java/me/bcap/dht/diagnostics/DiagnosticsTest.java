@@ -0,0 +1,78 @@
+package me.bcap.dht.diagnostics;
+
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.math.BigInteger;
+import java.net.InetAddress;
+
+import org.junit.After;
+import org.junit.Test;
+
+import me.bcap.dht.message.request.PingRequest;
+import me.bcap.dht.node.Contact;
+
+public class DiagnosticsTest {
+
+	@After
+	public void tearDown() {
+		Diagnostics.setEnabled(true);
+		Diagnostics.setCapacity(Diagnostics.DEFAULT_CAPACITY);
+	}
+
+	@Test
+	public void testKeepsTheLastEventsOfEachThread() throws Exception {
+		Diagnostics.setCapacity(4);
+		final Contact destination = new Contact(BigInteger.valueOf(7), InetAddress.getByName("localhost"), 5000);
+		final String[] dump = new String[1];
+		Thread thread = new Thread("diagnostics-test") {
+			public void run() {
+				for (int i = 0; i < 10; i++)
+					Diagnostics.record(DiagnosticEvent.SEND_STARTED, i, PingRequest.class, destination, 0);
+				Diagnostics.record(DiagnosticEvent.RESPONSE_SENT, 10, PingRequest.class, null, 123);
+				dump[0] = Diagnostics.dumpCurrentThread();
+			}
+		};
+		thread.start();
+		thread.join();
+
+		String[] lines = dump[0].split("\n");
+		assertEquals(4, lines.length);
+		assertTrue(lines[0], lines[0].contains("[diagnostics-test] SEND_STARTED conversation=7 type=PingRequest destination="));
+		assertTrue(lines[3], lines[3].endsWith("RESPONSE_SENT conversation=10 type=PingRequest bytes=123"));
+		// rings outlive their threads, up to a limit
+		assertTrue(Diagnostics.dump().contains("conversation=10 type=PingRequest bytes=123"));
+	}
+
+	@Test
+	public void testDisabled() throws Exception {
+		Thread thread = new Thread() {
+			public void run() {
+				Diagnostics.setEnabled(false);
+				Diagnostics.record(DiagnosticEvent.WORKER_FAILED, 99, RuntimeException.class, null, 0);
+				Diagnostics.setEnabled(true);
+				assertEquals("", Diagnostics.dumpCurrentThread());
+			}
+		};
+		thread.start();
+		thread.join();
+	}
+
+	@Test
+	public void testRecordingDoesNotAllocate() {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (!(threads instanceof com.sun.management.ThreadMXBean))
+			return;
+		com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+		long thread = Thread.currentThread().getId();
+
+		for (int i = 0; i < 100000; i++)
+			Diagnostics.record(DiagnosticEvent.RESPONSE_RECEIVED, i, PingRequest.class, null, i);
+		long before = allocations.getThreadAllocatedBytes(thread);
+		for (int i = 0; i < 100000; i++)
+			Diagnostics.record(DiagnosticEvent.RESPONSE_RECEIVED, i, PingRequest.class, null, i);
+		long allocated = allocations.getThreadAllocatedBytes(thread) - before;
+		assertTrue(allocated + " bytes allocated", allocated < 1024);
+	}
+}
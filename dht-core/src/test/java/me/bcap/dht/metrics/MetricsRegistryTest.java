@@ -0,0 +1,130 @@
+package me.bcap.dht.metrics;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+public class MetricsRegistryTest {
+
+	@Test
+	public void testCounterFromManyThreads() throws Exception {
+		final StripedCounter counter = new MetricsRegistry().counter("test");
+		Thread[] threads = new Thread[8];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread() {
+				public void run() {
+					for (int j = 0; j < 10000; j++)
+						counter.increment();
+				}
+			};
+			threads[i].start();
+		}
+		for (Thread thread : threads)
+			thread.join();
+		assertEquals(80000, counter.get());
+	}
+
+	@Test
+	public void testBucketBounds() {
+		for (long value = 0; value < 100000; value += 7) {
+			long upperBound = LatencyHistogram.upperBoundOf(LatencyHistogram.bucketOf(value));
+			assertTrue(upperBound >= value);
+			assertTrue(upperBound <= value + value / 4 + 1);
+		}
+		assertTrue(LatencyHistogram.upperBoundOf(LatencyHistogram.bucketOf(LatencyHistogram.MAX_VALUE)) >= LatencyHistogram.MAX_VALUE);
+	}
+
+	@Test
+	public void testHistogramPercentiles() {
+		LatencyHistogram histogram = new MetricsRegistry().histogram("test");
+		for (int i = 1; i <= 1000; i++)
+			histogram.record(TimeUnit.MICROSECONDS.toNanos(i));
+
+		LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+		assertEquals(1000, snapshot.getCount());
+		assertEquals(500, snapshot.getMean());
+		assertEquals(1000, snapshot.getMax());
+		assertBetween(500, 625, snapshot.getPercentile(50));
+		assertBetween(990, 1000, snapshot.getPercentile(99));
+		assertEquals(0, new LatencyHistogram().snapshot().getPercentile(50));
+	}
+
+	@Test
+	public void testSnapshotAndText() throws Exception {
+		MetricsRegistry registry = new MetricsRegistry();
+		registry.counter("a.count").add(3);
+		registry.histogram("b.time").record(TimeUnit.MILLISECONDS.toNanos(2));
+		registry.gauge("c.size", new Gauge() {
+			public long getValue() {
+				return 42;
+			}
+		});
+		assertSame(registry.counter("a.count"), registry.counter("a.count"));
+
+		Map<String, Long> snapshot = registry.snapshot();
+		assertEquals(Long.valueOf(3), snapshot.get("a.count"));
+		assertEquals(Long.valueOf(1), snapshot.get("b.time.count"));
+		assertEquals(Long.valueOf(2000), snapshot.get("b.time.max"));
+		assertEquals(Long.valueOf(42), snapshot.get("c.size"));
+		assertEquals(Long.valueOf(1), registry.read("b.time.count"));
+		assertNull(registry.read("missing"));
+
+		StringWriter text = new StringWriter();
+		registry.writeText(text);
+		assertTrue(text.toString().startsWith("a_count 3\nb_time_count 1\n"));
+		assertTrue(text.toString().endsWith("c_size 42\n"));
+
+		try {
+			registry.histogram("a.count");
+			fail("A counter cannot be read as a histogram");
+		} catch (IllegalArgumentException e) {
+		}
+	}
+
+	@Test
+	public void testMBean() throws Exception {
+		MetricsRegistry registry = new MetricsRegistry();
+		ObjectName name = MetricsMBean.register(registry, "test");
+		try {
+			registry.counter("late.counter").add(5);
+			assertEquals(5L, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "late.counter"));
+			assertEquals(1, ManagementFactory.getPlatformMBeanServer().getMBeanInfo(name).getAttributes().length);
+		} finally {
+			MetricsMBean.unregister(name);
+		}
+		assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+	}
+
+	@Test
+	public void testEndpoint() throws Exception {
+		MetricsRegistry registry = new MetricsRegistry();
+		registry.counter("served").add(7);
+		MetricsEndpoint endpoint = new MetricsEndpoint(registry, 0);
+		endpoint.start();
+		try {
+			URL url = new URL("http://localhost:" + endpoint.getAddress().getPort() + MetricsEndpoint.PATH);
+			HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+			assertEquals(200, connection.getResponseCode());
+			BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream(), "UTF-8"));
+			assertEquals("served 7", reader.readLine());
+			reader.close();
+		} finally {
+			endpoint.stop();
+		}
+	}
+
+	private void assertBetween(long min, long max, long value) {
+		assertTrue(value + " not between " + min + " and " + max, value >= min && value <= max);
+	}
+}
@@ -0,0 +1,68 @@
+package me.bcap.dht.node.filter;
+
+import static org.junit.Assert.*;
+
+import java.math.BigInteger;
+import java.net.InetAddress;
+
+import org.junit.Test;
+
+import me.bcap.dht.node.Identifier;
+import me.bcap.dht.node.Node;
+
+public class CountingBloomFilterTest {
+
+	private static final int KEYS = 1000;
+
+	@Test
+	public void testNoFalseNegatives() {
+		CountingBloomFilter filter = new CountingBloomFilter(KEYS, 0.01);
+		for (int i = 0; i < KEYS; i++)
+			filter.add(createKey(i));
+		for (int i = 0; i < KEYS; i += 2)
+			filter.remove(createKey(i));
+
+		for (int i = 1; i < KEYS; i += 2)
+			assertTrue(filter.mightContain(createKey(i)));
+	}
+
+	@Test
+	public void testFalsePositiveRate() {
+		CountingBloomFilter filter = new CountingBloomFilter(KEYS, 0.01);
+		for (int i = 0; i < KEYS; i++)
+			filter.add(createKey(i));
+
+		int falsePositives = 0;
+		for (int i = KEYS; i < KEYS * 11; i++)
+			if (filter.mightContain(createKey(i)))
+				falsePositives++;
+		assertTrue("false positives: " + falsePositives, falsePositives < KEYS * 10 * 0.03);
+	}
+
+	@Test
+	public void testSummaryMatchesFilter() {
+		CountingBloomFilter filter = new CountingBloomFilter(KEYS, 0.01);
+		for (int i = 0; i < KEYS; i++)
+			filter.add(createKey(i));
+
+		BloomFilter summary = filter.toBloomFilter();
+		for (int i = 0; i < KEYS * 5; i++)
+			assertEquals(filter.mightContain(createKey(i)), summary.mightContain(createKey(i)));
+	}
+
+	@Test
+	public void testFollowsNodeStorage() throws Exception {
+		Node node = new Node(BigInteger.ONE, InetAddress.getByName("localhost"), 5000);
+		Identifier key = createKey(7);
+
+		assertFalse(node.getKeyFilter().mightContain(key));
+		node.getDataStorage().put(key, "polaco".getBytes());
+		assertTrue(node.getKeyFilter().mightContain(key));
+		node.getDataStorage().remove(key);
+		assertFalse(node.getKeyFilter().mightContain(key));
+	}
+
+	private Identifier createKey(int i) {
+		return new Identifier(BigInteger.valueOf(i));
+	}
+}
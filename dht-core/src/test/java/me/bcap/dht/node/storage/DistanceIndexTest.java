@@ -0,0 +1,83 @@
+package me.bcap.dht.node.storage;
+
+import static org.junit.Assert.*;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import me.bcap.dht.node.DistanceComparator;
+import me.bcap.dht.node.Identifier;
+
+public class DistanceIndexTest {
+
+	private MemoryStorage storage;
+	private DistanceIndex index;
+	private List<Identifier> keys;
+	private Random random;
+
+	@Before
+	public void setUp() {
+		storage = new MemoryStorage();
+		index = new DistanceIndex();
+		storage.addListener(index);
+		keys = new ArrayList<Identifier>();
+		random = new Random(42);
+		for (int i = 0; i < 500; i++) {
+			Identifier key = new Identifier(new BigInteger(Identifier.LENGTH, random));
+			keys.add(key);
+			storage.put(key, new byte[] { (byte) i });
+		}
+	}
+
+	@Test
+	public void testClosestToFollowsDistance() {
+		for (int i = 0; i < 10; i++) {
+			Identifier target = new Identifier(new BigInteger(Identifier.LENGTH, random));
+			List<Identifier> expected = new ArrayList<Identifier>(keys);
+			Collections.sort(expected, new DistanceComparator(target));
+			assertEquals(expected, toList(index.closestTo(target)));
+		}
+	}
+
+	@Test
+	public void testCloserTo() {
+		Identifier target = new Identifier(new BigInteger(Identifier.LENGTH, random));
+		Identifier other = new Identifier(new BigInteger(Identifier.LENGTH, random));
+
+		List<Identifier> expected = new ArrayList<Identifier>();
+		for (Identifier key : keys)
+			if (key.getDistance(target).compareTo(key.getDistance(other)) < 0)
+				expected.add(key);
+		Collections.sort(expected, new DistanceComparator(target));
+
+		assertFalse(expected.isEmpty());
+		assertEquals(expected, toList(index.closerTo(target, other)));
+		assertFalse(index.closerTo(target, target).hasNext());
+	}
+
+	@Test
+	public void testFollowsRemovals() {
+		for (Identifier key : keys.subList(0, 250))
+			storage.remove(key);
+
+		List<Identifier> expected = new ArrayList<Identifier>(keys.subList(250, keys.size()));
+		Identifier target = keys.get(0);
+		Collections.sort(expected, new DistanceComparator(target));
+		assertEquals(250, index.size());
+		assertEquals(expected, toList(index.closestTo(target)));
+	}
+
+	private List<Identifier> toList(Iterator<Identifier> iterator) {
+		List<Identifier> list = new ArrayList<Identifier>();
+		while (iterator.hasNext())
+			list.add(iterator.next());
+		return list;
+	}
+}
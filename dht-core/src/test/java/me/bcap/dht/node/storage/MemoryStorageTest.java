@@ -0,0 +1,69 @@
+package me.bcap.dht.node.storage;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.math.BigInteger;
+
+import org.junit.Test;
+
+import me.bcap.dht.node.Identifier;
+
+public class MemoryStorageTest {
+
+	@Test
+	public void testIdenticalValuesAreShared() {
+		MemoryStorage storage = new MemoryStorage(true);
+		storage.put(createKey(1), "polaco".getBytes());
+		storage.put(createKey(2), "polaco".getBytes());
+		storage.put(createKey(3), "other".getBytes());
+
+		assertSame(storage.get(createKey(1)), storage.get(createKey(2)));
+		assertEquals(2, storage.getDistinctValues());
+		assertEquals(6, storage.getDeduplicatedBytes());
+
+		storage.remove(createKey(1));
+		assertArrayEquals("polaco".getBytes(), storage.get(createKey(2)));
+		assertEquals(0, storage.getDeduplicatedBytes());
+
+		storage.put(createKey(2), "other".getBytes());
+		assertSame(storage.get(createKey(2)), storage.get(createKey(3)));
+		assertEquals(1, storage.getDistinctValues());
+		assertEquals(5, storage.getDeduplicatedBytes());
+	}
+
+	@Test
+	public void testSharingSurvivesSerialization() throws Exception {
+		MemoryStorage storage = new MemoryStorage(true);
+		for (int i = 0; i < 10; i++)
+			storage.put(createKey(i), new byte[] { (byte) (i % 2) });
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(storage);
+		out.close();
+		MemoryStorage copy = (MemoryStorage) new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+
+		assertEquals(2, copy.getDistinctValues());
+		assertEquals(8, copy.getDeduplicatedBytes());
+		copy.remove(createKey(0));
+		assertEquals(7, copy.getDeduplicatedBytes());
+	}
+
+	@Test
+	public void testNotDeduplicatingByDefault() {
+		MemoryStorage storage = new MemoryStorage();
+		storage.put(createKey(1), "polaco".getBytes());
+		storage.put(createKey(2), "polaco".getBytes());
+
+		assertNotSame(storage.get(createKey(1)), storage.get(createKey(2)));
+		assertEquals(-1, storage.getDistinctValues());
+	}
+
+	private Identifier createKey(int i) {
+		return new Identifier(BigInteger.valueOf(i + 1));
+	}
+}
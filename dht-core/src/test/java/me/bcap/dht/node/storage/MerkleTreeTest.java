@@ -0,0 +1,110 @@
+package me.bcap.dht.node.storage;
+
+import static org.junit.Assert.*;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import me.bcap.dht.node.Identifier;
+
+public class MerkleTreeTest {
+
+	private List<Identifier> keys;
+
+	@Before
+	public void setUp() {
+		Random random = new Random(42);
+		keys = new ArrayList<Identifier>();
+		for (int i = 0; i < 1000; i++)
+			keys.add(new Identifier(new BigInteger(Identifier.LENGTH, random)));
+	}
+
+	@Test
+	public void testSameEntriesSameHashes() {
+		MemoryStorage storage1 = createStorage();
+		MemoryStorage storage2 = createStorage();
+		for (int i = 0; i < keys.size(); i++)
+			storage1.put(keys.get(i), value(i));
+		for (int i = keys.size() - 1; i >= 0; i--)
+			storage2.put(keys.get(i), value(i));
+
+		assertTreesEqual(storage1, storage2);
+	}
+
+	@Test
+	public void testUpdatesAndRemovals() {
+		MemoryStorage storage1 = createStorage();
+		MemoryStorage storage2 = createStorage();
+		for (int i = 0; i < keys.size(); i++) {
+			storage1.put(keys.get(i), value(i));
+			storage2.put(keys.get(i), value(i));
+		}
+
+		MerkleTree tree = getTree(storage1);
+		long root = tree.getHash(0, 0);
+		int leaf = tree.getLeaf(keys.get(0));
+		long leafHash = tree.getHash(tree.getDepth(), leaf);
+
+		storage1.put(keys.get(0), value(-1));
+		assertTrue(root != tree.getHash(0, 0));
+		assertTrue(leafHash != tree.getHash(tree.getDepth(), leaf));
+
+		storage1.put(keys.get(0), value(0));
+		assertEquals(root, tree.getHash(0, 0));
+
+		storage1.remove(keys.get(1));
+		storage2.remove(keys.get(1));
+		assertTreesEqual(storage1, storage2);
+
+		storage1.clear();
+		assertEquals(0, tree.getHash(0, 0));
+		assertTrue(tree.getLeafDigests(leaf).isEmpty());
+	}
+
+	@Test
+	public void testLeafDigests() {
+		MemoryStorage storage = createStorage();
+		for (int i = 0; i < keys.size(); i++)
+			storage.put(keys.get(i), value(i));
+
+		MerkleTree tree = getTree(storage);
+		int found = 0;
+		for (int leaf = 0; leaf < 1 << (tree.getDepth() * MerkleTree.BITS_PER_LEVEL); leaf++) {
+			long hash = 0;
+			for (Identifier key : tree.getLeafDigests(leaf).keySet()) {
+				assertEquals(leaf, tree.getLeaf(key));
+				hash ^= tree.getDigest(key);
+				found++;
+			}
+			assertEquals(hash, tree.getHash(tree.getDepth(), leaf));
+		}
+		assertEquals(keys.size(), found);
+	}
+
+	private void assertTreesEqual(MemoryStorage storage1, MemoryStorage storage2) {
+		MerkleTree tree1 = getTree(storage1);
+		MerkleTree tree2 = getTree(storage2);
+		for (int level = 0; level <= tree1.getDepth(); level++)
+			for (int position = 0; position < 1 << (level * MerkleTree.BITS_PER_LEVEL); position++)
+				assertEquals(tree1.getHash(level, position), tree2.getHash(level, position));
+	}
+
+	private MemoryStorage createStorage() {
+		MemoryStorage storage = new MemoryStorage();
+		storage.addListener(new MerkleTree());
+		return storage;
+	}
+
+	private MerkleTree getTree(MemoryStorage storage) {
+		return (MerkleTree) storage.getListeners().get(0);
+	}
+
+	private byte[] value(int i) {
+		return ("value " + i).getBytes();
+	}
+}
@@ -0,0 +1,100 @@
+package me.bcap.dht.node.storage;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.math.BigInteger;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import me.bcap.dht.node.Identifier;
+
+public class TieredStorageTest {
+
+	private static final int VALUE_SIZE = 1024;
+	private static final int HOT_VALUES = 10;
+
+	private File spillFile;
+	private TieredStorage storage;
+
+	@Before
+	public void setUp() throws Exception {
+		spillFile = File.createTempFile("tiered-storage", ".dat");
+		storage = new TieredStorage(spillFile, HOT_VALUES * VALUE_SIZE, VALUE_SIZE);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		storage.close();
+	}
+
+	@Test
+	public void testHotCapacityIsRespected() {
+		for (int i = 0; i < HOT_VALUES * 10; i++)
+			storage.put(createKey(i), createValue(i));
+
+		assertTrue(storage.getHotBytes() <= storage.getHotCapacity());
+		assertEquals(HOT_VALUES * 10, storage.size());
+	}
+
+	@Test
+	public void testGetFromBothTiers() {
+		for (int i = 0; i < HOT_VALUES * 10; i++)
+			storage.put(createKey(i), createValue(i));
+
+		for (int round = 0; round < 3; round++)
+			for (int i = 0; i < HOT_VALUES * 10; i++)
+				assertArrayEquals(createValue(i), storage.get(createKey(i)));
+
+		assertNull(storage.get(createKey(HOT_VALUES * 10)));
+		assertEquals(1, storage.getMisses());
+		assertEquals(HOT_VALUES * 30, storage.getHotHits() + storage.getColdHits());
+	}
+
+	@Test
+	public void testOverwriteAndRemove() {
+		for (int i = 0; i < HOT_VALUES * 10; i++)
+			storage.put(createKey(i), createValue(i));
+		for (int i = 0; i < HOT_VALUES * 10; i += 2)
+			storage.put(createKey(i), createValue(i + 1));
+		for (int i = 1; i < HOT_VALUES * 10; i += 2)
+			storage.remove(createKey(i));
+
+		assertEquals(HOT_VALUES * 5, storage.size());
+		for (int i = 0; i < HOT_VALUES * 10; i++) {
+			if (i % 2 == 0)
+				assertArrayEquals(createValue(i + 1), storage.get(createKey(i)));
+			else
+				assertFalse(storage.containsKey(createKey(i)));
+		}
+	}
+
+	@Test
+	public void testRangesFromBothTiers() {
+		for (int i = 0; i < HOT_VALUES * 10; i++)
+			storage.put(createKey(i), createValue(i));
+
+		for (int i = 0; i < HOT_VALUES * 10; i++) {
+			byte[] value = createValue(i);
+			assertEquals(VALUE_SIZE, storage.getLength(createKey(i)));
+			assertArrayEquals(Arrays.copyOfRange(value, 100, 300), storage.getRange(createKey(i), 100, 200));
+			assertArrayEquals(Arrays.copyOfRange(value, VALUE_SIZE - 24, VALUE_SIZE), storage.getRange(createKey(i), VALUE_SIZE - 24, 100));
+		}
+		assertEquals(-1, storage.getLength(createKey(HOT_VALUES * 10)));
+		assertNull(storage.getRange(createKey(HOT_VALUES * 10), 0, 10));
+	}
+
+	private Identifier createKey(int i) {
+		return new Identifier(BigInteger.valueOf(i));
+	}
+
+	private byte[] createValue(int i) {
+		byte[] value = new byte[VALUE_SIZE];
+		for (int j = 0; j < value.length; j++)
+			value[j] = (byte) (i + j);
+		return value;
+	}
+}
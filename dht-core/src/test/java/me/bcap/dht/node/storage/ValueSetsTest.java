@@ -0,0 +1,98 @@
+package me.bcap.dht.node.storage;
+
+import static org.junit.Assert.*;
+
+import java.math.BigInteger;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import me.bcap.dht.node.Identifier;
+
+public class ValueSetsTest {
+
+	private static final long TTL = 60000;
+
+	private ValueSets sets;
+	private Identifier key;
+
+	@Before
+	public void setUp() {
+		sets = new ValueSets();
+		key = new Identifier(BigInteger.valueOf(123456));
+	}
+
+	@Test
+	public void testElementsAreDeduplicated() {
+		assertTrue(sets.add(key, "peer-1".getBytes(), TTL));
+		assertTrue(sets.add(key, "peer-2".getBytes(), TTL));
+		assertFalse(sets.add(key, "peer-1".getBytes(), TTL));
+		assertEquals(2, sets.size(key));
+
+		Set<String> sample = toStrings(sets.sample(key, 10));
+		assertEquals(2, sample.size());
+		assertTrue(sample.contains("peer-1"));
+		assertTrue(sample.contains("peer-2"));
+	}
+
+	@Test
+	public void testSetsAreBounded() {
+		sets.setMaxElements(50);
+		for (int i = 0; i < 1000; i++)
+			sets.add(key, ("peer-" + i).getBytes(), TTL + i);
+		assertEquals(50, sets.size(key));
+	}
+
+	@Test
+	public void testSampleIsRandomAndDistinct() {
+		for (int i = 0; i < 100; i++)
+			sets.add(key, ("peer-" + i).getBytes(), TTL);
+
+		Set<String> seen = new HashSet<String>();
+		for (int round = 0; round < 20; round++) {
+			Set<String> sample = toStrings(sets.sample(key, 10));
+			assertEquals(10, sample.size());
+			seen.addAll(sample);
+		}
+		assertTrue(seen.size() > 50);
+	}
+
+	@Test
+	public void testExpiredElementsAreDropped() throws Exception {
+		sets.add(key, "short".getBytes(), 50);
+		sets.add(key, "long".getBytes(), TTL);
+		Identifier other = new Identifier(BigInteger.valueOf(654321));
+		sets.add(other, "short".getBytes(), 50);
+		Thread.sleep(100);
+
+		Set<String> sample = toStrings(sets.sample(key, 10));
+		assertEquals(1, sample.size());
+		assertTrue(sample.contains("long"));
+		assertEquals(1, sets.size(key));
+
+		// keys whose elements all expired go away as other keys are added to
+		for (int i = 0; i < 10 && sets.containsKey(other); i++)
+			sets.add(key, ("peer-" + i).getBytes(), TTL);
+		assertFalse(sets.containsKey(other));
+		assertTrue(sets.sample(other, 10).isEmpty());
+	}
+
+	@Test
+	public void testTtlIsCapped() throws Exception {
+		sets.setMaxTtl(50);
+		sets.add(key, "peer".getBytes(), TTL);
+		Thread.sleep(100);
+		assertTrue(sets.sample(key, 10).isEmpty());
+		assertFalse(sets.containsKey(key));
+	}
+
+	private Set<String> toStrings(List<byte[]> elements) {
+		Set<String> strings = new HashSet<String>();
+		for (byte[] element : elements)
+			strings.add(new String(element));
+		return strings;
+	}
+}
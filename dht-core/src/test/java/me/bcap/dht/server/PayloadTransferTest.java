@@ -0,0 +1,124 @@
+package me.bcap.dht.server;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import me.bcap.dht.client.ConcurrentMessageSender;
+import me.bcap.dht.client.operation.ChunkedFetch;
+import me.bcap.dht.client.operation.ChunkedStore;
+import me.bcap.dht.client.operation.FindValue;
+import me.bcap.dht.client.operation.FindValueResult;
+import me.bcap.dht.client.operation.Store;
+import me.bcap.dht.client.operation.StoreResult;
+import me.bcap.dht.node.Identifier;
+import me.bcap.dht.node.Node;
+import me.bcap.dht.node.storage.TieredStorage;
+
+/**
+ * Values sent through real sockets, as payloads following their messages
+ */
+public class PayloadTransferTest {
+
+	private static final int PORT = 5101;
+	private static final int VALUE_SIZE = 300000;
+	private static final int VALUES = 8;
+
+	private Server server;
+	private ConcurrentMessageSender sender;
+	private TieredStorage storage;
+	private File spillFile;
+	private Node client;
+	private Node holder;
+
+	@Before
+	public void setUp() throws Exception {
+		InetAddress ip = InetAddress.getByName("localhost");
+		server = new Server(ip, PORT);
+		server.addDefaultHandlers();
+		client = new Node(BigInteger.valueOf(1), ip, PORT);
+		holder = new Node(BigInteger.valueOf(2), ip, PORT);
+		// room for two values in memory, the others are served from the spill file
+		spillFile = File.createTempFile("payload-transfer", ".dat");
+		storage = new TieredStorage(spillFile, 2 * VALUE_SIZE);
+		holder.setDataStorage(storage);
+		server.addNode(holder);
+		client.updateContact(holder.asContact());
+		server.start();
+		sender = new ConcurrentMessageSender(4);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		sender.shutdown();
+		server.shutdown();
+		storage.close();
+	}
+
+	@Test
+	public void testStoreAndFindFromBothTiers() throws Exception {
+		for (int i = 0; i < VALUES; i++) {
+			Store store = new Store(client, holder.asContact(), createKey(i), createValue(i, VALUE_SIZE));
+			store.setMessageServer(sender);
+			StoreResult result = store.execute().get(5, TimeUnit.SECONDS);
+			assertNull(result.getException());
+		}
+
+		for (int i = 0; i < VALUES; i++) {
+			FindValue find = new FindValue(client, createKey(i));
+			find.setMessageServer(sender);
+			FindValueResult found = find.execute().get(5, TimeUnit.SECONDS);
+			assertTrue(found.isFound());
+			assertArrayEquals(createValue(i, VALUE_SIZE), found.getData());
+		}
+		assertTrue(storage.getColdHits() > 0);
+	}
+
+	@Test
+	public void testChunkedStoreFromFileAndRangeRead() throws Exception {
+		byte[] value = createValue(42, 3 * VALUE_SIZE + 17);
+		File file = File.createTempFile("payload-transfer", ".in");
+		file.deleteOnExit();
+		FileOutputStream output = new FileOutputStream(file);
+		output.write(value);
+		output.close();
+
+		ChunkedStore store = new ChunkedStore(client, holder.asContact(), createKey(42), file);
+		store.setMessageServer(sender);
+		store.setChunkSize(VALUE_SIZE / 3);
+		assertNull(store.execute().get(5, TimeUnit.SECONDS).getException());
+		assertArrayEquals(value, storage.get(createKey(42)));
+
+		// pushes the value to the spill file before reading it back in ranges
+		for (int i = 0; i < VALUES; i++)
+			storage.put(createKey(i), createValue(i, VALUE_SIZE));
+
+		ByteArrayOutputStream fetched = new ByteArrayOutputStream();
+		ChunkedFetch fetch = new ChunkedFetch(client, holder.asContact(), createKey(42), fetched, 1000, 2 * VALUE_SIZE);
+		fetch.setMessageServer(sender);
+		fetch.setChunkSize(VALUE_SIZE / 4);
+		assertEquals(2 * VALUE_SIZE, fetch.execute().get(5, TimeUnit.SECONDS).getTransferred());
+		assertArrayEquals(Arrays.copyOfRange(value, 1000, 1000 + 2 * VALUE_SIZE), fetched.toByteArray());
+	}
+
+	private Identifier createKey(int i) {
+		return new Identifier(BigInteger.valueOf(1000 + i));
+	}
+
+	private byte[] createValue(int seed, int size) {
+		byte[] value = new byte[size];
+		new Random(seed).nextBytes(value);
+		return value;
+	}
+}
@@ -0,0 +1,182 @@
+package me.bcap.dht.server;
+
+import static org.junit.Assert.*;
+
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import me.bcap.dht.client.ConcurrentMessageSender;
+import me.bcap.dht.client.ResponseHandler;
+import me.bcap.dht.client.operation.Ping;
+import me.bcap.dht.client.operation.PingResult;
+import me.bcap.dht.client.operation.Store;
+import me.bcap.dht.client.operation.StoreResult;
+import me.bcap.dht.message.request.FindNodeRequest;
+import me.bcap.dht.message.request.Opcodes;
+import me.bcap.dht.message.request.PingRequest;
+import me.bcap.dht.message.request.Request;
+import me.bcap.dht.message.request.StoreRequest;
+import me.bcap.dht.message.response.Response;
+import me.bcap.dht.metrics.MetricsRegistry;
+import me.bcap.dht.node.Identifier;
+import me.bcap.dht.node.Node;
+import me.bcap.dht.server.handler.PingRequestHandler;
+import me.bcap.dht.server.handler.StoreRequestHandler;
+
+/**
+ * Dispatch of requests to the thread that read them or to the storage pool, through real sockets
+ */
+public class ServerDispatchTest {
+
+	private static final int PORT = 5106;
+
+	private MetricsRegistry metrics;
+	private Server server;
+	private ConcurrentMessageSender sender;
+	private Node client;
+	private Node node;
+
+	private CountDownLatch storing = new CountDownLatch(1);
+	private CountDownLatch release = new CountDownLatch(1);
+
+	@Before
+	public void setUp() throws Exception {
+		InetAddress ip = InetAddress.getByName("localhost");
+		metrics = new MetricsRegistry();
+		server = new Server(ip, PORT);
+		server.setMetrics(metrics);
+		server.addDefaultHandlers();
+		// stores hold their storage thread until released
+		server.addHandler(StoreRequest.class, new StoreRequestHandler() {
+			public Response handleImpl(Node node, Request request) {
+				storing.countDown();
+				try {
+					release.await(10, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return super.handleImpl(node, request);
+			}
+		}, server.getStorageExecutor());
+		server.setStoragePoolSize(1);
+		server.setStorageQueueSize(1);
+		client = new Node(BigInteger.valueOf(1), ip, PORT);
+		node = new Node(BigInteger.valueOf(2), ip, PORT);
+		server.addNode(node);
+		server.start();
+		sender = new ConcurrentMessageSender(8);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		release.countDown();
+		sender.shutdown();
+		server.shutdown();
+	}
+
+	@Test
+	public void testPingsAreNotHeldUpByStores() throws Exception {
+		Future<StoreResult> blocked = store(1);
+		assertTrue(storing.await(5, TimeUnit.SECONDS));
+
+		for (int i = 0; i < 5; i++)
+			assertNull(ping().getException());
+
+		release.countDown();
+		assertNull(blocked.get(5, TimeUnit.SECONDS).getException());
+	}
+
+	@Test
+	public void testFullStoragePoolRejects() throws Exception {
+		List<Future<StoreResult>> stores = new ArrayList<Future<StoreResult>>();
+		stores.add(store(1));
+		assertTrue(storing.await(5, TimeUnit.SECONDS));
+		stores.add(store(2));
+		for (int i = 0; i < 100 && server.getStorageThreadPool().getQueue().isEmpty(); i++)
+			Thread.sleep(10);
+
+		// one store is running and one is queued, the next one is turned down straight away
+		StoreResult rejected = store(3).get(5, TimeUnit.SECONDS);
+		assertTrue(rejected.getException() instanceof ServerException);
+		assertEquals(Long.valueOf(1), metrics.read("server.requests.StoreRequest.rejected"));
+
+		release.countDown();
+		for (Future<StoreResult> store : stores)
+			assertNull(store.get(5, TimeUnit.SECONDS).getException());
+		assertEquals(Long.valueOf(2), metrics.read("server.requests.StoreRequest.handled"));
+	}
+
+	@Test
+	public void testDispatchTable() throws Exception {
+		assertEquals(Opcodes.PING, new PingRequest().getOpcode());
+		assertEquals(Opcodes.of(FindNodeRequest.class), new FindNodeRequest().getOpcode());
+		assertTrue(Opcodes.of(CustomRequest.class) >= Opcodes.BUILT_IN);
+		assertEquals(Opcodes.of(CustomRequest.class), Opcodes.of(CustomRequest.class));
+
+		assertNull(server.getExecutor(PingRequest.class));
+		assertNull(server.getExecutor(FindNodeRequest.class));
+		assertSame(server.getStorageExecutor(), server.getExecutor(StoreRequest.class));
+		assertTrue(server.getHandledTypes().contains(StoreRequest.class));
+
+		// a subclass of a built-in type only reaches its own handler
+		assertNotNull(send(new CustomRequest()));
+		server.addHandler(CustomRequest.class, new PingRequestHandler());
+		assertNull(send(new CustomRequest()));
+		assertTrue(server.getHandledTypes().contains(CustomRequest.class));
+
+		server.setExecutor(StoreRequest.class, null);
+		assertNull(server.getExecutor(StoreRequest.class));
+		release.countDown();
+		assertNull(store(4).get(5, TimeUnit.SECONDS).getException());
+		assertNotNull(server.removeHandler(StoreRequest.class));
+		assertNull(server.getHandler(StoreRequest.class));
+	}
+
+	private Future<StoreResult> store(int key) {
+		Store store = new Store(client, node.asContact(), new Identifier(BigInteger.valueOf(key)), new byte[100]);
+		store.setMessageServer(sender);
+		return store.execute();
+	}
+
+	private PingResult ping() throws Exception {
+		Ping ping = new Ping(client, node.asContact());
+		ping.setMessageServer(sender);
+		return ping.execute().get(5, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Sends the request to the node, returning the exception it failed with if any
+	 */
+	private Exception send(Request request) throws Exception {
+		request.setSource(client.asContact());
+		request.setDestination(node.asContact());
+		final CountDownLatch done = new CountDownLatch(1);
+		final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+		sender.send(request, new ResponseHandler() {
+			public void handleResponse(Response response) {
+				done.countDown();
+			}
+
+			public void handleException(Exception exception) {
+				failure.set(exception);
+				done.countDown();
+			}
+		});
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		return failure.get();
+	}
+
+	static class CustomRequest extends PingRequest {
+		private static final long serialVersionUID = 1L;
+	}
+}
@@ -0,0 +1,127 @@
+package me.bcap.dht.server;
+
+import static org.junit.Assert.*;
+
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.SocketTimeoutException;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import me.bcap.dht.client.ConcurrentMessageSender;
+import me.bcap.dht.client.ResponseHandler;
+import me.bcap.dht.client.operation.Ping;
+import me.bcap.dht.client.operation.PingResult;
+import me.bcap.dht.client.operation.Store;
+import me.bcap.dht.message.request.PingRequest;
+import me.bcap.dht.message.response.Response;
+import me.bcap.dht.metrics.MetricsRegistry;
+import me.bcap.dht.node.Contact;
+import me.bcap.dht.node.Identifier;
+import me.bcap.dht.node.Node;
+
+/**
+ * Metrics of a server and a sender sharing one registry, through real sockets
+ */
+public class ServerMetricsTest {
+
+	private static final int PORT = 5103;
+	private static final int SILENT_PORT = 5104;
+
+	private MetricsRegistry metrics;
+	private Server server;
+	private ConcurrentMessageSender sender;
+	private Node client;
+	private Node node;
+
+	@Before
+	public void setUp() throws Exception {
+		InetAddress ip = InetAddress.getByName("localhost");
+		metrics = new MetricsRegistry();
+		server = new Server(ip, PORT);
+		server.setMetrics(metrics);
+		server.addDefaultHandlers();
+		client = new Node(BigInteger.valueOf(1), ip, PORT);
+		node = new Node(BigInteger.valueOf(2), ip, PORT);
+		server.addNode(node);
+		server.start();
+		sender = new ConcurrentMessageSender(4);
+		sender.setMetrics(metrics);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		sender.shutdown();
+		server.shutdown();
+	}
+
+	@Test
+	public void testRequestsAndBytes() throws Exception {
+		for (int i = 0; i < 5; i++)
+			assertNull(ping(node.asContact()).getException());
+		Store store = new Store(client, node.asContact(), new Identifier(BigInteger.valueOf(77)), new byte[10000]);
+		store.setMessageServer(sender);
+		assertNull(store.execute().get(5, TimeUnit.SECONDS).getException());
+		// no node 3 on the server, the handler fails
+		assertNotNull(ping(new Contact(BigInteger.valueOf(3), node.getIp(), PORT)).getException());
+
+		Map<String, Long> values = metrics.snapshot();
+		assertEquals(Long.valueOf(7), values.get("server.connections.accepted"));
+		assertEquals(Long.valueOf(6), values.get("server.requests.PingRequest.received"));
+		assertEquals(Long.valueOf(5), values.get("server.requests.PingRequest.handled"));
+		assertEquals(Long.valueOf(1), values.get("server.requests.PingRequest.failed"));
+		assertEquals(Long.valueOf(6), values.get("server.requests.PingRequest.time.count"));
+		assertEquals(Long.valueOf(1), values.get("server.requests.StoreRequest.handled"));
+		assertEquals(Long.valueOf(7), values.get("sender.requests.sent"));
+		assertEquals(Long.valueOf(6), values.get("sender.responses"));
+		assertEquals(Long.valueOf(1), values.get("sender.errors"));
+		assertEquals(Long.valueOf(0), values.get("sender.timeouts"));
+		assertEquals(Long.valueOf(6), values.get("sender.latency.count"));
+		assertEquals(Long.valueOf(0), values.get("sender.inFlight"));
+		assertTrue(values.get("server.bytes.in") > 10000);
+		assertTrue(values.get("sender.bytes.out") >= values.get("server.bytes.in"));
+		assertTrue(values.get("server.bytes.out") > 0);
+		assertTrue(values.get("server.pool.size") > 0);
+	}
+
+	@Test
+	public void testTimeout() throws Exception {
+		ServerSocket silent = new ServerSocket(SILENT_PORT);
+		try {
+			PingRequest request = new PingRequest();
+			request.setDestination(new Contact(BigInteger.valueOf(2), node.getIp(), SILENT_PORT));
+			request.setTimeout(200);
+			final CountDownLatch done = new CountDownLatch(1);
+			final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+			sender.send(request, new ResponseHandler() {
+				public void handleResponse(Response response) {
+					done.countDown();
+				}
+
+				public void handleException(Exception exception) {
+					failure.set(exception);
+					done.countDown();
+				}
+			});
+			assertTrue(done.await(5, TimeUnit.SECONDS));
+			assertTrue(failure.get() instanceof SocketTimeoutException);
+			assertEquals(Long.valueOf(1), metrics.read("sender.timeouts"));
+			assertEquals(Long.valueOf(0), metrics.read("sender.errors"));
+		} finally {
+			silent.close();
+		}
+	}
+
+	private PingResult ping(Contact destination) throws Exception {
+		Ping ping = new Ping(client, destination);
+		ping.setMessageServer(sender);
+		return ping.execute().get(5, TimeUnit.SECONDS);
+	}
+}
@@ -0,0 +1,129 @@
+package me.bcap.dht.server;
+
+import static org.junit.Assert.*;
+
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import me.bcap.dht.client.ConcurrentMessageSender;
+import me.bcap.dht.client.operation.Ping;
+import me.bcap.dht.client.operation.PingResult;
+import me.bcap.dht.client.operation.Store;
+import me.bcap.dht.message.request.PingRequest;
+import me.bcap.dht.message.request.Request;
+import me.bcap.dht.message.response.Response;
+import me.bcap.dht.node.Identifier;
+import me.bcap.dht.node.Node;
+import me.bcap.dht.server.handler.PingRequestHandler;
+
+/**
+ * Virtual nodes pinned to shards, their requests answered from memory only ever handled by the thread of their shard
+ */
+public class ServerNodeShardTest {
+
+	private static final int PORT = 5108;
+	private static final int SHARDS = 4;
+	private static final int NODES = 64;
+
+	private Server server;
+	private ConcurrentMessageSender sender;
+	private Node client;
+	private List<Node> nodes = new ArrayList<Node>();
+
+	private ConcurrentMap<Identifier, Set<String>> servingThreads = new ConcurrentHashMap<Identifier, Set<String>>();
+
+	@Before
+	public void setUp() throws Exception {
+		InetAddress ip = InetAddress.getByName("localhost");
+		server = new Server(ip, PORT);
+		server.setNodeShards(SHARDS);
+		server.addDefaultHandlers();
+		server.addHandler(PingRequest.class, new PingRequestHandler() {
+			public Response handleImpl(Node node, Request request) {
+				Set<String> threads = Collections.synchronizedSet(new HashSet<String>());
+				Set<String> existing = servingThreads.putIfAbsent(node.asIdentifier(), threads);
+				(existing != null ? existing : threads).add(Thread.currentThread().getName());
+				return super.handleImpl(node, request);
+			}
+		});
+		client = new Node(BigInteger.valueOf(100000), ip, PORT);
+		for (int i = 0; i < NODES; i++) {
+			Node node = new Node(BigInteger.valueOf(i * 7919L), ip, PORT);
+			nodes.add(node);
+			server.addNode(node);
+		}
+		server.start();
+		sender = new ConcurrentMessageSender(8);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		sender.shutdown();
+		server.shutdown();
+	}
+
+	@Test
+	public void testNodesStayOnTheirShard() throws Exception {
+		List<Future<PingResult>> pings = new ArrayList<Future<PingResult>>();
+		for (int round = 0; round < 3; round++) {
+			for (Node node : nodes) {
+				Ping ping = new Ping(client, node.asContact());
+				ping.setMessageServer(sender);
+				pings.add(ping.execute());
+			}
+		}
+		for (Future<PingResult> ping : pings)
+			assertNull(ping.get(5, TimeUnit.SECONDS).getException());
+
+		Set<String> allThreads = new HashSet<String>();
+		for (Node node : nodes) {
+			Set<String> threads = servingThreads.get(node.asIdentifier());
+			assertEquals(1, threads.size());
+			String thread = threads.iterator().next();
+			assertEquals(server.getName() + "-node-shard-" + server.getNodeShard(node), thread);
+			allThreads.add(thread);
+		}
+		assertEquals(SHARDS, allThreads.size());
+
+	}
+
+	@Test
+	public void testStorageRequestsLeaveTheShard() throws Exception {
+		Node node = nodes.get(5);
+		long shardTasks = server.getNodeShardThread(server.getNodeShard(node)).getCompletedTaskCount();
+		Store store = new Store(client, node.asContact(), new Identifier(BigInteger.valueOf(42)), new byte[100]);
+		store.setMessageServer(sender);
+		assertNull(store.execute().get(5, TimeUnit.SECONDS).getException());
+		assertNotNull(node.getDataStorage().get(new Identifier(BigInteger.valueOf(42))));
+
+		// the store went to the storage pool, the shard of the node never saw it
+		for (int i = 0; i < 100 && server.getStorageThreadPool().getCompletedTaskCount() < 1; i++)
+			Thread.sleep(10);
+		assertEquals(1, server.getStorageThreadPool().getCompletedTaskCount());
+		assertEquals(shardTasks, server.getNodeShardThread(server.getNodeShard(node)).getCompletedTaskCount());
+	}
+
+	@Test
+	public void testPinning() throws Exception {
+		for (Node node : nodes) {
+			int shard = server.getNodeShard(node);
+			assertTrue(shard >= 0 && shard < SHARDS);
+			assertEquals(shard, server.getNodeShard(new Identifier(node.getValue())));
+			assertNotNull(server.getNodeShardExecutor(node));
+		}
+		assertEquals(-1, new Server(PORT).getNodeShard(client));
+	}
+}
@@ -0,0 +1,129 @@
+package me.bcap.dht.server;
+
+import static org.junit.Assert.*;
+
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import me.bcap.dht.client.ConcurrentMessageSender;
+import me.bcap.dht.client.operation.Ping;
+import me.bcap.dht.client.operation.PingResult;
+import me.bcap.dht.client.operation.Store;
+import me.bcap.dht.node.Identifier;
+import me.bcap.dht.node.Node;
+
+/**
+ * A server split in connection shards, each serving the connections handed to it by the acceptor in turn
+ */
+public class ServerShardTest {
+
+	private static final int PORT = 5107;
+	private static final int SHARDS = 4;
+
+	private Server server;
+	private ConcurrentMessageSender sender;
+	private Node client;
+	private Node node;
+
+	@Before
+	public void setUp() throws Exception {
+		InetAddress ip = InetAddress.getByName("localhost");
+		server = new Server(ip, PORT);
+		server.setConnectionShards(SHARDS);
+		server.setConnectionShardReadTimeout(200);
+		server.addDefaultHandlers();
+		client = new Node(BigInteger.valueOf(1), ip, PORT);
+		node = new Node(BigInteger.valueOf(2), ip, PORT);
+		server.addNode(node);
+		server.start();
+		sender = new ConcurrentMessageSender(8);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		sender.shutdown();
+		server.shutdown();
+	}
+
+	@Test
+	public void testShards() throws Exception {
+		assertNull(server.getWorkerThreadPool());
+
+		List<Future<PingResult>> pings = new ArrayList<Future<PingResult>>();
+		for (int i = 0; i < 200; i++) {
+			Ping ping = new Ping(client, node.asContact());
+			ping.setMessageServer(sender);
+			pings.add(ping.execute());
+		}
+		for (Future<PingResult> ping : pings)
+			assertNull(ping.get(5, TimeUnit.SECONDS).getException());
+
+		// the connections were handed to the shards in turn
+		for (int i = 0; i < SHARDS; i++) {
+			for (int j = 0; j < 100 && server.getConnectionShardThread(i).getCompletedTaskCount() < 50; j++)
+				Thread.sleep(10);
+			assertEquals(50, server.getConnectionShardThread(i).getCompletedTaskCount());
+		}
+		assertEquals(Long.valueOf(200), server.getMetrics().read("server.connections.accepted"));
+	}
+
+	@Test
+	public void testStorageRequestsLeaveTheShard() throws Exception {
+		Store store = new Store(client, node.asContact(), new Identifier(BigInteger.valueOf(3)), "value".getBytes());
+		store.setMessageServer(sender);
+		assertNull(store.execute().get(5, TimeUnit.SECONDS).getException());
+
+		// the shard handed the store to the storage pool, which counts it once done writing the response
+		assertEquals(1, node.getDataStorage().size());
+		for (int i = 0; i < 100 && server.getStorageThreadPool().getCompletedTaskCount() < 1; i++)
+			Thread.sleep(10);
+		assertEquals(1, server.getStorageThreadPool().getCompletedTaskCount());
+	}
+
+	@Test
+	public void testIdleClientsDoNotStallShards() throws Exception {
+		// one connection sending nothing on every shard
+		List<Socket> idle = new ArrayList<Socket>();
+		for (int i = 0; i < SHARDS; i++)
+			idle.add(new Socket(InetAddress.getByName("localhost"), PORT));
+		try {
+			Ping ping = new Ping(client, node.asContact());
+			ping.setMessageServer(sender);
+			assertNull(ping.execute().get(5, TimeUnit.SECONDS).getException());
+		} finally {
+			for (Socket socket : idle)
+				socket.close();
+		}
+	}
+
+	@Test
+	public void testSettings() throws Exception {
+		try {
+			server.setConnectionShards(2);
+			fail("The connection shards of a running server cannot change");
+		} catch (IllegalStateException e) {
+		}
+		try {
+			new Server(PORT).setConnectionShards(-1);
+			fail("The number of connection shards cannot be negative");
+		} catch (IllegalArgumentException e) {
+		}
+		Server both = new Server(PORT);
+		both.setConnectionShards(2);
+		both.setNodeShards(2);
+		try {
+			both.start();
+			fail("Connection shards and node shards cannot be combined");
+		} catch (IllegalStateException e) {
+		}
+	}
+}
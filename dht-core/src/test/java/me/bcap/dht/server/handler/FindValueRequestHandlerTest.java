@@ -0,0 +1,128 @@
+package me.bcap.dht.server.handler;
+
+import static org.junit.Assert.*;
+
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import me.bcap.dht.message.request.FindValueRequest;
+import me.bcap.dht.message.response.FindValueResponse;
+import me.bcap.dht.message.response.Response;
+import me.bcap.dht.node.Identifier;
+import me.bcap.dht.node.Node;
+import me.bcap.dht.node.storage.MemoryStorage;
+import me.bcap.dht.node.storage.StoredValue;
+
+public class FindValueRequestHandlerTest {
+
+	private Node node;
+	private Identifier key;
+	private FindValueRequestHandler handler;
+
+	private AtomicInteger reads = new AtomicInteger();
+	private AtomicInteger opens = new AtomicInteger();
+	private CountDownLatch reading = new CountDownLatch(1);
+	private CountDownLatch release = new CountDownLatch(1);
+
+	@Before
+	public void setUp() throws Exception {
+		node = new Node(BigInteger.valueOf(1), InetAddress.getByName("localhost"), 5000);
+		// reads of the key block until released
+		node.setDataStorage(new MemoryStorage() {
+			public int getLength(Identifier key) {
+				reads.incrementAndGet();
+				reading.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return super.getLength(key);
+			}
+
+			public StoredValue openValue(Identifier key) {
+				opens.incrementAndGet();
+				return super.openValue(key);
+			}
+		});
+		key = new Identifier(BigInteger.valueOf(123456));
+		node.getDataStorage().put(key, "value".getBytes());
+		handler = new FindValueRequestHandler();
+	}
+
+	@Test
+	public void testConcurrentReadsAreCollapsed() throws Exception {
+		handler.setCollapseReads(true);
+		List<Lookup> lookups = new ArrayList<Lookup>();
+		for (int i = 0; i < 4; i++)
+			lookups.add(new Lookup());
+		lookups.get(0).start();
+		reading.await();
+		for (Lookup lookup : lookups.subList(1, lookups.size()))
+			lookup.start();
+		Thread.sleep(100);
+		release.countDown();
+
+		for (Lookup lookup : lookups) {
+			lookup.join(5000);
+			assertEquals("value", new String(((FindValueResponse) lookup.response).getData()));
+		}
+		assertEquals(1, reads.get());
+		assertEquals(1, opens.get());
+		assertEquals(3, handler.getCollapsedReads());
+	}
+
+	@Test
+	public void testLargeValuesAreNotShared() throws Exception {
+		handler.setCollapseReads(true);
+		handler.setSharedReadLimit(2);
+		List<Lookup> lookups = new ArrayList<Lookup>();
+		for (int i = 0; i < 4; i++)
+			lookups.add(new Lookup());
+		lookups.get(0).start();
+		reading.await();
+		for (Lookup lookup : lookups.subList(1, lookups.size()))
+			lookup.start();
+		Thread.sleep(100);
+		release.countDown();
+
+		// the length is read once but every request opens its own handle
+		for (Lookup lookup : lookups) {
+			lookup.join(5000);
+			assertEquals("value", new String(((FindValueResponse) lookup.response).getData()));
+		}
+		assertEquals(1, reads.get());
+		assertEquals(4, opens.get());
+		assertEquals(3, handler.getCollapsedReads());
+	}
+
+	@Test
+	public void testReadsAreNotCollapsedByDefault() throws Exception {
+		release.countDown();
+		for (int i = 0; i < 2; i++) {
+			Lookup lookup = new Lookup();
+			lookup.start();
+			lookup.join(5000);
+			assertEquals("value", new String(((FindValueResponse) lookup.response).getData()));
+		}
+		assertEquals(2, reads.get());
+		assertEquals(0, handler.getCollapsedReads());
+	}
+
+	class Lookup extends Thread {
+		private volatile Response response;
+
+		public void run() {
+			FindValueRequest request = new FindValueRequest();
+			request.setIdentifier(key);
+			response = handler.handleImpl(node, request);
+		}
+	}
+}
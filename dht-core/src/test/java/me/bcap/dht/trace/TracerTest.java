@@ -0,0 +1,128 @@
+package me.bcap.dht.trace;
+
+import static org.junit.Assert.*;
+
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import me.bcap.dht.client.InProcessSender;
+import me.bcap.dht.client.MessageSender;
+import me.bcap.dht.client.operation.FindValue;
+import me.bcap.dht.client.operation.FindValueResult;
+import me.bcap.dht.message.request.Request;
+import me.bcap.dht.message.response.Response;
+import me.bcap.dht.node.Identifier;
+import me.bcap.dht.node.Node;
+import me.bcap.dht.server.Server;
+import me.bcap.dht.server.handler.RequestHandlerException;
+
+/**
+ * Lookups over a chain of nodes, each knowing only the next one, so that every hop is a level of the trace
+ */
+public class TracerTest {
+
+	private Server server;
+	private Node source;
+	private List<Node> chain;
+	private Identifier key = new Identifier(BigInteger.valueOf(1000));
+
+	private List<Request> requests = new ArrayList<Request>();
+	private List<Response> responses = new ArrayList<Response>();
+	private MessageSender sender;
+
+	@Before
+	public void setUp() throws Exception {
+		InetAddress ip = InetAddress.getByName("localhost");
+		server = new Server(ip, 5000);
+		server.addDefaultHandlers();
+		source = new Node(BigInteger.valueOf(1), ip, 5000);
+		chain = new ArrayList<Node>();
+		for (int id : new int[] { 900, 990, 999 }) {
+			Node node = new Node(BigInteger.valueOf(id), ip, 5000);
+			chain.add(node);
+			server.addNode(node);
+		}
+		source.updateContact(chain.get(0).asContact());
+		chain.get(0).updateContact(chain.get(1).asContact());
+		chain.get(1).updateContact(chain.get(2).asContact());
+		chain.get(2).getDataStorage().put(key, "traced".getBytes());
+
+		sender = new InProcessSender(server) {
+			public Response handle(Request request) throws RequestHandlerException {
+				requests.add(request);
+				Response response = super.handle(request);
+				responses.add(response);
+				return response;
+			}
+		};
+	}
+
+	@Test
+	public void testTraceFollowsHops() throws Exception {
+		FindValue findValue = new FindValue(source, key);
+		findValue.setMessageServer(sender);
+		findValue.setTracer(new Tracer(1));
+		FindValueResult result = findValue.execute().get(5, TimeUnit.SECONDS);
+		assertTrue(result.isFound());
+
+		Trace trace = findValue.getTrace();
+		assertNotNull(trace);
+		assertTrue(trace.isFinished());
+		assertEquals(3, trace.getSpanCount());
+		assertEquals(3, trace.getDepth());
+
+		Span span = trace.getRoot();
+		for (Node node : chain) {
+			assertEquals(1, span.getChildren().size());
+			span = span.getChildren().get(0);
+			assertEquals("FindValueRequest", span.getName());
+			assertEquals(node.asIdentifier(), span.getDestination().asIdentifier());
+			assertEquals(node.asIdentifier(), span.getResponder().asIdentifier());
+			assertTrue(span.getHandlerTime() >= 0);
+			assertTrue(span.getDuration() >= span.getHandlerTime());
+			assertTrue(span.getReceiveTime() >= span.getSendTime());
+		}
+		assertNull(span.getReturned());
+		assertEquals(chain.get(1).asIdentifier(), trace.getRoot().getChildren().get(0).getReturned().get(0).asIdentifier());
+
+		for (Request request : requests)
+			assertEquals(trace.getId(), request.getTraceId());
+		for (Response response : responses)
+			assertEquals(trace.getId(), response.getTraceId());
+		assertTrue(trace.toString().contains("FindValueRequest to"));
+	}
+
+	@Test
+	public void testFailedHop() throws Exception {
+		server.removeNode(chain.get(1));
+		FindValue findValue = new FindValue(source, key);
+		findValue.setMessageServer(sender);
+		findValue.setTracer(new Tracer(1));
+		assertFalse(findValue.execute().get(5, TimeUnit.SECONDS).isFound());
+
+		Span failed = findValue.getTrace().getRoot().getChildren().get(0).getChildren().get(0);
+		assertEquals(chain.get(1).asIdentifier(), failed.getDestination().asIdentifier());
+		assertNull(failed.getResponder());
+		assertTrue(failed.getError().startsWith("RequestHandlerException"));
+	}
+
+	@Test
+	public void testNotSampled() throws Exception {
+		FindValue findValue = new FindValue(source, key);
+		findValue.setMessageServer(sender);
+		findValue.setTracer(new Tracer(0));
+		assertTrue(findValue.execute().get(5, TimeUnit.SECONDS).isFound());
+
+		assertNull(findValue.getTrace());
+		for (Request request : requests)
+			assertEquals(0, request.getTraceId());
+		for (Response response : responses)
+			assertEquals(-1, response.getHandlerTime());
+	}
+}
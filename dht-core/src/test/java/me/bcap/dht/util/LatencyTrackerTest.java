@@ -0,0 +1,45 @@
+package me.bcap.dht.util;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class LatencyTrackerTest {
+
+	@Test
+	public void testPercentiles() {
+		LatencyTracker tracker = new LatencyTracker(100, 10);
+		assertEquals(-1, tracker.getPercentile(50));
+		for (int i = 1; i <= 100; i++)
+			tracker.record(i);
+
+		assertEquals(50, tracker.getPercentile(50));
+		assertEquals(99, tracker.getPercentile(99));
+		assertEquals(100, tracker.getPercentile(100));
+		assertEquals(1, tracker.getPercentile(0));
+	}
+
+	@Test
+	public void testRefreshedEveryInterval() {
+		LatencyTracker tracker = new LatencyTracker(100, 10);
+		for (int i = 0; i < 100; i++)
+			tracker.record(1);
+		assertEquals(1, tracker.getPercentile(100));
+
+		// fewer new samples than the interval are not seen yet
+		for (int i = 0; i < 9; i++)
+			tracker.record(1000);
+		assertEquals(1, tracker.getPercentile(100));
+		tracker.record(1000);
+		assertEquals(1000, tracker.getPercentile(100));
+	}
+
+	@Test
+	public void testFillingWindowIsTracked() {
+		LatencyTracker tracker = new LatencyTracker(1000, 64);
+		tracker.record(5);
+		assertEquals(5, tracker.getPercentile(50));
+		tracker.record(7);
+		assertEquals(7, tracker.getPercentile(100));
+	}
+}
@@ -0,0 +1,53 @@
+package me.bcap.dht.util;
+
+import java.util.Random;
+
+/**
+ * Measures the encode and decode throughput of {@link ReedSolomon}, in megabytes of value data per second. Decoding
+ * rebuilds as many data shards as there are parity shards, the worst case for a read. Run it with the data shards,
+ * parity shards and value size as optional arguments
+ */
+public class ReedSolomonBenchmark {
+
+	private static final int WARMUP_SECONDS = 2;
+	private static final int MEASURE_SECONDS = 5;
+
+	public static void main(String[] args) {
+		int dataShards = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+		int parityShards = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+		int valueSize = args.length > 2 ? Integer.parseInt(args[2]) : 1024 * 1024;
+
+		ReedSolomon codec = new ReedSolomon(dataShards, parityShards);
+		int shardSize = (valueSize + dataShards - 1) / dataShards;
+		byte[][] shards = new byte[dataShards + parityShards][shardSize];
+		Random random = new Random(42);
+		for (int i = 0; i < dataShards; i++)
+			random.nextBytes(shards[i]);
+
+		boolean[] present = new boolean[shards.length];
+		for (int i = 0; i < shards.length; i++)
+			present[i] = i >= Math.min(parityShards, dataShards);
+
+		System.out.println("Reed-Solomon " + dataShards + "+" + parityShards + ", values of " + valueSize + " bytes");
+		run("encode", codec, shards, present, true, WARMUP_SECONDS);
+		run("decode", codec, shards, present, false, WARMUP_SECONDS);
+		System.out.println(run("encode", codec, shards, present, true, MEASURE_SECONDS));
+		System.out.println(run("decode", codec, shards, present, false, MEASURE_SECONDS));
+	}
+
+	private static String run(String name, ReedSolomon codec, byte[][] shards, boolean[] present, boolean encode, int seconds) {
+		long bytes = 0;
+		long start = System.nanoTime();
+		long end = start + seconds * 1000000000L;
+		long now;
+		do {
+			if (encode)
+				codec.encode(shards);
+			else
+				codec.decode(shards, present);
+			bytes += (long) shards[0].length * codec.getDataShards();
+			now = System.nanoTime();
+		} while (now < end);
+		return String.format("%s: %.1f MB/s", name, bytes / 1048576.0 / ((now - start) / 1e9));
+	}
+}
@@ -0,0 +1,54 @@
+package me.bcap.dht.util;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class ReedSolomonTest {
+
+	@Test
+	public void testRebuildsFromAnyDataShardsCount() {
+		int dataShards = 4;
+		int parityShards = 3;
+		ReedSolomon codec = new ReedSolomon(dataShards, parityShards);
+		byte[][] original = createShards(dataShards, parityShards, 1000);
+		codec.encode(original);
+
+		int total = dataShards + parityShards;
+		for (int lost = 0; lost < 1 << total; lost++) {
+			if (Integer.bitCount(lost) > parityShards)
+				continue;
+			byte[][] shards = new byte[total][];
+			boolean[] present = new boolean[total];
+			for (int i = 0; i < total; i++) {
+				present[i] = (lost & (1 << i)) == 0;
+				shards[i] = present[i] ? original[i].clone() : null;
+			}
+
+			assertTrue(codec.decode(shards, present));
+			for (int i = 0; i < total; i++)
+				assertTrue("shard " + i + " with lost mask " + lost, Arrays.equals(original[i], shards[i]));
+		}
+	}
+
+	@Test
+	public void testTooManyLost() {
+		ReedSolomon codec = new ReedSolomon(4, 2);
+		byte[][] shards = createShards(4, 2, 100);
+		codec.encode(shards);
+
+		boolean[] present = { true, false, true, false, false, true };
+		assertFalse(codec.decode(shards, present));
+	}
+
+	private byte[][] createShards(int dataShards, int parityShards, int length) {
+		Random random = new Random(42);
+		byte[][] shards = new byte[dataShards + parityShards][length];
+		for (int i = 0; i < dataShards; i++)
+			random.nextBytes(shards[i]);
+		return shards;
+	}
+}
@@ -0,0 +1,21 @@
+package me.bcap.dht.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("me.bcap.dht.Accept")
+@Label("Connection Accepted")
+@Category({ "DHT", "Server" })
+@Description("A server accepted a connection")
+class AcceptEvent extends DhtEvent {
+
+	@Label("Address")
+	@Description("Address of the remote side")
+	String address;
+
+	@Label("Port")
+	@Description("Port of the remote side")
+	int port;
+}
@@ -0,0 +1,25 @@
+package me.bcap.dht.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("me.bcap.dht.BucketEviction")
+@Label("Bucket Eviction")
+@Category({ "DHT", "Routing" })
+@Description("A contact was removed from a bucket")
+class BucketEvictionEvent extends DhtEvent {
+
+	@Label("Bucket")
+	@Description("Id of the bucket, in hexadecimal")
+	String bucket;
+
+	@Label("Contact")
+	@Description("Id of the contact, in hexadecimal")
+	String contact;
+
+	@Label("Size")
+	@Description("Contacts in the bucket afterwards")
+	int size;
+}
@@ -0,0 +1,33 @@
+package me.bcap.dht.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("me.bcap.dht.BucketUpdate")
+@Label("Bucket Update")
+@Category({ "DHT", "Routing" })
+@Description("A bucket was asked to hold a contact")
+class BucketUpdateEvent extends DhtEvent {
+
+	@Label("Bucket")
+	@Description("Id of the bucket, in hexadecimal")
+	String bucket;
+
+	@Label("Contact")
+	@Description("Id of the contact, in hexadecimal")
+	String contact;
+
+	@Label("Known")
+	@Description("Whether the bucket was already holding the contact")
+	boolean known;
+
+	@Label("Added")
+	@Description("Whether the contact was added, a full bucket turns new contacts down")
+	boolean added;
+
+	@Label("Size")
+	@Description("Contacts in the bucket afterwards")
+	int size;
+}
@@ -0,0 +1,15 @@
+package me.bcap.dht.jfr;
+
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.StackTrace;
+
+/**
+ * Base of the DHT events. They are off until enabled by a settings profile such as dht.jfc, and carry no stack trace
+ * as the thread recording them is always the one doing the work. Durations are measured by the instrumented code and
+ * reported in a field, the events themselves are instant and timestamped when the work ended.
+ */
+@Enabled(false)
+@StackTrace(false)
+abstract class DhtEvent extends Event {
+}
@@ -0,0 +1,35 @@
+package me.bcap.dht.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+@Name("me.bcap.dht.Handler")
+@Label("Request Handler")
+@Category({ "DHT", "Server" })
+@Description("A request went through its handler")
+class HandlerEvent extends DhtEvent {
+
+	@Label("Conversation Id")
+	@Description("Conversation the message is part of")
+	long conversationId;
+
+	@Label("Request Type")
+	@Description("Class of the request")
+	String requestType;
+
+	@Label("Node")
+	@Description("Id of the node the request was addressed to, in hexadecimal")
+	String node;
+
+	@Label("Succeeded")
+	@Description("Whether the handler returned a response")
+	boolean succeeded;
+
+	@Label("Elapsed")
+	@Description("Time the work took")
+	@Timespan(Timespan.NANOSECONDS)
+	long elapsed;
+}
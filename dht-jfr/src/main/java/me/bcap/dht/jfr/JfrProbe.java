@@ -0,0 +1,186 @@
+package me.bcap.dht.jfr;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.util.List;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.FlightRecorder;
+
+import me.bcap.dht.message.request.Request;
+import me.bcap.dht.message.response.Response;
+import me.bcap.dht.node.Contact;
+import me.bcap.dht.node.Identifier;
+import me.bcap.dht.probe.Probe;
+import me.bcap.dht.probe.Probes;
+
+/**
+ * Turns the DHT probe events into Flight Recorder events, named me.bcap.dht.*. The events are registered with the
+ * recorder when the probe is installed but stay off, at the cost of a single check per event, until a recording
+ * enables them with the dht.jfc settings profile shipped in this jar, either from the command line together with the
+ * default profile:
+ * 
+ * <pre>
+ * java -XX:StartFlightRecording:settings=default,settings=dht.jfc,filename=dht.jfr ...
+ * </pre>
+ * 
+ * or programmatically through {@link #configuration()}.
+ */
+public class JfrProbe implements Probe {
+
+	static final List<Class<? extends DhtEvent>> EVENT_TYPES = List.of(AcceptEvent.class, RequestDecodeEvent.class, HandlerEvent.class, ResponseEncodeEvent.class, SenderConnectEvent.class, SenderSendEvent.class, SenderReceiveEvent.class, BucketUpdateEvent.class, BucketEvictionEvent.class, StorageGetEvent.class, StoragePutEvent.class);
+
+	/**
+	 * Registers the events and installs a probe recording them
+	 */
+	public static JfrProbe install() {
+		for (Class<? extends DhtEvent> type : EVENT_TYPES)
+			FlightRecorder.register(type);
+		JfrProbe probe = new JfrProbe();
+		Probes.install(probe);
+		return probe;
+	}
+
+	/**
+	 * The dht.jfc settings profile, enabling every DHT event
+	 */
+	public static Configuration configuration() throws IOException, ParseException {
+		try (Reader reader = new InputStreamReader(JfrProbe.class.getResourceAsStream("/dht.jfc"), StandardCharsets.UTF_8)) {
+			return Configuration.create(reader);
+		}
+	}
+
+	public void connectionAccepted(InetAddress address, int port) {
+		AcceptEvent event = new AcceptEvent();
+		if (!event.shouldCommit())
+			return;
+		event.address = address.getHostAddress();
+		event.port = port;
+		event.commit();
+	}
+
+	public void requestDecoded(Request request, long bytes, long duration) {
+		RequestDecodeEvent event = new RequestDecodeEvent();
+		if (!event.shouldCommit())
+			return;
+		event.conversationId = request.getConversationId();
+		event.requestType = request.getClass().getSimpleName();
+		event.bytes = bytes;
+		event.elapsed = duration;
+		event.commit();
+	}
+
+	public void requestHandled(Request request, boolean succeeded, long duration) {
+		HandlerEvent event = new HandlerEvent();
+		if (!event.shouldCommit())
+			return;
+		event.conversationId = request.getConversationId();
+		event.requestType = request.getClass().getSimpleName();
+		event.node = hex(request.getDestination());
+		event.succeeded = succeeded;
+		event.elapsed = duration;
+		event.commit();
+	}
+
+	public void responseEncoded(Response response, long bytes, long duration) {
+		ResponseEncodeEvent event = new ResponseEncodeEvent();
+		if (!event.shouldCommit())
+			return;
+		event.conversationId = response.getConversationId();
+		event.responseType = response.getClass().getSimpleName();
+		event.bytes = bytes;
+		event.elapsed = duration;
+		event.commit();
+	}
+
+	public void senderConnected(Request request, long duration) {
+		SenderConnectEvent event = new SenderConnectEvent();
+		if (!event.shouldCommit())
+			return;
+		event.conversationId = request.getConversationId();
+		event.requestType = request.getClass().getSimpleName();
+		event.destination = address(request.getDestination());
+		event.elapsed = duration;
+		event.commit();
+	}
+
+	public void requestSent(Request request, long bytes, long duration) {
+		SenderSendEvent event = new SenderSendEvent();
+		if (!event.shouldCommit())
+			return;
+		event.conversationId = request.getConversationId();
+		event.requestType = request.getClass().getSimpleName();
+		event.destination = address(request.getDestination());
+		event.bytes = bytes;
+		event.elapsed = duration;
+		event.commit();
+	}
+
+	public void responseReceived(Request request, Response response, long bytes, long duration) {
+		SenderReceiveEvent event = new SenderReceiveEvent();
+		if (!event.shouldCommit())
+			return;
+		event.conversationId = request.getConversationId();
+		event.requestType = request.getClass().getSimpleName();
+		event.responseType = response.getClass().getSimpleName();
+		event.destination = address(request.getDestination());
+		event.bytes = bytes;
+		event.elapsed = duration;
+		event.commit();
+	}
+
+	public void bucketUpdated(Identifier bucket, Contact contact, boolean known, boolean added, int size) {
+		BucketUpdateEvent event = new BucketUpdateEvent();
+		if (!event.shouldCommit())
+			return;
+		event.bucket = hex(bucket);
+		event.contact = hex(contact);
+		event.known = known;
+		event.added = added;
+		event.size = size;
+		event.commit();
+	}
+
+	public void bucketEvicted(Identifier bucket, Contact contact, int size) {
+		BucketEvictionEvent event = new BucketEvictionEvent();
+		if (!event.shouldCommit())
+			return;
+		event.bucket = hex(bucket);
+		event.contact = hex(contact);
+		event.size = size;
+		event.commit();
+	}
+
+	public void storageRead(Identifier key, long bytes, long duration) {
+		StorageGetEvent event = new StorageGetEvent();
+		if (!event.shouldCommit())
+			return;
+		event.key = hex(key);
+		event.found = bytes >= 0;
+		event.bytes = bytes;
+		event.elapsed = duration;
+		event.commit();
+	}
+
+	public void storageWritten(Identifier key, long bytes, long duration) {
+		StoragePutEvent event = new StoragePutEvent();
+		if (!event.shouldCommit())
+			return;
+		event.key = hex(key);
+		event.bytes = bytes;
+		event.elapsed = duration;
+		event.commit();
+	}
+
+	private static String hex(Identifier identifier) {
+		return identifier != null ? identifier.getValue().toString(16) : null;
+	}
+
+	private static String address(Contact contact) {
+		return contact != null ? contact.getIp().getHostAddress() + ":" + contact.getPort() : null;
+	}
+}
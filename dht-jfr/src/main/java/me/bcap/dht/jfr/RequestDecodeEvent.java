@@ -0,0 +1,33 @@
+package me.bcap.dht.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+@Name("me.bcap.dht.RequestDecode")
+@Label("Request Decode")
+@Category({ "DHT", "Server" })
+@Description("A server read a request, the duration including the wait for its bytes")
+class RequestDecodeEvent extends DhtEvent {
+
+	@Label("Conversation Id")
+	@Description("Conversation the message is part of")
+	long conversationId;
+
+	@Label("Request Type")
+	@Description("Class of the request")
+	String requestType;
+
+	@Label("Bytes")
+	@Description("Bytes of the message, payload included")
+	@DataAmount
+	long bytes;
+
+	@Label("Elapsed")
+	@Description("Time the work took")
+	@Timespan(Timespan.NANOSECONDS)
+	long elapsed;
+}
@@ -0,0 +1,33 @@
+package me.bcap.dht.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+@Name("me.bcap.dht.ResponseEncode")
+@Label("Response Encode")
+@Category({ "DHT", "Server" })
+@Description("A server wrote a response")
+class ResponseEncodeEvent extends DhtEvent {
+
+	@Label("Conversation Id")
+	@Description("Conversation the message is part of")
+	long conversationId;
+
+	@Label("Response Type")
+	@Description("Class of the response")
+	String responseType;
+
+	@Label("Bytes")
+	@Description("Bytes of the message, payload included")
+	@DataAmount
+	long bytes;
+
+	@Label("Elapsed")
+	@Description("Time the work took")
+	@Timespan(Timespan.NANOSECONDS)
+	long elapsed;
+}
@@ -0,0 +1,31 @@
+package me.bcap.dht.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+@Name("me.bcap.dht.SenderConnect")
+@Label("Sender Connect")
+@Category({ "DHT", "Sender" })
+@Description("A sender connected to the destination of a request")
+class SenderConnectEvent extends DhtEvent {
+
+	@Label("Conversation Id")
+	@Description("Conversation the message is part of")
+	long conversationId;
+
+	@Label("Request Type")
+	@Description("Class of the request")
+	String requestType;
+
+	@Label("Destination")
+	@Description("Address and port the request was sent to")
+	String destination;
+
+	@Label("Elapsed")
+	@Description("Time the work took")
+	@Timespan(Timespan.NANOSECONDS)
+	long elapsed;
+}
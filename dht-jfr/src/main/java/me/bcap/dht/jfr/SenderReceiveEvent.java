@@ -0,0 +1,41 @@
+package me.bcap.dht.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+@Name("me.bcap.dht.SenderReceive")
+@Label("Sender Receive")
+@Category({ "DHT", "Sender" })
+@Description("A sender read the response to a request, the duration including the wait for the server")
+class SenderReceiveEvent extends DhtEvent {
+
+	@Label("Conversation Id")
+	@Description("Conversation the message is part of")
+	long conversationId;
+
+	@Label("Request Type")
+	@Description("Class of the request")
+	String requestType;
+
+	@Label("Response Type")
+	@Description("Class of the response")
+	String responseType;
+
+	@Label("Destination")
+	@Description("Address and port the request was sent to")
+	String destination;
+
+	@Label("Bytes")
+	@Description("Bytes of the message, payload included")
+	@DataAmount
+	long bytes;
+
+	@Label("Elapsed")
+	@Description("Time the work took")
+	@Timespan(Timespan.NANOSECONDS)
+	long elapsed;
+}
@@ -0,0 +1,33 @@
+package me.bcap.dht.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+@Name("me.bcap.dht.StorageGet")
+@Label("Storage Get")
+@Category({ "DHT", "Storage" })
+@Description("A value, or part of it, was read from a storage")
+class StorageGetEvent extends DhtEvent {
+
+	@Label("Key")
+	@Description("Key of the value, in hexadecimal")
+	String key;
+
+	@Label("Found")
+	@Description("Whether the key was stored")
+	boolean found;
+
+	@Label("Bytes")
+	@Description("Bytes read, -1 if the key was not stored")
+	@DataAmount
+	long bytes;
+
+	@Label("Elapsed")
+	@Description("Time the work took")
+	@Timespan(Timespan.NANOSECONDS)
+	long elapsed;
+}
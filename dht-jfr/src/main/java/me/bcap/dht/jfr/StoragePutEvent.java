@@ -0,0 +1,29 @@
+package me.bcap.dht.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+@Name("me.bcap.dht.StoragePut")
+@Label("Storage Put")
+@Category({ "DHT", "Storage" })
+@Description("A value was written to a storage")
+class StoragePutEvent extends DhtEvent {
+
+	@Label("Key")
+	@Description("Key of the value, in hexadecimal")
+	String key;
+
+	@Label("Bytes")
+	@Description("Bytes of the message, payload included")
+	@DataAmount
+	long bytes;
+
+	@Label("Elapsed")
+	@Description("Time the work took")
+	@Timespan(Timespan.NANOSECONDS)
+	long elapsed;
+}
@@ -0,0 +1,106 @@
+package me.bcap.dht.jfr;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import me.bcap.dht.client.ConcurrentMessageSender;
+import me.bcap.dht.client.operation.Store;
+import me.bcap.dht.node.Identifier;
+import me.bcap.dht.node.Node;
+import me.bcap.dht.probe.Probes;
+import me.bcap.dht.server.Server;
+
+/**
+ * A store through real sockets, recorded with the dht.jfc profile
+ */
+public class JfrProbeTest {
+
+	private static final int PORT = 5105;
+
+	private Server server;
+	private ConcurrentMessageSender sender;
+	private Node client;
+	private Node node;
+	private File file;
+
+	@Before
+	public void setUp() throws Exception {
+		InetAddress ip = InetAddress.getByName("localhost");
+		server = new Server(ip, PORT);
+		server.addDefaultHandlers();
+		client = new Node(BigInteger.valueOf(1), ip, PORT);
+		node = new Node(BigInteger.valueOf(2), ip, PORT);
+		server.addNode(node);
+		server.start();
+		sender = new ConcurrentMessageSender(2);
+		file = File.createTempFile("dht", ".jfr");
+		JfrProbe.install();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		Probes.install(null);
+		sender.shutdown();
+		server.shutdown();
+		file.delete();
+	}
+
+	@Test
+	public void testRecordedEvents() throws Exception {
+		Identifier key = new Identifier(BigInteger.valueOf(77));
+		Recording recording = new Recording(JfrProbe.configuration());
+		recording.start();
+
+		Store store = new Store(client, node.asContact(), key, new byte[5000]);
+		store.setMessageServer(sender);
+		assertNull(store.execute().get(5, TimeUnit.SECONDS).getException());
+		assertNotNull(node.getDataStorage().get(key));
+		node.getBucketForId(client).removeContact(client.asContact());
+
+		recording.stop();
+		recording.dump(file.toPath());
+		recording.close();
+
+		Map<String, RecordedEvent> events = new HashMap<String, RecordedEvent>();
+		for (RecordedEvent event : RecordingFile.readAllEvents(file.toPath()))
+			if (event.getEventType().getName().startsWith("me.bcap.dht."))
+				events.put(event.getEventType().getName().substring("me.bcap.dht.".length()), event);
+
+		for (String name : new String[] { "Accept", "RequestDecode", "Handler", "ResponseEncode", "SenderConnect", "SenderSend", "SenderReceive", "BucketUpdate", "BucketEviction", "StorageGet", "StoragePut" })
+			assertTrue("No " + name + " event", events.containsKey(name));
+
+		assertEquals("StoreRequest", events.get("Handler").getString("requestType"));
+		assertTrue(events.get("Handler").getBoolean("succeeded"));
+		assertTrue(events.get("RequestDecode").getLong("bytes") > 5000);
+		assertTrue(events.get("SenderSend").getLong("bytes") > 5000);
+		assertEquals(5000, events.get("StoragePut").getLong("bytes"));
+		assertEquals("4d", events.get("StorageGet").getString("key"));
+		assertEquals("1", events.get("BucketEviction").getString("contact"));
+	}
+
+	@Test
+	public void testOffWithoutRecording() throws Exception {
+		Recording recording = new Recording();
+		recording.start();
+		node.getDataStorage().put(new Identifier(BigInteger.valueOf(78)), new byte[10]);
+		recording.stop();
+		recording.dump(file.toPath());
+		recording.close();
+
+		for (RecordedEvent event : RecordingFile.readAllEvents(file.toPath()))
+			assertFalse(event.getEventType().getName().startsWith("me.bcap.dht."));
+	}
+}